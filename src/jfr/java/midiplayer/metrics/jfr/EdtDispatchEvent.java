@@ -0,0 +1,33 @@
+package midiplayer.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Queued player events were dispatched on the Event Dispatch Thread.
+ *
+ * @author Mathieu Brunot
+ */
+@Name("midiplayer.EdtDispatch")
+@Label("EDT Dispatch")
+@Category(JfrEvents.CATEGORY)
+@Description("Queued player events dispatched on the Event Dispatch Thread")
+@StackTrace(false)
+final class EdtDispatchEvent extends jdk.jfr.Event {
+
+  @Label("Event Count")
+  int eventCount;
+
+  @Label("Queue Delay")
+  @Timespan
+  long queueDelay;
+
+  @Label("Dispatch Time")
+  @Timespan
+  long dispatchTime;
+
+}
@@ -0,0 +1,34 @@
+package midiplayer.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A MIDI file was parsed.
+ *
+ * @author Mathieu Brunot
+ */
+@Name("midiplayer.FileParse")
+@Label("MIDI File Parse")
+@Category(JfrEvents.CATEGORY)
+@Description("MIDI file parsed because it was not in the sequence cache")
+@StackTrace(false)
+final class FileParseEvent extends jdk.jfr.Event {
+
+  @Label("Resource")
+  String resource;
+
+  @Label("Byte Size")
+  @DataAmount
+  long byteSize;
+
+  @Label("Parse Time")
+  @Timespan
+  long parseTime;
+
+}
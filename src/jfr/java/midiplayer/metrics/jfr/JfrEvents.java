@@ -0,0 +1,105 @@
+package midiplayer.metrics.jfr;
+
+import midiplayer.metrics.FlightRecorderEvents;
+
+/**
+ * Emits the events of the MIDI player to the Java Flight Recorder.
+ *
+ * <p>
+ * Loaded by {@link FlightRecorderEvents#get()} on Java virtual machines with the {@code jdk.jfr}
+ * module. Events are only filled and committed when their type is enabled in a recording.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class JfrEvents extends FlightRecorderEvents {
+
+  /**
+   * Category of the MIDI player events.
+   */
+  static final String CATEGORY = "MIDI Player";
+
+  /**
+   * Constructs the Java Flight Recorder events.
+   */
+  public JfrEvents() {
+    super();
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public void songLoaded(final Object resource, final long byteSize,
+      final long startNanos) {
+    SongLoadEvent event = new SongLoadEvent();
+    if (event.isEnabled()) {
+      event.loadTime = System.nanoTime() - startNanos;
+      event.resource = String.valueOf(resource);
+      event.byteSize = byteSize;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void fileParsed(final Object resource, final long byteSize,
+      final long startNanos) {
+    FileParseEvent event = new FileParseEvent();
+    if (event.isEnabled()) {
+      event.parseTime = System.nanoTime() - startNanos;
+      event.resource = String.valueOf(resource);
+      event.byteSize = byteSize;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void songTransition(final Object resource, final long gapNanos,
+      final boolean gapless) {
+    SongTransitionEvent event = new SongTransitionEvent();
+    if (event.isEnabled()) {
+      event.resource = String.valueOf(resource);
+      event.gap = gapNanos;
+      event.gapless = gapless;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void sequencerAcquired(final String sequencer,
+      final long startNanos) {
+    SequencerAcquireEvent event = new SequencerAcquireEvent();
+    if (event.isEnabled()) {
+      event.acquireTime = System.nanoTime() - startNanos;
+      event.sequencer = sequencer;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void listenersNotified(final String playerEvent,
+      final int listenerCount, final long startNanos) {
+    ListenerNotifyEvent event = new ListenerNotifyEvent();
+    if (event.isEnabled()) {
+      event.notifyTime = System.nanoTime() - startNanos;
+      event.playerEvent = playerEvent;
+      event.listenerCount = listenerCount;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void edtDispatched(final int eventCount, final long queueDelayNanos,
+      final long startNanos) {
+    EdtDispatchEvent event = new EdtDispatchEvent();
+    if (event.isEnabled()) {
+      event.dispatchTime = System.nanoTime() - startNanos;
+      event.eventCount = eventCount;
+      event.queueDelay = queueDelayNanos;
+      event.commit();
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package midiplayer.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The listeners of a player event were notified.
+ *
+ * @author Mathieu Brunot
+ */
+@Name("midiplayer.ListenerNotify")
+@Label("Listener Notify")
+@Category(JfrEvents.CATEGORY)
+@Description("Listeners of a player event notified")
+@StackTrace(false)
+final class ListenerNotifyEvent extends jdk.jfr.Event {
+
+  @Label("Player Event")
+  String playerEvent;
+
+  @Label("Listener Count")
+  int listenerCount;
+
+  @Label("Notify Time")
+  @Timespan
+  long notifyTime;
+
+}
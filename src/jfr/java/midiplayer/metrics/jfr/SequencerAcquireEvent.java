@@ -0,0 +1,29 @@
+package midiplayer.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A MIDI sequencer was acquired.
+ *
+ * @author Mathieu Brunot
+ */
+@Name("midiplayer.SequencerAcquire")
+@Label("Sequencer Acquire")
+@Category(JfrEvents.CATEGORY)
+@Description("MIDI sequencer opened or reused from the sequencer pool")
+@StackTrace(false)
+final class SequencerAcquireEvent extends jdk.jfr.Event {
+
+  @Label("Sequencer")
+  String sequencer;
+
+  @Label("Acquire Time")
+  @Timespan
+  long acquireTime;
+
+}
@@ -0,0 +1,34 @@
+package midiplayer.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A song sequence was obtained before playing it.
+ *
+ * @author Mathieu Brunot
+ */
+@Name("midiplayer.SongLoad")
+@Label("Song Load")
+@Category(JfrEvents.CATEGORY)
+@Description("Sequence of a song obtained before playing it")
+@StackTrace(false)
+final class SongLoadEvent extends jdk.jfr.Event {
+
+  @Label("Resource")
+  String resource;
+
+  @Label("Byte Size")
+  @DataAmount
+  long byteSize;
+
+  @Label("Load Time")
+  @Timespan
+  long loadTime;
+
+}
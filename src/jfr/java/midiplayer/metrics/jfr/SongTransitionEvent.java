@@ -0,0 +1,33 @@
+package midiplayer.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A song started after the end of the previous one.
+ *
+ * @author Mathieu Brunot
+ */
+@Name("midiplayer.SongTransition")
+@Label("Song Transition")
+@Category(JfrEvents.CATEGORY)
+@Description("Song started after the end of the previous one")
+@StackTrace(false)
+final class SongTransitionEvent extends jdk.jfr.Event {
+
+  @Label("Resource")
+  String resource;
+
+  @Label("Gap")
+  @Timespan
+  long gap;
+
+  @Label("Gapless")
+  @Description("Whether the song was spliced into the previous one")
+  boolean gapless;
+
+}
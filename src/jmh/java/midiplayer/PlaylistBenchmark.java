@@ -0,0 +1,215 @@
+package midiplayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the playlist operations of the MIDI player.
+ *
+ * <p>
+ * Operations which change the playlist are undone between invocations, outside of the measured
+ * time. For the smallest playlists, the cost of the invocation level setup is close to the
+ * measured time: compare their results between runs rather than in absolute terms.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaylistBenchmark {
+
+  @Param({"10", "1000", "100000", "1000000"})
+  private int size;
+
+  private MidiPlayer player;
+
+  private Random random;
+
+  /**
+   * Number of songs moved or removed at once: 1% of the playlist.
+   */
+  private int blockSize;
+
+  /**
+   * Is the moved block at the end of the playlist?
+   */
+  private boolean blockAtEnd;
+
+  private int[] removedIndexes;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    player = new MidiPlayer();
+    player.addAll(SyntheticMidiFiles.playlist(42, size));
+    random = new Random(42);
+    blockSize = Math.max(1, size / 100);
+    removedIndexes = random.ints(0, size).distinct().limit(blockSize)
+        .toArray();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    player.close();
+  }
+
+  // #########################################################################
+  /**
+   * Move 1% of the playlist between its start and its end.
+   *
+   * @return whether the songs were moved
+   */
+  @Benchmark
+  public boolean moveSongsTo() {
+    boolean moved;
+    if (blockAtEnd) {
+      moved = player.moveSongsTo(size - blockSize, size - 1, 0);
+    } else {
+      moved = player.moveSongsTo(0, blockSize - 1, size - 1);
+    }
+    blockAtEnd = !blockAtEnd;
+    return moved;
+  }
+
+  /**
+   * Remove 1% of the playlist, at random indexes.
+   *
+   * @param removal the removed songs state
+   * @return whether the songs were removed
+   */
+  @Benchmark
+  public boolean removeAll(final Removal removal) {
+    return player.removeAll(removedIndexes);
+  }
+
+  /**
+   * Shuffle the whole playlist.
+   *
+   * @return whether the playlist was shuffled
+   */
+  @Benchmark
+  public boolean shufflePlaylist() {
+    return player.shufflePlaylist(random);
+  }
+
+  /**
+   * Move to the next song of the shuffle mode, without reordering the playlist.
+   *
+   * @param shuffleMode the shuffle mode state
+   * @return whether the current song changed
+   */
+  @Benchmark
+  public boolean moveToNextShuffledSong(final ShuffleMode shuffleMode) {
+    return player.moveToNextSong();
+  }
+
+  /**
+   * Sort a shuffled playlist with the natural comparator.
+   *
+   * @param shuffled the shuffled playlist state
+   * @return whether the playlist was sorted
+   */
+  @Benchmark
+  public boolean sortPlaylist(final Shuffled shuffled) {
+    return player.sortPlaylist(MidiPlayer.COMPARATOR);
+  }
+
+  /**
+   * Sort a shuffled playlist by file name, from keys computed once per song.
+   *
+   * @param shuffled the shuffled playlist state
+   * @return whether the playlist was sorted
+   */
+  @Benchmark
+  public boolean sortPlaylistByFileName(final Shuffled shuffled) {
+    return player.sortPlaylist(SortKey.FILE_NAME);
+  }
+
+  /**
+   * Sort a shuffled playlist by directory and file name, from keys computed once per song.
+   *
+   * @param shuffled the shuffled playlist state
+   * @return whether the playlist was sorted
+   */
+  @Benchmark
+  public boolean sortPlaylistByDirectory(final Shuffled shuffled) {
+    return player.sortPlaylist(SortKey.DIRECTORY);
+  }
+
+  /**
+   * Adds the removed songs back after each removal.
+   */
+  @State(Scope.Thread)
+  public static class Removal {
+
+    private final List<Object> removedSongs = new ArrayList<>();
+
+    @Setup(Level.Invocation)
+    public void keep(final PlaylistBenchmark benchmark) {
+      List<Object> playlist = benchmark.player.getPlaylist();
+      removedSongs.clear();
+      for (int index : benchmark.removedIndexes) {
+        removedSongs.add(playlist.get(index));
+      }
+    }
+
+    @TearDown(Level.Invocation)
+    public void restore(final PlaylistBenchmark benchmark) {
+      benchmark.player.addAll(removedSongs);
+    }
+
+  }
+
+  /**
+   * Plays the playlist in shuffle mode, looping over it.
+   */
+  @State(Scope.Thread)
+  public static class ShuffleMode {
+
+    @Setup(Level.Trial)
+    public void enable(final PlaylistBenchmark benchmark) {
+      benchmark.player.setPlaylistLooping(true);
+      benchmark.player.setShuffling(true, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void disable(final PlaylistBenchmark benchmark) {
+      benchmark.player.setShuffling(false);
+      benchmark.player.setPlaylistLooping(false);
+    }
+
+  }
+
+  /**
+   * Shuffles the playlist before each sort.
+   */
+  @State(Scope.Thread)
+  public static class Shuffled {
+
+    @Setup(Level.Invocation)
+    public void shuffle(final PlaylistBenchmark benchmark) {
+      benchmark.player.shufflePlaylist(benchmark.random);
+    }
+
+  }
+
+}
@@ -0,0 +1,125 @@
+package midiplayer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading and writing playlist files.
+ *
+ * <p>
+ * Reading is compared with a reader making each entry absolute and normalized, as done for the
+ * paths given to the load commands.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Thread)
+public class PlaylistFileBenchmark {
+
+  @Param({"1000", "1000000"})
+  private int size;
+
+  @Param({"M3U8", "PLS"})
+  private PlaylistFile.Format format;
+
+  private Path directory;
+
+  private List<Object> songs;
+
+  private Path file;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("playlist-benchmark");
+    List<Object> playlist = SyntheticMidiFiles.playlist(42, size);
+    songs = new ArrayList<>(playlist.size());
+    for (Object song : playlist) {
+      songs.add(directory.resolve((Path) song));
+    }
+    file = directory.resolve("playlist." + format.getExtension());
+    PlaylistFile.write(file, format, songs);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SyntheticMidiFiles.delete(directory);
+  }
+
+  // #########################################################################
+  /**
+   * Write the playlist, with entries relative to the playlist file.
+   *
+   * @return the number of entries written
+   * @throws IOException if the playlist file cannot be written
+   */
+  @Benchmark
+  public int write() throws IOException {
+    return PlaylistFile.write(file, format, songs);
+  }
+
+  /**
+   * Read the playlist in batches into a playlist.
+   *
+   * @return the playlist read
+   * @throws IOException if the playlist file cannot be read
+   */
+  @Benchmark
+  public Playlist read() throws IOException {
+    Playlist playlist = new Playlist();
+    PlaylistFile.read(file, format, PlaylistFile.DEFAULT_BATCH_SIZE,
+        playlist::addAll);
+    return playlist;
+  }
+
+  /**
+   * Read the playlist into a playlist, making each entry absolute and normalized.
+   *
+   * @return the playlist read
+   * @throws IOException if the playlist file cannot be read
+   */
+  @Benchmark
+  public Playlist readNormalized() throws IOException {
+    Playlist playlist = new Playlist();
+    try (BufferedReader reader =
+        Files.newBufferedReader(file, format.getCharset())) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (format == PlaylistFile.Format.PLS) {
+          if (!line.startsWith("File")) {
+            continue;
+          }
+          line = line.substring(line.indexOf('=') + 1);
+        } else if (line.startsWith("#")) {
+          continue;
+        }
+        playlist.add(directory.resolve(line).toAbsolutePath().normalize());
+      }
+    }
+    return playlist;
+  }
+
+}
@@ -0,0 +1,189 @@
+package midiplayer;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the list operations done by the MIDI player on its playlist, for the indexed playlist
+ * and for the linked list which backed the playlist before it.
+ *
+ * <p>
+ * Each operation is done the way the player does it with each list: block moves are a single array
+ * copy in the indexed playlist and a rotation of a sublist in the linked list, batch removals one
+ * array compaction against a removal per index.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaylistListBenchmark {
+
+  /**
+   * Implementation of the playlist: {@code Playlist} or {@code LinkedList}.
+   */
+  @Param({"Playlist", "LinkedList"})
+  private String implementation;
+
+  @Param({"1000", "100000"})
+  private int size;
+
+  private List<Object> playlist;
+
+  private Random random;
+
+  /**
+   * Number of songs moved or removed at once: 1% of the playlist.
+   */
+  private int blockSize;
+
+  /**
+   * Is the moved block at the end of the playlist?
+   */
+  private boolean blockAtEnd;
+
+  /**
+   * The removed indexes, in ascending order.
+   */
+  private int[] removedIndexes;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    List<Object> songs = SyntheticMidiFiles.playlist(42, size);
+    if ("LinkedList".equals(implementation)) {
+      playlist = new LinkedList<>(songs);
+    } else {
+      playlist = new Playlist(songs);
+    }
+    random = new Random(42);
+    blockSize = Math.max(1, size / 100);
+    removedIndexes = random.ints(0, size).distinct().limit(blockSize)
+        .sorted().toArray();
+  }
+
+  private boolean isIndexed() {
+    return playlist instanceof Playlist;
+  }
+
+  // #########################################################################
+  /**
+   * Get the song at a random index, as done by the table for each visible row.
+   *
+   * @return the song
+   */
+  @Benchmark
+  public Object get() {
+    return playlist.get(random.nextInt(size));
+  }
+
+  /**
+   * Find the index of a random song, as done to follow the current song after a reorder.
+   *
+   * @return the index of the song
+   */
+  @Benchmark
+  public int indexOf() {
+    // Indexes are not rebuilt: the playlist is not modified between lookups
+    return playlist.indexOf(playlist.get(random.nextInt(size)));
+  }
+
+  /**
+   * Move 1% of the playlist between its start and its end.
+   *
+   * @return whether the songs were moved
+   */
+  @Benchmark
+  public boolean moveSongsTo() {
+    int start = blockAtEnd ? size - blockSize : 0;
+    int end = start + blockSize - 1;
+    int position = blockAtEnd ? 0 : size - 1;
+    blockAtEnd = !blockAtEnd;
+    if (isIndexed()) {
+      return ((Playlist) playlist).move(start, end, position);
+    }
+    // Rotation done by the player on the linked list
+    int distance = 1 + end - start;
+    int rotationStart;
+    int rotationEnd;
+    if (start >= position) {
+      rotationStart = position;
+      rotationEnd = end + 1;
+    } else {
+      distance *= -1;
+      rotationStart = start;
+      rotationEnd = position;
+    }
+    Collections.rotate(playlist.subList(rotationStart, rotationEnd), distance);
+    return true;
+  }
+
+  /**
+   * Remove 1% of the playlist, at random indexes.
+   *
+   * @param removal the copy of the playlist to remove from
+   * @return the number of removed songs
+   */
+  @Benchmark
+  public int removeAll(final Removal removal) {
+    List<Object> copy = removal.playlist;
+    if (copy instanceof Playlist) {
+      return ((Playlist) copy).removeIndexes(removedIndexes);
+    }
+    // One removal per index, from the last one
+    for (int i = removedIndexes.length - 1; i >= 0; i--) {
+      copy.remove(removedIndexes[i]);
+    }
+    return removedIndexes.length;
+  }
+
+  /**
+   * Shuffle the whole playlist.
+   *
+   * @return the shuffled playlist
+   */
+  @Benchmark
+  public List<Object> shuffle() {
+    Collections.shuffle(playlist, random);
+    return playlist;
+  }
+
+  /**
+   * Copy of the playlist, made again before each removal.
+   */
+  @State(Scope.Thread)
+  public static class Removal {
+
+    private List<Object> playlist;
+
+    @Setup(Level.Invocation)
+    public void copy(final PlaylistListBenchmark benchmark) {
+      if (benchmark.isIndexed()) {
+        playlist = new Playlist(benchmark.playlist);
+      } else {
+        playlist = new LinkedList<>(benchmark.playlist);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,75 @@
+package midiplayer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the description of songs, as printed when a song starts and displayed in the
+ * playlist.
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SongInfoBenchmark {
+
+  /**
+   * Number of channel events of each of the 16 tracks.
+   */
+  @Param({"100", "10000"})
+  private int eventsPerTrack;
+
+  private final Path resource = Paths.get("Artist", "Album", "01 - Song.mid");
+
+  private Sequence sequence;
+
+  private long microsecondLength;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidMidiDataException {
+    sequence = SyntheticMidiFiles.sequence(42, 17, eventsPerTrack);
+    microsecondLength = sequence.getMicrosecondLength();
+  }
+
+  /**
+   * Describe a song from its sequence, computing its duration.
+   *
+   * @return the song description
+   */
+  @Benchmark
+  public String fromSequence() {
+    return MidiPlayer.getSongInfo(resource, sequence);
+  }
+
+  /**
+   * Describe a song from its known duration, as the playlist does with indexed metadata.
+   *
+   * @return the song description
+   */
+  @Benchmark
+  public String fromDuration() {
+    return MidiPlayer.getSongInfo(resource, microsecondLength);
+  }
+
+}
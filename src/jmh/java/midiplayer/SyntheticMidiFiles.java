@@ -0,0 +1,316 @@
+package midiplayer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Generates the MIDI sequences, files and playlists used by the benchmarks.
+ *
+ * <p>
+ * The generated content only depends on its seed and size, so that benchmark results are
+ * reproducible offline and comparable between machines, without sample files.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class SyntheticMidiFiles {
+
+  /**
+   * Resolution of the generated sequences, in ticks per quarter note.
+   */
+  public static final int RESOLUTION = 480;
+
+  /**
+   * Default number of ticks between two tempo changes: four 4/4 bars.
+   */
+  public static final int TEMPO_CHANGE_INTERVAL = RESOLUTION * 16;
+
+  /**
+   * Controllers changed along the songs: volume, pan, expression and sustain.
+   */
+  private static final int[] CONTROLLERS = {7, 10, 11, 64};
+
+  private SyntheticMidiFiles() {}
+
+  // #########################################################################
+  /**
+   * Generate a sequence.
+   *
+   * <p>
+   * The first track holds the tempo changes, every four bars. Each other track plays notes on its
+   * own channel, with program, controller and pitch bend changes in between.
+   * </p>
+   *
+   * @param seed the seed of the content
+   * @param tracks the number of tracks, including the tempo track
+   * @param eventsPerTrack the number of channel events of each track but the tempo track
+   * @return a new sequence
+   * @throws InvalidMidiDataException if the sequence cannot be created
+   */
+  public static Sequence sequence(final long seed, final int tracks,
+      final int eventsPerTrack) throws InvalidMidiDataException {
+    return sequence(seed, tracks, eventsPerTrack, TEMPO_CHANGE_INTERVAL);
+  }
+
+  /**
+   * Generate a sequence with a tempo change every given number of ticks.
+   *
+   * <p>
+   * A short interval generates a tempo-dense sequence, such as the accelerandos and ritardandos of
+   * performances rendered from scores, with a tempo change every few ticks.
+   * </p>
+   *
+   * @param seed the seed of the content
+   * @param tracks the number of tracks, including the tempo track
+   * @param eventsPerTrack the number of channel events of each track but the tempo track
+   * @param tempoChangeInterval the number of ticks between two tempo changes
+   * @return a new sequence
+   * @throws InvalidMidiDataException if the sequence cannot be created
+   * @see #sequence(long, int, int)
+   */
+  public static Sequence sequence(final long seed, final int tracks,
+      final int eventsPerTrack, final int tempoChangeInterval)
+      throws InvalidMidiDataException {
+    Random random = new Random(seed);
+    Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+    Track tempoTrack = sequence.createTrack();
+    long length = 0;
+    for (int t = 1; t < tracks; t++) {
+      length = Math.max(length, fillTrack(sequence.createTrack(),
+          (t - 1) % 16, eventsPerTrack, random));
+    }
+    fillTempoTrack(tempoTrack, length, tempoChangeInterval, random);
+    return sequence;
+  }
+
+  /**
+   * Generate a sequence of dense controller changes, as recorded from a modulation wheel or an
+   * expression pedal.
+   *
+   * <p>
+   * Each track but the tempo track changes a single controller of its own channel, at most a tick
+   * apart: all its events but the first one are written with running status.
+   * </p>
+   *
+   * @param seed the seed of the content
+   * @param tracks the number of tracks, including the tempo track
+   * @param eventsPerTrack the number of controller changes of each track but the tempo track
+   * @return a new sequence
+   * @throws InvalidMidiDataException if the sequence cannot be created
+   */
+  public static Sequence controllerSequence(final long seed, final int tracks,
+      final int eventsPerTrack) throws InvalidMidiDataException {
+    Random random = new Random(seed);
+    Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+    Track tempoTrack = sequence.createTrack();
+    long length = 0;
+    for (int t = 1; t < tracks; t++) {
+      Track track = sequence.createTrack();
+      int channel = (t - 1) % 16;
+      int controller = CONTROLLERS[random.nextInt(CONTROLLERS.length)];
+      int value = random.nextInt(128);
+      long tick = 0;
+      for (int e = 0; e < eventsPerTrack; e++) {
+        tick += random.nextInt(2);
+        value = Math.max(0, Math.min(127, value + random.nextInt(5) - 2));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE,
+            channel, controller, value), tick));
+      }
+      length = Math.max(length, tick);
+    }
+    fillTempoTrack(tempoTrack, length, TEMPO_CHANGE_INTERVAL, random);
+    return sequence;
+  }
+
+  /**
+   * Generate a sequence holding large system exclusive messages, such as sample or patch dumps,
+   * between its channel events.
+   *
+   * @param seed the seed of the content
+   * @param tracks the number of tracks, including the tempo track
+   * @param eventsPerTrack the number of channel events of each track but the tempo track
+   * @param sysexInterval the number of channel events between two system exclusive messages
+   * @param sysexLength the length of each system exclusive message, in bytes
+   * @return a new sequence
+   * @throws InvalidMidiDataException if the sequence cannot be created
+   */
+  public static Sequence sysexSequence(final long seed, final int tracks,
+      final int eventsPerTrack, final int sysexInterval, final int sysexLength)
+      throws InvalidMidiDataException {
+    Sequence sequence = sequence(seed, tracks, eventsPerTrack);
+    Random random = new Random(seed);
+    Track[] all = sequence.getTracks();
+    for (int t = 1; t < all.length; t++) {
+      Track track = all[t];
+      // Ticks taken before adding messages, which shift the following events
+      List<Long> ticks = new ArrayList<>();
+      for (int e = 0; e < track.size() - 1; e += sysexInterval) {
+        ticks.add(track.get(e).getTick());
+      }
+      for (long tick : ticks) {
+        byte[] data = new byte[sysexLength];
+        for (int i = 1; i < data.length - 1; i++) {
+          data[i] = (byte) random.nextInt(128);
+        }
+        data[0] = (byte) SysexMessage.SYSTEM_EXCLUSIVE;
+        data[data.length - 1] = (byte) ShortMessage.END_OF_EXCLUSIVE;
+        track.add(new MidiEvent(new SysexMessage(data, data.length), tick));
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * Fill a tempo track with regular tempo changes.
+   *
+   * @param tempoTrack the tempo track
+   * @param length the length of the sequence, in ticks
+   * @param interval the number of ticks between two tempo changes
+   * @param random the random generator of the content
+   * @throws InvalidMidiDataException if a tempo change cannot be created
+   */
+  private static void fillTempoTrack(final Track tempoTrack, final long length,
+      final int interval, final Random random)
+      throws InvalidMidiDataException {
+    for (long tick = 0; tick <= length; tick += interval) {
+      int bpm = 60 + random.nextInt(120);
+      tempoTrack.add(new MidiEvent(tempo(60000000 / bpm), tick));
+    }
+  }
+
+  private static long fillTrack(final Track track, final int channel,
+      final int events, final Random random) throws InvalidMidiDataException {
+    track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE,
+        channel, random.nextInt(128), 0), 0));
+    long tick = 0;
+    long last = 0;
+    while (track.size() - 1 < events) {
+      tick += random.nextInt(RESOLUTION / 2);
+      int kind = random.nextInt(20);
+      if (kind < 16) {
+        // A note and its release
+        int note = 36 + random.nextInt(60);
+        long end = tick + 1 + random.nextInt(RESOLUTION);
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON,
+            channel, note, 1 + random.nextInt(127)), tick));
+        track.add(new MidiEvent(
+            new ShortMessage(ShortMessage.NOTE_OFF, channel, note, 0), end));
+        last = Math.max(last, end);
+      } else if (kind < 18) {
+        int controller = CONTROLLERS[random.nextInt(CONTROLLERS.length)];
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE,
+            channel, controller, random.nextInt(128)), tick));
+      } else if (kind < 19) {
+        int bend = random.nextInt(16384);
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.PITCH_BEND,
+            channel, bend & 0x7F, bend >> 7), tick));
+      } else {
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE,
+            channel, random.nextInt(128), 0), tick));
+      }
+      last = Math.max(last, tick);
+    }
+    return last;
+  }
+
+  private static MetaMessage tempo(final int microsecondsPerQuarter)
+      throws InvalidMidiDataException {
+    byte[] data = {(byte) (microsecondsPerQuarter >> 16),
+        (byte) (microsecondsPerQuarter >> 8), (byte) microsecondsPerQuarter};
+    return new MetaMessage(0x51, data, data.length);
+  }
+
+  /**
+   * Generate a standard MIDI file.
+   *
+   * @param directory the directory of the file
+   * @param seed the seed of the content
+   * @param tracks the number of tracks, including the tempo track
+   * @param eventsPerTrack the number of channel events of each track but the tempo track
+   * @return the path of the new file
+   * @throws IOException if the file cannot be written
+   * @throws InvalidMidiDataException if the sequence cannot be created
+   */
+  public static Path file(final Path directory, final long seed,
+      final int tracks, final int eventsPerTrack)
+      throws IOException, InvalidMidiDataException {
+    return file(directory,
+        "synthetic-" + seed + "-" + tracks + "x" + eventsPerTrack,
+        sequence(seed, tracks, eventsPerTrack));
+  }
+
+  /**
+   * Write a generated sequence to a standard MIDI file.
+   *
+   * @param directory the directory of the file
+   * @param name the name of the file, without extension
+   * @param sequence the sequence to write
+   * @return the path of the new file
+   * @throws IOException if the file cannot be written
+   */
+  public static Path file(final Path directory, final String name,
+      final Sequence sequence) throws IOException {
+    Path file = directory.resolve(name + ".mid");
+    MidiSystem.write(sequence, 1, file.toFile());
+    return file;
+  }
+
+  /**
+   * Delete a directory of generated files.
+   *
+   * @param directory the directory
+   * @throws IOException if a file cannot be deleted
+   */
+  public static void delete(final Path directory) throws IOException {
+    if (directory == null || !Files.isDirectory(directory)) {
+      return;
+    }
+    List<Path> files = new ArrayList<>();
+    try (Stream<Path> stream = Files.list(directory)) {
+      stream.forEach(files::add);
+    }
+    for (Path file : files) {
+      Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  // #########################################################################
+  /**
+   * Generate a playlist of song paths, which do not exist.
+   *
+   * <p>
+   * Paths look like {@code Artist 12/Album 3/07 - Song 48213.mid}, in random order.
+   * </p>
+   *
+   * @param seed the seed of the content
+   * @param size the number of songs
+   * @return a new playlist
+   */
+  public static List<Object> playlist(final long seed, final int size) {
+    Random random = new Random(seed);
+    List<Object> playlist = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      playlist.add(Paths.get("Artist " + random.nextInt(1000),
+          "Album " + random.nextInt(20), String.format("%02d - Song %d.mid",
+              1 + random.nextInt(20), random.nextInt(size))));
+    }
+    return playlist;
+  }
+
+}
@@ -0,0 +1,266 @@
+package midiplayer.frame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import midiplayer.metrics.LatencyHistogram;
+
+/**
+ * Benchmarks the delivery of a burst of row updates to table model listeners, such as the updates
+ * fired while songs are indexed.
+ *
+ * <p>
+ * The table benchmarks deliver the updates to a real table of {@value #TABLE_ROWS} rows, painting
+ * its visible rows after each delivered event, as the <i>Event Dispatch Thread</i> may do between
+ * two events. The number of events delivered to the table is reported with the results.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventCoalescerBenchmark {
+
+  /**
+   * Number of table model listeners, as registered by the player frame.
+   */
+  private static final int LISTENERS = 4;
+
+  /**
+   * Number of rows of the table, as in a large playlist.
+   */
+  private static final int TABLE_ROWS = 10000;
+
+  /**
+   * Number of rows visible in the table viewport.
+   */
+  private static final int VISIBLE_ROWS = 40;
+
+  @Param({"10", "1000", "10000"})
+  private int burst;
+
+  private TableModel source;
+
+  private List<Consumer<TableModelEvent>> listeners;
+
+  private TableModelEventCoalescer coalescer;
+
+  /**
+   * Sum of the rows seen by the listeners, so that deliveries are not optimized away.
+   */
+  private long seenRows;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    source = new DefaultTableModel();
+    listeners = new ArrayList<>(LISTENERS);
+    for (int i = 0; i < LISTENERS; i++) {
+      listeners.add(evt -> seenRows += evt.getLastRow());
+    }
+    coalescer = new TableModelEventCoalescer(source, false,
+        evt -> listeners.forEach(listener -> listener.accept(evt)),
+        evt -> seenRows++, new LatencyHistogram("Fan-out"),
+        new LatencyHistogram("Queue delay"));
+  }
+
+  /**
+   * Deliver each update to the listeners, without coalescer.
+   *
+   * @return the sum of the rows seen by the listeners
+   */
+  @Benchmark
+  public long direct() {
+    for (int row = 0; row < burst; row++) {
+      TableModelEvent evt = new TableModelEvent(source, row);
+      for (Consumer<TableModelEvent> listener : listeners) {
+        listener.accept(evt);
+      }
+    }
+    return seenRows;
+  }
+
+  /**
+   * Deliver each update through the coalescer, outside of a batch.
+   *
+   * @return the sum of the rows seen by the listeners
+   */
+  @Benchmark
+  public long coalescerUnbatched() {
+    for (int row = 0; row < burst; row++) {
+      coalescer.tableChanged(new TableModelEvent(source, row));
+    }
+    return seenRows;
+  }
+
+  /**
+   * Deliver the updates through the coalescer, in a batch merging them.
+   *
+   * @return the sum of the rows seen by the listeners
+   */
+  @Benchmark
+  public long coalescerBatched() {
+    coalescer.beginBatch();
+    for (int row = 0; row < burst; row++) {
+      coalescer.tableChanged(new TableModelEvent(source, row));
+    }
+    coalescer.endBatch();
+    return seenRows;
+  }
+
+  /**
+   * Deliver each update to a table and paint it, without coalescer.
+   *
+   * @param table the table state
+   * @param counters the counters of delivered events
+   * @return the number of events delivered to the table
+   */
+  @Benchmark
+  public long tableDirect(final TableState table,
+      final DeliveredEvents counters) {
+    long before = table.delivered;
+    for (int row = 0; row < burst; row++) {
+      table.deliver(new TableModelEvent(table.model, row % TABLE_ROWS));
+    }
+    counters.count(table.delivered - before);
+    return table.delivered;
+  }
+
+  /**
+   * Deliver the updates to a table through the coalescer, in a batch merging them, and paint it.
+   *
+   * @param table the table state
+   * @param counters the counters of delivered events
+   * @return the number of events delivered to the table
+   */
+  @Benchmark
+  public long tableBatched(final TableState table,
+      final DeliveredEvents counters) {
+    long before = table.delivered;
+    table.coalescer.beginBatch();
+    for (int row = 0; row < burst; row++) {
+      table.coalescer
+          .tableChanged(new TableModelEvent(table.model, row % TABLE_ROWS));
+    }
+    table.coalescer.endBatch();
+    counters.count(table.delivered - before);
+    return table.delivered;
+  }
+
+  // #########################################################################
+  /**
+   * A table of {@value #TABLE_ROWS} rows, painted in an image.
+   */
+  @State(Scope.Thread)
+  public static class TableState {
+
+    private DefaultTableModel model;
+
+    private JTable table;
+
+    private BufferedImage image;
+
+    private Graphics2D graphics;
+
+    private TableModelEventCoalescer coalescer;
+
+    private long delivered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      model = new DefaultTableModel(TABLE_ROWS, 3);
+      for (int row = 0; row < TABLE_ROWS; row++) {
+        model.setValueAt(row + 1, row, 0);
+        model.setValueAt("Song " + row + ".mid", row, 1);
+        model.setValueAt("3:00", row, 2);
+      }
+      table = new JTable(model);
+      int width = 800;
+      table.setSize(width, TABLE_ROWS * table.getRowHeight());
+      table.doLayout();
+      image = new BufferedImage(width, VISIBLE_ROWS * table.getRowHeight(),
+          BufferedImage.TYPE_INT_RGB);
+      graphics = image.createGraphics();
+      graphics.setClip(0, 0, image.getWidth(), image.getHeight());
+      coalescer = new TableModelEventCoalescer(model, false, this::deliver,
+          evt -> {
+          }, new LatencyHistogram("Fan-out"),
+          new LatencyHistogram("Queue delay"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      graphics.dispose();
+    }
+
+    /**
+     * Deliver an event to the table and paint its visible rows.
+     *
+     * @param evt the event
+     */
+    private void deliver(final TableModelEvent evt) {
+      table.tableChanged(evt);
+      table.paint(graphics);
+      delivered++;
+    }
+
+  }
+
+  /**
+   * Reports the number of bursts and of events delivered to the table, in each iteration.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class DeliveredEvents {
+
+    /**
+     * Number of bursts of updates.
+     */
+    public long bursts;
+
+    /**
+     * Number of events delivered to the table.
+     */
+    public long deliveredEvents;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bursts = 0;
+      deliveredEvents = 0;
+    }
+
+    private void count(final long delivered) {
+      bursts++;
+      deliveredEvents += delivered;
+    }
+
+  }
+
+}
@@ -0,0 +1,78 @@
+package midiplayer.frame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import midiplayer.SyntheticMidiFiles;
+
+/**
+ * Benchmarks the playlist table model, as read by the playlist table on each repaint.
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaylistTableModelBenchmark {
+
+  /**
+   * Number of rows visible at once in the playlist table.
+   */
+  private static final int VISIBLE_ROWS = 50;
+
+  @Param({"10", "1000", "100000", "1000000"})
+  private int size;
+
+  private MidiPlayerWithListener player;
+
+  private Random random;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InterruptedException {
+    player = new MidiPlayerWithListener(false);
+    player.addAll(SyntheticMidiFiles.playlist(42, size));
+    // The generated songs do not exist: wait until they are skipped
+    while (player.getSongMetadataIndex().getPendingCount() > 0) {
+      Thread.sleep(10);
+    }
+    random = new Random(42);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    player.close();
+  }
+
+  /**
+   * Read the rows visible after scrolling to a random position.
+   *
+   * @param blackhole consumes the row values
+   */
+  @Benchmark
+  public void getValueAt(final Blackhole blackhole) {
+    int rows = Math.min(VISIBLE_ROWS, size);
+    int first = random.nextInt(size - rows + 1);
+    for (int row = first; row < first + rows; row++) {
+      blackhole.consume(player.getValueAt(row, 0));
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+package midiplayer.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks recording messages into a MIDI event tap, alone and while a consumer reads them.
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class MidiEventTapBenchmark {
+
+  private MidiEventTap tap;
+
+  private MidiEventTap.Consumer consumer;
+
+  private ShortMessage message;
+
+  /**
+   * Sum of the data read by the consumer, so that reads are not optimized away.
+   */
+  private long read;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidMidiDataException {
+    tap = new MidiEventTap();
+    consumer = tap.newConsumer();
+    message = new ShortMessage(ShortMessage.NOTE_ON, 9, 36, 100);
+  }
+
+  /**
+   * Record a message, without consumer.
+   */
+  @Benchmark
+  @Group("send")
+  public void send() {
+    tap.send(message, -1);
+  }
+
+  /**
+   * Record a message, while a consumer reads them.
+   */
+  @Benchmark
+  @Group("sendAndPoll")
+  public void sendWhilePolling() {
+    tap.send(message, -1);
+  }
+
+  /**
+   * Read the recorded messages.
+   *
+   * @return the number of messages read
+   */
+  @Benchmark
+  @Group("sendAndPoll")
+  public int poll() {
+    return consumer.poll(
+        (nanoTime, status, data1, data2, length) -> read += data2, 64);
+  }
+
+}
@@ -0,0 +1,228 @@
+package midiplayer.sequence;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import midiplayer.SyntheticMidiFiles;
+
+/**
+ * Benchmarks seeking in a sequence: converting a tick position to microseconds and restoring the
+ * channel state at that position.
+ *
+ * <p>
+ * Each index is compared with what it replaces: scanning the tempo changes from the start of the
+ * sequence, and replaying all the channel events before the position. The positions of the default
+ * sequencer of the JDK are measured as a baseline.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SeekBenchmark {
+
+  /**
+   * Number of channel events of each of the 16 tracks.
+   */
+  @Param({"100", "10000"})
+  private int eventsPerTrack;
+
+  /**
+   * Number of ticks between two tempo changes: every four bars, or every 30 ticks for a
+   * tempo-dense sequence.
+   */
+  @Param({"7680", "30"})
+  private int tempoChangeInterval;
+
+  /**
+   * Position to seek to, as a fraction of the length of the sequence: the cost of scanning or
+   * replaying the events grows with the position, the cost of the indexes should not.
+   */
+  @Param({"0.1", "0.5", "0.9"})
+  private double position;
+
+  private Sequence sequence;
+
+  private TempoMap tempoMap;
+
+  private ChaseStateIndex chaseStateIndex;
+
+  /**
+   * A chase state index without intermediate snapshot: chasing replays all the events.
+   */
+  private ChaseStateIndex replay;
+
+  /**
+   * The default sequencer of the JDK, not connected to any device.
+   */
+  private Sequencer sequencer;
+
+  /**
+   * Tick at the position.
+   */
+  private long tick;
+
+  /**
+   * Time at the position, in microseconds.
+   */
+  private long microsecond;
+
+  @Setup(Level.Trial)
+  public void setUp()
+      throws InvalidMidiDataException, MidiUnavailableException {
+    sequence = SyntheticMidiFiles.sequence(42, 17, eventsPerTrack,
+        tempoChangeInterval);
+    tempoMap = TempoMap.of(sequence);
+    chaseStateIndex = ChaseStateIndex.of(sequence);
+    replay = ChaseStateIndex.of(sequence, tempoMap, Long.MAX_VALUE);
+    sequencer = MidiSystem.getSequencer(false);
+    sequencer.open();
+    sequencer.setSequence(sequence);
+    tick = (long) (position * sequence.getTickLength());
+    microsecond = (long) (position * sequence.getMicrosecondLength());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    sequencer.close();
+  }
+
+  // #########################################################################
+  /**
+   * Convert the tick of the position to microseconds with the tempo map.
+   *
+   * @return the position, in microseconds
+   */
+  @Benchmark
+  public long tempoMap() {
+    return tempoMap.toMicroseconds(tick);
+  }
+
+  /**
+   * Convert the position in microseconds to ticks with the tempo map.
+   *
+   * @return the tick position
+   */
+  @Benchmark
+  public long tempoMapToTick() {
+    return tempoMap.toTick(microsecond);
+  }
+
+  /**
+   * Move the JDK sequencer to the tick of the position and get its position in microseconds.
+   *
+   * @return the position, in microseconds
+   */
+  @Benchmark
+  public long jdkSequencerMicrosecondPosition() {
+    sequencer.setTickPosition(tick);
+    return sequencer.getMicrosecondPosition();
+  }
+
+  /**
+   * Move the JDK sequencer to the position in microseconds and get its tick position.
+   *
+   * @return the tick position
+   */
+  @Benchmark
+  public long jdkSequencerSetMicrosecondPosition() {
+    sequencer.setMicrosecondPosition(microsecond);
+    return sequencer.getTickPosition();
+  }
+
+  /**
+   * Convert the tick of the position to microseconds by scanning the tempo changes from the start.
+   *
+   * @return the position, in microseconds
+   */
+  @Benchmark
+  public long tempoScan() {
+    double microseconds = 0;
+    long lastTick = 0;
+    int tempo = TempoMap.DEFAULT_TEMPO;
+    // Tempo changes are in the first track of the generated files
+    Track track = sequence.getTracks()[0];
+    for (int i = 0; i < track.size(); i++) {
+      MidiEvent event = track.get(i);
+      if (event.getTick() > tick) {
+        break;
+      }
+      if (TempoMap.isTempo(event.getMessage())) {
+        microseconds += (double) (event.getTick() - lastTick) * tempo
+            / sequence.getResolution();
+        lastTick = event.getTick();
+        tempo = TempoMap.getTempo(event.getMessage());
+      }
+    }
+    return (long) (microseconds
+        + (double) (tick - lastTick) * tempo / sequence.getResolution());
+  }
+
+  /**
+   * Restore the channel state at the tick of the position from the nearest snapshot.
+   *
+   * @return the messages restoring the channel state
+   */
+  @Benchmark
+  public List<ShortMessage> chase() {
+    return chaseStateIndex.chase(sequence, tick);
+  }
+
+  /**
+   * Restore the channel state at the tick of the position by replaying all the events before it.
+   *
+   * @return the messages restoring the channel state
+   */
+  @Benchmark
+  public List<ShortMessage> chaseReplay() {
+    return replay.chase(sequence, tick);
+  }
+
+  /**
+   * Build the tempo map, as done when a song is loaded.
+   *
+   * @return the tempo map
+   */
+  @Benchmark
+  public TempoMap buildTempoMap() {
+    return TempoMap.of(sequence);
+  }
+
+  /**
+   * Build the tempo map and the chase state index, as done when a song is loaded.
+   *
+   * @return the chase state index
+   */
+  @Benchmark
+  public ChaseStateIndex buildIndexes() {
+    return ChaseStateIndex.of(sequence);
+  }
+
+}
@@ -0,0 +1,181 @@
+package midiplayer.sequence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import midiplayer.SyntheticMidiFiles;
+
+/**
+ * Benchmarks reading MIDI files and converting sequences to and from their cached form.
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SequenceReadingBenchmark {
+
+  /**
+   * Number of channel events of each of the 16 tracks.
+   */
+  @Param({"100", "10000"})
+  private int eventsPerTrack;
+
+  /**
+   * Shape of the file.
+   *
+   * <ul>
+   * <li>{@code typical}: notes, controller, program and pitch bend changes in 16 tracks</li>
+   * <li>{@code runningStatus}: dense controller changes in 16 tracks, written with running
+   * status</li>
+   * <li>{@code singleTrack}: a single track of 100 times the events of each track, several
+   * megabytes long with 10000 events per track</li>
+   * <li>{@code largeSysex}: typical tracks with a 64 KB system exclusive message every 1000 channel
+   * events</li>
+   * </ul>
+   */
+  @Param({"typical", "runningStatus", "singleTrack", "largeSysex"})
+  private String shape;
+
+  private Path directory;
+
+  private Path file;
+
+  private Sequence sequence;
+
+  private PackedSequence packed;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, InvalidMidiDataException {
+    directory = Files.createTempDirectory("midiplayer-benchmark");
+    file = SyntheticMidiFiles.file(directory, shape, createSequence());
+    sequence = MidiSystem.getSequence(file.toFile());
+    packed = PackedSequence.of(sequence);
+  }
+
+  private Sequence createSequence() throws InvalidMidiDataException {
+    switch (shape) {
+      case "typical":
+        return SyntheticMidiFiles.sequence(42, 17, eventsPerTrack);
+      case "runningStatus":
+        return SyntheticMidiFiles.controllerSequence(42, 17, eventsPerTrack);
+      case "singleTrack":
+        return SyntheticMidiFiles.sequence(42, 2, eventsPerTrack * 100);
+      case "largeSysex":
+        return SyntheticMidiFiles.sysexSequence(42, 17, eventsPerTrack, 1000,
+            64 * 1024);
+      default:
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SyntheticMidiFiles.delete(directory);
+  }
+
+  // #########################################################################
+  /**
+   * Read a file with the standard MIDI file reader of the JDK.
+   *
+   * @return the sequence of the file
+   * @throws IOException if the file cannot be read
+   * @throws InvalidMidiDataException if the file is not valid
+   */
+  @Benchmark
+  public Sequence midiSystemGetSequence()
+      throws IOException, InvalidMidiDataException {
+    return MidiSystem.getSequence(file.toFile());
+  }
+
+  /**
+   * Read a file with the memory-mapped reader of the player.
+   *
+   * @return the sequence of the file
+   * @throws IOException if the file cannot be read
+   * @throws InvalidMidiDataException if the file is not valid
+   */
+  @Benchmark
+  public Sequence standardMidiFileReader()
+      throws IOException, InvalidMidiDataException {
+    return StandardMidiFileReader.getSequence(file);
+  }
+
+  /**
+   * Read the first events of a file, until it can be played.
+   *
+   * @param reading the progressive reading state
+   * @return the sequence of the file, not complete yet
+   * @throws IOException if the file cannot be read
+   * @throws InvalidMidiDataException if the file is not valid
+   */
+  @Benchmark
+  public Sequence readProgressively(final ProgressiveReading reading)
+      throws IOException, InvalidMidiDataException {
+    reading.progress = StandardMidiFileReader.readProgressively(file);
+    return reading.progress.getSequence();
+  }
+
+  /**
+   * Pack a sequence, as done when it is put in the sequence cache.
+   *
+   * @return the packed sequence
+   */
+  @Benchmark
+  public PackedSequence pack() {
+    return PackedSequence.of(sequence);
+  }
+
+  /**
+   * Unpack a sequence, as done when it is found in the sequence cache.
+   *
+   * @return the unpacked sequence
+   * @throws InvalidMidiDataException if the sequence cannot be unpacked
+   */
+  @Benchmark
+  public Sequence unpack() throws InvalidMidiDataException {
+    return packed.toSequence();
+  }
+
+  /**
+   * Waits for the end of each progressive reading, outside of the measured time.
+   */
+  @State(Scope.Thread)
+  public static class ProgressiveReading {
+
+    private StandardMidiFileReader.Progress progress;
+
+    @TearDown(Level.Invocation)
+    public void complete() {
+      if (progress != null) {
+        progress.getCompletion().join();
+        progress = null;
+      }
+    }
+
+  }
+
+}
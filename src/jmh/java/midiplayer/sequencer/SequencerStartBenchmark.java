@@ -0,0 +1,133 @@
+package midiplayer.sequencer;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import midiplayer.MidiPlayer;
+import midiplayer.SyntheticMidiFiles;
+
+/**
+ * Benchmarks starting a song on a new sequencer and on a sequencer reused from a pool.
+ *
+ * <p>
+ * Sequencers are not connected to a synthesizer: only the sequencers themselves are measured,
+ * without the sound system.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SequencerStartBenchmark {
+
+  /**
+   * Sequencer engine, as set by {@link MidiPlayer#SEQUENCER_ENGINE_PROPERTY}.
+   */
+  @Param({MidiPlayer.DEFAULT_ENGINE, MidiPlayer.PRECISION_ENGINE})
+  private String engine;
+
+  private Sequence sequence;
+
+  private SequencerPool pool;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidMidiDataException {
+    sequence = SyntheticMidiFiles.sequence(42, 17, 1000);
+    pool = new SequencerPool(this::createSequencer);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pool.close();
+  }
+
+  /**
+   * Create and open an unconnected sequencer of the benchmarked engine.
+   *
+   * @return a new open sequencer
+   * @throws MidiUnavailableException if the sequencer is not available
+   */
+  private Sequencer createSequencer() throws MidiUnavailableException {
+    Sequencer sequencer;
+    if (MidiPlayer.PRECISION_ENGINE.equals(engine)) {
+      sequencer = new PrecisionSequencer(false,
+          PrecisionSequencer.DEFAULT_SPIN_NANOS);
+    } else {
+      sequencer = MidiSystem.getSequencer(false);
+    }
+    sequencer.open();
+    return sequencer;
+  }
+
+  /**
+   * Start and stop the sequence on a sequencer.
+   *
+   * @param sequencer the open sequencer
+   * @throws InvalidMidiDataException if the sequence cannot be set
+   */
+  private void play(final Sequencer sequencer)
+      throws InvalidMidiDataException {
+    sequencer.setSequence(sequence);
+    sequencer.start();
+    sequencer.stop();
+  }
+
+  // #########################################################################
+  /**
+   * Start a song on a new sequencer, closed afterwards.
+   *
+   * @throws MidiUnavailableException if the sequencer is not available
+   * @throws InvalidMidiDataException if the sequence cannot be set
+   */
+  @Benchmark
+  public void newSequencer()
+      throws MidiUnavailableException, InvalidMidiDataException {
+    Sequencer sequencer = createSequencer();
+    try {
+      play(sequencer);
+    } finally {
+      sequencer.close();
+    }
+  }
+
+  /**
+   * Start a song on a sequencer acquired from a pool, released afterwards.
+   *
+   * @throws MidiUnavailableException if the sequencer is not available
+   * @throws InvalidMidiDataException if the sequence cannot be set
+   */
+  @Benchmark
+  public void pooledSequencer()
+      throws MidiUnavailableException, InvalidMidiDataException {
+    Sequencer sequencer = pool.acquire();
+    try {
+      play(sequencer);
+    } finally {
+      pool.release(sequencer);
+    }
+  }
+
+}
@@ -6,13 +6,29 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,8 +37,26 @@ import javax.sound.midi.MetaEventListener;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Transmitter;
+
+import midiplayer.metrics.FlightRecorderEvents;
+import midiplayer.metrics.LatencyHistogram;
+import midiplayer.metrics.MidiEventTap;
+import midiplayer.metrics.MidiPlayerMetrics;
+import midiplayer.metrics.PhaseTimings;
+import midiplayer.render.MidiRenderer;
+import midiplayer.sequence.SequenceCache;
+import midiplayer.sequence.SequencePrefetcher;
+import midiplayer.sequence.SequenceSplicer;
+import midiplayer.sequence.SongMetadata;
+import midiplayer.sequence.StandardMidiFileReader;
+import midiplayer.sequence.TempoMap;
+import midiplayer.sequencer.PrecisionSequencer;
+import midiplayer.sequencer.SequencerPool;
 
 /**
  * A MIDI player.
@@ -37,6 +71,12 @@ import javax.sound.midi.Sequencer;
  * requests a change.
  * </p>
  * 
+ * <p>
+ * Control methods never block on the MIDI player thread: they atomically update the
+ * {@link PlayerState state} of the player, then post a command to the thread, which is the only one
+ * to drive the MIDI sequencer.
+ * </p>
+ * 
  * @see MidiThread
  *
  * @see <a href=
@@ -61,6 +101,37 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    */
   protected static final int END_OF_TRACK_MESSAGE = 47;
 
+  /**
+   * Interval between two attempts to splice the next song in gapless mode, in milliseconds.
+   */
+  private static final long GAPLESS_SPLICE_INTERVAL = 250;
+
+  /**
+   * Maximum number of songs spliced in a single sequence in gapless mode.
+   * 
+   * <p>
+   * Spliced songs stay in memory until the sequence is replaced, so the sequence is replaced
+   * after this number of songs.
+   * </p>
+   */
+  private static final int GAPLESS_MAX_SPLICED_SONGS = 16;
+
+  /**
+   * System property selecting the sequencer engine: {@value #DEFAULT_ENGINE} for the default
+   * sequencer of the Java Sound API, {@value #PRECISION_ENGINE} for the {@link PrecisionSequencer}.
+   */
+  public static final String SEQUENCER_ENGINE_PROPERTY = "midiplayer.sequencer";
+
+  /**
+   * Sequencer engine: the default sequencer of the Java Sound API.
+   */
+  public static final String DEFAULT_ENGINE = "default";
+
+  /**
+   * Sequencer engine: the {@link PrecisionSequencer}.
+   */
+  public static final String PRECISION_ENGINE = "precision";
+
   /**
    * MIDI player single instance.
    */
@@ -117,6 +188,64 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   public static final Comparator<Object> REVERSE_COMPARATOR =
       Collections.reverseOrder(COMPARATOR);
 
+  // #########################################################################
+  /**
+   * Listener notified of the state changes of a MIDI player.
+   * 
+   * <p>
+   * Listeners are notified by the thread which changed the state: either the thread calling a
+   * control method of the player or the MIDI player thread.
+   * </p>
+   * 
+   * @see MidiPlayer#addStateListener(StateListener)
+   */
+  @FunctionalInterface
+  public interface StateListener {
+
+    /**
+     * The state of the MIDI player changed.
+     * 
+     * @param oldState the previous state
+     * @param newState the new state
+     */
+    void stateChanged(PlayerState oldState, PlayerState newState);
+
+  }
+
+  /**
+   * Commands sent to the MIDI player thread.
+   */
+  private enum Command {
+    /**
+     * Play the current song from its start.
+     */
+    RESTART,
+    /**
+     * Apply the state of the player to the sequencer.
+     */
+    STATE_CHANGED,
+    /**
+     * Play the new current song.
+     */
+    SONG_CHANGED,
+    /**
+     * The sequencer reached the end of the sequence.
+     */
+    END_OF_TRACK,
+    /**
+     * The sequencer reached the start of a spliced song.
+     */
+    SPLICED_SONG_STARTED,
+    /**
+     * Check the gapless mode.
+     */
+    WAKE_UP,
+    /**
+     * Stop playing and end the thread.
+     */
+    STOP
+  }
+
   // #########################################################################
   /**
    * Print on the standard output a string describing a song's resource.
@@ -258,8 +387,51 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     if (song == null) {
       return fileName;
     }
+    return getSongInfo(fileName,
+        TempoMap.of(song).toMicroseconds(song.getTickLength()));
+  }
+
+  /**
+   * Get a string describing a song's resource and its duration.
+   * 
+   * <p>
+   * This allows describing a song from its known duration, without parsing its MIDI sequence.
+   * </p>
+   * 
+   * @param songResource the song resource
+   * @param microsecondLength the song's duration, in microseconds, or a negative value if unknown
+   * @return a string describing a song's resource.
+   */
+  public static String getSongInfo(final Object songResource,
+      final long microsecondLength) {
+    String fileName;
+    if (songResource instanceof Path) {
+      fileName = ((Path) songResource).getFileName().toString();
+    } else if (songResource instanceof File) {
+      fileName = ((File) songResource).getName();
+    } else if (songResource instanceof URL) {
+      String url = songResource.toString();
+      fileName = url.substring(url.lastIndexOf('/') + 1);
+    } else {
+      fileName = String.valueOf(songResource);
+    }
+    if (microsecondLength < 0) {
+      return fileName;
+    }
+    return getSongInfo(fileName, microsecondLength);
+  }
+
+  /**
+   * Get a string describing a song's resource.
+   * 
+   * @param fileName the song's file name
+   * @param microsecondLength the song's duration, in microseconds
+   * @return a string describing a song's resource.
+   */
+  private static String getSongInfo(final String fileName,
+      final long microsecondLength) {
     // Get song length
-    long ms = song.getMicrosecondLength() / MS_IN_MICROSECONDS;
+    long ms = microsecondLength / MS_IN_MICROSECONDS;
     long min = ms / MINUTE_IN_MS;
     long s = (ms / SECOND_IN_MS) - (min * MINUTE_IN_S);
 
@@ -269,21 +441,77 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   // #########################################################################
   /**
    * The playlist.
+   * 
+   * @see #getPlaylistLock()
+   */
+  private final Playlist playlist = new Playlist();
+  /**
+   * Lock guarding the playlist and the current song index.
+   * 
+   * @see #getPlaylistLock()
    */
-  private final LinkedList<Object> playlist = new LinkedList<>();
+  private final transient ReentrantReadWriteLock playlistLock =
+      new ReentrantReadWriteLock();
+  /**
+   * Read-only view of the playlist, reading it under the playlist lock.
+   * 
+   * @see #getPlaylist()
+   */
+  private final transient List<Object> playlistView = new PlaylistView();
   /**
    * The MIDI sequencer.
    * 
    * @see #getSequencer()
    */
-  private transient Sequencer sequencer = null;
+  private transient volatile Sequencer sequencer = null;
+  /**
+   * Lock held while opening the MIDI sequencer.
+   */
+  private final transient Object sequencerLock = new Object();
+  /**
+   * The pool keeping released MIDI sequencers open.
+   * 
+   * @see #getSequencerPool()
+   */
+  private final transient SequencerPool sequencerPool;
+  /**
+   * Is the sequencer pool shared with other players, and left open when the player is closed?
+   */
+  private final transient boolean sharedSequencerPool;
+  /**
+   * The transmitters connecting each acquired sequencer to the player.
+   * 
+   * @see #connectReceiver(Sequencer, Receiver)
+   */
+  private final transient Map<Sequencer, List<Transmitter>> connections =
+      new ConcurrentHashMap<>();
+  /**
+   * The ring buffer of the MIDI messages sent by the sequencer.
+   * 
+   * @see #getEventTap()
+   */
+  private final transient MidiEventTap eventTap = new MidiEventTap();
+  /**
+   * The warm-up of the MIDI sequencer, {@code null} until started.
+   * 
+   * @see #warmUp()
+   */
+  private final transient AtomicReference<CompletableFuture<Sequencer>> warmUp =
+      new AtomicReference<>();
+  /**
+   * Timings of the startup phases.
+   * 
+   * @see #getStartupTimings()
+   */
+  private final transient PhaseTimings startupTimings =
+      new PhaseTimings("Startup phases");
   /**
    * The current song index.
    * 
    * @see #getCurrentSongIndex()
    * @see #setCurrentSongIndex(int)
    */
-  private int currentSongIndex = 0;
+  private final AtomicInteger currentSongIndex = new AtomicInteger(0);
   /**
    * The current song resource.
    * 
@@ -297,209 +525,941 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   /**
    * The MIDI player thread.
    */
-  private transient MidiThread playingThread = null;
+  private transient volatile MidiThread playingThread = null;
+  /**
+   * The state of the MIDI player.
+   * 
+   * @see #getState()
+   */
+  private final transient AtomicReference<PlayerState> state =
+      new AtomicReference<>(PlayerState.STOPPED);
+  /**
+   * Listeners notified of state changes.
+   */
+  private final transient List<StateListener> stateListeners =
+      new CopyOnWriteArrayList<>();
   /**
    * Is the MIDI player looping when reaching the end of a song?
    * 
    * @see #isLooping()
    * @see #setLooping(boolean)
    */
-  private boolean songLooping = false;
+  private volatile boolean songLooping = false;
   /**
    * Is the MIDI player looping when reaching the end of the playlist?
    * 
    * @see #isPlaylistLooping()
    * @see #setPlaylistLooping(boolean)
    */
-  private boolean playlistLooping = false;
-
+  private volatile boolean playlistLooping = false;
   /**
-   * Hidden constructor.
+   * The playing order of the shuffle mode, {@code null} when songs are played in playlist order.
+   * 
+   * @see #isShuffling()
+   * @see #setShuffling(boolean, long)
    */
-  protected MidiPlayer() {}
-
-  // #########################################################################
+  private final transient AtomicReference<ShuffleOrder> shuffleOrder =
+      new AtomicReference<>();
   /**
-   * Obtains the default MIDI {@code Sequencer}, connected to a default device.
+   * The cache of parsed MIDI sequences.
    * 
-   * @return the default MIDI sequencer
+   * @see #getSequenceCache()
    */
-  public final Sequencer getSequencer() {
-    if (sequencer == null) {
-      // Retrieve MIDI Sequencer
-      try {
-        sequencer = MidiSystem.getSequencer();
-        System.out.println("MIDI Sequencer information:");
-        System.out.println("\t" + sequencer.getDeviceInfo().getName());
-        System.out.println("\t" + sequencer.getDeviceInfo().getDescription());
-        System.out.println("\t" + sequencer.getDeviceInfo().getVendor());
-        System.out.println("\t" + sequencer.getDeviceInfo().getVersion());
-        System.out.println("\t" + sequencer.getDeviceInfo().getClass());
-
-        // Add listener to detect end of song
-        sequencer.addMetaEventListener(this);
-
-        // Opens the device, indicating that it should now acquire any
-        // system resources it requires and become operational.
-        sequencer.open();
-        System.out.println("MIDI Sequencer opened and ready for usage.");
+  private final transient SequenceCache sequenceCache;
+  /**
+   * The background loader of upcoming songs.
+   * 
+   * @see #getSequencePrefetcher()
+   */
+  private final transient SequencePrefetcher sequencePrefetcher;
+  /**
+   * The background importer of files and directories.
+   * 
+   * @see #getPlaylistImporter()
+   */
+  private final transient PlaylistImporter playlistImporter;
+  /**
+   * Time between the end of a song and the start of the next one.
+   * 
+   * @see #getTransitionGapRecorder()
+   */
+  private final transient LatencyHistogram transitionGapRecorder =
+      new LatencyHistogram("Song transition gap");
+  /**
+   * Time spent obtaining the sequence of a song before playing it.
+   * 
+   * @see #getResourceLoadTimes()
+   */
+  private final transient LatencyHistogram resourceLoadTimes =
+      new LatencyHistogram("Resource load time");
+  /**
+   * Time spent opening MIDI sequencers.
+   * 
+   * @see #getSequencerOpenTimes()
+   */
+  private final transient LatencyHistogram sequencerOpenTimes =
+      new LatencyHistogram("Sequencer open time");
+  /**
+   * The metrics of the player, exposed through JMX.
+   * 
+   * @see #getMetrics()
+   */
+  private final transient MidiPlayerMetrics metrics =
+      new MidiPlayerMetrics(this);
+  /**
+   * Time at which the end of the current song was reached, {@code 0} if not reached.
+   */
+  private transient volatile long endOfTrackTime = 0;
+  /**
+   * Are songs played without gaps between them?
+   * 
+   * @see #isGapless()
+   * @see #setGapless(boolean)
+   */
+  private volatile boolean gapless = false;
+  /**
+   * Number of songs which started without reloading the sequencer.
+   * 
+   * @see #getGaplessTransitionCount()
+   */
+  private transient volatile long gaplessTransitionCount = 0;
+  /**
+   * The MIDI sequence of the current song.
+   */
+  private transient volatile Sequence currentSongSequence = null;
+  /**
+   * The tick at which the current song starts in the sequence loaded in the sequencer.
+   * 
+   * <p>
+   * In gapless mode, songs are spliced one after the other in the same sequence: positions are
+   * given relative to the start of the current song.
+   * </p>
+   */
+  private transient volatile long currentSongStartTick = 0;
+  /**
+   * The tempo map of the sequence last loaded in the sequencer.
+   * 
+   * @see #getTempoMap(Sequence)
+   */
+  private transient volatile SequenceTempoMap sequencerTempoMap = null;
 
-        setupLoopCount();
+  /**
+   * A sequence and its tempo map.
+   */
+  private static final class SequenceTempoMap {
 
-      } catch (MidiUnavailableException ex) {
-        if (sequencer != null) {
-          sequencer.close();
-          sequencer = null;
-        }
-        LOGGER.log(Level.SEVERE, null, ex);
-      }
+    private final Sequence sequence;
+
+    private final TempoMap tempoMap;
+
+    SequenceTempoMap(final Sequence sequence, final TempoMap tempoMap) {
+      this.sequence = sequence;
+      this.tempoMap = tempoMap;
     }
 
-    return sequencer;
   }
 
   /**
-   * Reset sequencer to {@code null}.
+   * Hidden constructor.
    */
-  protected final void resetSequencer() {
-    this.sequencer = null;
+  protected MidiPlayer() {
+    this.sequenceCache = new SequenceCache();
+    this.sequencePrefetcher = new SequencePrefetcher(sequenceCache);
+    this.playlistImporter = new PlaylistImporter();
+    this.sequencerPool = new SequencerPool(this::openSequencer);
+    this.sharedSequencerPool = false;
   }
 
   /**
-   * Get an unmodifiable view of the playlist.
+   * Constructs a MIDI player sharing its resources with other players.
    * 
-   * @return an unmodifiable view of the playlist.
+   * <p>
+   * The sequences are cached and prefetched in the given cache and executor, files are imported on
+   * the given pool, and sequencers are acquired from the given sequencer pool instead of being
+   * created by {@link #createSequencer()}. None of them is closed with the player.
+   * </p>
+   * 
+   * @param sequenceCache the shared cache of parsed MIDI sequences
+   * @param prefetchExecutor the shared executor loading upcoming songs
+   * @param importPool the shared pool checking imported files
+   * @param sequencerPool the shared pool of open sequencers, connected to no device
+   * @throws IllegalArgumentException if any argument is {@code null}
    */
-  public final List<Object> getPlaylist() {
-    return Collections.unmodifiableList(playlist);
+  protected MidiPlayer(final SequenceCache sequenceCache,
+      final ExecutorService prefetchExecutor, final ForkJoinPool importPool,
+      final SequencerPool sequencerPool) {
+    if (sequenceCache == null) {
+      throw new IllegalArgumentException("Sequence cache cannot be null");
+    }
+    if (prefetchExecutor == null) {
+      throw new IllegalArgumentException("Prefetch executor cannot be null");
+    }
+    if (importPool == null) {
+      throw new IllegalArgumentException("Import pool cannot be null");
+    }
+    if (sequencerPool == null) {
+      throw new IllegalArgumentException("Sequencer pool cannot be null");
+    }
+    this.sequenceCache = sequenceCache;
+    this.sequencePrefetcher = new SequencePrefetcher(sequenceCache,
+        SequencePrefetcher.DEFAULT_DEPTH, prefetchExecutor);
+    this.playlistImporter =
+        new PlaylistImporter(importPool, PlaylistImporter.DEFAULT_BATCH_SIZE);
+    this.sequencerPool = sequencerPool;
+    this.sharedSequencerPool = true;
   }
 
+  // #########################################################################
   /**
-   * Get the MIDI player thread.
+   * Create the MIDI sequencer of the engine selected by the {@value #SEQUENCER_ENGINE_PROPERTY}
+   * system property, connected to a default device.
    * 
-   * @return the MIDI player thread
+   * @return a new MIDI sequencer
+   * @throws MidiUnavailableException if the sequencer is not available
    */
-  protected final MidiThread getPlayingThread() {
-    return playingThread;
+  protected Sequencer createSequencer() throws MidiUnavailableException {
+    String engine =
+        System.getProperty(SEQUENCER_ENGINE_PROPERTY, DEFAULT_ENGINE);
+    if (PRECISION_ENGINE.equalsIgnoreCase(engine)) {
+      return new PrecisionSequencer();
+    }
+    if (!DEFAULT_ENGINE.equalsIgnoreCase(engine)) {
+      LOGGER.log(Level.WARNING, "Unknown sequencer engine: {0}", engine);
+    }
+    return MidiSystem.getSequencer();
   }
 
   /**
-   * Get current song index in playlist.
+   * Create and open a MIDI sequencer for the sequencer pool.
    * 
-   * @return current song index in playlist.
+   * @return a new open MIDI sequencer
+   * @throws MidiUnavailableException if the sequencer is not available
+   * @see #createSequencer()
    */
-  public final int getCurrentSongIndex() {
-    return currentSongIndex;
+  private Sequencer openSequencer() throws MidiUnavailableException {
+    long start = System.nanoTime();
+    Sequencer created = createSequencer();
+    System.out.println("MIDI Sequencer information:");
+    System.out.println("\t" + created.getDeviceInfo().getName());
+    System.out.println("\t" + created.getDeviceInfo().getDescription());
+    System.out.println("\t" + created.getDeviceInfo().getVendor());
+    System.out.println("\t" + created.getDeviceInfo().getVersion());
+    System.out.println("\t" + created.getDeviceInfo().getClass());
+
+    // Opens the device, indicating that it should now acquire any
+    // system resources it requires and become operational.
+    try {
+      created.open();
+    } catch (MidiUnavailableException ex) {
+      created.close();
+      throw ex;
+    }
+    sequencerOpenTimes.recordSince(start);
+    System.out.println("MIDI Sequencer opened and ready for usage.");
+    return created;
   }
 
   /**
-   * Set current song index in playlist.
+   * Connect a sequencer acquired from the sequencer pool to the player.
    * 
-   * @param songIndex new current song index in playlist
+   * <p>
+   * The player listens to the meta events of the sequencer and records the messages it sends.
+   * Subclasses may connect more receivers with {@link #connectReceiver(Sequencer, Receiver)}: all
+   * connections are closed when the sequencer is released to the pool.
+   * </p>
+   * 
+   * @param acquired the acquired sequencer
+   * @throws MidiUnavailableException if the sequencer has no more transmitters
    */
-  protected final void setCurrentSongIndex(final int songIndex) {
-    this.currentSongIndex = songIndex;
+  protected void connectSequencer(final Sequencer acquired)
+      throws MidiUnavailableException {
+    // Add listener to detect end of song
+    acquired.addMetaEventListener(this);
+    // Record the messages sent for observers
+    connectReceiver(acquired, eventTap);
   }
 
   /**
-   * Is the MIDI player looping when reaching the end of a song?
+   * Connect a receiver to a sequencer acquired by the player, until the sequencer is released.
    * 
-   * @return {@code true} if the MIDI player will loop when reaching the end of a song
+   * @param acquired the acquired sequencer
+   * @param receiver the receiver of the messages sent by the sequencer
+   * @throws MidiUnavailableException if the sequencer has no more transmitters
    */
-  public final boolean isLooping() {
-    return songLooping;
+  protected final void connectReceiver(final Sequencer acquired,
+      final Receiver receiver) throws MidiUnavailableException {
+    Transmitter transmitter = acquired.getTransmitter();
+    transmitter.setReceiver(receiver);
+    connections.computeIfAbsent(acquired, k -> new CopyOnWriteArrayList<>())
+        .add(transmitter);
   }
 
   /**
-   * Set if the MIDI player should be looping when reaching the end of a song.
+   * Disconnect a sequencer from the player and release it to the sequencer pool.
    * 
-   * @param looping the playlist looping status
+   * @param released the released sequencer
    */
-  public void setLooping(final boolean looping) {
-    this.songLooping = looping;
-
-    if (this.sequencer != null) {
-      setupLoopCount();
+  private void releaseSequencer(final Sequencer released) {
+    released.removeMetaEventListener(this);
+    List<Transmitter> transmitters = connections.remove(released);
+    if (transmitters != null) {
+      for (Transmitter transmitter : transmitters) {
+        transmitter.close();
+      }
     }
+    sequencerPool.release(released);
   }
 
   /**
-   * Sets the number of repetitions of the loop for playback.
+   * Detach a sequencer from the player, if it is still the player sequencer, and release it.
    * 
-   * @see #isLooping()
-   * @see #setLooping(boolean)
+   * @param released the released sequencer
    */
-  private void setupLoopCount() {
-    if (this.songLooping) {
-      // Loop until interrupted
-      sequencer.setLoopCount(Sequencer.LOOP_CONTINUOUSLY);
-    } else {
-      // repeat 0 times (play once)
-      sequencer.setLoopCount(0);
+  private void detachSequencer(final Sequencer released) {
+    synchronized (sequencerLock) {
+      if (this.sequencer == released) {
+        this.sequencer = null;
+      }
     }
+    releaseSequencer(released);
   }
 
   /**
-   * Is the MIDI player looping when reaching the end of the playlist?
+   * Obtains the MIDI {@code Sequencer}, connected to a default device.
    * 
-   * @return {@code true} if the MIDI player will loop when reaching the end of the playlist
+   * <p>
+   * A sequencer released by a previous playback is reused if still open, otherwise a new one is
+   * opened.
+   * </p>
+   * 
+   * @return the MIDI sequencer
+   * @see #createSequencer()
+   * @see #getSequencerPool()
    */
-  public final boolean isPlaylistLooping() {
-    return playlistLooping;
+  public final Sequencer getSequencer() {
+    if (sequencer != null) {
+      return sequencer;
+    }
+    synchronized (sequencerLock) {
+      if (sequencer != null) {
+        return sequencer;
+      }
+      // Retrieve MIDI Sequencer
+      long start = System.nanoTime();
+      try {
+        Sequencer acquired = sequencerPool.acquire();
+        try {
+          connectSequencer(acquired);
+        } catch (MidiUnavailableException | RuntimeException ex) {
+          releaseSequencer(acquired);
+          throw ex;
+        }
+        sequencer = acquired;
+        setupLoopCount();
+      } catch (MidiUnavailableException ex) {
+        LOGGER.log(Level.SEVERE, null, ex);
+      }
+      FlightRecorderEvents.get().sequencerAcquired(sequencer == null ? null
+          : sequencer.getDeviceInfo().getName(), start);
+      return sequencer;
+    }
   }
 
   /**
-   * Set if the MIDI player should be looping when reaching the end of the playlist.
+   * Start initializing the MIDI system, the default synthesizer and its soundbank, and the MIDI
+   * sequencer in the background.
    * 
-   * @param looping the playlist looping status
+   * <p>
+   * Opening the sound system takes long enough to stall the first song played: the warm-up is
+   * meant to be started when the application starts, in parallel with the construction of its user
+   * interface. Only the first call starts the warm-up, next ones return the same future.
+   * </p>
+   * 
+   * <p>
+   * Playing does not have to wait for the warm-up: a song played during the warm-up starts as soon
+   * as the sequencer is open.
+   * </p>
+   * 
+   * @return a future completed with the MIDI sequencer once it is open, or exceptionally if no
+   *         sequencer is available
+   * @see #getStartupTimings()
    */
-  public void setPlaylistLooping(final boolean looping) {
-    this.playlistLooping = looping;
+  public final CompletableFuture<Sequencer> warmUp() {
+    CompletableFuture<Sequencer> future = warmUp.get();
+    if (future != null) {
+      return future;
+    }
+    CompletableFuture<Sequencer> started = new CompletableFuture<>();
+    if (!warmUp.compareAndSet(null, started)) {
+      return warmUp.get();
+    }
+    Thread thread = new Thread(() -> runWarmUp(started), "MidiPlayerWarmUp");
+    thread.setDaemon(true);
+    thread.start();
+    return started;
   }
 
-  // #########################################################################
   /**
-   * Start playing.
+   * Initialize the MIDI system, the default soundbank and the MIDI sequencer.
    * 
-   * @return {@code true} if the MIDI player actually started playing
+   * @param future the future to complete with the MIDI sequencer
    */
-  public synchronized boolean startPlaying() {
-    // If nothing to play, quit
-    if (this.playlist == null || this.playlist.isEmpty()) {
-      return false;
-    }
+  private void runWarmUp(final CompletableFuture<Sequencer> future) {
+    try {
+      long start = System.nanoTime();
+      MidiSystem.getMidiDeviceInfo();
+      startupTimings.recordSince("MIDI system", start);
 
-    // Retrieve MIDI Sequencer
-    Sequencer player = this.getSequencer();
-    // If no MIDI Sequencer, quit
+      start = System.nanoTime();
+      try {
+        // The default soundbank is loaded once for all synthesizers
+        Synthesizer synthesizer = MidiSystem.getSynthesizer();
+        synthesizer.getDefaultSoundbank();
+      } catch (MidiUnavailableException ex) {
+        LOGGER.log(Level.WARNING, "No default MIDI synthesizer available", ex);
+      }
+      startupTimings.recordSince("Synthesizer soundbank", start);
+
+      start = System.nanoTime();
+      Sequencer ready = getSequencer();
+      startupTimings.recordSince("MIDI sequencer", start);
+      if (ready != null) {
+        future.complete(ready);
+      } else {
+        future.completeExceptionally(
+            new MidiUnavailableException("No MIDI sequencer available"));
+      }
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.SEVERE, "MIDI warm-up failed", ex);
+      future.completeExceptionally(ex);
+    }
+  }
+
+  /**
+   * Get the timings of the startup phases, such as the phases of the warm-up.
+   * 
+   * <p>
+   * The application may record its own startup phases, such as the construction of its user
+   * interface.
+   * </p>
+   * 
+   * @return the timings of the startup phases
+   * @see #warmUp()
+   */
+  public final PhaseTimings getStartupTimings() {
+    return startupTimings;
+  }
+
+  /**
+   * Reset sequencer to {@code null}.
+   */
+  protected final void resetSequencer() {
+    this.sequencer = null;
+  }
+
+  /**
+   * Get the metadata of a song, if known without parsing it.
+   *
+   * <p>
+   * The MIDI player does not index songs: subclasses which do may override this method, so that
+   * the playlist can be sorted by duration or title.
+   * </p>
+   *
+   * @param resource the song resource
+   * @return the metadata of the song, {@code null} if unknown
+   */
+  protected SongMetadata getSongMetadata(final Object resource) {
+    return null;
+  }
+
+  /**
+   * Get an unmodifiable view of the playlist.
+   * 
+   * <p>
+   * Each call to the view reads the playlist under the playlist lock. Successive calls may see
+   * different playlists: callers reading several songs consistently must hold the
+   * {@link #getPlaylistLock() read lock}, or work on a copy of {@link List#toArray()}.
+   * </p>
+   * 
+   * @return an unmodifiable view of the playlist.
+   */
+  public final List<Object> getPlaylist() {
+    return playlistView;
+  }
+
+  /**
+   * Get the lock guarding the playlist and the current song index.
+   * 
+   * <p>
+   * The playlist is modified by the <i>Event Dispatch Thread</i>, the playlist importer, the
+   * control server and playlist file loads, and read by the MIDI player thread and the prefetcher.
+   * Each modification, with the adjustment of the current song index it implies, is done under the
+   * write lock. Subclasses which notify listeners of a modification hold the write lock around it,
+   * so that the notified indexes match the playlist.
+   * </p>
+   * 
+   * @return the playlist lock
+   */
+  protected final ReadWriteLock getPlaylistLock() {
+    return playlistLock;
+  }
+
+  /**
+   * Get the importer used to load large sets of files and directories in the playlist.
+   * 
+   * @return the playlist importer
+   */
+  public final PlaylistImporter getPlaylistImporter() {
+    return playlistImporter;
+  }
+
+  /**
+   * Get the cache of parsed MIDI sequences used to play songs.
+   * 
+   * @return the cache of parsed MIDI sequences
+   */
+  public final SequenceCache getSequenceCache() {
+    return sequenceCache;
+  }
+
+  /**
+   * Get the pool keeping released MIDI sequencers open, so that playing again after a stop does
+   * not reopen the MIDI devices.
+   * 
+   * @return the MIDI sequencer pool
+   */
+  public final SequencerPool getSequencerPool() {
+    return sequencerPool;
+  }
+
+  /**
+   * Get the ring buffer of the MIDI messages sent by the sequencer, to observe them without slowing
+   * playback down.
+   * 
+   * @return the MIDI event tap
+   */
+  public final MidiEventTap getEventTap() {
+    return eventTap;
+  }
+
+  /**
+   * Get the background loader of upcoming songs.
+   * 
+   * <p>
+   * Its depth defines how many upcoming songs are loaded while the current song plays.
+   * </p>
+   * 
+   * @return the background loader of upcoming songs
+   */
+  public final SequencePrefetcher getSequencePrefetcher() {
+    return sequencePrefetcher;
+  }
+
+  /**
+   * Get the statistics about the time elapsed between the end of a song and the start of the next
+   * one.
+   * 
+   * @return the song transition gap statistics
+   */
+  public final LatencyHistogram getTransitionGapRecorder() {
+    return transitionGapRecorder;
+  }
+
+  /**
+   * Get the statistics about the time spent obtaining the sequence of a song before playing it,
+   * from the sequence cache or not.
+   * 
+   * @return the resource load time statistics
+   */
+  public final LatencyHistogram getResourceLoadTimes() {
+    return resourceLoadTimes;
+  }
+
+  /**
+   * Get the statistics about the time spent creating and opening MIDI sequencers.
+   * 
+   * @return the sequencer open time statistics
+   */
+  public final LatencyHistogram getSequencerOpenTimes() {
+    return sequencerOpenTimes;
+  }
+
+  /**
+   * Get the metrics of the player, to register them in a JMX server.
+   * 
+   * @return the player metrics
+   * @see MidiPlayerMetrics#register()
+   */
+  public final MidiPlayerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Get the MIDI player thread.
+   * 
+   * @return the MIDI player thread
+   */
+  protected final MidiThread getPlayingThread() {
+    return playingThread;
+  }
+
+  /**
+   * Get current song index in playlist.
+   * 
+   * @return current song index in playlist.
+   */
+  public final int getCurrentSongIndex() {
+    return currentSongIndex.get();
+  }
+
+  /**
+   * Set current song index in playlist.
+   * 
+   * @param songIndex new current song index in playlist
+   */
+  protected final void setCurrentSongIndex(final int songIndex) {
+    this.currentSongIndex.set(songIndex);
+  }
+
+  /**
+   * Is the MIDI player looping when reaching the end of a song?
+   * 
+   * @return {@code true} if the MIDI player will loop when reaching the end of a song
+   */
+  public final boolean isLooping() {
+    return songLooping;
+  }
+
+  /**
+   * Set if the MIDI player should be looping when reaching the end of a song.
+   * 
+   * @param looping the playlist looping status
+   */
+  public void setLooping(final boolean looping) {
+    this.songLooping = looping;
+
+    if (this.sequencer != null) {
+      setupLoopCount();
+    }
+  }
+
+  /**
+   * Sets the number of repetitions of the loop for playback.
+   * 
+   * @see #isLooping()
+   * @see #setLooping(boolean)
+   */
+  private void setupLoopCount() {
+    Sequencer player = this.sequencer;
     if (player == null) {
-      return false;
+      return;
+    }
+    if (this.songLooping) {
+      // Loop until interrupted
+      player.setLoopCount(Sequencer.LOOP_CONTINUOUSLY);
+    } else {
+      // repeat 0 times (play once)
+      player.setLoopCount(0);
     }
+  }
 
-    // If there already is a thread playing songs
-    if (playingThread != null && playingThread.isAlive() && player.isOpen()) {
-      // Set sequencer at the start of the song
-      player.setMicrosecondPosition(0);
-      // If the sequencer is not playing, replay current song
-      if (!player.isRunning() && player.getSequence() != null) {
-        player.start();
+  /**
+   * Are songs played without gaps between them?
+   * 
+   * @return {@code true} if the next song is spliced into the playing sequence before the end of
+   *         the current one
+   */
+  public final boolean isGapless() {
+    return gapless;
+  }
+
+  /**
+   * Set if songs should be played without gaps between them.
+   * 
+   * <p>
+   * In gapless mode, as soon as the next song has been loaded, its events are spliced at the end of
+   * the playing sequence. The sequencer then moves to the next song without being stopped and
+   * reloaded. Gapless mode has no effect while the current song is looping.
+   * </p>
+   * 
+   * @param gapless the gapless mode status
+   */
+  public void setGapless(final boolean gapless) {
+    this.gapless = gapless;
+    this.sendCommand(Command.WAKE_UP);
+  }
+
+  /**
+   * Get the number of songs which started without reloading the sequencer in gapless mode.
+   * 
+   * @return the number of gapless song transitions
+   */
+  public final long getGaplessTransitionCount() {
+    return gaplessTransitionCount;
+  }
+
+  /**
+   * Is the MIDI player looping when reaching the end of the playlist?
+   * 
+   * @return {@code true} if the MIDI player will loop when reaching the end of the playlist
+   */
+  public final boolean isPlaylistLooping() {
+    return playlistLooping;
+  }
+
+  /**
+   * Set if the MIDI player should be looping when reaching the end of the playlist.
+   * 
+   * @param looping the playlist looping status
+   */
+  public void setPlaylistLooping(final boolean looping) {
+    this.playlistLooping = looping;
+  }
+
+  /**
+   * Are songs played in a shuffled order?
+   * 
+   * @return {@code true} if the shuffle mode is enabled
+   */
+  public final boolean isShuffling() {
+    return shuffleOrder.get() != null;
+  }
+
+  /**
+   * Set if songs should be played in a shuffled order, from a random seed.
+   * 
+   * <p>
+   * Enabling the shuffle mode while it is already enabled keeps the current order.
+   * </p>
+   * 
+   * @param shuffling the shuffle mode status
+   * @see #setShuffling(boolean, long)
+   */
+  public final void setShuffling(final boolean shuffling) {
+    if (!shuffling || !isShuffling()) {
+      setShuffling(shuffling, new Random().nextLong());
+    }
+  }
+
+  /**
+   * Set if songs should be played in a shuffled order.
+   * 
+   * <p>
+   * In shuffle mode, the playlist is not reordered: moving to the next or previous song follows a
+   * {@link ShuffleOrder pseudo-random order} of the playlist, starting at the current song. Every
+   * song is played once before the playlist loops, then the next pass is shuffled again. The same
+   * seed always gives the same order.
+   * </p>
+   * 
+   * <p>
+   * When the size of the playlist changes, or when the playlist is reordered, the order is
+   * computed again, starting at the current song.
+   * </p>
+   * 
+   * @param shuffling the shuffle mode status
+   * @param seed the seed of the shuffled order, ignored if {@code shuffling} is {@code false}
+   */
+  public void setShuffling(final boolean shuffling, final long seed) {
+    playlistLock.readLock().lock();
+    try {
+      if (shuffling) {
+        int size = this.playlist.size();
+        int current = this.currentSongIndex.get();
+        shuffleOrder.set(ShuffleOrder.of(size, seed,
+            current >= 0 && current < size ? current : -1));
+      } else {
+        shuffleOrder.set(null);
       }
-      return true;
+      this.sendCommand(Command.WAKE_UP);
+    } finally {
+      playlistLock.readLock().unlock();
     }
+  }
 
-    // Create a thread to play songs
-    this.playingThread = createNewMidiThread();
-    this.playingThread.start();
+  /**
+   * Get the playing order of the shuffle mode.
+   * 
+   * @return the shuffled order, {@code null} if the shuffle mode is disabled
+   */
+  public final ShuffleOrder getShuffleOrder() {
+    return shuffleOrder.get();
+  }
+
+  /**
+   * Get the playing order of the shuffle mode, for the current playlist size.
+   * 
+   * @param size the size of the playlist
+   * @param current the index of the current song
+   * @return the shuffled order, {@code null} if the shuffle mode is disabled or the playlist empty
+   */
+  private ShuffleOrder getShuffleOrder(final int size, final int current) {
+    ShuffleOrder order = shuffleOrder.get();
+    if (order == null || size == 0) {
+      return null;
+    }
+    if (order.size() != size) {
+      ShuffleOrder resized =
+          order.resize(size, current >= 0 && current < size ? current : -1);
+      shuffleOrder.compareAndSet(order, resized);
+      order = resized;
+    }
+    return order;
+  }
+
+  /**
+   * Restart the pass of the shuffle mode at the current song, once the playlist is reordered.
+   * 
+   * <p>
+   * Must be called with the playlist write lock held: the indexes of the previous order no longer
+   * designate the same songs.
+   * </p>
+   */
+  private void restartShuffleOrder() {
+    ShuffleOrder order = shuffleOrder.get();
+    if (order != null) {
+      int size = this.playlist.size();
+      int current = this.currentSongIndex.get();
+      shuffleOrder.compareAndSet(order,
+          order.resize(size, current >= 0 && current < size ? current : -1));
+    }
+  }
+
+  /**
+   * Get the order of the pass following the one of a shuffled order.
+   * 
+   * @param order the shuffled order
+   * @param last the index of the last song played
+   * @return the order of the next pass
+   */
+  private static ShuffleOrder nextShufflePass(final ShuffleOrder order,
+      final int last) {
+    ShuffleOrder next = order.nextPass();
+    if (next.size() > 1 && next.get(0) == last) {
+      // Do not play the same song twice in a row: it ends the pass instead
+      next = next.startingAt(next.get(1));
+    }
+    return next;
+  }
+
+  // #########################################################################
+  /**
+   * Get the state of the MIDI player.
+   * 
+   * @return the state of the MIDI player
+   */
+  public final PlayerState getState() {
+    return state.get();
+  }
+
+  /**
+   * Add a listener notified of the state changes of the MIDI player.
+   * 
+   * @param listener the listener to add
+   * @return {@code true} if the listener was added
+   */
+  public final boolean addStateListener(final StateListener listener) {
+    return listener != null && stateListeners.add(listener);
+  }
+
+  /**
+   * Remove a listener notified of the state changes of the MIDI player.
+   * 
+   * @param listener the listener to remove
+   * @return {@code true} if the listener was removed
+   */
+  public final boolean removeStateListener(final StateListener listener) {
+    return stateListeners.remove(listener);
+  }
 
+  /**
+   * Change the state of the MIDI player if it is in the expected state.
+   * 
+   * @param expected the expected state
+   * @param next the new state
+   * @return {@code true} if the state changed
+   */
+  private boolean changeState(final PlayerState expected,
+      final PlayerState next) {
+    if (!state.compareAndSet(expected, next)) {
+      return false;
+    }
+    fireStateChanged(expected, next);
     return true;
   }
 
+  /**
+   * Notify state listeners of a state change.
+   * 
+   * @param oldState the previous state
+   * @param newState the new state
+   */
+  private void fireStateChanged(final PlayerState oldState,
+      final PlayerState newState) {
+    if (oldState == newState) {
+      return;
+    }
+    for (StateListener listener : stateListeners) {
+      try {
+        listener.stateChanged(oldState, newState);
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.WARNING, "State listener failed", ex);
+      }
+    }
+  }
+
+  /**
+   * Post a command to the MIDI player thread, if any.
+   * 
+   * @param command the command to post
+   */
+  private void sendCommand(final Command command) {
+    MidiThread thread = this.playingThread;
+    if (thread != null) {
+      thread.send(command);
+    }
+  }
+
+  /**
+   * Start playing.
+   * 
+   * <p>
+   * The MIDI player thread is started if needed, otherwise the current song is played again from
+   * its start.
+   * </p>
+   * 
+   * @return {@code true} if the MIDI player actually started playing
+   */
+  public boolean startPlaying() {
+    // If nothing to play, quit
+    if (this.isEmpty()) {
+      return false;
+    }
+
+    while (true) {
+      PlayerState current = state.get();
+      if (current == PlayerState.STOPPED) {
+        if (changeState(PlayerState.STOPPED, PlayerState.PLAYING)) {
+          // Create a thread to play songs, once the previous one is done
+          MidiThread thread = createNewMidiThread();
+          thread.previousThread = this.playingThread;
+          this.playingThread = thread;
+          thread.start();
+          return true;
+        }
+      } else if (changeState(current, PlayerState.PLAYING)) {
+        // Set sequencer at the start of the song
+        sendCommand(Command.RESTART);
+        return true;
+      }
+    }
+  }
+
   /**
    * Create a new MIDI player thread to manage playlist and song changes.
    * 
    * @return a new MIDI player thread
    */
-  protected synchronized MidiThread createNewMidiThread() {
+  protected MidiThread createNewMidiThread() {
     return this.new MidiThread("MidiPlayerThread");
   }
 
@@ -559,27 +1519,19 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   }
 
   /**
-   * Pause playing.
+   * Pause playing, or resume playing if already paused.
    * 
    * @return {@code true} if the MIDI player actually paused playing
    */
-  public synchronized boolean pausePlaying() {
+  public boolean pausePlaying() {
     // If no MIDI Sequencer, quit
     if (this.sequencer == null) {
       return false;
     }
-    // Retrieve MIDI Sequencer
-    Sequencer player = this.getSequencer();
 
-    // If there is a thread playing songs
-    if (playingThread != null && playingThread.isAlive() && player.isOpen()) {
-      // If the sequencer is playing, stop current song
-      if (player.isRunning()) {
-        player.stop();
-      } else if (player.getSequence() != null) {
-        // If it is paused, restart playing where it paused
-        player.start();
-      }
+    if (changeState(PlayerState.PLAYING, PlayerState.PAUSED)
+        || changeState(PlayerState.PAUSED, PlayerState.PLAYING)) {
+      sendCommand(Command.STATE_CHANGED);
     }
 
     return true;
@@ -588,27 +1540,30 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   /**
    * Stop playing.
    * 
+   * <p>
+   * The MIDI player thread stops the sequencer and releases it before ending. The sequencer is
+   * kept open by the {@link #getSequencerPool() sequencer pool}, so that playing again is fast.
+   * </p>
+   * 
    * @return {@code true} if the MIDI player actually stopped playing
    */
-  public synchronized boolean stopPlaying() {
-    // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
-      return false;
+  public boolean stopPlaying() {
+    PlayerState previous = state.getAndSet(PlayerState.STOPPED);
+    if (previous != PlayerState.STOPPED) {
+      sendCommand(Command.STOP);
+      fireStateChanged(previous, PlayerState.STOPPED);
+      return true;
     }
-    // Retrieve MIDI Sequencer
-    Sequencer player = this.getSequencer();
-
-    // If there is a thread playing songs
-    if (playingThread != null && playingThread.isAlive() && player.isOpen()) {
-      // If the sequencer is playing, stop current song
-      player.stop();
-      player.close();
 
-      this.resetSequencer();
-      this.notifyAll();
-    }
+    // If no MIDI Sequencer, quit
+    return this.sequencer != null;
+  }
 
-    return true;
+  /**
+   * Notify the MIDI player thread that the song to play changed.
+   */
+  private void requestSongChange() {
+    this.sendCommand(Command.SONG_CHANGED);
   }
 
   /**
@@ -616,14 +1571,25 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * 
    * @return {@code true} if the MIDI player current song position changed
    */
-  public synchronized boolean moveToPreviousSong() {
-    // Decrement position by 1 in playlist
-    if (this.currentSongIndex > 0) {
-      this.setCurrentSongIndex(currentSongIndex - 1);
-      this.notifyAll();
-      return true;
+  public boolean moveToPreviousSong() {
+    playlistLock.readLock().lock();
+    try {
+      ShuffleOrder order =
+          getShuffleOrder(this.playlist.size(), this.currentSongIndex.get());
+      if (order != null) {
+        return moveToPreviousShuffledSong(order);
+      }
+      // Decrement position by 1 in playlist
+      int previousIndex = this.currentSongIndex
+          .getAndUpdate(index -> index > 0 ? index - 1 : index);
+      if (previousIndex > 0) {
+        this.requestSongChange();
+        return true;
+      }
+      return false;
+    } finally {
+      playlistLock.readLock().unlock();
     }
-    return false;
   }
 
   /**
@@ -641,35 +1607,151 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @param force force the current song index increase, even if at the edge of playlist?
    * @return {@code true} if the MIDI player current song position changed
    */
-  protected synchronized boolean moveToNextSong(final boolean force) {
-    boolean moved = false;
-    if (isPlaylistLooping()) {
-      // Increment position by 1 (loop back to start if needed)
-      this.setCurrentSongIndex((currentSongIndex + 1) % this.playlist.size());
-      moved = true;
-    } else if (force || this.currentSongIndex < this.playlist.size() - 1) {
-      // Increment position by 1 in playlist (if still inside playlist)
-      this.setCurrentSongIndex(currentSongIndex + 1);
-      moved = true;
-    }
-    this.notifyAll();
+  protected boolean moveToNextSong(final boolean force) {
+    playlistLock.readLock().lock();
+    try {
+      int size = this.playlist.size();
+      ShuffleOrder order = getShuffleOrder(size, this.currentSongIndex.get());
+      if (order != null) {
+        return moveToNextShuffledSong(order, force);
+      }
+      boolean looping = isPlaylistLooping();
+      boolean moved;
+      int index;
+      int next;
+      do {
+        index = this.currentSongIndex.get();
+        if (looping && size > 0) {
+          // Increment position by 1 (loop back to start if needed)
+          next = (index + 1) % size;
+          moved = true;
+        } else if (force || index < size - 1) {
+          // Increment position by 1 in playlist (if still inside playlist)
+          next = index + 1;
+          moved = true;
+        } else {
+          next = index;
+          moved = false;
+        }
+      } while (!this.currentSongIndex.compareAndSet(index, next));
+      this.requestSongChange();
+      return moved;
+    } finally {
+      playlistLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Move player current song position to the previous song of a shuffled order.
+   * 
+   * @param order the shuffled order
+   * @return {@code true} if the MIDI player current song position changed
+   */
+  private boolean moveToPreviousShuffledSong(final ShuffleOrder order) {
+    int size = order.size();
+    int index;
+    int previous;
+    do {
+      index = this.currentSongIndex.get();
+      if (index < 0 || index >= size) {
+        return false;
+      }
+      int position = order.positionOf(index);
+      if (position == 0) {
+        return false;
+      }
+      previous = order.get(position - 1);
+    } while (!this.currentSongIndex.compareAndSet(index, previous));
+    this.requestSongChange();
+    return true;
+  }
+
+  /**
+   * Move player current song position to the next song of a shuffled order.
+   * 
+   * @param order the shuffled order
+   * @param force force the current song index change, even at the end of the last pass?
+   * @return {@code true} if the MIDI player current song position changed
+   */
+  private boolean moveToNextShuffledSong(final ShuffleOrder order,
+      final boolean force) {
+    int size = order.size();
+    boolean looping = isPlaylistLooping();
+    boolean moved;
+    int index;
+    int next;
+    ShuffleOrder nextOrder;
+    do {
+      index = this.currentSongIndex.get();
+      nextOrder = order;
+      int position =
+          index >= 0 && index < size ? order.positionOf(index) : size - 1;
+      if (position < size - 1) {
+        next = order.get(position + 1);
+        moved = true;
+      } else if (looping) {
+        // Every song was played: shuffle again
+        nextOrder = nextShufflePass(order, index);
+        next = nextOrder.get(0);
+        moved = true;
+      } else if (force) {
+        // Move past the end of the playlist, as in playlist order
+        next = size;
+        moved = true;
+      } else {
+        next = index;
+        moved = false;
+      }
+    } while (!this.currentSongIndex.compareAndSet(index, next));
+    if (nextOrder != order) {
+      this.shuffleOrder.compareAndSet(order, nextOrder);
+    }
+    this.requestSongChange();
     return moved;
   }
 
   /**
-   * Move player current song position to specified index.
+   * Move player current song position to a song already spliced into the playing sequence.
    * 
-   * @param index the index in the playlist to move current song position to
+   * <p>
+   * Unlike other moves, the MIDI player thread does not reload the sequencer.
+   * </p>
+   * 
+   * @param index the index in the playlist of the spliced song
    * @return {@code true} if the MIDI player current song position changed
    */
-  public synchronized boolean moveToSong(final int index) {
-    // Set position to index in playlist (if still inside playlist)
-    if (index >= 0 && index < this.playlist.size()) {
+  protected boolean moveToSplicedSong(final int index) {
+    playlistLock.readLock().lock();
+    try {
+      if (index < 0 || index >= this.playlist.size()) {
+        return false;
+      }
       this.setCurrentSongIndex(index);
-      this.notifyAll();
       return true;
+    } finally {
+      playlistLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Move player current song position to specified index.
+   * 
+   * @param index the index in the playlist to move current song position to
+   * @return {@code true} if the MIDI player current song position changed
+   */
+  public boolean moveToSong(final int index) {
+    playlistLock.readLock().lock();
+    try {
+      // Set position to index in playlist (if still inside playlist)
+      if (index >= 0 && index < this.playlist.size()) {
+        this.setCurrentSongIndex(index);
+        this.requestSongChange();
+        return true;
+      }
+      return false;
+    } finally {
+      playlistLock.readLock().unlock();
     }
-    return false;
   }
 
   /**
@@ -679,60 +1761,130 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if the MIDI player current song position changed
    */
   public final boolean moveToSong(final Object resource) {
-    return moveToSong(this.playlist.indexOf(resource));
+    playlistLock.readLock().lock();
+    try {
+      return moveToSong(this.playlist.indexOf(resource));
+    } finally {
+      playlistLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the resources of the songs which will be played after the current one, in playing order.
+   * 
+   * @param count the maximum number of songs to return
+   * @return the resources of the upcoming songs
+   */
+  protected List<Object> getUpcomingSongResources(final int count) {
+    playlistLock.readLock().lock();
+    try {
+      int[] indexes = getUpcomingSongIndexes(count);
+      List<Object> upcoming = new ArrayList<>(indexes.length);
+      for (int index : indexes) {
+        upcoming.add(this.playlist.get(index));
+      }
+      return upcoming;
+    } finally {
+      playlistLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Get the playlist indexes of the songs which will be played after the current one, in playing
+   * order.
+   * 
+   * @param count the maximum number of songs to return
+   * @return the playlist indexes of the upcoming songs
+   */
+  protected int[] getUpcomingSongIndexes(final int count) {
+    playlistLock.readLock().lock();
+    try {
+      int size = this.playlist.size();
+      int current = this.currentSongIndex.get();
+      if (count <= 0 || size == 0 || this.songLooping) {
+        return new int[0];
+      }
+      int[] upcoming = new int[Math.min(count, size)];
+      int found = 0;
+      ShuffleOrder order = getShuffleOrder(size, current);
+      if (order != null) {
+        if (current < 0 || current >= size) {
+          return new int[0];
+        }
+        int position = order.positionOf(current);
+        int last = current;
+        for (int i = 0; i < count; i++) {
+          if (++position >= size) {
+            if (!this.playlistLooping) {
+              break;
+            }
+            order = nextShufflePass(order, last);
+            position = 0;
+          }
+          int next = order.get(position);
+          if (next == current) {
+            break;
+          }
+          upcoming[found++] = next;
+          last = next;
+        }
+        return Arrays.copyOf(upcoming, found);
+      }
+      for (int i = 1; i <= count; i++) {
+        int next = current + i;
+        if (next >= size) {
+          if (!this.playlistLooping) {
+            break;
+          }
+          next %= size;
+        }
+        if (next == current) {
+          break;
+        }
+        upcoming[found++] = next;
+      }
+      return Arrays.copyOf(upcoming, found);
+    } finally {
+      playlistLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Start loading the upcoming songs in the background.
+   * 
+   * @see #getSequencePrefetcher()
+   */
+  protected final void prefetchUpcomingSongs() {
+    sequencePrefetcher
+        .prefetch(getUpcomingSongResources(sequencePrefetcher.getDepth()));
   }
 
   // #########################################################################
   /**
    * Is the MIDI player currently playing?
    * 
-   * @return {@code true} if the MIDI player thread is alive and the sequence currently playing
+   * @return {@code true} if the MIDI player is in the {@link PlayerState#PLAYING} state
    */
   public final boolean isPlaying() {
-    // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
-      return false;
-    }
-    // Retrieve MIDI Sequencer
-    Sequencer player = this.getSequencer();
-
-    return playingThread != null && playingThread.isAlive()
-        && player.getSequence() != null && player.isRunning();
+    return state.get() == PlayerState.PLAYING;
   }
 
   /**
    * Is the MIDI player currently paused?
    * 
-   * @return {@code true} if the MIDI player thread is alive and the sequencer currently open but
-   *         <strong>not</strong> playing
+   * @return {@code true} if the MIDI player is in the {@link PlayerState#PAUSED} state
    */
   public final boolean isPaused() {
-    // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
-      return false;
-    }
-    // Retrieve MIDI Sequencer
-    Sequencer player = this.getSequencer();
-
-    return playingThread != null && playingThread.isAlive() && player.isOpen()
-        && player.getSequence() != null && !player.isRunning();
+    return state.get() == PlayerState.PAUSED;
   }
 
   /**
-   * Is the MIDI player currently playing?
+   * Is the MIDI player currently stopped?
    * 
-   * @return {@code true} if the MIDI player thread is not alive and the sequencer currently not
-   *         open
+   * @return {@code true} if the MIDI player is in the {@link PlayerState#STOPPED} state
    */
   public final boolean isStopped() {
-    // If no MIDI Sequencer, quit
-    if (this.sequencer == null || playingThread == null) {
-      return true;
-    }
-    // Retrieve MIDI Sequencer
-    Sequencer player = this.getSequencer();
-
-    return !playingThread.isAlive() && !player.isOpen();
+    return state.get() == PlayerState.STOPPED;
   }
 
   /**
@@ -746,12 +1898,13 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @see #setTempoFactor(float)
    */
   public final Float getTempoFactor() {
+    Sequencer player = this.sequencer;
     // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
+    if (player == null) {
       return null;
     }
 
-    return this.sequencer.getTempoFactor();
+    return player.getTempoFactor();
   }
 
   /**
@@ -768,42 +1921,99 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @see #getTempoFactor
    */
   public void setTempoFactor(final float tempoFactor) {
+    Sequencer player = this.sequencer;
     // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
+    if (player == null) {
       return;
     }
 
-    this.sequencer.setTempoFactor(tempoFactor);
+    player.setTempoFactor(tempoFactor);
   }
 
   /**
-   * Obtains the current position in the sequence, expressed in microseconds.
+   * Obtains the current position in the current song, expressed in microseconds.
    * 
    * @return the current position in microseconds
    * @see #setMicrosecondPosition
    */
   public Long getMicrosecondPosition() {
+    Sequencer player = this.sequencer;
     // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
+    if (player == null) {
       return null;
     }
 
-    return this.sequencer.getMicrosecondPosition();
+    Sequence sequence = player.getSequence();
+    if (sequence == null) {
+      return player.getMicrosecondPosition();
+    }
+    TempoMap tempoMap = getTempoMap(sequence);
+    long start = tempoMap.toMicroseconds(this.currentSongStartTick);
+    return Math.max(0,
+        tempoMap.toMicroseconds(player.getTickPosition()) - start);
   }
 
   /**
-   * Sets the current position in the sequence, expressed in microseconds.
+   * Sets the current position in the current song, expressed in microseconds.
+   * 
+   * @param microseconds desired position in microseconds
+   * @see #getMicrosecondPosition
+   */
+  public final void setMicrosecondPosition(final long microseconds) {
+    Sequencer player = this.sequencer;
+    // If no MIDI Sequencer, quit
+    if (player == null) {
+      return;
+    }
+
+    Sequence sequence = player.getSequence();
+    if (sequence == null) {
+      player.setMicrosecondPosition(microseconds);
+    } else {
+      TempoMap tempoMap = getTempoMap(sequence);
+      long start = tempoMap.toMicroseconds(this.currentSongStartTick);
+      player.setTickPosition(tempoMap.toTick(start + microseconds));
+    }
+  }
+
+  /**
+   * Obtains the length of the current song, expressed in microseconds.
+   * 
+   * <p>
+   * In gapless mode, this is the length of the current song alone, not of the sequence in which
+   * next songs are spliced.
+   * </p>
+   * 
+   * @return the length of the current song in microseconds, {@code null} if no current song
+   */
+  public Long getMicrosecondLength() {
+    Sequence song = getCurrentSong();
+    if (song == null) {
+      return null;
+    }
+    return TempoMap.of(song).toMicroseconds(song.getTickLength());
+  }
+
+  /**
+   * Get the tempo map of a sequence loaded in the sequencer.
+   * 
+   * <p>
+   * The tempo map is built once per sequence, and again if events were added to the sequence, so
+   * that positions are converted without walking through all its tempo changes.
+   * </p>
    * 
-   * @param microseconds desired position in microseconds
-   * @see #getMicrosecondPosition
+   * @param sequence the sequence loaded in the sequencer
+   * @return the tempo map of the sequence
    */
-  public final void setMicrosecondPosition(final long microseconds) {
-    // If no MIDI Sequencer, quit
-    if (this.sequencer == null) {
-      return;
+  private TempoMap getTempoMap(final Sequence sequence) {
+    SequenceTempoMap cached = this.sequencerTempoMap;
+    if (cached != null && cached.sequence == sequence
+        && cached.tempoMap.isCurrent(sequence)) {
+      return cached.tempoMap;
     }
-
-    this.sequencer.setMicrosecondPosition(microseconds);
+    TempoMap tempoMap = TempoMap.of(sequence);
+    this.sequencerTempoMap = new SequenceTempoMap(sequence, tempoMap);
+    return tempoMap;
   }
 
   /**
@@ -812,12 +2022,17 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return the current song's MIDI resource, {@code null} if no song currently playing
    */
   protected final Object getCurrentSongResource() {
-    if (this.currentSongIndex < 0
-        || this.currentSongIndex >= this.playlist.size()) {
-      return null;
+    playlistLock.readLock().lock();
+    try {
+      int index = this.currentSongIndex.get();
+      if (index < 0 || index >= this.playlist.size()) {
+        return null;
+      }
+      this.currentSongResource = this.playlist.get(index);
+      return this.currentSongResource;
+    } finally {
+      playlistLock.readLock().unlock();
     }
-    this.currentSongResource = this.playlist.get(this.currentSongIndex);
-    return this.currentSongResource;
   }
 
   /**
@@ -846,7 +2061,12 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
       return null;
     }
 
-    return getSequencer().getSequence();
+    Sequence song = this.currentSongSequence;
+    Sequencer player = this.sequencer;
+    if (song == null && player != null) {
+      song = player.getSequence();
+    }
+    return song;
   }
 
   /**
@@ -891,47 +2111,53 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    */
   public boolean moveSongsTo(final int start, final int end,
       final int position) {
-    if (start > end) {
-      throw new IllegalArgumentException("Start (" + start
-          + ") must be lesser or equal to end (" + end + ") index.");
-    }
-    if (position >= start && position <= end) {
-      return false;
-    }
+    playlistLock.writeLock().lock();
+    try {
+      if (start > end) {
+        throw new IllegalArgumentException("Start (" + start
+            + ") must be lesser or equal to end (" + end + ") index.");
+      }
+      if (position >= start && position <= end) {
+        return false;
+      }
 
-    // Rotation algorithm
-    int distance = (1 + end - start);
-    int rotationStart, rotationEnd;
-    if (start >= position) {
-      rotationStart = position;
-      rotationEnd = end + 1;
-    } else {
-      distance *= -1;
-      rotationStart = start;
-      rotationEnd = position;
-    }
-    List<Object> subList = this.playlist.subList(rotationStart, rotationEnd);
-    Collections.rotate(subList, distance);
-
-    // Update current song index
-    if (this.currentSongIndex >= rotationStart
-        && this.currentSongIndex <= rotationEnd) {
-      int offset;
-      if (this.currentSongIndex >= start && this.currentSongIndex <= end) {
-        int direction;
-        if (this.currentSongIndex >= position) {
-          direction = -1;
+      // Rotation boundaries
+      int distance = (1 + end - start);
+      int rotationStart, rotationEnd;
+      if (start >= position) {
+        rotationStart = position;
+        rotationEnd = end + 1;
+      } else {
+        distance *= -1;
+        rotationStart = start;
+        rotationEnd = position;
+      }
+      this.playlist.move(start, end, position);
+
+      // Update current song index
+      int currentIndex = this.currentSongIndex.get();
+      if (currentIndex >= rotationStart && currentIndex <= rotationEnd) {
+        int offset;
+        if (currentIndex >= start && currentIndex <= end) {
+          int direction;
+          if (currentIndex >= position) {
+            direction = -1;
+          } else {
+            direction = 1;
+          }
+          offset =
+              (rotationEnd - rotationStart - Math.abs(distance)) * direction;
         } else {
-          direction = 1;
+          offset = distance;
         }
-        offset = (rotationEnd - rotationStart - Math.abs(distance)) * direction;
-      } else {
-        offset = distance;
+        this.setCurrentSongIndex(currentIndex + offset);
       }
-      this.setCurrentSongIndex(this.currentSongIndex + offset);
-    }
+      restartShuffleOrder();
 
-    return true;
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
+    }
   }
 
   /**
@@ -946,15 +2172,21 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if the playlist was shuffled
    */
   public boolean shufflePlaylist() {
-    if (playlist == null || playlist.isEmpty()) {
-      return false;
-    }
-    Object currentSong = getCurrentSongResource();
-    Collections.shuffle(playlist);
-    if (currentSong != null) {
-      setCurrentSongIndex(playlist.indexOf(currentSong));
+    playlistLock.writeLock().lock();
+    try {
+      if (playlist == null || playlist.isEmpty()) {
+        return false;
+      }
+      Object currentSong = getCurrentSongResource();
+      Collections.shuffle(playlist);
+      if (currentSong != null) {
+        setCurrentSongIndex(playlist.indexOf(currentSong));
+      }
+      restartShuffleOrder();
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    return true;
   }
 
   /**
@@ -970,15 +2202,21 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if the playlist was shuffled
    */
   public boolean shufflePlaylist(final Random random) {
-    if (playlist == null || playlist.isEmpty()) {
-      return false;
-    }
-    Object currentSong = getCurrentSongResource();
-    Collections.shuffle(playlist, random);
-    if (currentSong != null) {
-      setCurrentSongIndex(playlist.indexOf(currentSong));
+    playlistLock.writeLock().lock();
+    try {
+      if (playlist == null || playlist.isEmpty()) {
+        return false;
+      }
+      Object currentSong = getCurrentSongResource();
+      Collections.shuffle(playlist, random);
+      if (currentSong != null) {
+        setCurrentSongIndex(playlist.indexOf(currentSong));
+      }
+      restartShuffleOrder();
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    return true;
   }
 
   /**
@@ -993,6 +2231,51 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     return sortPlaylist(COMPARATOR);
   }
 
+  /**
+   * Sorts the playlist by the specified key.
+   *
+   * <p>
+   * The key of each song is computed once, then the keys are sorted in parallel for large
+   * playlists. The sort is stable and the current song stays the current song, at its new index.
+   * </p>
+   *
+   * @param sortKey the key by which songs are sorted
+   * @return {@code true} if the playlist was sorted
+   * @throws IllegalArgumentException if {@code sortKey} is {@code null}
+   */
+  public boolean sortPlaylist(final SortKey sortKey) {
+    playlistLock.writeLock().lock();
+    try {
+      if (sortKey == null) {
+        throw new IllegalArgumentException("Sort key cannot be null");
+      }
+      if (playlist == null || playlist.isEmpty()) {
+        return false;
+      }
+      Object[] resources = playlist.toArray();
+      SortKey.Entry[] entries = new SortKey.Entry[resources.length];
+      Arrays.parallelSetAll(entries, i -> sortKey.entryOf(resources[i],
+          getSongMetadata(resources[i]), i));
+      Arrays.parallelSort(entries);
+
+      int currentIndex = this.currentSongIndex.get();
+      int sortedIndex = currentIndex;
+      int[] order = new int[entries.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = entries[i].getIndex();
+        if (order[i] == currentIndex) {
+          sortedIndex = i;
+        }
+      }
+      playlist.permute(order);
+      setCurrentSongIndex(sortedIndex);
+      restartShuffleOrder();
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
+    }
+  }
+
   /**
    * Sorts the playlist according to the order induced by the specified comparator.
    *
@@ -1002,15 +2285,21 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if the playlist was sorted
    */
   public boolean sortPlaylist(Comparator<Object> comparator) {
-    if (playlist == null || playlist.isEmpty()) {
-      return false;
-    }
-    Object currentSong = getCurrentSongResource();
-    Collections.sort(playlist, comparator);
-    if (currentSong != null) {
-      setCurrentSongIndex(playlist.indexOf(currentSong));
+    playlistLock.writeLock().lock();
+    try {
+      if (playlist == null || playlist.isEmpty()) {
+        return false;
+      }
+      Object currentSong = getCurrentSongResource();
+      Collections.sort(playlist, comparator);
+      if (currentSong != null) {
+        setCurrentSongIndex(playlist.indexOf(currentSong));
+      }
+      restartShuffleOrder();
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    return true;
   }
 
   // #########################################################################
@@ -1020,7 +2309,12 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if this MIDI player's playlist contains no elements
    */
   public final boolean isEmpty() {
-    return this.playlist.isEmpty();
+    playlistLock.readLock().lock();
+    try {
+      return this.playlist.isEmpty();
+    } finally {
+      playlistLock.readLock().unlock();
+    }
   }
 
   /**
@@ -1029,7 +2323,12 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return the number of elements in this player's playlist
    */
   public final int size() {
-    return this.playlist.size();
+    playlistLock.readLock().lock();
+    try {
+      return this.playlist.size();
+    } finally {
+      playlistLock.readLock().unlock();
+    }
   }
 
   /**
@@ -1039,11 +2338,16 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if the playlist changed as a result of the call
    */
   public boolean add(final Object resource) {
-    if (resource == null) {
-      return false;
+    playlistLock.writeLock().lock();
+    try {
+      if (resource == null) {
+        return false;
+      }
+      boolean added = this.playlist.add(resource);
+      return added;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    boolean added = this.playlist.add(resource);
-    return added;
   }
 
   /**
@@ -1062,16 +2366,21 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * 
    */
   public boolean add(final int index, final Object resource) {
-    if (resource == null) {
-      return false;
-    }
-    Object currentSong = getCurrentSongResource();
-    this.playlist.add(index, resource);
-    // Update current song index
-    if (currentSong != null) {
-      setCurrentSongIndex(playlist.indexOf(currentSong));
+    playlistLock.writeLock().lock();
+    try {
+      if (resource == null) {
+        return false;
+      }
+      Object currentSong = getCurrentSongResource();
+      this.playlist.add(index, resource);
+      // Update current song index
+      if (currentSong != null && index <= this.currentSongIndex.get()) {
+        this.currentSongIndex.incrementAndGet();
+      }
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    return true;
   }
 
   /**
@@ -1088,11 +2397,16 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if the playlist changed as a result of the call
    */
   public boolean addAll(Collection<? extends Object> resources) {
-    if (resources == null || resources.isEmpty()) {
-      return false;
+    playlistLock.writeLock().lock();
+    try {
+      if (resources == null || resources.isEmpty()) {
+        return false;
+      }
+      boolean added = this.playlist.addAll(resources);
+      return added;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    boolean added = this.playlist.addAll(resources);
-    return added;
   }
 
   /**
@@ -1112,16 +2426,56 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    *         (<tt>index &lt; 0 || index &gt; size()</tt>)
    */
   public boolean addAll(int index, Collection<? extends Object> resources) {
-    if (resources == null || resources.isEmpty()) {
-      return false;
-    }
-    Object currentSong = getCurrentSongResource();
-    boolean added = this.playlist.addAll(index, resources);
-    // Update current song index
-    if (added && currentSong != null) {
-      setCurrentSongIndex(playlist.indexOf(currentSong));
+    playlistLock.writeLock().lock();
+    try {
+      if (resources == null || resources.isEmpty()) {
+        return false;
+      }
+      Object currentSong = getCurrentSongResource();
+      boolean added = this.playlist.addAll(index, resources);
+      // Update current song index
+      if (added && currentSong != null
+          && index <= this.currentSongIndex.get()) {
+        this.currentSongIndex.addAndGet(resources.size());
+      }
+      return added;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    return added;
+  }
+
+  /**
+   * Appends the songs of a playlist file to the end of this player's playlist.
+   *
+   * <p>
+   * The playlist file is read in batches of songs, each appended as soon as it is read.
+   * </p>
+   *
+   * @param file the M3U, M3U8 or PLS playlist file
+   * @return the number of songs appended
+   * @throws IOException if the playlist file cannot be read
+   * @throws IllegalArgumentException if the file is not a playlist file
+   *
+   * @see PlaylistFile#read(Path, java.util.function.Consumer)
+   */
+  public int loadPlaylist(final Path file) throws IOException {
+    return PlaylistFile.read(file, this::addAll);
+  }
+
+  /**
+   * Saves this player's playlist to a playlist file.
+   *
+   * @param file the M3U, M3U8 or PLS playlist file, replaced if it exists
+   * @return the number of songs saved
+   * @throws IOException if the playlist file cannot be written
+   * @throws IllegalArgumentException if the file is not a playlist file
+   *
+   * @see PlaylistFile#write(Path, Collection)
+   */
+  public int savePlaylist(final Path file) throws IOException {
+    // Written from a snapshot: the playlist is not locked during I/O
+    return PlaylistFile.write(file,
+        Arrays.asList(this.playlistView.toArray()));
   }
 
   /**
@@ -1132,13 +2486,18 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    *         if no song exists at the given index or if the playlist did not change
    */
   private boolean removeSongAtIndex(final int index) {
-    if (index < 0 || index >= this.playlist.size()) {
-      return false;
+    playlistLock.writeLock().lock();
+    try {
+      if (index < 0 || index >= this.playlist.size()) {
+        return false;
+      }
+      Object removedResource = this.playlist.remove(index);
+      boolean removed = removedResource != null;
+      removed &= afterRemove(index, removed);
+      return removed;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    Object removedResource = this.playlist.remove(index);
-    boolean removed = removedResource != null;
-    removed &= afterRemove(index, removed);
-    return removed;
   }
 
   /**
@@ -1163,10 +2522,11 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     if (!removed) {
       return false;
     }
-    if (this.isPlaying() && this.currentSongIndex == removedIndex) {
+    int currentIndex = this.currentSongIndex.get();
+    if (this.isPlaying() && currentIndex == removedIndex) {
       this.stopPlaying();
-    } else if (removedIndex < this.currentSongIndex) {
-      this.setCurrentSongIndex(this.currentSongIndex - 1);
+    } else if (removedIndex < currentIndex) {
+      this.currentSongIndex.decrementAndGet();
     }
     return true;
   }
@@ -1178,12 +2538,17 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if this player's playlist changed as a result of the call
    */
   protected boolean remove(final Object resource) {
-    if (resource == null) {
-      return false;
+    playlistLock.writeLock().lock();
+    try {
+      if (resource == null) {
+        return false;
+      }
+      boolean removed = this.playlist.remove(resource);
+      removed &= afterRemove(resource, removed);
+      return removed;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    boolean removed = this.playlist.remove(resource);
-    removed &= afterRemove(resource, removed);
-    return removed;
   }
 
   /**
@@ -1214,26 +2579,35 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if this player's playlist changed as a result of the call
    */
   public boolean removeAll(final int[] indexes) {
-    if (indexes == null || indexes.length < 0) {
-      return false;
-    }
-
-    // Create a copy of array
-    int[] sortedIndexes = Arrays.copyOf(indexes, indexes.length);
-    // Sort it in ascending order
-    Arrays.sort(sortedIndexes);
-    // Then reverse array
-    for (int i = 0, n = sortedIndexes.length / 2; i < n; i++) {
-      int temp = sortedIndexes[i];
-      sortedIndexes[i] = sortedIndexes[sortedIndexes.length - i - 1];
-      sortedIndexes[sortedIndexes.length - i - 1] = temp;
-    }
+    playlistLock.writeLock().lock();
+    try {
+      if (indexes == null) {
+        return false;
+      }
 
-    boolean removed = true;
-    for (int index : sortedIndexes) {
-      removed &= removeSongAtIndex(index);
+      // Create a copy of array
+      int[] sortedIndexes = Arrays.copyOf(indexes, indexes.length);
+      // Sort it in ascending order
+      Arrays.sort(sortedIndexes);
+
+      // Remove all songs at once
+      int size = this.playlist.size();
+      int removedCount = this.playlist.removeIndexes(sortedIndexes);
+
+      // Then update the current song as if they were removed from the last one
+      for (int i = sortedIndexes.length - 1; i >= 0; i--) {
+        int index = sortedIndexes[i];
+        if (index < 0 || index >= size
+            || (i > 0 && index == sortedIndexes[i - 1])) {
+          // Out of range or duplicated index
+          continue;
+        }
+        afterRemove(index, true);
+      }
+      return removedCount > 0;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    return removed;
   }
 
   /**
@@ -1249,12 +2623,17 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if this player's playlist changed as a result of the call
    */
   protected boolean removeAll(Collection<? extends Object> resources) {
-    if (resources == null || resources.isEmpty()) {
-      return false;
+    playlistLock.writeLock().lock();
+    try {
+      if (resources == null || resources.isEmpty()) {
+        return false;
+      }
+      boolean removed = this.playlist.removeAll(resources);
+      removed &= afterRemoveAll(resources, removed);
+      return removed;
+    } finally {
+      playlistLock.writeLock().unlock();
     }
-    boolean removed = this.playlist.removeAll(resources);
-    removed &= afterRemoveAll(resources, removed);
-    return removed;
   }
 
   /**
@@ -1285,9 +2664,14 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * @return {@code true} if playlist was cleared.
    */
   public boolean clear() {
-    this.playlist.clear();
-    afterClear();
-    return true;
+    playlistLock.writeLock().lock();
+    try {
+      this.playlist.clear();
+      afterClear();
+      return true;
+    } finally {
+      playlistLock.writeLock().unlock();
+    }
   }
 
   /**
@@ -1299,6 +2683,39 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     }
   }
 
+  // #########################################################################
+  /**
+   * Render the songs of the playlist to WAV files, without playing them.
+   * 
+   * <p>
+   * Songs are rendered faster than real time by the software synthesizer, several at a time. Only
+   * songs stored in files can be rendered.
+   * </p>
+   * 
+   * @param outputDirectory the directory of the WAV files
+   * @param parallelism the number of songs rendered at the same time
+   * @return the rendering results, in playlist order
+   * @throws InterruptedException if the thread is interrupted while waiting for the renderings
+   * 
+   * @see MidiRenderer
+   */
+  public List<MidiRenderer.Result> renderPlaylist(final Path outputDirectory,
+      final int parallelism) throws InterruptedException {
+    List<Object> resources = Arrays.asList(this.playlistView.toArray());
+    List<Path> songs = new ArrayList<>(resources.size());
+    for (Object resource : resources) {
+      if (resource instanceof Path) {
+        songs.add((Path) resource);
+      } else if (resource instanceof File) {
+        songs.add(((File) resource).toPath());
+      } else {
+        LOGGER.log(Level.WARNING, "Impossible to render resource: {0}",
+            resource);
+      }
+    }
+    return new MidiRenderer().renderAll(songs, outputDirectory, parallelism);
+  }
+
   // #########################################################################
   /**
    * Report a throwable catch by the {@link MidiThread}.
@@ -1313,8 +2730,15 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   public final void meta(final MetaMessage meta) {
     switch (meta.getType()) {
       case MidiPlayer.END_OF_TRACK_MESSAGE:
+        this.endOfTrackTime = System.nanoTime();
         // Notify player to force move to next song
-        MidiPlayer.this.moveToNextSong(true);
+        sendCommand(Command.END_OF_TRACK);
+        break;
+      case SequenceSplicer.SEQUENCER_SPECIFIC_META_TYPE:
+        if (SequenceSplicer.isSongBoundary(meta)) {
+          // A spliced song starts
+          sendCommand(Command.SPLICED_SONG_STARTED);
+        }
         break;
       default:
 
@@ -1325,15 +2749,78 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
   @Override
   public void close() throws Exception {
     System.out.println("Closing allocated resources");
-    if (playingThread != null) {
-      playingThread.interrupt();
-      playingThread = null;
+    sequencePrefetcher.cancel();
+    playlistImporter.cancelAll();
+    PlayerState previous = state.getAndSet(PlayerState.STOPPED);
+    MidiThread thread = this.playingThread;
+    playingThread = null;
+    if (thread != null) {
+      // The thread releases its sequencer before ending
+      thread.send(Command.STOP);
+      thread.interrupt();
+      if (thread != Thread.currentThread()) {
+        thread.join();
+      }
     }
-    if (sequencer != null) {
-      sequencer.stop();
-      sequencer.close();
-      this.resetSequencer();
+    if (!sharedSequencerPool) {
+      sequencerPool.close();
+    }
+    metrics.unregister();
+    fireStateChanged(previous, PlayerState.STOPPED);
+  }
+
+  // #########################################################################
+  /**
+   * Read-only view of the playlist, reading it under the playlist lock.
+   */
+  private final class PlaylistView extends AbstractList<Object>
+      implements RandomAccess {
+
+    @Override
+    public Object get(final int index) {
+      playlistLock.readLock().lock();
+      try {
+        return playlist.get(index);
+      } finally {
+        playlistLock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public int size() {
+      playlistLock.readLock().lock();
+      try {
+        return playlist.size();
+      } finally {
+        playlistLock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public int indexOf(final Object resource) {
+      playlistLock.readLock().lock();
+      try {
+        return playlist.indexOf(resource);
+      } finally {
+        playlistLock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public boolean contains(final Object resource) {
+      return indexOf(resource) >= 0;
+    }
+
+    @Override
+    public Object[] toArray() {
+      playlistLock.readLock().lock();
+      try {
+        return playlist.toArray();
+      } finally {
+        playlistLock.readLock().unlock();
+      }
     }
+
   }
 
   // #########################################################################
@@ -1346,6 +2833,11 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
    * player.
    * </p>
    * 
+   * <p>
+   * The thread is the only consumer of its command queue and the only one driving the sequencer
+   * while it runs: control methods and sequencer callbacks post commands and unpark it.
+   * </p>
+   * 
    * @see MidiPlayer#getSequencer()
    * @see MidiPlayer#getCurrentSongResource()
    * @see MidiPlayer#stopPlaying()
@@ -1359,6 +2851,51 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
      */
     private transient Object currentResource = null;
 
+    /**
+     * Sequence loaded in the sequencer.
+     * 
+     * <p>
+     * In gapless mode, this is a copy of the current song sequence in which the next songs are
+     * spliced.
+     * </p>
+     */
+    private transient Sequence playingSequence = null;
+
+    /**
+     * Playlist index of the song spliced after the current one, {@code -1} if none.
+     */
+    private int splicedSongIndex = -1;
+
+    /**
+     * Resource of the song spliced after the current one.
+     */
+    private transient Object splicedResource = null;
+
+    /**
+     * Sequence of the song spliced after the current one.
+     */
+    private transient Sequence splicedSequence = null;
+
+    /**
+     * Tick at which the song spliced after the current one starts in the playing sequence.
+     */
+    private long splicedStartTick = 0;
+
+    /**
+     * Number of songs spliced into the playing sequence.
+     */
+    private int splicedSongCount = 0;
+
+    /**
+     * Commands posted to the thread.
+     */
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The thread which played songs before this one, which must release the sequencer first.
+     */
+    private volatile MidiThread previousThread = null;
+
     /**
      * Allocates a new {@code MidiThread} object.
      */
@@ -1382,20 +2919,32 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
       return currentResource;
     }
 
+    /**
+     * Post a command to the thread and wake it up.
+     * 
+     * @param command the command to post
+     */
+    private void send(final Command command) {
+      this.commands.offer(command);
+      LockSupport.unpark(this);
+    }
+
     /**
      * Play a song.
      * 
+     * @param songSequencer the sequencer owned by the thread
      * @param resource the resource of the song to play
      */
-    protected final void playSequence(final Object resource) {
+    protected final void playSequence(final Sequencer songSequencer,
+        final Object resource) {
       if (resource instanceof Path) {
-        playSequence(((Path) resource).toFile());
+        playSequence(songSequencer, ((Path) resource).toFile());
       } else if (resource instanceof File) {
-        playSequence((File) resource);
+        playSequence(songSequencer, (File) resource);
       } else if (resource instanceof URL) {
-        playSequence((URL) resource);
+        playSequence(songSequencer, (URL) resource);
       } else if (resource instanceof InputStream) {
-        playSequence((InputStream) resource);
+        playSequence(songSequencer, (InputStream) resource);
       } else {
         MidiPlayer.this.stopPlaying();
         MidiPlayer.LOGGER.log(Level.SEVERE, "Impossible to read resource: {0}",
@@ -1408,14 +2957,19 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     /**
      * Play a MIDI URL.
      * 
+     * @param songSequencer the sequencer owned by the thread
      * @param url the URL of the MIDI song
      */
-    private void playSequence(final URL url) {
+    private void playSequence(final Sequencer songSequencer,
+        final URL url) {
       try {
         // Sets the current sequence on which the MidiPlayer operates.
         // The URL must point to MIDI file data.
-        Sequence song = MidiSystem.getSequence(url);
-        playSequence(song);
+        long start = System.nanoTime();
+        Sequence song = MidiPlayer.this.sequenceCache.getSequence(url);
+        MidiPlayer.this.resourceLoadTimes.recordSince(start);
+        FlightRecorderEvents.get().songLoaded(url, -1, start);
+        playSequence(songSequencer, song);
       } catch (IOException | InvalidMidiDataException ex) {
         MidiPlayer.this.stopPlaying();
         MidiPlayer.LOGGER.log(Level.SEVERE, "Impossible to read URL: " + url,
@@ -1427,14 +2981,30 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     /**
      * Play a MIDI File.
      * 
+     * @param songSequencer the sequencer owned by the thread
      * @param file the File of the MIDI song
      */
-    private void playSequence(final File file) {
+    private void playSequence(final Sequencer songSequencer,
+        final File file) {
       try {
         // Sets the current sequence on which the MidiPlayer operates.
         // The file must point to MIDI file data.
-        Sequence song = MidiSystem.getSequence(file);
-        playSequence(song);
+        long start = System.nanoTime();
+        if (MidiPlayer.this.isGapless()) {
+          // Next songs are spliced into a copy of the complete sequence
+          Sequence song = MidiPlayer.this.sequenceCache.getSequence(file);
+          MidiPlayer.this.resourceLoadTimes.recordSince(start);
+          FlightRecorderEvents.get().songLoaded(file, file.length(), start);
+          playSequence(songSequencer, song);
+        } else {
+          // Start playing while the end of the file is parsed
+          StandardMidiFileReader.Progress progress =
+              MidiPlayer.this.sequenceCache.getSequenceProgressively(file);
+          MidiPlayer.this.resourceLoadTimes.recordSince(start);
+          FlightRecorderEvents.get().songLoaded(file, file.length(), start);
+          playSequence(songSequencer, progress.getSequence(),
+              progress.getCompletion());
+        }
       } catch (IOException | InvalidMidiDataException ex) {
         MidiPlayer.this.stopPlaying();
         MidiPlayer.LOGGER.log(Level.SEVERE, "Impossible to read file: " + file,
@@ -1446,14 +3016,19 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     /**
      * Play a MIDI input stream.
      * 
+     * @param songSequencer the sequencer owned by the thread
      * @param is the input stream of the MIDI song
      */
-    private void playSequence(final InputStream is) {
+    private void playSequence(final Sequencer songSequencer,
+        final InputStream is) {
       try {
         // Sets the current sequence on which the MidiPlayer operates.
         // The stream must point to MIDI file data.
+        long start = System.nanoTime();
         Sequence song = MidiSystem.getSequence(is);
-        playSequence(song);
+        MidiPlayer.this.resourceLoadTimes.recordSince(start);
+        FlightRecorderEvents.get().songLoaded(is, -1, start);
+        playSequence(songSequencer, song);
       } catch (IOException | InvalidMidiDataException ex) {
         MidiPlayer.this.stopPlaying();
         MidiPlayer.LOGGER.log(Level.SEVERE,
@@ -1466,29 +3041,224 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
     /**
      * Play a sequence.
      * 
+     * @param songSequencer the sequencer owned by the thread
+     * @param song the sequence of the MIDI song
+     * @throws InvalidMidiDataException if the sequence contains invalid MIDI data, or is not
+     *         supported.
+     */
+    private void playSequence(final Sequencer songSequencer,
+        final Sequence song) throws InvalidMidiDataException {
+      playSequence(songSequencer, song,
+          CompletableFuture.completedFuture(song));
+    }
+
+    /**
+     * Play a sequence which may still be being parsed.
+     * 
+     * @param songSequencer the sequencer owned by the thread
      * @param song the sequence of the MIDI song
+     * @param completion the completion of the parsing of the sequence
      * @throws InvalidMidiDataException if the sequence contains invalid MIDI data, or is not
      *         supported.
      */
-    private void playSequence(final Sequence song)
+    private void playSequence(final Sequencer songSequencer,
+        final Sequence song, final CompletableFuture<Sequence> completion)
         throws InvalidMidiDataException {
-      sequencer.setSequence(song);
+      Sequence playing = song;
+      if (MidiPlayer.this.isGapless()
+          && SequenceSplicer.canSplice(song, song)) {
+        // Play a private copy so that next songs can be spliced into it
+        playing = SequenceSplicer.copyOf(song);
+      }
+      this.playingSequence = playing;
+      this.splicedSongIndex = -1;
+      this.splicedResource = null;
+      this.splicedSequence = null;
+      this.splicedSongCount = 0;
+      MidiPlayer.this.currentSongSequence = song;
+      MidiPlayer.this.currentSongStartTick = 0;
+
+      songSequencer.setSequence(playing);
+
+      // Print the complete song duration
+      final Object resource = currentResource;
+      completion.thenAccept(complete -> printSongInfo(resource, complete));
 
-      printSongInfo(currentResource, song);
+      // A song chosen while paused is played
+      MidiPlayer.this.changeState(PlayerState.PAUSED, PlayerState.PLAYING);
 
       /*
        * Starts playback of the MIDI data in the currently loaded sequence.
        */
-      sequencer.start();
+      songSequencer.start();
+
+      long endOfTrack = MidiPlayer.this.endOfTrackTime;
+      if (endOfTrack != 0) {
+        MidiPlayer.this.endOfTrackTime = 0;
+        long gap =
+            MidiPlayer.this.transitionGapRecorder.recordSince(endOfTrack);
+        FlightRecorderEvents.get().songTransition(resource, gap, false);
+      }
+
+      // Load next songs while this one plays
+      MidiPlayer.this.prefetchUpcomingSongs();
+    }
+
+    /**
+     * Splice the next song into the playing sequence, if gapless mode is active and the next song
+     * is already loaded.
+     */
+    private void spliceNextSong() {
+      if (!MidiPlayer.this.isGapless() || MidiPlayer.this.isLooping()
+          || this.playingSequence == null
+          || this.playingSequence == MidiPlayer.this.currentSongSequence
+          || this.splicedSongIndex >= 0
+          || this.splicedSongCount >= GAPLESS_MAX_SPLICED_SONGS) {
+        return;
+      }
+      int[] next;
+      Object resource;
+      MidiPlayer.this.playlistLock.readLock().lock();
+      try {
+        next = MidiPlayer.this.getUpcomingSongIndexes(1);
+        if (next.length == 0) {
+          return;
+        }
+        resource = MidiPlayer.this.playlist.get(next[0]);
+      } finally {
+        MidiPlayer.this.playlistLock.readLock().unlock();
+      }
+      if (!MidiPlayer.this.sequenceCache.contains(resource)) {
+        // Not loaded yet
+        return;
+      }
+      Sequence nextSong = MidiPlayer.this.sequenceCache.getIfPresent(resource);
+      try {
+        long startTick = SequenceSplicer.splice(this.playingSequence, nextSong);
+        if (startTick >= 0) {
+          this.splicedSongIndex = next[0];
+          this.splicedResource = resource;
+          this.splicedSequence = nextSong;
+          this.splicedStartTick = startTick;
+          this.splicedSongCount++;
+        }
+      } catch (InvalidMidiDataException ex) {
+        MidiPlayer.LOGGER.log(Level.WARNING,
+            "Impossible to splice resource: " + resource, ex);
+      }
+    }
+
+    /**
+     * Called when the sequencer reaches the start of the song spliced after the current one.
+     */
+    private void splicedSongStarted() {
+      if (this.splicedSongIndex < 0) {
+        return;
+      }
+      int index = this.splicedSongIndex;
+      Object resource = this.splicedResource;
+      Sequence song = this.splicedSequence;
+      this.splicedSongIndex = -1;
+      this.splicedResource = null;
+      this.splicedSequence = null;
+
+      // The playlist may have changed since the song was spliced
+      MidiPlayer.this.playlistLock.readLock().lock();
+      try {
+        if (index >= MidiPlayer.this.playlist.size()
+            || MidiPlayer.this.playlist.get(index) != resource) {
+          index = MidiPlayer.this.playlist.indexOf(resource);
+        }
+        if (index >= 0) {
+          MidiPlayer.this.moveToSplicedSong(index);
+        }
+      } finally {
+        MidiPlayer.this.playlistLock.readLock().unlock();
+      }
+      if (index < 0) {
+        // The spliced song was removed: cut it and play the song following the current one
+        MidiPlayer.LOGGER.log(Level.INFO,
+            "Spliced song removed from the playlist: {0}", resource);
+        MidiPlayer.this.moveToNextSong(true);
+        return;
+      }
+      this.currentResource = resource;
+      MidiPlayer.this.currentSongSequence = song;
+      MidiPlayer.this.currentSongStartTick = this.splicedStartTick;
+      MidiPlayer.this.gaplessTransitionCount++;
+      FlightRecorderEvents.get().songTransition(resource, 0, true);
+      printSongInfo(resource, song);
+
+      // Load the songs following the spliced one
+      MidiPlayer.this.prefetchUpcomingSongs();
+    }
+
+    /**
+     * Apply the state of the player to the sequencer.
+     * 
+     * @param songSequencer the sequencer owned by the thread
+     */
+    private void applyState(final Sequencer songSequencer) {
+      if (songSequencer.getSequence() == null) {
+        return;
+      }
+      boolean paused = MidiPlayer.this.isPaused();
+      if (paused && songSequencer.isRunning()) {
+        songSequencer.stop();
+      } else if (!paused && !songSequencer.isRunning()) {
+        // If it is paused, restart playing where it paused
+        songSequencer.start();
+      }
+    }
+
+    /**
+     * Wait until a command is posted, splicing next songs meanwhile in gapless mode.
+     * 
+     * @return the command posted
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private Command waitForCommand() throws InterruptedException {
+      Command command = this.commands.poll();
+      while (command == null) {
+        if (MidiPlayer.this.isGapless()) {
+          spliceNextSong();
+          LockSupport.parkNanos(this,
+              TimeUnit.MILLISECONDS.toNanos(GAPLESS_SPLICE_INTERVAL));
+        } else {
+          LockSupport.park(this);
+        }
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        command = this.commands.poll();
+      }
+      return command;
+    }
+
+    /**
+     * Wait until the previous MIDI player thread released the sequencer.
+     * 
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitPreviousThread() throws InterruptedException {
+      MidiThread previous = this.previousThread;
+      this.previousThread = null;
+      if (previous != null && previous != this) {
+        previous.join();
+      }
     }
 
     @Override
     public void run() {
-      synchronized (MidiPlayer.this) {
-        try {
-          // Retrieve or create a MIDI sequencer
-          Sequencer songSequencer = MidiPlayer.this.getSequencer();
-          while (songSequencer != null && songSequencer.isOpen()) {
+      Sequencer songSequencer = null;
+      try {
+        awaitPreviousThread();
+        // Retrieve or create a MIDI sequencer
+        songSequencer = MidiPlayer.this.getSequencer();
+        boolean songChanged = true;
+        while (songSequencer != null && songSequencer.isOpen()
+            && !MidiPlayer.this.isStopped()) {
+          if (songChanged) {
             // Get current song to play
             this.currentResource = MidiPlayer.this.getCurrentSongResource();
             if (this.currentResource == null) {
@@ -1496,19 +3266,52 @@ public class MidiPlayer implements MetaEventListener, AutoCloseable {
                   .println("No songs to play. Stopping thread and player...");
               return;
             }
+            songChanged = false;
+            playSequence(songSequencer, this.currentResource);
+          }
 
-            playSequence(this.currentResource);
-
-            // Wait until the song ends and must be changed
-            MidiPlayer.this.wait();
+          // Wait until the song ends or must be changed
+          switch (waitForCommand()) {
+            case RESTART:
+              // Restart the current song, not the sequence it was spliced in
+              songSequencer
+                  .setTickPosition(MidiPlayer.this.currentSongStartTick);
+              applyState(songSequencer);
+              break;
+            case STATE_CHANGED:
+              applyState(songSequencer);
+              break;
+            case SONG_CHANGED:
+              // Coalesce successive song changes
+              while (this.commands.remove(Command.SONG_CHANGED)) {
+                continue;
+              }
+              songChanged = true;
+              break;
+            case END_OF_TRACK:
+              MidiPlayer.this.moveToNextSong(true);
+              break;
+            case SPLICED_SONG_STARTED:
+              splicedSongStarted();
+              break;
+            case STOP:
+              return;
+            case WAKE_UP:
+            default:
+              break;
           }
-        } catch (InterruptedException ex) {
-          MidiPlayer.LOGGER.log(Level.INFO, null, ex);
-        } finally {
-          // Whatever happens, make sure to close resources
-          System.out.println("Closing player");
+        }
+      } catch (InterruptedException ex) {
+        MidiPlayer.LOGGER.log(Level.INFO, null, ex);
+      } finally {
+        // Whatever happens, make sure to close resources
+        System.out.println("Closing player");
+        if (MidiPlayer.this.playingThread == this) {
           MidiPlayer.this.stopPlaying();
         }
+        if (songSequencer != null) {
+          MidiPlayer.this.detachSequencer(songSequencer);
+        }
       }
     }
   }
@@ -1,13 +1,22 @@
 package midiplayer;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
+import midiplayer.control.ControlServer;
 import midiplayer.frame.MidiPlayerFrame;
+import midiplayer.frame.MidiPlayerWithListener;
+import midiplayer.render.MidiRenderer;
 import midiplayer.resources.ResourceUtils;
+import midiplayer.sequence.SongMetadataIndex;
 
 /**
  * Utility class for main entry point.
@@ -51,20 +60,143 @@ public final class MidiPlayerMain {
     // </editor-fold>
   }
 
+  /**
+   * Render MIDI files to WAV files, without GUI nor sound card.
+   * 
+   * @param filesToOpen the MIDI files and directories to render
+   * @param outputDirectory the directory of the WAV files
+   * @return the number of files which could not be rendered
+   */
+  private static int render(List<Path> filesToOpen, Path outputDirectory) {
+    if (!MidiRenderer.isAvailable()) {
+      LOGGER.severe("No MIDI synthesizer available for offline rendering. "
+          + "Try running with --add-exports "
+          + "java.desktop/com.sun.media.sound=ALL-UNNAMED");
+      return filesToOpen.size();
+    }
+    MidiPlayer midiPlayer = MidiPlayer.getInstance();
+    try {
+      midiPlayer.getPlaylistImporter()
+          .start(filesToOpen, (t, files) -> midiPlayer.addAll(files)).await();
+
+      int parallelism = Runtime.getRuntime().availableProcessors();
+      long start = System.nanoTime();
+      List<MidiRenderer.Result> results =
+          midiPlayer.renderPlaylist(outputDirectory, parallelism);
+      long elapsed = System.nanoTime() - start;
+
+      int failures = 0;
+      long audioLength = 0;
+      for (MidiRenderer.Result result : results) {
+        System.out.println(result);
+        if (result.isSuccessful()) {
+          audioLength += result.getAudioLength();
+        } else {
+          failures++;
+        }
+      }
+      System.out.println(String.format(
+          "%d songs rendered with %d threads, %.1fx real time",
+          results.size() - failures, parallelism,
+          elapsed > 0 ? audioLength * 1000d / elapsed : 0d));
+      return failures;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return filesToOpen.size();
+    }
+  }
+
+  /**
+   * Keep a headless MIDI player alive and control it through a local socket.
+   * 
+   * @param filesToOpen the MIDI files and directories to play
+   * @param port the TCP port of the control server on the loopback interface
+   * @return {@code true} if the daemon ran until shut down
+   */
+  private static boolean serve(List<Path> filesToOpen, int port) {
+    MidiPlayer midiPlayer = MidiPlayer.getInstance();
+    midiPlayer.getMetrics().register();
+    if (midiPlayer.getSequencer() == null) {
+      LOGGER.severe("No MIDI sequencer available!!");
+      return false;
+    }
+    try (ControlServer server = new ControlServer(midiPlayer,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+      server.start();
+      System.out.println("MIDI player listening on " + server.getAddress());
+      System.out.println("Control token in " + server.getTokenFile());
+
+      // Add files and directories to the player and start playing
+      if (!filesToOpen.isEmpty()) {
+        midiPlayer.getPlaylistImporter()
+            .start(filesToOpen, (t, files) -> midiPlayer.addAll(files))
+            .await();
+        midiPlayer.startPlaying();
+      }
+
+      server.awaitTermination();
+      return true;
+    } catch (IOException ex) {
+      LOGGER.log(java.util.logging.Level.SEVERE,
+          "Impossible to start control server on port " + port, ex);
+      return false;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return true;
+    } finally {
+      try {
+        midiPlayer.close();
+      } catch (Exception ex) {
+        LOGGER.log(java.util.logging.Level.WARNING, null, ex);
+      }
+    }
+  }
+
+  /**
+   * Log the startup timings once the warm-up and the given startup phases are done.
+   * 
+   * @param midiPlayer the MIDI player
+   * @param phases the other startup phases
+   */
+  private static void logStartupTimings(MidiPlayer midiPlayer,
+      CompletableFuture<?>... phases) {
+    CompletableFuture<?>[] all = Arrays.copyOf(phases, phases.length + 1);
+    all[phases.length] = midiPlayer.warmUp();
+    CompletableFuture.allOf(all).whenComplete(
+        (done, ex) -> LOGGER.info(midiPlayer.getStartupTimings().toString()));
+  }
+
   /**
    * @param args the command line arguments
    */
   public static void main(String[] args) {
     // Parse arguments
     boolean silentMode = false;
+    Path renderDirectory = null;
+    Integer daemonPort = null;
     final List<Path> filesToOpen = new ArrayList<>(args.length);
     if (args.length > 0) {
-      // Play MIDI files without GUI?
       int i = 0;
-      if ("-s".equalsIgnoreCase(args[i])
-          || "--silent".equalsIgnoreCase(args[i])) {
-        silentMode = true;
-        i++;
+      for (int n = args.length; i < n; i++) {
+        String arg = args[i];
+        if ("-s".equalsIgnoreCase(arg) || "--silent".equalsIgnoreCase(arg)) {
+          // Play MIDI files without GUI?
+          silentMode = true;
+        } else if (("-r".equalsIgnoreCase(arg)
+            || "--render".equalsIgnoreCase(arg)) && i + 1 < n) {
+          // Render MIDI files to WAV files?
+          renderDirectory =
+              Paths.get(args[++i]).toAbsolutePath().normalize();
+        } else if ("-d".equalsIgnoreCase(arg)
+            || "--daemon".equalsIgnoreCase(arg)) {
+          // Run headless and wait for commands?
+          daemonPort = ControlServer.DEFAULT_PORT;
+          if (i + 1 < n && args[i + 1].matches("\\d{1,5}")) {
+            daemonPort = Integer.valueOf(args[++i]);
+          }
+        } else {
+          break;
+        }
       }
       for (int n = args.length; i < n; i++) {
         String arg = args[i];
@@ -73,22 +205,56 @@ public final class MidiPlayerMain {
       }
     }
 
+    if (renderDirectory != null) {
+      System.out.println("Rendering MIDI files to " + renderDirectory);
+      int failures = render(filesToOpen, renderDirectory);
+      System.exit(failures == 0 ? 0 : 1);
+    }
+
+    if (daemonPort != null) {
+      System.out.println("Starting MIDI player daemon");
+      System.exit(serve(filesToOpen, daemonPort) ? 0 : 1);
+    }
+
     System.out.println("Starting MIDI player");
     if (silentMode) {
       MidiPlayer midiPlayer = MidiPlayer.getInstance();
-      if (midiPlayer == null || midiPlayer.getSequencer() == null) {
+      midiPlayer.getMetrics().register();
+      // Open the sound system while the files are imported
+      midiPlayer.warmUp();
+      logStartupTimings(midiPlayer);
+
+      // Add files and directories to the player
+      PlaylistImporter.Import task = midiPlayer.getPlaylistImporter()
+          .start(filesToOpen, (t, files) -> midiPlayer.addAll(files));
+      try {
+        task.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+
+      if (midiPlayer.warmUp().exceptionally(ex -> null).join() == null) {
         LOGGER.severe("No MIDI sequencer available!!");
         System.exit(1);
       }
-
-      // Add files to the player and start playing
-      midiPlayer.startPlaying(filesToOpen);
+      midiPlayer.startPlaying();
     } else {
+      // Open the sound system while the frame is built
+      MidiPlayerWithListener
+          .setSongMetadataFile(SongMetadataIndex.getDefaultFile());
+      final MidiPlayerWithListener midiPlayer =
+          MidiPlayerWithListener.getInstance();
+      midiPlayer.getMetrics().register();
+      midiPlayer.warmUp();
+      final CompletableFuture<Void> frameShown = new CompletableFuture<>();
+      logStartupTimings(midiPlayer, frameShown);
+
       /* Set the Nimbus look and feel */
       setLookAndFeel("Nimbus");
 
       /* Create and display the form */
       java.awt.EventQueue.invokeLater(() -> {
+        long start = System.nanoTime();
         final MidiPlayerFrame appFrame =
             new MidiPlayerFrame("MIDI Player", filesToOpen);
 
@@ -97,6 +263,8 @@ public final class MidiPlayerMain {
 
         // Make frame visible
         appFrame.setVisible(true);
+        midiPlayer.getStartupTimings().recordSince("Main frame", start);
+        frameShown.complete(null);
       });
     }
 
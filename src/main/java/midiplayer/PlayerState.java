@@ -0,0 +1,33 @@
+package midiplayer;
+
+/**
+ * State of a {@link MidiPlayer}.
+ *
+ * <p>
+ * The state is changed immediately by the control methods of the player (start, pause, stop) and
+ * then applied to the MIDI sequencer by the MIDI player thread.
+ * </p>
+ *
+ * @see MidiPlayer#getState()
+ * @see MidiPlayer.StateListener
+ *
+ * @author Mathieu Brunot
+ */
+public enum PlayerState {
+
+  /**
+   * No song is playing and the MIDI player thread is stopped or stopping.
+   */
+  STOPPED,
+
+  /**
+   * The current song is playing.
+   */
+  PLAYING,
+
+  /**
+   * The current song is loaded but paused.
+   */
+  PAUSED;
+
+}
@@ -0,0 +1,406 @@
+package midiplayer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An indexed, random-access list of song resources.
+ *
+ * <p>
+ * The playlist keeps its resources in a contiguous array so that positional access is done in
+ * constant time, which matters for the table model that reads every visible row on each repaint.
+ * Block moves and batch removals are done with a single array copy instead of element by element.
+ * </p>
+ *
+ * <p>
+ * Lookups by resource ({@link #indexOf(Object)}, {@link #contains(Object)}) are answered by an
+ * index of the first position of each resource. This index is built lazily on the first lookup
+ * following a structural modification, and kept up to date when resources are appended.
+ * </p>
+ *
+ * <p>
+ * <strong>Note that this implementation is not synchronized.</strong> Concurrent lookups may
+ * build the index at the same time, but modifications must exclude any other access: the MIDI
+ * player guards its playlist with a read-write lock.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class Playlist extends AbstractList<Object>
+    implements RandomAccess {
+
+  /**
+   * Default initial capacity.
+   */
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /**
+   * Empty array shared by empty playlists.
+   */
+  private static final Object[] EMPTY_ELEMENTS = {};
+
+  /**
+   * The playlist resources.
+   */
+  private Object[] elements = EMPTY_ELEMENTS;
+
+  /**
+   * The number of resources in the playlist.
+   */
+  private int size = 0;
+
+  /**
+   * Index of the first position of each resource.
+   *
+   * <p>
+   * A {@code null} value means that the index must be rebuilt before its next usage.
+   * </p>
+   */
+  private transient volatile Map<Object, Integer> firstIndexes = null;
+
+  /**
+   * Constructs an empty playlist.
+   */
+  public Playlist() {}
+
+  /**
+   * Constructs a playlist containing the resources of the specified collection, in the order they
+   * are returned by the collection's iterator.
+   *
+   * @param resources the collection whose resources are to be placed into this playlist
+   */
+  public Playlist(Collection<? extends Object> resources) {
+    addAll(resources);
+  }
+
+  // #########################################################################
+  private void ensureCapacity(final int minCapacity) {
+    if (minCapacity > elements.length) {
+      int newCapacity = Math.max(DEFAULT_CAPACITY,
+          Math.max(minCapacity, elements.length + (elements.length >> 1)));
+      elements = Arrays.copyOf(elements, newCapacity);
+    }
+  }
+
+  private void checkElementIndex(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void checkPositionIndex(final int index) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void invalidateIndexes() {
+    firstIndexes = null;
+  }
+
+  private Map<Object, Integer> getFirstIndexes() {
+    Map<Object, Integer> indexes = firstIndexes;
+    if (indexes == null) {
+      indexes = new HashMap<>(Math.max(16, size * 4 / 3));
+      // Walk backwards so that the first occurrence wins
+      for (int i = size - 1; i >= 0; i--) {
+        indexes.put(elements[i], i);
+      }
+      // Published once complete, for concurrent lookups
+      firstIndexes = indexes;
+    }
+    return indexes;
+  }
+
+  // #########################################################################
+  @Override
+  public Object get(final int index) {
+    checkElementIndex(index);
+    return elements[index];
+  }
+
+  @Override
+  public Object set(final int index, final Object resource) {
+    checkElementIndex(index);
+    Object previous = elements[index];
+    elements[index] = resource;
+    invalidateIndexes();
+    return previous;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean add(final Object resource) {
+    ensureCapacity(size + 1);
+    modCount++;
+    if (firstIndexes != null) {
+      firstIndexes.putIfAbsent(resource, size);
+    }
+    elements[size++] = resource;
+    return true;
+  }
+
+  @Override
+  public void add(final int index, final Object resource) {
+    checkPositionIndex(index);
+    if (index == size) {
+      add(resource);
+      return;
+    }
+    ensureCapacity(size + 1);
+    modCount++;
+    System.arraycopy(elements, index, elements, index + 1, size - index);
+    elements[index] = resource;
+    size++;
+    invalidateIndexes();
+  }
+
+  @Override
+  public boolean addAll(final Collection<? extends Object> resources) {
+    return addAll(size, resources);
+  }
+
+  @Override
+  public boolean addAll(final int index,
+      final Collection<? extends Object> resources) {
+    checkPositionIndex(index);
+    Object[] added = resources.toArray();
+    int count = added.length;
+    if (count == 0) {
+      return false;
+    }
+    ensureCapacity(size + count);
+    modCount++;
+    if (index < size) {
+      System.arraycopy(elements, index, elements, index + count, size - index);
+      invalidateIndexes();
+    } else if (firstIndexes != null) {
+      for (int i = 0; i < count; i++) {
+        firstIndexes.putIfAbsent(added[i], size + i);
+      }
+    }
+    System.arraycopy(added, 0, elements, index, count);
+    size += count;
+    return true;
+  }
+
+  @Override
+  public Object remove(final int index) {
+    checkElementIndex(index);
+    modCount++;
+    Object removed = elements[index];
+    int moved = size - index - 1;
+    if (moved > 0) {
+      System.arraycopy(elements, index + 1, elements, index, moved);
+    }
+    elements[--size] = null;
+    invalidateIndexes();
+    return removed;
+  }
+
+  @Override
+  public boolean remove(final Object resource) {
+    int index = indexOf(resource);
+    if (index < 0) {
+      return false;
+    }
+    remove(index);
+    return true;
+  }
+
+  /**
+   * Removes the resources at the specified indexes in a single pass.
+   *
+   * <p>
+   * Indexes must be sorted in ascending order. Duplicated and out of range indexes are ignored.
+   * </p>
+   *
+   * @param sortedIndexes the indexes of the resources to remove, in ascending order
+   * @return the number of resources actually removed
+   */
+  public int removeIndexes(final int... sortedIndexes) {
+    if (sortedIndexes == null || sortedIndexes.length == 0 || size == 0) {
+      return 0;
+    }
+    int write = -1;
+    int read = 0;
+    int previous = -1;
+    for (int index : sortedIndexes) {
+      if (index <= previous || index < 0 || index >= size) {
+        continue;
+      }
+      if (write < 0) {
+        // First removed index: everything before it stays in place
+        write = index;
+      } else {
+        // Compact the resources kept between two removed indexes
+        int kept = index - read;
+        System.arraycopy(elements, read, elements, write, kept);
+        write += kept;
+      }
+      read = index + 1;
+      previous = index;
+    }
+    if (write < 0) {
+      return 0;
+    }
+    int kept = size - read;
+    System.arraycopy(elements, read, elements, write, kept);
+    write += kept;
+    int removed = size - write;
+    Arrays.fill(elements, write, size, null);
+    size = write;
+    modCount++;
+    invalidateIndexes();
+    return removed;
+  }
+
+  /**
+   * Moves the resources between {@code start} and {@code end} indexes to the specified
+   * {@code position} index.
+   *
+   * <p>
+   * The {@code position} is expressed in the playlist as it is before the move. When
+   * {@code position} is after {@code end}, the moved resources end right before the resource that
+   * was at {@code position}.
+   * </p>
+   *
+   * @param start start index (inclusive) of the resources to move
+   * @param end end index (inclusive) of the resources to move
+   * @param position index of the destination for the resources
+   * @return {@code true} if the resources were moved, {@code false} if the {@code position} is
+   *         between {@code start} and {@code end}
+   * @throws IllegalArgumentException if the {@code start} is greater than the {@code end} index
+   * @throws IndexOutOfBoundsException if an index is out of range
+   */
+  public boolean move(final int start, final int end, final int position) {
+    if (start > end) {
+      throw new IllegalArgumentException("Start (" + start
+          + ") must be lesser or equal to end (" + end + ") index.");
+    }
+    checkElementIndex(start);
+    checkElementIndex(end);
+    checkPositionIndex(position);
+    if (position >= start && position <= end) {
+      return false;
+    }
+
+    int length = 1 + end - start;
+    Object[] block = Arrays.copyOfRange(elements, start, end + 1);
+    if (position < start) {
+      // Shift resources between position and start to the right
+      System.arraycopy(elements, position, elements, position + length,
+          start - position);
+      System.arraycopy(block, 0, elements, position, length);
+    } else {
+      // Shift resources between end and position to the left
+      System.arraycopy(elements, end + 1, elements, start, position - end - 1);
+      System.arraycopy(block, 0, elements, position - length, length);
+    }
+    modCount++;
+    invalidateIndexes();
+    return true;
+  }
+
+  /**
+   * Reorders the resources according to a permutation of their indexes.
+   *
+   * <p>
+   * After the call, the resource at index {@code i} is the one which was at index
+   * {@code order[i]} before.
+   * </p>
+   *
+   * @param order the previous index of each resource, a permutation of the playlist indexes
+   * @throws IllegalArgumentException if {@code order} is not a permutation of the playlist indexes
+   */
+  public void permute(final int[] order) {
+    if (order.length != size) {
+      throw new IllegalArgumentException(
+          "Order length (" + order.length + ") must be the size (" + size
+              + ") of the playlist.");
+    }
+    Object[] permuted = new Object[elements.length];
+    boolean[] seen = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      int index = order[i];
+      if (index < 0 || index >= size || seen[index]) {
+        throw new IllegalArgumentException("Invalid order index: " + index);
+      }
+      seen[index] = true;
+      permuted[i] = elements[index];
+    }
+    elements = permuted;
+    modCount++;
+    invalidateIndexes();
+  }
+
+  @Override
+  public void clear() {
+    modCount++;
+    Arrays.fill(elements, 0, size, null);
+    size = 0;
+    invalidateIndexes();
+  }
+
+  @Override
+  public int indexOf(final Object resource) {
+    Integer index = getFirstIndexes().get(resource);
+    return index == null ? -1 : index;
+  }
+
+  @Override
+  public boolean contains(final Object resource) {
+    return getFirstIndexes().containsKey(resource);
+  }
+
+  @Override
+  public boolean removeAll(final Collection<?> resources) {
+    if (resources == null || resources.isEmpty() || size == 0) {
+      return false;
+    }
+    int write = 0;
+    for (int read = 0; read < size; read++) {
+      Object resource = elements[read];
+      if (!resources.contains(resource)) {
+        elements[write++] = resource;
+      }
+    }
+    if (write == size) {
+      return false;
+    }
+    Arrays.fill(elements, write, size, null);
+    size = write;
+    modCount++;
+    invalidateIndexes();
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void sort(final Comparator<? super Object> comparator) {
+    if (comparator == null) {
+      Arrays.sort(elements, 0, size, (Comparator) Comparator.naturalOrder());
+    } else {
+      Arrays.sort(elements, 0, size, comparator);
+    }
+    modCount++;
+    invalidateIndexes();
+  }
+
+  @Override
+  public Object[] toArray() {
+    return Arrays.copyOf(elements, size);
+  }
+
+}
@@ -0,0 +1,535 @@
+package midiplayer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes playlist files: M3U, M3U8 and PLS.
+ *
+ * <p>
+ * Playlist files are streamed line by line: entries are handed over in batches as they are read,
+ * so that reading a playlist of a million songs only holds a batch of entries besides the playlist
+ * itself. Entries are not checked: songs which cannot be found are reported when played.
+ * </p>
+ *
+ * <p>
+ * Relative entries are resolved against the directory of the playlist file, which is made
+ * absolute once per file. Entries are only normalized when they contain {@code "."} or
+ * {@code ".."} segments. When writing, songs under the directory of the playlist file are written
+ * relative to it, so that a music directory can be moved along with its playlists.
+ * </p>
+ *
+ * <p>
+ * Playlist files are written to a temporary file first, then moved over the playlist file, so
+ * that a failed write never leaves a truncated playlist.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class PlaylistFile {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(PlaylistFile.class.getName());
+
+  /**
+   * Default number of entries handed over in a batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  /**
+   * Header of an extended M3U playlist.
+   */
+  private static final String M3U_HEADER = "#EXTM3U";
+
+  /**
+   * Header of a PLS playlist.
+   */
+  private static final String PLS_HEADER = "[playlist]";
+
+  /**
+   * Prefix of the keys of the PLS file entries.
+   */
+  private static final String PLS_FILE_KEY = "File";
+
+  /**
+   * Prefix of the file URIs.
+   */
+  private static final String FILE_SCHEME = "file:";
+
+  /**
+   * Byte order mark, found at the start of some UTF-8 files.
+   */
+  private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+  /**
+   * Format of a playlist file.
+   */
+  public enum Format {
+    /**
+     * Plain or extended M3U playlist, in Latin-1.
+     */
+    M3U("m3u", StandardCharsets.ISO_8859_1),
+    /**
+     * Plain or extended M3U playlist, in UTF-8.
+     */
+    M3U8("m3u8", StandardCharsets.UTF_8),
+    /**
+     * PLS playlist, in UTF-8.
+     */
+    PLS("pls", StandardCharsets.UTF_8);
+
+    private final String extension;
+
+    private final Charset charset;
+
+    Format(final String extension, final Charset charset) {
+      this.extension = extension;
+      this.charset = charset;
+    }
+
+    /**
+     * Get the file extension of the format, without the leading dot.
+     *
+     * @return the file extension
+     */
+    public String getExtension() {
+      return extension;
+    }
+
+    /**
+     * Get the character set of the playlist files of this format.
+     *
+     * @return the character set
+     */
+    public Charset getCharset() {
+      return charset;
+    }
+
+    /**
+     * Get the format of a playlist file from its extension, ignoring case.
+     *
+     * @param file the playlist file
+     * @return the format of the playlist file
+     * @throws IllegalArgumentException if the extension is not a playlist extension
+     */
+    public static Format of(final Path file) {
+      Path fileName = file.getFileName();
+      String name = fileName == null ? "" : fileName.toString();
+      String extension = name.substring(name.lastIndexOf('.') + 1)
+          .toLowerCase(Locale.ROOT);
+      for (Format format : values()) {
+        if (format.extension.equals(extension)) {
+          return format;
+        }
+      }
+      throw new IllegalArgumentException("Unknown playlist format: " + file);
+    }
+  }
+
+  private PlaylistFile() {}
+
+  // #########################################################################
+  /**
+   * Read the entries of a playlist file, in batches of {@link #DEFAULT_BATCH_SIZE} entries.
+   *
+   * @param file the playlist file, whose extension gives its format
+   * @param consumer the consumer of the batches of entries, in reading order
+   * @return the number of entries read
+   * @throws IOException if the playlist file cannot be read
+   * @throws IllegalArgumentException if the extension is not a playlist extension
+   *
+   * @see #read(Path, Format, int, Consumer)
+   */
+  public static int read(final Path file,
+      final Consumer<? super List<Object>> consumer) throws IOException {
+    return read(file, Format.of(file), DEFAULT_BATCH_SIZE, consumer);
+  }
+
+  /**
+   * Read the entries of a playlist file, in batches.
+   *
+   * <p>
+   * Entries are read as song resources: file paths and {@code file:} URIs as {@link Path}, other
+   * URLs as {@link URL}. Entries which are not valid paths or URLs are skipped. Each batch is a new
+   * list, which the consumer may keep.
+   * </p>
+   *
+   * @param file the playlist file
+   * @param format the format of the playlist file
+   * @param batchSize the maximum number of entries of a batch
+   * @param consumer the consumer of the batches of entries, in reading order
+   * @return the number of entries read
+   * @throws IOException if the playlist file cannot be read
+   * @throws IllegalArgumentException if the batch size is not positive
+   */
+  public static int read(final Path file, final Format format,
+      final int batchSize, final Consumer<? super List<Object>> consumer)
+      throws IOException {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+    }
+    Path absoluteFile = file.toAbsolutePath().normalize();
+    Path directory = absoluteFile.getParent();
+    if (directory == null) {
+      directory = absoluteFile;
+    }
+
+    int count = 0;
+    int lineNumber = 0;
+    List<Object> batch = new ArrayList<>(batchSize);
+    try (BufferedReader reader =
+        Files.newBufferedReader(file, format.getCharset())) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (lineNumber++ == 0 && !line.isEmpty()
+            && line.charAt(0) == BYTE_ORDER_MARK) {
+          line = line.substring(1);
+        }
+        String entry = format == Format.PLS ? plsEntry(line) : m3uEntry(line);
+        if (entry == null) {
+          continue;
+        }
+        Object resource = resolve(directory, entry);
+        if (resource == null) {
+          LOGGER.log(Level.WARNING, "Invalid playlist entry at " + file + ":"
+              + lineNumber + ": " + entry);
+          continue;
+        }
+        batch.add(resource);
+        if (batch.size() == batchSize) {
+          consumer.accept(batch);
+          count += batch.size();
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      consumer.accept(batch);
+      count += batch.size();
+    }
+    return count;
+  }
+
+  /**
+   * Get the entry of a line of an M3U playlist.
+   *
+   * @param line the line
+   * @return the entry, {@code null} for blank lines and comments
+   */
+  private static String m3uEntry(final String line) {
+    String entry = line.trim();
+    if (entry.isEmpty() || entry.charAt(0) == '#') {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Get the file entry of a line of a PLS playlist, such as {@code File1=song.mid}.
+   *
+   * <p>
+   * Entries are taken in file order: the number of the key is ignored.
+   * </p>
+   *
+   * @param line the line
+   * @return the entry, {@code null} for other lines
+   */
+  private static String plsEntry(final String line) {
+    int separator = line.indexOf('=');
+    if (separator <= PLS_FILE_KEY.length() || !line.regionMatches(true, 0,
+        PLS_FILE_KEY, 0, PLS_FILE_KEY.length())) {
+      return null;
+    }
+    for (int i = PLS_FILE_KEY.length(); i < separator; i++) {
+      char c = line.charAt(i);
+      if (c < '0' || c > '9') {
+        return null;
+      }
+    }
+    String entry = line.substring(separator + 1).trim();
+    return entry.isEmpty() ? null : entry;
+  }
+
+  /**
+   * Resolve an entry of a playlist as a song resource.
+   *
+   * @param directory the absolute directory of the playlist file
+   * @param entry the entry
+   * @return the song resource, {@code null} if the entry is not a valid path or URL
+   */
+  private static Object resolve(final Path directory, final String entry) {
+    try {
+      if (entry.regionMatches(true, 0, FILE_SCHEME, 0, FILE_SCHEME.length())) {
+        return Paths.get(new URI(entry)).normalize();
+      } else if (hasScheme(entry)) {
+        return new URL(entry);
+      }
+      String location = entry;
+      if (File.separatorChar == '/' && location.indexOf('\\') >= 0) {
+        // Playlist written on Windows
+        location = location.replace('\\', '/');
+      }
+      Path path = directory.resolve(location);
+      return hasDotSegment(location) ? path.normalize() : path;
+    } catch (MalformedURLException | URISyntaxException
+        | IllegalArgumentException ex) {
+      LOGGER.log(Level.FINE, "Invalid playlist entry: " + entry, ex);
+      return null;
+    }
+  }
+
+  /**
+   * Check whether an entry starts with a URL scheme followed by {@code "://"}.
+   *
+   * <p>
+   * Schemes are at least 2 characters long, so that Windows drives are not taken for schemes.
+   * </p>
+   *
+   * @param entry the entry
+   * @return {@code true} if the entry is a URL
+   */
+  private static boolean hasScheme(final String entry) {
+    int end = entry.indexOf("://");
+    if (end < 2 || !Character.isLetter(entry.charAt(0))) {
+      return false;
+    }
+    for (int i = 1; i < end; i++) {
+      char c = entry.charAt(i);
+      if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether a location contains a {@code "."} or {@code ".."} segment.
+   *
+   * @param location the location, with {@code '/'} or platform separators
+   * @return {@code true} if the location must be normalized
+   */
+  private static boolean hasDotSegment(final String location) {
+    int start = 0;
+    int length = location.length();
+    while (start < length) {
+      int end = start;
+      while (end < length && !isSeparator(location.charAt(end))) {
+        end++;
+      }
+      int segmentLength = end - start;
+      if (segmentLength == 1 && location.charAt(start) == '.'
+          || segmentLength == 2 && location.charAt(start) == '.'
+              && location.charAt(start + 1) == '.') {
+        return true;
+      }
+      start = end + 1;
+    }
+    return false;
+  }
+
+  private static boolean isSeparator(final char c) {
+    return c == '/' || c == File.separatorChar;
+  }
+
+  // #########################################################################
+  /**
+   * Write song resources to a playlist file.
+   *
+   * @param file the playlist file, whose extension gives its format
+   * @param resources the song resources
+   * @return the number of entries written
+   * @throws IOException if the playlist file cannot be written
+   * @throws IllegalArgumentException if the extension is not a playlist extension
+   *
+   * @see #write(Path, Format, Collection)
+   */
+  public static int write(final Path file,
+      final Collection<? extends Object> resources) throws IOException {
+    return write(file, Format.of(file), resources);
+  }
+
+  /**
+   * Write song resources to a playlist file, replacing it if it exists.
+   *
+   * <p>
+   * Paths and files under the directory of the playlist file are written relative to it, other
+   * paths and files as absolute paths, and URLs as is. Locations which cannot be encoded in the
+   * character set of the format, such as non Latin-1 names in an M3U playlist, are written as
+   * ASCII {@code file:} URIs. Song resources without location, such as input streams, are skipped.
+   * </p>
+   *
+   * <p>
+   * The entries are written to a temporary file in the directory of the playlist file, which then
+   * atomically replaces the playlist file, if the file system supports it.
+   * </p>
+   *
+   * @param file the playlist file
+   * @param format the format of the playlist file
+   * @param resources the song resources
+   * @return the number of entries written
+   * @throws IOException if the playlist file cannot be written
+   */
+  public static int write(final Path file, final Format format,
+      final Collection<? extends Object> resources) throws IOException {
+    Path target = file.toAbsolutePath();
+    Path temporary = target.resolveSibling("." + target.getFileName() + "."
+        + Long.toHexString(System.nanoTime()) + ".tmp");
+    try {
+      int count = write(temporary, target.normalize().getParent(), format,
+          resources);
+      try {
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return count;
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /**
+   * Write song resources to a new file.
+   *
+   * @param file the new file
+   * @param directory the directory of the playlist file, {@code null} if none
+   * @param format the format of the playlist file
+   * @param resources the song resources
+   * @return the number of entries written
+   * @throws IOException if the file cannot be written
+   */
+  private static int write(final Path file, final Path directory,
+      final Format format, final Collection<? extends Object> resources)
+      throws IOException {
+    String prefix = null;
+    if (directory != null) {
+      prefix = directory.toString();
+      if (!prefix.endsWith(File.separator)) {
+        prefix += File.separator;
+      }
+    }
+    CharsetEncoder encoder = format.getCharset().newEncoder();
+
+    int count = 0;
+    try (BufferedWriter writer = Files.newBufferedWriter(file,
+        format.getCharset(), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE)) {
+      writer.write(format == Format.PLS ? PLS_HEADER : M3U_HEADER);
+      writer.newLine();
+      for (Object resource : resources) {
+        String entry = location(resource, prefix);
+        if (entry != null && !encoder.canEncode(entry)) {
+          entry = asciiLocation(resource);
+          if (entry == null) {
+            LOGGER.log(Level.WARNING, "Song location cannot be written in a "
+                + format + " playlist: " + resource);
+          }
+        }
+        if (entry == null) {
+          continue;
+        }
+        count++;
+        if (format == Format.PLS) {
+          writer.write(PLS_FILE_KEY);
+          writer.write(Integer.toString(count));
+          writer.write('=');
+        }
+        writer.write(entry);
+        writer.newLine();
+      }
+      if (format == Format.PLS) {
+        writer.write("NumberOfEntries=" + count);
+        writer.newLine();
+        writer.write("Version=2");
+        writer.newLine();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the location of a song resource, as written in a playlist file.
+   *
+   * @param resource the song resource
+   * @param prefix the directory of the playlist file, ending with a separator, {@code null} if
+   *        none
+   * @return the location of the song, {@code null} if it cannot be written
+   */
+  private static String location(final Object resource, final String prefix) {
+    String location;
+    if (resource instanceof URL) {
+      return ((URL) resource).toExternalForm();
+    } else if (resource instanceof Path) {
+      Path path = (Path) resource;
+      location = (path.isAbsolute() ? path : path.toAbsolutePath()).toString();
+    } else if (resource instanceof File) {
+      location = ((File) resource).getAbsolutePath();
+    } else {
+      return null;
+    }
+    if (location.indexOf('\n') >= 0 || location.indexOf('\r') >= 0) {
+      LOGGER.log(Level.WARNING,
+          "Song location cannot be written in a playlist: " + location);
+      return null;
+    }
+    if (prefix != null && location.length() > prefix.length()
+        && location.startsWith(prefix)) {
+      location = location.substring(prefix.length());
+      if (location.charAt(0) == '#') {
+        // Not to be read as a comment
+        location = "." + File.separator + location;
+      }
+    }
+    return location;
+  }
+
+  /**
+   * Get the location of a song resource as an ASCII URI, for playlists whose character set cannot
+   * encode its name.
+   *
+   * @param resource the song resource
+   * @return the ASCII URI of the song, {@code null} if it has none
+   */
+  private static String asciiLocation(final Object resource) {
+    if (resource instanceof URL) {
+      try {
+        return ((URL) resource).toURI().toASCIIString();
+      } catch (URISyntaxException ex) {
+        LOGGER.log(Level.FINE, "Invalid song URL: " + resource, ex);
+        return null;
+      }
+    } else if (resource instanceof Path) {
+      return ((Path) resource).toAbsolutePath().toUri().toASCIIString();
+    } else if (resource instanceof File) {
+      return ((File) resource).getAbsoluteFile().toURI().toASCIIString();
+    }
+    return null;
+  }
+
+}
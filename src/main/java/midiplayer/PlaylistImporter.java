@@ -0,0 +1,517 @@
+package midiplayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Imports large sets of MIDI files and directories into a playlist, in the background.
+ *
+ * <p>
+ * Directories are walked recursively, in name order. Files are checked in batches: each file of a
+ * batch is validated and its header sniffed in parallel on a fork/join pool, then the accepted
+ * files of the batch are handed over to the import listener, in walking order. Progress is reported
+ * after each batch and an import can be cancelled at any time.
+ * </p>
+ *
+ * <p>
+ * Listeners are notified from the import thread: listeners updating Swing components must forward
+ * their updates to the <i>Event Dispatch Thread</i>.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class PlaylistImporter {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(PlaylistImporter.class.getName());
+
+  /**
+   * Default number of files checked in a batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 512;
+
+  /**
+   * Header of a Standard MIDI File.
+   */
+  private static final byte[] MIDI_HEADER = {'M', 'T', 'h', 'd'};
+
+  /**
+   * Extensions of the files imported when walking directories.
+   */
+  private static final Set<String> MIDI_EXTENSIONS =
+      new HashSet<>(Arrays.asList("mid", "midi", "kar", "smf"));
+
+  /**
+   * Import thread counter.
+   */
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+  /**
+   * Reason why a file was rejected.
+   */
+  public enum Rejection {
+    /**
+     * No file exists at the given path.
+     */
+    NOT_FOUND,
+    /**
+     * The file cannot be read.
+     */
+    NOT_READABLE,
+    /**
+     * The file is not a Standard MIDI File.
+     */
+    NOT_MIDI
+  }
+
+  /**
+   * Listener of a playlist import.
+   */
+  @FunctionalInterface
+  public interface Listener {
+
+    /**
+     * Called when a batch of files has been accepted.
+     *
+     * @param task the import
+     * @param files the accepted files, in walking order
+     */
+    void filesAccepted(Import task, List<Path> files);
+
+    /**
+     * Called when a file or directory explicitly requested cannot be imported.
+     *
+     * <p>
+     * Files found while walking a directory are silently skipped.
+     * </p>
+     *
+     * @param task the import
+     * @param path the rejected path
+     * @param reason the reason of the rejection
+     */
+    default void fileRejected(Import task, Path path, Rejection reason) {}
+
+    /**
+     * Called after each batch of files has been checked.
+     *
+     * @param task the import
+     */
+    default void importProgress(Import task) {}
+
+    /**
+     * Called once the import is done, cancelled or not.
+     *
+     * @param task the import
+     */
+    default void importFinished(Import task) {}
+
+  }
+
+  /**
+   * A running import.
+   */
+  public final class Import implements Runnable {
+
+    private final List<Path> roots;
+
+    private final Listener listener;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile boolean cancelled = false;
+
+    private volatile int scannedCount = 0;
+
+    private volatile int acceptedCount = 0;
+
+    private volatile int rejectedCount = 0;
+
+    private Import(final List<Path> roots, final Listener listener) {
+      this.roots = roots;
+      this.listener = listener;
+    }
+
+    /**
+     * Cancel the import.
+     *
+     * <p>
+     * Files already handed over to listeners are not removed.
+     * </p>
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Was the import cancelled?
+     *
+     * @return {@code true} if the import was cancelled
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Is the import done?
+     *
+     * @return {@code true} if the import is done, cancelled or not
+     */
+    public boolean isDone() {
+      return done.getCount() == 0;
+    }
+
+    /**
+     * Wait until the import is done.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+      done.await();
+    }
+
+    /**
+     * Wait until the import is done, or the timeout elapses.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return {@code true} if the import is done
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean await(final long timeout, final TimeUnit unit)
+        throws InterruptedException {
+      return done.await(timeout, unit);
+    }
+
+    /**
+     * Get the number of files checked so far.
+     *
+     * @return the number of checked files
+     */
+    public int getScannedCount() {
+      return scannedCount;
+    }
+
+    /**
+     * Get the number of files accepted so far.
+     *
+     * @return the number of accepted files
+     */
+    public int getAcceptedCount() {
+      return acceptedCount;
+    }
+
+    /**
+     * Get the number of files rejected so far.
+     *
+     * @return the number of rejected files
+     */
+    public int getRejectedCount() {
+      return rejectedCount;
+    }
+
+    @Override
+    public void run() {
+      Set<Path> explicitPaths = new HashSet<>(roots);
+      List<Path> batch = new ArrayList<>(batchSize);
+      try {
+        for (Path root : roots) {
+          if (cancelled) {
+            break;
+          }
+          if (Files.isDirectory(root)) {
+            walk(root, batch, explicitPaths);
+          } else {
+            add(root, batch, explicitPaths);
+          }
+        }
+        if (!cancelled && !batch.isEmpty()) {
+          check(batch, explicitPaths);
+        }
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.SEVERE, "Playlist import failed", ex);
+      } finally {
+        imports.remove(this);
+        done.countDown();
+        fireImportFinished(this);
+      }
+    }
+
+    private void walk(final Path directory, final List<Path> batch,
+        final Set<Path> explicitPaths) {
+      List<Path> children = new ArrayList<>();
+      try (DirectoryStream<Path> stream =
+          Files.newDirectoryStream(directory)) {
+        for (Path child : stream) {
+          children.add(child);
+        }
+      } catch (IOException ex) {
+        LOGGER.log(Level.WARNING, "Impossible to list directory " + directory,
+            ex);
+        if (explicitPaths.contains(directory)) {
+          rejectedCount++;
+          fireFileRejected(this, directory, Rejection.NOT_READABLE);
+        }
+        return;
+      }
+      Collections.sort(children);
+      for (Path child : children) {
+        if (cancelled) {
+          return;
+        }
+        if (child.getFileName().toString().startsWith(".")) {
+          // Skip hidden files
+          continue;
+        }
+        if (Files.isDirectory(child)) {
+          walk(child, batch, explicitPaths);
+        } else if (hasMidiExtension(child)) {
+          add(child, batch, explicitPaths);
+        }
+      }
+    }
+
+    private void add(final Path path, final List<Path> batch,
+        final Set<Path> explicitPaths) {
+      batch.add(path);
+      if (batch.size() >= batchSize) {
+        check(batch, explicitPaths);
+        batch.clear();
+      }
+    }
+
+    private void check(final List<Path> batch, final Set<Path> explicitPaths) {
+      List<Rejection> results = pool.submit(() -> batch.parallelStream()
+          .map(PlaylistImporter::check).collect(Collectors.toList())).join();
+      if (cancelled) {
+        return;
+      }
+      List<Path> accepted = new ArrayList<>(batch.size());
+      for (int i = 0, n = batch.size(); i < n; i++) {
+        Path path = batch.get(i);
+        Rejection rejection = results.get(i);
+        if (rejection == null) {
+          accepted.add(path);
+        } else {
+          rejectedCount++;
+          if (explicitPaths.contains(path)) {
+            fireFileRejected(this, path, rejection);
+          }
+        }
+      }
+      scannedCount += batch.size();
+      acceptedCount += accepted.size();
+      if (!accepted.isEmpty()) {
+        listener.filesAccepted(this, Collections.unmodifiableList(accepted));
+      }
+      fireImportProgress(this);
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * Check if a file can be imported in a playlist.
+   *
+   * @param path the file path
+   * @return the reason why the file cannot be imported, {@code null} if the file is a readable
+   *         Standard MIDI File
+   */
+  public static Rejection check(final Path path) {
+    if (!Files.isReadable(path)) {
+      return Files.exists(path) ? Rejection.NOT_READABLE : Rejection.NOT_FOUND;
+    }
+    ByteBuffer header = ByteBuffer.allocate(MIDI_HEADER.length);
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ)) {
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // Read until the header is complete or the end of file is reached
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, "Impossible to read " + path, ex);
+      return Rejection.NOT_READABLE;
+    }
+    return Arrays.equals(MIDI_HEADER, header.array()) ? null
+        : Rejection.NOT_MIDI;
+  }
+
+  /**
+   * Has the file a MIDI file extension?
+   *
+   * @param path the file path
+   * @return {@code true} if the file extension is one of a MIDI file
+   */
+  private static boolean hasMidiExtension(final Path path) {
+    String fileName = path.getFileName().toString();
+    int dot = fileName.lastIndexOf('.');
+    return dot >= 0 && MIDI_EXTENSIONS
+        .contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+
+  // #########################################################################
+  /**
+   * The pool checking files.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Number of files checked in a batch.
+   */
+  private final int batchSize;
+
+  /**
+   * Listeners notified of the progress of all imports.
+   */
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Imports in progress.
+   */
+  private final List<Import> imports = new CopyOnWriteArrayList<>();
+
+  /**
+   * Constructs an importer checking files on the common fork/join pool.
+   */
+  public PlaylistImporter() {
+    this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an importer.
+   *
+   * @param pool the pool checking files
+   * @param batchSize the number of files checked in a batch
+   * @throws IllegalArgumentException if {@code pool} is {@code null} or {@code batchSize} is not
+   *         positive
+   */
+  public PlaylistImporter(final ForkJoinPool pool, final int batchSize) {
+    if (pool == null) {
+      throw new IllegalArgumentException("Pool cannot be null");
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException(
+          "Batch size must be positive: " + batchSize);
+    }
+    this.pool = pool;
+    this.batchSize = batchSize;
+  }
+
+  // #########################################################################
+  /**
+   * Add a listener notified of the progress of all imports.
+   *
+   * <p>
+   * Accepted files are only handed over to the listener of each import.
+   * </p>
+   *
+   * @param listener the listener to add
+   */
+  public void addListener(final Listener listener) {
+    if (listener != null) {
+      listeners.add(listener);
+    }
+  }
+
+  /**
+   * Remove a listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeListener(final Listener listener) {
+    listeners.remove(listener);
+  }
+
+  private void fireFileRejected(final Import task, final Path path,
+      final Rejection reason) {
+    task.listener.fileRejected(task, path, reason);
+    for (Listener l : listeners) {
+      l.fileRejected(task, path, reason);
+    }
+  }
+
+  private void fireImportProgress(final Import task) {
+    task.listener.importProgress(task);
+    for (Listener l : listeners) {
+      l.importProgress(task);
+    }
+  }
+
+  private void fireImportFinished(final Import task) {
+    task.listener.importFinished(task);
+    for (Listener l : listeners) {
+      l.importFinished(task);
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Start importing files and directories in the background.
+   *
+   * @param paths the files and directories to import
+   * @param listener the listener receiving accepted files
+   * @return the started import
+   * @throws IllegalArgumentException if {@code listener} is {@code null}
+   */
+  public Import start(final Collection<Path> paths, final Listener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener cannot be null");
+    }
+    Import task = new Import(paths == null ? Collections.emptyList()
+        : new ArrayList<>(paths), listener);
+    imports.add(task);
+    Thread thread = new Thread(task,
+        "MidiPlayerImport-" + THREAD_NUMBER.getAndIncrement());
+    thread.setDaemon(true);
+    thread.start();
+    return task;
+  }
+
+  /**
+   * Is an import in progress?
+   *
+   * @return {@code true} if at least one import is in progress
+   */
+  public boolean isImporting() {
+    return !imports.isEmpty();
+  }
+
+  /**
+   * Cancel all imports in progress.
+   *
+   * @return the number of cancelled imports
+   */
+  public int cancelAll() {
+    int cancelled = 0;
+    for (Import task : imports) {
+      if (!task.isCancelled()) {
+        task.cancel();
+        cancelled++;
+      }
+    }
+    return cancelled;
+  }
+
+}
@@ -0,0 +1,266 @@
+package midiplayer;
+
+/**
+ * A pseudo-random playing order of the playlist, computed on demand.
+ *
+ * <p>
+ * The order is a permutation of the playlist indexes which is never stored: the song played at
+ * each position, and the position of each song, are computed in constant time and memory by a
+ * keyed bijection. It is a small Feistel network over the smallest power of 4 holding all the
+ * indexes, whose results outside of the playlist are encrypted again until they fall inside
+ * ("cycle walking").
+ * </p>
+ *
+ * <p>
+ * The same seed always gives the same order. Each pass over the playlist has its own order, so
+ * that the playlist is shuffled again when it loops, and a pass may start at any song of the
+ * permutation: every song is played once before the pass ends.
+ * </p>
+ *
+ * @see MidiPlayer#setShuffling(boolean, long)
+ *
+ * @author Mathieu Brunot
+ */
+public final class ShuffleOrder {
+
+  /**
+   * Number of rounds of the Feistel network.
+   */
+  private static final int ROUNDS = 4;
+
+  /**
+   * Increment of the SplitMix64 generator, used to derive the round keys.
+   */
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private final int size;
+
+  private final long seed;
+
+  private final long pass;
+
+  /**
+   * Position in the permutation of the first song of the pass.
+   */
+  private final int start;
+
+  /**
+   * Number of bits of each half of the Feistel network.
+   */
+  private final int halfBits;
+
+  private final long halfMask;
+
+  private final long[] keys = new long[ROUNDS];
+
+  private ShuffleOrder(final int size, final long seed, final long pass,
+      final int start) {
+    this.size = size;
+    this.seed = seed;
+    this.pass = pass;
+    int bits = 1;
+    while (1L << 2 * bits < size) {
+      bits++;
+    }
+    this.halfBits = bits;
+    this.halfMask = (1L << bits) - 1;
+    for (int i = 0; i < ROUNDS; i++) {
+      keys[i] = mix(seed + (pass * ROUNDS + i + 1) * GOLDEN_GAMMA);
+    }
+    this.start = start;
+  }
+
+  /**
+   * Create the order of the first pass over a playlist, starting at a song.
+   *
+   * @param size the size of the playlist
+   * @param seed the seed of the order
+   * @param first the index of the first song of the pass, {@code -1} to start at the first song of
+   *        the permutation
+   * @return the order of the first pass
+   * @throws IllegalArgumentException if {@code size} is negative or {@code first} is not a playlist
+   *         index
+   */
+  public static ShuffleOrder of(final int size, final long seed,
+      final int first) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Invalid size: " + size);
+    }
+    if (first < -1 || first >= size) {
+      throw new IllegalArgumentException(
+          "Invalid first index: " + first + ", Size: " + size);
+    }
+    ShuffleOrder order = new ShuffleOrder(size, seed, 0, 0);
+    return first < 0 ? order : order.startingAt(first);
+  }
+
+  /**
+   * Get the order of the next pass over the playlist, shuffled again.
+   *
+   * @return the order of the next pass
+   */
+  public ShuffleOrder nextPass() {
+    return new ShuffleOrder(size, seed, pass + 1, 0);
+  }
+
+  /**
+   * Get this order for a playlist of another size, starting the pass at a song.
+   *
+   * <p>
+   * The songs already played in the pass may be played again: the permutation of another size is
+   * not related to this one.
+   * </p>
+   *
+   * @param newSize the new size of the playlist
+   * @param first the index of the first song of the pass, {@code -1} to start at the first song of
+   *        the permutation
+   * @return the order for the new playlist size
+   */
+  public ShuffleOrder resize(final int newSize, final int first) {
+    ShuffleOrder order = new ShuffleOrder(newSize, seed, pass, 0);
+    return first < 0 ? order : order.startingAt(first);
+  }
+
+  /**
+   * Get this order, with the pass starting at a song.
+   *
+   * @param first the index of the first song of the pass
+   * @return the order starting at the song
+   */
+  public ShuffleOrder startingAt(final int first) {
+    checkIndex(first);
+    return new ShuffleOrder(size, seed, pass, permutationPosition(first));
+  }
+
+  // #########################################################################
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /**
+   * The SplitMix64 finalizer: a fast bijective hash of 64 bits.
+   *
+   * @param value the value to hash
+   * @return the hashed value
+   */
+  private static long mix(final long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private long encrypt(final long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+    for (int i = 0; i < ROUNDS; i++) {
+      long next = left ^ (mix(right ^ keys[i]) & halfMask);
+      left = right;
+      right = next;
+    }
+    return left << halfBits | right;
+  }
+
+  private long decrypt(final long value) {
+    long left = value >>> halfBits;
+    long right = value & halfMask;
+    for (int i = ROUNDS - 1; i >= 0; i--) {
+      long previous = right ^ (mix(left ^ keys[i]) & halfMask);
+      right = left;
+      left = previous;
+    }
+    return left << halfBits | right;
+  }
+
+  /**
+   * Get the song at a position of the permutation, ignoring the start of the pass.
+   */
+  private int permutationIndex(final int position) {
+    long value = encrypt(position);
+    // The domain holds less than 4 times the size: few walks are needed
+    while (value >= size) {
+      value = encrypt(value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Get the position of a song in the permutation, ignoring the start of the pass.
+   */
+  private int permutationPosition(final int index) {
+    long value = decrypt(index);
+    while (value >= size) {
+      value = decrypt(value);
+    }
+    return (int) value;
+  }
+
+  // #########################################################################
+  /**
+   * Get the index of the song played at a position of the pass.
+   *
+   * @param position the position in the pass, from {@code 0} to the size of the playlist
+   *        (exclusive)
+   * @return the playlist index of the song
+   * @throws IndexOutOfBoundsException if {@code position} is out of range
+   */
+  public int get(final int position) {
+    checkIndex(position);
+    if (size == 1) {
+      return 0;
+    }
+    return permutationIndex((int) (((long) start + position) % size));
+  }
+
+  /**
+   * Get the position in the pass of a song.
+   *
+   * @param index the playlist index of the song
+   * @return the position of the song in the pass
+   * @throws IndexOutOfBoundsException if {@code index} is out of range
+   */
+  public int positionOf(final int index) {
+    checkIndex(index);
+    if (size == 1) {
+      return 0;
+    }
+    return (int) (((long) permutationPosition(index) - start + size) % size);
+  }
+
+  /**
+   * Get the size of the playlist the order was computed for.
+   *
+   * @return the size of the playlist
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the seed of the order.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the number of passes over the playlist before this one.
+   *
+   * @return the pass number, {@code 0} for the first pass
+   */
+  public long getPass() {
+    return pass;
+  }
+
+  @Override
+  public String toString() {
+    return "ShuffleOrder [size=" + size + ", seed=" + seed + ", pass=" + pass
+        + ", start=" + start + "]";
+  }
+
+}
@@ -0,0 +1,287 @@
+package midiplayer;
+
+import java.io.File;
+
+import midiplayer.sequence.SongMetadata;
+
+/**
+ * Key by which the playlist is sorted.
+ *
+ * <p>
+ * The key of each song is computed once before sorting, as a compact entry made of a numeric rank
+ * and a collation key. Collation keys are compared as plain strings: they ignore case, and digit
+ * sequences are ordered by their numeric value, so that {@code "Song 2.mid"} comes before
+ * {@code "Song 10.mid"}.
+ * </p>
+ *
+ * <p>
+ * Songs with equal keys keep their order in the playlist.
+ * </p>
+ *
+ * @see MidiPlayer#sortPlaylist(SortKey)
+ *
+ * @author Mathieu Brunot
+ */
+public enum SortKey {
+
+  /**
+   * Sort by file name.
+   */
+  FILE_NAME("name") {
+    @Override
+    Entry entry(final Object resource, final SongMetadata metadata,
+        final int index) {
+      return new Entry(0, fileNameKey(resource), index);
+    }
+  },
+
+  /**
+   * Sort by directory, then by file name.
+   */
+  DIRECTORY("directory") {
+    @Override
+    Entry entry(final Object resource, final SongMetadata metadata,
+        final int index) {
+      return new Entry(0, directoryKey(resource), index);
+    }
+  },
+
+  /**
+   * Sort by duration, then by file name. Songs of unknown duration are sorted last.
+   */
+  DURATION("duration") {
+    @Override
+    Entry entry(final Object resource, final SongMetadata metadata,
+        final int index) {
+      long duration = metadata == null ? Long.MAX_VALUE
+          : metadata.getMicrosecondLength();
+      return new Entry(duration, fileNameKey(resource), index);
+    }
+  },
+
+  /**
+   * Sort by title, or by file name for songs without title.
+   */
+  TITLE("title") {
+    @Override
+    Entry entry(final Object resource, final SongMetadata metadata,
+        final int index) {
+      String title = metadata == null ? null : metadata.getTitle();
+      if (title == null || title.trim().isEmpty()) {
+        return new Entry(0, fileNameKey(resource), index);
+      }
+      return new Entry(0, naturalKey(title.trim()), index);
+    }
+  };
+
+  /**
+   * Separator of the parts of a collation key, lower than any other character of the key.
+   */
+  private static final char SEPARATOR = '\0';
+
+  /**
+   * Name of the key, as given to the sort commands.
+   */
+  private final String name;
+
+  SortKey(final String name) {
+    this.name = name;
+  }
+
+  // #########################################################################
+  /**
+   * Sort entry of a song: its key and its index in the playlist.
+   */
+  static final class Entry implements Comparable<Entry> {
+
+    private final long rank;
+
+    /**
+     * The first 4 characters of the collation key, so that most comparisons do not read the key.
+     */
+    private final long prefix;
+
+    private final String collationKey;
+
+    private final int index;
+
+    Entry(final long rank, final String collationKey, final int index) {
+      this.rank = rank;
+      this.collationKey = collationKey;
+      this.index = index;
+      long packed = 0;
+      for (int i = 0; i < Long.BYTES / Character.BYTES; i++) {
+        packed = packed << Character.SIZE
+            | (i < collationKey.length() ? collationKey.charAt(i) : 0);
+      }
+      this.prefix = packed;
+    }
+
+    /**
+     * Get the index of the song in the playlist before sorting.
+     *
+     * @return the index of the song
+     */
+    int getIndex() {
+      return index;
+    }
+
+    @Override
+    public int compareTo(final Entry other) {
+      int comparison = Long.compare(rank, other.rank);
+      if (comparison == 0) {
+        comparison = Long.compareUnsigned(prefix, other.prefix);
+      }
+      if (comparison == 0) {
+        comparison = collationKey.compareTo(other.collationKey);
+      }
+      if (comparison == 0) {
+        comparison = Integer.compare(index, other.index);
+      }
+      return comparison;
+    }
+
+  }
+
+  /**
+   * Compute the sort entry of a song.
+   *
+   * @param resource the song resource
+   * @param metadata the song metadata, {@code null} if unknown
+   * @param index the index of the song in the playlist
+   * @return the sort entry of the song
+   */
+  abstract Entry entry(Object resource, SongMetadata metadata, int index);
+
+  /**
+   * Compute the sort entry of a song, which may be {@code null}.
+   *
+   * @param resource the song resource, {@code null} songs are sorted last
+   * @param metadata the song metadata, {@code null} if unknown
+   * @param index the index of the song in the playlist
+   * @return the sort entry of the song
+   */
+  final Entry entryOf(final Object resource, final SongMetadata metadata,
+      final int index) {
+    if (resource == null) {
+      return new Entry(Long.MAX_VALUE, String.valueOf(Character.MAX_VALUE),
+          index);
+    }
+    return entry(resource, metadata, index);
+  }
+
+  // #########################################################################
+  /**
+   * Get the name of the key, as given to the sort commands.
+   *
+   * @return the name of the key
+   */
+  public final String getName() {
+    return name;
+  }
+
+  /**
+   * Get a sort key from its name or its constant name, ignoring case.
+   *
+   * @param name the name of the key
+   * @return the sort key
+   * @throws IllegalArgumentException if no sort key has this name
+   */
+  public static SortKey forName(final String name) {
+    for (SortKey sortKey : values()) {
+      if (sortKey.name.equalsIgnoreCase(name)
+          || sortKey.name().equalsIgnoreCase(name)) {
+        return sortKey;
+      }
+    }
+    throw new IllegalArgumentException("Unknown sort key: " + name);
+  }
+
+  /**
+   * Compute the collation key of a text.
+   *
+   * <p>
+   * Letters are lower cased, and each digit sequence is replaced by its number of significant
+   * digits followed by these digits: comparing two keys as strings orders the texts without case
+   * and by the numeric value of their digit sequences.
+   * </p>
+   *
+   * @param text the text
+   * @return the collation key of the text
+   */
+  public static String naturalKey(final String text) {
+    return naturalKey(text, 0, -1);
+  }
+
+  /**
+   * Compute the collation key of a part of a text.
+   *
+   * @param text the text
+   * @param start the start index of the part of the text
+   * @param separator the index of a character replaced by the {@link #SEPARATOR}, {@code -1} if
+   *        none
+   * @return the collation key of the part of the text
+   */
+  private static String naturalKey(final String text, final int start,
+      final int separator) {
+    int length = text.length();
+    // A digit sequence takes at most 3 times its length: "1" is "0", 1, "1"
+    char[] key = new char[3 * (length - start)];
+    int k = 0;
+    int i = start;
+    while (i < length) {
+      char c = text.charAt(i);
+      if (i == separator) {
+        key[k++] = SEPARATOR;
+        i++;
+        continue;
+      } else if (c < '0' || c > '9') {
+        key[k++] = Character.toLowerCase(c);
+        i++;
+        continue;
+      }
+      int first = i;
+      while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+        i++;
+      }
+      // Leading zeros are not significant, but a zero is kept for "0"
+      while (first < i - 1 && text.charAt(first) == '0') {
+        first++;
+      }
+      // The digit count is never the separator: it is at least 1
+      key[k++] = '0';
+      key[k++] = (char) (i - first);
+      while (first < i) {
+        key[k++] = text.charAt(first++);
+      }
+    }
+    return new String(key, 0, k);
+  }
+
+  /**
+   * Get the index of the last name separator of a location.
+   *
+   * @param location the location of a song resource
+   * @return the index of the last separator, {@code -1} if none
+   */
+  private static int lastSeparator(final String location) {
+    return Math.max(location.lastIndexOf('/'),
+        location.lastIndexOf(File.separatorChar));
+  }
+
+  private static String fileNameKey(final Object resource) {
+    // Paths cache their string: no file name path is created
+    String location = resource.toString();
+    return naturalKey(location, lastSeparator(location) + 1, -1);
+  }
+
+  private static String directoryKey(final Object resource) {
+    String location = resource.toString();
+    int separator = lastSeparator(location);
+    if (separator < 0) {
+      return SEPARATOR + naturalKey(location);
+    }
+    return naturalKey(location, 0, separator);
+  }
+
+}
@@ -0,0 +1,990 @@
+package midiplayer.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import midiplayer.MidiPlayer;
+import midiplayer.SortKey;
+
+/**
+ * Local control server of a headless MIDI player.
+ *
+ * <p>
+ * Clients connect to a TCP socket bound to the loopback interface and send one command per line,
+ * such as {@code playSong 3} or {@code next}. The server answers each command with zero or more
+ * data lines, followed by a status line starting with {@code OK} or {@code ERR}.
+ * </p>
+ *
+ * <p>
+ * A single thread serves all clients with a NIO selector. Commands are executed on this thread as
+ * soon as their line is read: control methods of the MIDI player do not block, so many clients can
+ * be served with a latency well below a millisecond. Commands which may block, such as reading a
+ * playlist file or listing a million songs, are executed on a worker thread: their answer is posted
+ * back to the selector, and the lines of their client are not read until it is sent, so that
+ * answers keep the order of the commands.
+ * </p>
+ *
+ * <p>
+ * Any local user can connect to the loopback interface: when the server starts, it writes a random
+ * token to a file only readable by its owner, and a client must send this token as its first line
+ * before any command. The connection is closed otherwise.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class ControlServer implements AutoCloseable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ControlServer.class.getName());
+
+  /**
+   * Default TCP port of the control server.
+   */
+  public static final int DEFAULT_PORT = 7781;
+
+  /**
+   * Maximum length of a command line, in bytes.
+   */
+  private static final int MAX_LINE_LENGTH = 8192;
+
+  /**
+   * Size of the read buffer of each client, in bytes.
+   */
+  private static final int READ_BUFFER_SIZE = 1024;
+
+  /**
+   * Status of a successful command.
+   */
+  private static final String OK = "OK";
+
+  /**
+   * Status of a failed command.
+   */
+  private static final String ERROR = "ERR";
+
+  /**
+   * Size of the authentication token, in bytes.
+   */
+  private static final int TOKEN_SIZE = 16;
+
+  /**
+   * Get the default token file of a control server, in the application directory of the user's
+   * home.
+   *
+   * @param port the TCP port of the control server
+   * @return the default token file
+   */
+  public static Path getDefaultTokenFile(final int port) {
+    return Paths.get(System.getProperty("user.home"), ".midiplayer",
+        "control-" + port + ".token");
+  }
+
+  // #########################################################################
+  /**
+   * A command of the control protocol.
+   */
+  @FunctionalInterface
+  public interface Command {
+
+    /**
+     * Execute the command.
+     *
+     * @param player the MIDI player to control
+     * @param args the command arguments, without the command name
+     * @param output the data lines to send before the status line
+     * @return the message of the status line, {@code null} for none
+     * @throws IllegalArgumentException if the arguments are invalid
+     * @throws IllegalStateException if the command cannot be executed
+     */
+    String execute(MidiPlayer player, List<String> args, List<String> output);
+
+  }
+
+  /**
+   * Connection state of a client.
+   */
+  private static final class Client {
+
+    private final ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private final ByteBuffer line = ByteBuffer.allocate(MAX_LINE_LENGTH);
+
+    private final Queue<ByteBuffer> output = new ArrayDeque<>();
+
+    private boolean lineTooLong = false;
+
+    private boolean closing = false;
+
+    /**
+     * Is a command of this client executed by the worker?
+     */
+    private boolean busy = false;
+
+    /**
+     * Did the client send the token?
+     */
+    private boolean authenticated = false;
+
+  }
+
+  // #########################################################################
+  /**
+   * The MIDI player to control.
+   */
+  private final MidiPlayer player;
+
+  /**
+   * The address the server listens to.
+   */
+  private final InetSocketAddress address;
+
+  /**
+   * The file the authentication token is written to.
+   */
+  private final Path tokenFile;
+
+  /**
+   * The authentication token, generated when the server starts.
+   */
+  private String token;
+
+  /**
+   * The commands of the protocol, by lower case name.
+   */
+  private final Map<String, Command> commands = new LinkedHashMap<>();
+
+  /**
+   * The names of the commands, as registered.
+   */
+  private final List<String> commandNames = new ArrayList<>();
+
+  /**
+   * The commands executed by the worker thread.
+   */
+  private final Set<Command> blockingCommands =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Answers of the worker thread, to be sent by the selector thread.
+   */
+  private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+  private ExecutorService worker;
+
+  private Selector selector;
+
+  private ServerSocketChannel serverChannel;
+
+  private Thread thread;
+
+  private volatile boolean running = false;
+
+  /**
+   * Constructs a control server listening on the default port of the loopback interface.
+   *
+   * @param player the MIDI player to control
+   */
+  public ControlServer(final MidiPlayer player) {
+    this(player, new InetSocketAddress(InetAddress.getLoopbackAddress(),
+        DEFAULT_PORT));
+  }
+
+  /**
+   * Constructs a control server writing its token to the default token file of its port.
+   *
+   * @param player the MIDI player to control
+   * @param address the address to listen to, port {@code 0} for any free port
+   * @throws IllegalArgumentException if the player or the address is {@code null}
+   * @see #getDefaultTokenFile(int)
+   */
+  public ControlServer(final MidiPlayer player,
+      final InetSocketAddress address) {
+    this(player, address,
+        address == null ? null : getDefaultTokenFile(address.getPort()));
+  }
+
+  /**
+   * Constructs a control server.
+   *
+   * @param player the MIDI player to control
+   * @param address the address to listen to, port {@code 0} for any free port
+   * @param tokenFile the file to write the authentication token to
+   * @throws IllegalArgumentException if the player, the address or the token file is {@code null}
+   */
+  public ControlServer(final MidiPlayer player,
+      final InetSocketAddress address, final Path tokenFile) {
+    if (player == null || address == null || tokenFile == null) {
+      throw new IllegalArgumentException(
+          "MIDI player, address and token file cannot be null");
+    }
+    this.player = player;
+    this.address = address;
+    this.tokenFile = tokenFile;
+    registerDefaultCommands();
+  }
+
+  // #########################################################################
+  /**
+   * Register a command of the protocol.
+   *
+   * <p>
+   * Commands must be registered before the server starts. Names are not case sensitive.
+   * </p>
+   *
+   * @param command the command
+   * @param names the names of the command
+   */
+  public final synchronized void register(final Command command,
+      final String... names) {
+    for (String name : names) {
+      if (commands.put(name.toLowerCase(Locale.ROOT), command) == null) {
+        commandNames.add(name);
+      }
+    }
+  }
+
+  /**
+   * Register a command of the protocol which may block, such as a command reading or writing
+   * files. It is executed on a worker thread, so that other clients are still served meanwhile.
+   *
+   * @param command the command
+   * @param names the names of the command
+   * @see #register(Command, String...)
+   */
+  public final synchronized void registerBlocking(final Command command,
+      final String... names) {
+    register(command, names);
+    blockingCommands.add(command);
+  }
+
+  private void registerDefaultCommands() {
+    register((p, args, out) -> {
+      boolean started;
+      if (args.isEmpty()) {
+        started = p.startPlaying();
+      } else {
+        String arg = args.get(0);
+        try {
+          started = p.startPlaying(Integer.parseInt(arg));
+        } catch (NumberFormatException ex) {
+          started = p.startPlaying(
+              (Object) Paths.get(arg).toAbsolutePath().normalize());
+        }
+      }
+      return check(started, "Nothing to play");
+    }, "playSong", "play");
+    register((p, args, out) -> check(p.pausePlaying(), "Nothing to pause"),
+        "pauseSong", "pause");
+    register((p, args, out) -> check(p.stopPlaying(), "Nothing to stop"),
+        "stopSong", "stop");
+    register((p, args, out) -> check(p.moveToNextSong(), "No next song"),
+        "nextSong", "next");
+    register(
+        (p, args, out) -> check(p.moveToPreviousSong(), "No previous song"),
+        "previousSong", "previous");
+    register(this::load, "loadMidiFile", "load", "add");
+    register(this::remove, "removeSong", "remove");
+    registerBlocking(this::loadPlaylist, "loadPlaylist");
+    registerBlocking(this::savePlaylist, "savePlaylist");
+    register((p, args, out) -> check(p.clear(), "Nothing to clear"),
+        "clearPlaylist", "clear");
+    register((p, args, out) -> check(p.shufflePlaylist(), "Nothing to shuffle"),
+        "shufflePlaylist", "shuffle");
+    registerBlocking((p, args, out) -> check(
+        args.isEmpty() ? p.sortPlaylist()
+            : p.sortPlaylist(SortKey.forName(args.get(0))),
+        "Nothing to sort"), "sortPlaylist", "sort");
+    register((p, args, out) -> {
+      p.setLooping(args.isEmpty() ? !p.isLooping() : parseSwitch(args.get(0)));
+      return "loop " + p.isLooping();
+    }, "loopSong", "loop");
+    register((p, args, out) -> {
+      p.setGapless(args.isEmpty() ? !p.isGapless() : parseSwitch(args.get(0)));
+      return "gapless " + p.isGapless();
+    }, "gapless");
+    register((p, args, out) -> {
+      if (args.size() > 1) {
+        p.setShuffling(parseSwitch(args.get(0)), parseSeed(args.get(1)));
+      } else {
+        p.setShuffling(
+            args.isEmpty() ? !p.isShuffling() : parseSwitch(args.get(0)));
+      }
+      return "random " + p.isShuffling();
+    }, "shuffleMode", "random");
+    register(this::status, "status");
+    registerBlocking(this::list, "listPlaylist", "list");
+    register((p, args, out) -> {
+      out.addAll(getCommandNames());
+      out.add("quit");
+      out.add("shutdown");
+      return null;
+    }, "help");
+  }
+
+  private static String check(final boolean done, final String failure) {
+    if (!done) {
+      throw new IllegalStateException(failure);
+    }
+    return null;
+  }
+
+  private static boolean parseSwitch(final String arg) {
+    switch (arg.toLowerCase(Locale.ROOT)) {
+      case "on":
+      case "true":
+      case "1":
+        return true;
+      case "off":
+      case "false":
+      case "0":
+        return false;
+      default:
+        throw new IllegalArgumentException("Expected on or off: " + arg);
+    }
+  }
+
+  private static long parseSeed(final String arg) {
+    try {
+      return Long.parseLong(arg);
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid seed: " + arg);
+    }
+  }
+
+  private String load(final MidiPlayer p, final List<String> args,
+      final List<String> out) {
+    if (args.isEmpty()) {
+      throw new IllegalArgumentException("No file to load");
+    }
+    List<Path> paths = new ArrayList<>(args.size());
+    for (String arg : args) {
+      paths.add(Paths.get(arg).toAbsolutePath().normalize());
+    }
+    // Files are checked and added in the background
+    p.getPlaylistImporter().start(paths, (task, files) -> p.addAll(files));
+    return "importing " + paths.size();
+  }
+
+  private String loadPlaylist(final MidiPlayer p, final List<String> args,
+      final List<String> out) {
+    if (args.isEmpty()) {
+      throw new IllegalArgumentException("No playlist file to load");
+    }
+    Path file = Paths.get(args.get(0));
+    try {
+      return "loaded " + p.loadPlaylist(file);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Cannot read playlist file: " + file, ex);
+      throw new IllegalStateException("Cannot read playlist file: " + file);
+    }
+  }
+
+  private String savePlaylist(final MidiPlayer p, final List<String> args,
+      final List<String> out) {
+    if (args.isEmpty()) {
+      throw new IllegalArgumentException("No playlist file to save");
+    }
+    Path file = Paths.get(args.get(0));
+    try {
+      return "saved " + p.savePlaylist(file);
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Cannot write playlist file: " + file, ex);
+      throw new IllegalStateException("Cannot write playlist file: " + file);
+    }
+  }
+
+  private String remove(final MidiPlayer p, final List<String> args,
+      final List<String> out) {
+    if (args.isEmpty()) {
+      throw new IllegalArgumentException("No index to remove");
+    }
+    int[] indexes = new int[args.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      try {
+        indexes[i] = Integer.parseInt(args.get(i));
+      } catch (NumberFormatException ex) {
+        throw new IllegalArgumentException("Invalid index: " + args.get(i));
+      }
+    }
+    return check(p.removeAll(indexes), "Invalid index");
+  }
+
+  private String status(final MidiPlayer p, final List<String> args,
+      final List<String> out) {
+    String song = p.getCurrentSongInfo();
+    return String.format("%s %d/%d%s", p.getState(), p.getCurrentSongIndex(),
+        p.size(), song == null ? "" : " " + song);
+  }
+
+  private String list(final MidiPlayer p, final List<String> args,
+      final List<String> out) {
+    // Snapshot of the playlist, which other clients may modify meanwhile
+    Object[] playlist = p.getPlaylist().toArray();
+    for (int i = 0; i < playlist.length; i++) {
+      out.add(i + " " + MidiPlayer.getSongInfo(playlist[i], -1));
+    }
+    return String.valueOf(playlist.length);
+  }
+
+  /**
+   * Get the names of the commands of the protocol.
+   *
+   * @return the command names
+   */
+  public final synchronized List<String> getCommandNames() {
+    return Collections.unmodifiableList(new ArrayList<>(commandNames));
+  }
+
+  // #########################################################################
+  /**
+   * Bind the server socket, write the authentication token and start serving clients.
+   *
+   * @throws IOException if the server socket cannot be bound, or the token file cannot be written
+   * @throws IllegalStateException if the server is already started
+   */
+  public synchronized void start() throws IOException {
+    if (thread != null) {
+      throw new IllegalStateException("Control server already started");
+    }
+    token = createToken();
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      serverChannel.bind(address);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+      writeToken();
+    } catch (IOException ex) {
+      serverChannel.close();
+      selector.close();
+      throw ex;
+    }
+    running = true;
+    worker = Executors.newSingleThreadExecutor(runnable -> {
+      Thread workerThread = new Thread(runnable, "MidiPlayerControlWorker");
+      workerThread.setDaemon(true);
+      return workerThread;
+    });
+    thread = new Thread(this::serve, "MidiPlayerControl");
+    thread.start();
+  }
+
+  private static String createToken() {
+    byte[] random = new byte[TOKEN_SIZE];
+    new SecureRandom().nextBytes(random);
+    StringBuilder hex = new StringBuilder(2 * TOKEN_SIZE);
+    for (byte b : random) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Write the authentication token to a new file only readable by its owner.
+   *
+   * @throws IOException if the token file cannot be written
+   */
+  private void writeToken() throws IOException {
+    Path directory = tokenFile.toAbsolutePath().getParent();
+    if (directory != null) {
+      Files.createDirectories(directory);
+    }
+    Files.deleteIfExists(tokenFile);
+    if (tokenFile.getFileSystem().supportedFileAttributeViews()
+        .contains("posix")) {
+      // Permissions set on creation, before the token is written
+      Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(
+          EnumSet.of(PosixFilePermission.OWNER_READ,
+              PosixFilePermission.OWNER_WRITE)));
+    } else {
+      Files.createFile(tokenFile);
+      File file = tokenFile.toFile();
+      if (!file.setReadable(false, false) || !file.setReadable(true, true)) {
+        LOGGER.log(Level.WARNING,
+            "Cannot restrict the permissions of the token file: {0}",
+            tokenFile);
+      }
+    }
+    Files.write(tokenFile,
+        (token + '\n').getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Get the file the authentication token is written to. Clients must send the content of this
+   * file as their first line.
+   *
+   * @return the token file
+   */
+  public Path getTokenFile() {
+    return tokenFile;
+  }
+
+  /**
+   * Get the address the server listens to.
+   *
+   * @return the bound address, or the configured address if not started
+   */
+  public synchronized InetSocketAddress getAddress() {
+    if (serverChannel != null && serverChannel.isOpen()) {
+      try {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+      } catch (IOException ex) {
+        LOGGER.log(Level.FINE, null, ex);
+      }
+    }
+    return address;
+  }
+
+  /**
+   * Is the server serving clients?
+   *
+   * @return {@code true} if the server is running
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Wait until the server stops, after {@link #close()} or a {@code shutdown} command.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public void awaitTermination() throws InterruptedException {
+    Thread serverThread;
+    synchronized (this) {
+      serverThread = thread;
+    }
+    if (serverThread != null) {
+      serverThread.join();
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    Selector serverSelector;
+    synchronized (this) {
+      serverSelector = selector;
+    }
+    if (serverSelector != null) {
+      serverSelector.wakeup();
+    }
+  }
+
+  // #########################################################################
+  private void serve() {
+    try {
+      while (running) {
+        selector.select();
+        runCompletions();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              accept();
+            }
+            if (key.isValid() && key.isReadable()) {
+              read(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+              write(key);
+            }
+          } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Control client disconnected", ex);
+            closeQuietly(key);
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException ex) {
+      LOGGER.log(Level.SEVERE, "Control server failed", ex);
+    } finally {
+      running = false;
+      worker.shutdownNow();
+      for (SelectionKey key : selector.keys()) {
+        flushQuietly(key);
+        closeQuietly(key);
+      }
+      try {
+        serverChannel.close();
+        selector.close();
+        Files.deleteIfExists(tokenFile);
+      } catch (IOException ex) {
+        LOGGER.log(Level.FINE, null, ex);
+      }
+      LOGGER.log(Level.INFO, "Control server stopped");
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    // Answers are small and must be sent right away
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    channel.register(selector, SelectionKey.OP_READ, new Client());
+  }
+
+  private void read(final SelectionKey key) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Client client = (Client) key.attachment();
+    int read = channel.read(client.input);
+    if (read < 0) {
+      closeQuietly(key);
+      return;
+    }
+    processInput(key, client);
+  }
+
+  /**
+   * Handle the complete lines read from a client, until one of them is executed by the worker.
+   *
+   * @param key the selection key of the client
+   * @param client the client
+   * @throws IOException if a line cannot be decoded
+   */
+  private void processInput(final SelectionKey key, final Client client)
+      throws IOException {
+    client.input.flip();
+    while (client.input.hasRemaining() && !client.closing && !client.busy) {
+      byte b = client.input.get();
+      if (b == '\n') {
+        if (client.lineTooLong) {
+          client.lineTooLong = false;
+          respond(client, Collections.emptyList(), ERROR, "Line too long");
+        } else {
+          client.line.flip();
+          handleLine(key, client, decode(client.line));
+        }
+        client.line.clear();
+      } else if (b != '\r') {
+        if (client.line.hasRemaining()) {
+          client.line.put(b);
+        } else {
+          client.lineTooLong = true;
+        }
+      }
+    }
+    // Keep the lines following a command executed by the worker
+    client.input.compact();
+    updateInterest(key, client);
+  }
+
+  private void write(final SelectionKey key) throws IOException {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Client client = (Client) key.attachment();
+    while (!client.output.isEmpty()) {
+      ByteBuffer buffer = client.output.peek();
+      channel.write(buffer);
+      if (buffer.hasRemaining()) {
+        // Socket buffer full
+        break;
+      }
+      client.output.poll();
+    }
+    updateInterest(key, client);
+  }
+
+  private void updateInterest(final SelectionKey key, final Client client)
+      throws IOException {
+    if (client.output.isEmpty()) {
+      if (client.closing) {
+        closeQuietly(key);
+      } else if (client.busy) {
+        // Wait for the answer of the worker
+        key.interestOps(0);
+      } else {
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    } else {
+      // Stop reading until answers are sent
+      key.interestOps(SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Send the answers of the worker thread, on the selector thread.
+   */
+  private void runCompletions() {
+    Runnable completion;
+    while ((completion = completions.poll()) != null) {
+      completion.run();
+    }
+  }
+
+  /**
+   * Execute a command on the worker thread, then post its answer back to the selector.
+   *
+   * @param key the selection key of the client
+   * @param client the client which sent the command
+   * @param task the execution of the command, returning its answer
+   */
+  private void executeOnWorker(final SelectionKey key, final Client client,
+      final Supplier<ByteBuffer> task) {
+    client.busy = true;
+    worker.execute(() -> {
+      ByteBuffer answer = task.get();
+      completions.add(() -> {
+        client.busy = false;
+        client.output.add(answer);
+        if (!key.isValid()) {
+          return;
+        }
+        try {
+          // Lines received meanwhile
+          processInput(key, client);
+        } catch (IOException ex) {
+          LOGGER.log(Level.FINE, "Control client disconnected", ex);
+          closeQuietly(key);
+        }
+      });
+      selector.wakeup();
+    });
+  }
+
+  /**
+   * Send the pending answers of a client, if its socket can take them.
+   *
+   * @param key the selection key of the client
+   */
+  private static void flushQuietly(final SelectionKey key) {
+    if (!(key.attachment() instanceof Client) || !key.channel().isOpen()) {
+      return;
+    }
+    SocketChannel channel = (SocketChannel) key.channel();
+    Client client = (Client) key.attachment();
+    try {
+      for (ByteBuffer buffer : client.output) {
+        channel.write(buffer);
+      }
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, null, ex);
+    }
+  }
+
+  private static void closeQuietly(final SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, null, ex);
+    }
+  }
+
+  private static String decode(final ByteBuffer bytes)
+      throws CharacterCodingException {
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer chars = decoder.decode(bytes);
+    return chars.toString();
+  }
+
+  // #########################################################################
+  /**
+   * Execute a command line and queue its answer.
+   *
+   * @param key the selection key of the client
+   * @param client the client which sent the line
+   * @param line the command line
+   */
+  private void handleLine(final SelectionKey key, final Client client,
+      final String line) {
+    if (!client.authenticated) {
+      authenticate(client, line);
+      return;
+    }
+    List<String> tokens;
+    try {
+      tokens = tokenize(line);
+    } catch (IllegalArgumentException ex) {
+      respond(client, Collections.emptyList(), ERROR, ex.getMessage());
+      return;
+    }
+    if (tokens.isEmpty()) {
+      return;
+    }
+    String name = tokens.get(0).toLowerCase(Locale.ROOT);
+    List<String> args = tokens.subList(1, tokens.size());
+    switch (name) {
+      case "quit":
+        // Close this connection once answered
+        client.closing = true;
+        respond(client, Collections.emptyList(), OK, "bye");
+        return;
+      case "shutdown":
+        respond(client, Collections.emptyList(), OK, "shutting down");
+        client.closing = true;
+        running = false;
+        return;
+      default:
+        break;
+    }
+
+    Command command;
+    boolean blocking;
+    synchronized (this) {
+      command = commands.get(name);
+      blocking = blockingCommands.contains(command);
+    }
+    if (command == null) {
+      respond(client, Collections.emptyList(), ERROR,
+          "Unknown command: " + tokens.get(0));
+    } else if (blocking) {
+      executeOnWorker(key, client, () -> execute(command, args, line));
+    } else {
+      client.output.add(execute(command, args, line));
+    }
+  }
+
+  /**
+   * Check the first line of a client, which must be the authentication token.
+   *
+   * @param client the client
+   * @param line the first line of the client
+   */
+  private void authenticate(final Client client, final String line) {
+    byte[] received = line.trim().getBytes(StandardCharsets.US_ASCII);
+    // Comparison in constant time
+    if (MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII),
+        received)) {
+      client.authenticated = true;
+      respond(client, Collections.emptyList(), OK, "authenticated");
+    } else {
+      LOGGER.warning("Control client rejected: invalid token");
+      client.closing = true;
+      respond(client, Collections.emptyList(), ERROR, "Invalid token");
+    }
+  }
+
+  /**
+   * Execute a command.
+   *
+   * @param command the command
+   * @param args the command arguments
+   * @param line the command line, for logging
+   * @return the answer to the command
+   */
+  private ByteBuffer execute(final Command command, final List<String> args,
+      final String line) {
+    List<String> output = new ArrayList<>();
+    try {
+      String message = command.execute(player, args, output);
+      return answer(output, OK, message);
+    } catch (IllegalArgumentException | IllegalStateException ex) {
+      return answer(output, ERROR, ex.getMessage());
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.WARNING, "Control command failed: " + line, ex);
+      return answer(output, ERROR, String.valueOf(ex));
+    }
+  }
+
+  private static void respond(final Client client, final List<String> output,
+      final String status, final String message) {
+    client.output.add(answer(output, status, message));
+  }
+
+  private static ByteBuffer answer(final List<String> output,
+      final String status, final String message) {
+    StringBuilder answer = new StringBuilder();
+    for (String data : output) {
+      answer.append(data.replace('\n', ' ')).append('\n');
+    }
+    answer.append(status);
+    if (message != null && !message.isEmpty()) {
+      answer.append(' ').append(message.replace('\n', ' '));
+    }
+    answer.append('\n');
+    return ByteBuffer.wrap(answer.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Split a command line in whitespace separated tokens. Double quotes group words containing
+   * spaces, such as file paths.
+   *
+   * @param line the command line
+   * @return the tokens of the line
+   * @throws IllegalArgumentException if a quote is not closed
+   */
+  static List<String> tokenize(final String line) {
+    List<String> tokens = new ArrayList<>();
+    StringBuilder token = null;
+    boolean quoted = false;
+    for (int i = 0, n = line.length(); i < n; i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+        if (token == null) {
+          token = new StringBuilder();
+        }
+      } else if (Character.isWhitespace(c) && !quoted) {
+        if (token != null) {
+          tokens.add(token.toString());
+          token = null;
+        }
+      } else {
+        if (token == null) {
+          token = new StringBuilder();
+        }
+        token.append(c);
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Unclosed quote");
+    }
+    if (token != null) {
+      tokens.add(token.toString());
+    }
+    return tokens;
+  }
+
+}
@@ -28,6 +28,7 @@ import java.util.logging.Logger;
 
 import javax.activation.ActivationDataFlavor;
 import javax.activation.DataHandler;
+import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
 import javax.swing.DropMode;
 import javax.swing.InputMap;
@@ -45,12 +46,14 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JToggleButton;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.TransferHandler;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
 
 import midiplayer.MidiPlayer;
+import midiplayer.PlaylistImporter;
 import midiplayer.console.ConsoleFrame;
 import midiplayer.frame.action.ActionWrapper;
 import midiplayer.frame.action.AddAction;
@@ -58,12 +61,14 @@ import midiplayer.frame.action.ClearAction;
 import midiplayer.frame.action.DisplayAboutAction;
 import midiplayer.frame.action.DisplayConsoleAction;
 import midiplayer.frame.action.ExitAction;
+import midiplayer.frame.action.LoadPlaylistAction;
 import midiplayer.frame.action.LoopAction;
 import midiplayer.frame.action.NextAction;
 import midiplayer.frame.action.PauseAction;
 import midiplayer.frame.action.PlayAction;
 import midiplayer.frame.action.PreviousAction;
 import midiplayer.frame.action.RemoveAction;
+import midiplayer.frame.action.SavePlaylistAction;
 import midiplayer.frame.action.ShufflePlaylistAction;
 import midiplayer.frame.action.SortPlaylistAction;
 import midiplayer.frame.action.StopAction;
@@ -154,6 +159,9 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     menuBar = new javax.swing.JMenuBar();
     menuFile = new javax.swing.JMenu();
     menuItemOpen = new javax.swing.JMenuItem();
+    menuItemLoadPlaylist = new javax.swing.JMenuItem();
+    menuItemSavePlaylist = new javax.swing.JMenuItem();
+    menuFileSeparator1 = new javax.swing.JPopupMenu.Separator();
     menuItemExit = new javax.swing.JMenuItem();
     menuControls = new javax.swing.JMenu();
     menuItemPrevious = new javax.swing.JMenuItem();
@@ -237,6 +245,13 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     menuItemOpen.setText("Open"); // NOI18N
     menuFile.add(menuItemOpen);
 
+    menuItemLoadPlaylist.setText("Load playlist"); // NOI18N
+    menuFile.add(menuItemLoadPlaylist);
+
+    menuItemSavePlaylist.setText("Save playlist"); // NOI18N
+    menuFile.add(menuItemSavePlaylist);
+    menuFile.add(menuFileSeparator1);
+
     menuItemExit.setText("Exit"); // NOI18N
     menuItemExit.addActionListener(new java.awt.event.ActionListener() {
       public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -336,15 +351,18 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
   private javax.swing.JPopupMenu.Separator menuControlsSeparator1;
   private javax.swing.JPopupMenu.Separator menuControlsSeparator2;
   private javax.swing.JMenu menuFile;
+  private javax.swing.JPopupMenu.Separator menuFileSeparator1;
   private javax.swing.JMenu menuHelp;
   private javax.swing.JMenuItem menuItemAbout;
   private javax.swing.JCheckBoxMenuItem menuItemConsole;
   private javax.swing.JMenuItem menuItemExit;
+  private javax.swing.JMenuItem menuItemLoadPlaylist;
   private javax.swing.JMenuItem menuItemNext;
   private javax.swing.JMenuItem menuItemOpen;
   private javax.swing.JMenuItem menuItemPause;
   private javax.swing.JMenuItem menuItemPlay;
   private javax.swing.JMenuItem menuItemPrevious;
+  private javax.swing.JMenuItem menuItemSavePlaylist;
   private javax.swing.JMenuItem menuItemShuffle;
   private javax.swing.JMenuItem menuItemSort;
   private javax.swing.JMenuItem menuItemStop;
@@ -422,11 +440,16 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     }
 
     final MidiPlayerWithListener midiPlayer = this.getPlayer();
-    if (midiPlayer == null || midiPlayer.getSequencer() == null) {
-      this.throwableReceived(
-          ResourceUtils.getMessage("midiplayer.sequencer.not_found"));
-      System.exit(1);
-    }
+    // Do not wait for the sound system while building the frame
+    midiPlayer.warmUp().whenComplete((sequencer, ex) -> {
+      if (sequencer == null) {
+        java.awt.EventQueue.invokeLater(() -> {
+          this.throwableReceived(
+              ResourceUtils.getMessage("midiplayer.sequencer.not_found"));
+          System.exit(1);
+        });
+      }
+    });
     final MidiPlayerController midiPlayerController = this.getController();
     midiActionFactory =
         new midiplayer.frame.action.util.ActionFactory(midiPlayerController);
@@ -434,7 +457,8 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     // Load files and initialize components from received paths
     File directory;
     if (filesToOpen != null && !filesToOpen.isEmpty()) {
-      midiPlayer.addAll(filesToOpen);
+      midiPlayer.getPlaylistImporter().start(filesToOpen,
+          new ImportInsertionListener(midiPlayer, null, -1));
       directory = filesToOpen.get(filesToOpen.size() - 1).getParent().toFile();
     } else {
       directory = null;
@@ -469,6 +493,16 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
         (AddAction) midiActionFactory.getAction(AddAction.DEFAULT_IDENTIFIER);
     menuItemOpen.setAction(openAction);
 
+    LoadPlaylistAction loadPlaylistAction =
+        (LoadPlaylistAction) midiActionFactory
+            .getAction(LoadPlaylistAction.DEFAULT_IDENTIFIER);
+    menuItemLoadPlaylist.setAction(loadPlaylistAction);
+
+    SavePlaylistAction savePlaylistAction =
+        (SavePlaylistAction) midiActionFactory
+            .getAction(SavePlaylistAction.DEFAULT_IDENTIFIER);
+    menuItemSavePlaylist.setAction(savePlaylistAction);
+
     final ExitAction exitAction =
         (ExitAction) midiActionFactory.getAction(ExitAction.DEFAULT_IDENTIFIER);
     menuItemExit.setAction(exitAction);
@@ -597,6 +631,110 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
 
     // Handle Drag and Drop from OS
     scrollPanePlaylist.setTransferHandler(transferHandler);
+
+    // Display imports progress and cancel them on escape key
+    midiPlayer.getPlaylistImporter().addListener(new ImportProgressListener());
+    inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+        "CancelPlaylistImports");
+    actionMap.put("CancelPlaylistImports", new AbstractAction() {
+      /**
+       * The {@code serialVersionUID}.
+       */
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        midiPlayer.getPlaylistImporter().cancelAll();
+      }
+    });
+  }
+
+  /**
+   * Displays the progress of playlist imports in the frame title.
+   */
+  private final class ImportProgressListener
+      implements PlaylistImporter.Listener {
+
+    /**
+     * The frame title before imports started, {@code null} if no import is displayed.
+     */
+    private String originalTitle = null;
+
+    @Override
+    public void filesAccepted(PlaylistImporter.Import task, List<Path> files) {
+      // Files are inserted by the listener of each import
+    }
+
+    @Override
+    public void importProgress(final PlaylistImporter.Import task) {
+      final int accepted = task.getAcceptedCount();
+      final int scanned = task.getScannedCount();
+      SwingUtilities.invokeLater(() -> {
+        if (originalTitle == null) {
+          originalTitle = getTitle();
+          tablePlaylist.setCursor(
+              Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        }
+        setTitle(originalTitle + " - " + ResourceUtils
+            .getMessage("midiplayer.frame.import.progress", accepted, scanned));
+      });
+    }
+
+    @Override
+    public void importFinished(final PlaylistImporter.Import task) {
+      SwingUtilities.invokeLater(() -> {
+        if (originalTitle != null
+            && !getPlayer().getPlaylistImporter().isImporting()) {
+          setTitle(originalTitle);
+          originalTitle = null;
+          tablePlaylist.setCursor(Cursor.getDefaultCursor());
+        }
+      });
+    }
+
+  }
+
+  /**
+   * Inserts the files accepted by a playlist import in the playlist, on the <i>Event Dispatch
+   * Thread</i>.
+   */
+  static final class ImportInsertionListener
+      implements PlaylistImporter.Listener {
+
+    private final MidiPlayerWithListener model;
+
+    private final JTable target;
+
+    /**
+     * Index at which the next accepted files are inserted, {@code -1} to append them.
+     */
+    private int index;
+
+    ImportInsertionListener(MidiPlayerWithListener model, JTable target,
+        int index) {
+      this.model = model;
+      this.target = target;
+      this.index = index;
+    }
+
+    @Override
+    public void filesAccepted(PlaylistImporter.Import task,
+        final List<Path> files) {
+      SwingUtilities.invokeLater(() -> {
+        int size = model.size();
+        int insertionIndex = index < 0 || index > size ? size : index;
+        if (model.addAll(insertionIndex, files)) {
+          if (target != null) {
+            target.getSelectionModel().addSelectionInterval(insertionIndex,
+                insertionIndex + files.size() - 1);
+          }
+          if (index >= 0) {
+            index = insertionIndex + files.size();
+          }
+        }
+      });
+    }
+
   }
 
   public final void initModel() {
@@ -723,6 +861,10 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     return menuFile;
   }
 
+  public JPopupMenu.Separator getMenuFileSeparator1() {
+    return menuFileSeparator1;
+  }
+
   public JMenu getMenuHelp() {
     return menuHelp;
   }
@@ -739,6 +881,10 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     return menuItemExit;
   }
 
+  public JMenuItem getMenuItemLoadPlaylist() {
+    return menuItemLoadPlaylist;
+  }
+
   public JMenuItem getMenuItemNext() {
     return menuItemNext;
   }
@@ -747,6 +893,10 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
     return menuItemOpen;
   }
 
+  public JMenuItem getMenuItemSavePlaylist() {
+    return menuItemSavePlaylist;
+  }
+
   public JMenuItem getMenuItemPause() {
     return menuItemPause;
   }
@@ -1171,13 +1321,11 @@ public class MidiPlayerFrame extends JFrame implements LocaleChangeListener,
           paths.add(path);
         });
 
-        // Add all files to the playlist
-        if (model.addAll(index, paths)) {
-          target.getSelectionModel().addSelectionInterval(index,
-              index + paths.size() - 1);
-          return true;
-        }
-
+        // Import files and directories in the background
+        target.clearSelection();
+        model.getPlaylistImporter().start(paths,
+            new ImportInsertionListener(model, target, index));
+        return true;
       }
       return false;
     }
@@ -4,11 +4,16 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 import javax.swing.SwingUtilities;
@@ -16,8 +21,12 @@ import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 
 import midiplayer.MidiPlayer;
+import midiplayer.SortKey;
+import midiplayer.metrics.FlightRecorderEvents;
 import midiplayer.resources.LocaleChangeListener;
 import midiplayer.resources.ResourceUtils;
+import midiplayer.sequence.SongMetadata;
+import midiplayer.sequence.SongMetadataIndex;
 
 public class MidiPlayerWithListener extends MidiPlayer
     implements ReorderableTableModel, LocaleChangeListener {
@@ -30,13 +39,33 @@ public class MidiPlayerWithListener extends MidiPlayer
 
   private static MidiPlayerWithListener instance = null;
 
+  /**
+   * File of the song metadata index of the single instance, {@code null} to keep it in memory.
+   */
+  private static Path songMetadataFile = null;
+
   public static MidiPlayerWithListener getInstance() {
     if (instance == null) {
-      instance = new MidiPlayerWithListener(true);
+      instance = new MidiPlayerWithListener(true,
+          new SongMetadataIndex(songMetadataFile));
     }
     return instance;
   }
 
+  /**
+   * Set the file in which the song metadata index of the single instance is saved.
+   * 
+   * <p>
+   * The file is used by the single instance if it is not created yet.
+   * </p>
+   * 
+   * @param file the song metadata index file, {@code null} to keep the index in memory only
+   * @see #getInstance()
+   */
+  public static void setSongMetadataFile(Path file) {
+    songMetadataFile = file;
+  }
+
   // #########################################################################
 
   public static final String LOOP_CHANGE = "midiplayer.loop";
@@ -47,11 +76,16 @@ public class MidiPlayerWithListener extends MidiPlayer
 
   public static final String PLAYING_STOP_CHANGE = "midiplayer.playing.stop";
 
+  public static final String PLAYING_STATE_CHANGE = "midiplayer.playing.state";
+
   public static final String CURRENT_SONG_CHANGE =
       "midiplayer.current_song.change";
 
   public static final String PLAYLIST_LOOP_CHANGE = "midiplayer.playlist.loop";
 
+  public static final String PLAYLIST_SHUFFLE_CHANGE =
+      "midiplayer.playlist.shuffle";
+
   public static final String PLAYLIST_SIZE_CHANGE = "midiplayer.playlist.size";
 
   public static final String PLAYLIST_CONTENT_CHANGE =
@@ -67,6 +101,28 @@ public class MidiPlayerWithListener extends MidiPlayer
 
   private final List<ThrowableListener> midiPlayerListeners = new ArrayList<>();
 
+  /**
+   * Merges the events fired to table model and property change listeners.
+   */
+  private final transient TableModelEventCoalescer eventCoalescer;
+
+  /**
+   * Index of the metadata displayed in the playlist.
+   */
+  private final transient SongMetadataIndex songMetadataIndex;
+
+  /**
+   * Songs whose metadata were indexed, and whose playlist rows are not refreshed yet.
+   */
+  private final transient Queue<Object> indexedSongs =
+      new ConcurrentLinkedQueue<>();
+
+  /**
+   * Is the refresh of the playlist rows of indexed songs scheduled?
+   */
+  private final transient AtomicBoolean indexedSongsRefreshScheduled =
+      new AtomicBoolean();
+
   /**
    * Whether to notify listeners on EDT.
    *
@@ -79,8 +135,104 @@ public class MidiPlayerWithListener extends MidiPlayer
   }
 
   protected MidiPlayerWithListener(boolean notifyOnEDT) {
+    this(notifyOnEDT, new SongMetadataIndex(null));
+  }
+
+  /**
+   * Constructs a MIDI player displaying the metadata of the given index.
+   * 
+   * @param notifyOnEDT whether to notify listeners on EDT
+   * @param songMetadataIndex the index of the metadata displayed in the playlist, closed with the
+   *        player
+   * @throws IllegalArgumentException if {@code songMetadataIndex} is {@code null}
+   */
+  protected MidiPlayerWithListener(boolean notifyOnEDT,
+      SongMetadataIndex songMetadataIndex) {
     super();
+    if (songMetadataIndex == null) {
+      throw new IllegalArgumentException(
+          "Song metadata index cannot be null");
+    }
     this.notifyOnEDT = notifyOnEDT;
+    this.eventCoalescer = new TableModelEventCoalescer(this, notifyOnEDT,
+        (evt) -> fireTableDataChanged(this.tableModelListeners, evt),
+        (evt) -> firePropertyChange(this.propertyChangeListeners, evt),
+        getMetrics().getListenerFanOutTimes(),
+        getMetrics().getEdtQueueDelays());
+    this.songMetadataIndex = songMetadataIndex;
+    this.songMetadataIndex.addListener(this::songMetadataIndexed);
+    this.addStateListener((oldState, newState) -> fireChange(
+        PLAYING_STATE_CHANGE, oldState, newState));
+  }
+
+  /**
+   * Get the index of the metadata displayed in the playlist.
+   *
+   * @return the song metadata index
+   */
+  public final SongMetadataIndex getSongMetadataIndex() {
+    return songMetadataIndex;
+  }
+
+  /**
+   * Get the coalescer merging the events fired to table model and property change listeners.
+   *
+   * @return the event coalescer
+   */
+  public final TableModelEventCoalescer getEventCoalescer() {
+    return eventCoalescer;
+  }
+
+  /**
+   * Schedule the refresh of the playlist row of a song whose metadata were indexed.
+   *
+   * @param resource the song resource
+   * @param metadata the song metadata
+   */
+  private void songMetadataIndexed(Object resource, SongMetadata metadata) {
+    indexedSongs.offer(resource);
+    if (!indexedSongsRefreshScheduled.compareAndSet(false, true)) {
+      // Refreshed with the songs indexed before
+      return;
+    }
+    if (isNotifyOnEDT() && !SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(this::refreshIndexedSongs);
+    } else {
+      refreshIndexedSongs();
+    }
+  }
+
+  /**
+   * Refresh at once the playlist rows of the songs whose metadata were indexed.
+   */
+  private void refreshIndexedSongs() {
+    indexedSongsRefreshScheduled.set(false);
+    List<Integer> rows = new ArrayList<>();
+    Lock lock = getPlaylistLock().readLock();
+    lock.lock();
+    try {
+      List<Object> playlist = getPlaylist();
+      Object resource;
+      while ((resource = indexedSongs.poll()) != null) {
+        int rowIndex = playlist.indexOf(resource);
+        if (rowIndex >= 0) {
+          rows.add(rowIndex);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (rows.isEmpty()) {
+      return;
+    }
+    eventCoalescer.beginBatch();
+    try {
+      for (int rowIndex : rows) {
+        fireChange(rowIndex);
+      }
+    } finally {
+      eventCoalescer.endBatch();
+    }
   }
 
   // #########################################################################
@@ -98,6 +250,13 @@ public class MidiPlayerWithListener extends MidiPlayer
     fireChange(PLAYLIST_LOOP_CHANGE, originallyLooping, loop);
   }
 
+  @Override
+  public void setShuffling(boolean shuffling, long seed) {
+    boolean originallyShuffling = this.isShuffling();
+    super.setShuffling(shuffling, seed);
+    fireChange(PLAYLIST_SHUFFLE_CHANGE, originallyShuffling, shuffling);
+  }
+
   // #########################################################################
   @Override
   public boolean startPlaying() {
@@ -141,7 +300,7 @@ public class MidiPlayerWithListener extends MidiPlayer
   }
 
   @Override
-  protected synchronized boolean moveToNextSong(boolean force) {
+  protected boolean moveToNextSong(boolean force) {
     int originalSongIndex = this.getCurrentSongIndex();
     boolean moved = super.moveToNextSong(force);
     if (moved) {
@@ -162,115 +321,230 @@ public class MidiPlayerWithListener extends MidiPlayer
     return moved;
   }
 
+  @Override
+  protected boolean moveToSplicedSong(int index) {
+    int originalSongIndex = this.getCurrentSongIndex();
+    boolean moved = super.moveToSplicedSong(index);
+    if (moved) {
+      fireChange(CURRENT_SONG_CHANGE, originalSongIndex,
+          this.getCurrentSongIndex());
+    }
+    return moved;
+  }
+
   // #########################################################################
   @Override
   public boolean add(Object path) {
-    int originalSize = this.size();
-    boolean added = super.add(path);
-    if (added) {
-      int newSize = this.size();
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
-      fireChange();
+    int originalSize;
+    int newSize;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      if (!super.add(path)) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
     }
-    return added;
+    // Listeners are notified once the playlist is unlocked
+    songMetadataIndex.request(Collections.singletonList(path));
+    fireRowsInserted(originalSize, newSize - 1);
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    return true;
   }
 
   @Override
   public boolean add(int index, Object path) {
-    int originalSize = this.size();
-    int originalSongIndex = this.getCurrentSongIndex();
-    boolean added = super.add(index, path);
-    if (added) {
-      int newSize = this.size();
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
-      fireChange(CURRENT_SONG_CHANGE, originalSongIndex,
-          this.getCurrentSongIndex());
-      fireChange();
+    int originalSize;
+    int originalSongIndex;
+    int newSize;
+    int newSongIndex;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      originalSongIndex = this.getCurrentSongIndex();
+      if (!super.add(index, path)) {
+        return false;
+      }
+      newSize = this.size();
+      newSongIndex = this.getCurrentSongIndex();
+    } finally {
+      lock.unlock();
     }
-    return added;
+    songMetadataIndex.request(Collections.singletonList(path));
+    fireRowsInserted(index, index + newSize - originalSize - 1);
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    fireChange(CURRENT_SONG_CHANGE, originalSongIndex, newSongIndex);
+    return true;
   }
 
   @Override
   public boolean addAll(Collection<? extends Object> paths) {
-    int originalSize = this.size();
-    boolean added = super.addAll(paths);
-    if (added) {
-      int newSize = this.size();
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
-      fireChange();
+    int originalSize;
+    int newSize;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      if (!super.addAll(paths)) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
     }
-    return added;
+    songMetadataIndex.request(paths);
+    fireRowsInserted(originalSize, newSize - 1);
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    return true;
   }
 
   @Override
   public boolean addAll(int index, Collection<? extends Object> paths) {
-    int originalSize = this.size();
-    int originalSongIndex = this.getCurrentSongIndex();
-    boolean added = super.addAll(index, paths);
-    if (added) {
-      int newSize = this.size();
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
-      fireChange(CURRENT_SONG_CHANGE, originalSongIndex,
-          this.getCurrentSongIndex());
-      fireChange();
+    int originalSize;
+    int originalSongIndex;
+    int newSize;
+    int newSongIndex;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      originalSongIndex = this.getCurrentSongIndex();
+      if (!super.addAll(index, paths)) {
+        return false;
+      }
+      newSize = this.size();
+      newSongIndex = this.getCurrentSongIndex();
+    } finally {
+      lock.unlock();
     }
-    return added;
+    songMetadataIndex.request(paths);
+    fireRowsInserted(index, index + newSize - originalSize - 1);
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    fireChange(CURRENT_SONG_CHANGE, originalSongIndex, newSongIndex);
+    return true;
   }
 
   @Override
   public boolean remove(int index) {
-    int originalSize = this.size();
-    boolean removed = super.remove(index);
-    if (removed) {
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, this.size());
-      fireChange();
+    int originalSize;
+    int newSize;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      if (!super.remove(index)) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
     }
-    return removed;
+    fireRowsDeleted(index, index);
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    return true;
   }
 
   @Override
   protected boolean remove(Object path) {
-    int originalSize = this.size();
-    boolean removed = super.remove(path);
-    if (removed) {
-      int newSize = this.size();
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
-      fireChange();
+    int originalSize;
+    int index;
+    int newSize;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      index = getPlaylist().indexOf(path);
+      if (!super.remove(path)) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
     }
-    return removed;
+    fireRowsDeleted(index, index);
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    return true;
   }
 
   @Override
   public boolean removeAll(int[] indexes) {
-    int originalSize = this.size();
-    boolean removed = super.removeAll(indexes);
-    if (removed) {
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, this.size());
-      fireChange();
+    int originalSize;
+    int newSize;
+    int[] sortedIndexes = indexes == null ? new int[0] : indexes.clone();
+    Arrays.sort(sortedIndexes);
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      if (!super.removeAll(indexes)) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
     }
-    return removed;
+    eventCoalescer.beginBatch();
+    try {
+      // Delete from the last row so that row indexes stay valid
+      for (int i = sortedIndexes.length - 1; i >= 0; i--) {
+        int index = sortedIndexes[i];
+        if (index < 0 || index >= originalSize
+            || (i > 0 && sortedIndexes[i - 1] == index)) {
+          continue;
+        }
+        fireRowsDeleted(index, index);
+      }
+      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    } finally {
+      eventCoalescer.endBatch();
+    }
+    return true;
   }
 
   @Override
   protected boolean removeAll(Collection<? extends Object> paths) {
-    int originalSize = this.size();
-    boolean removed = super.removeAll(paths);
-    if (removed) {
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, this.size());
-      fireChange();
+    int originalSize;
+    int newSize;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      if (!super.removeAll(paths)) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
     }
-    return removed;
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    fireChange();
+    return true;
   }
 
   @Override
   public boolean clear() {
-    int originalSize = this.size();
-    boolean cleared = super.clear();
-    if (cleared) {
-      fireChange(PLAYLIST_SIZE_CHANGE, originalSize, this.size());
-      fireChange();
+    int originalSize;
+    int newSize;
+    Lock lock = getPlaylistLock().writeLock();
+    lock.lock();
+    try {
+      originalSize = this.size();
+      if (!super.clear()) {
+        return false;
+      }
+      newSize = this.size();
+    } finally {
+      lock.unlock();
+    }
+    if (originalSize > 0) {
+      fireRowsDeleted(0, originalSize - 1);
     }
-    return cleared;
+    fireChange(PLAYLIST_SIZE_CHANGE, originalSize, newSize);
+    return true;
   }
 
   // #########################################################################
@@ -328,11 +602,18 @@ public class MidiPlayerWithListener extends MidiPlayer
     return false;
   }
 
+  @Override
+  protected SongMetadata getSongMetadata(Object resource) {
+    return songMetadataIndex.getIfPresent(resource);
+  }
+
   @Override
   public Object getValueAt(int rowIndex, int columnIndex) {
     if (columnIndex == 0) {
-      return (rowIndex + 1) + ". "
-          + getSongInfo(getPlaylist().get(rowIndex), null);
+      Object resource = getPlaylist().get(rowIndex);
+      SongMetadata metadata = songMetadataIndex.getIfPresent(resource);
+      return (rowIndex + 1) + ". " + getSongInfo(resource,
+          metadata == null ? -1 : metadata.getMicrosecondLength());
     } else {
       return null;
     }
@@ -347,8 +628,9 @@ public class MidiPlayerWithListener extends MidiPlayer
   public void moveRow(int start, int end, int to) {
     boolean moved = super.moveSongsTo(start, end, to);
     if (moved) {
+      // Only the rows between the moved rows and their destination change
+      fireChange(Math.min(start, to), Math.max(end, to - 1));
       fireChange(PLAYLIST_CONTENT_CHANGE, false, moved);
-      fireChange();
     }
   }
 
@@ -373,8 +655,8 @@ public class MidiPlayerWithListener extends MidiPlayer
   }
 
   @Override
-  public boolean sortPlaylist() {
-    boolean sorted = super.sortPlaylist();
+  public boolean sortPlaylist(SortKey sortKey) {
+    boolean sorted = super.sortPlaylist(sortKey);
     if (sorted) {
       fireChange(PLAYLIST_CONTENT_CHANGE, false, sorted);
       fireChange();
@@ -392,6 +674,15 @@ public class MidiPlayerWithListener extends MidiPlayer
     return sorted;
   }
 
+  @Override
+  public void close() throws Exception {
+    try {
+      super.close();
+    } finally {
+      songMetadataIndex.close();
+    }
+  }
+
   @Override
   public void reportThrowable(String msg, Throwable thrown) {
     fireChange(msg, thrown);
@@ -548,27 +839,36 @@ public class MidiPlayerWithListener extends MidiPlayer
   private static void fireExceptionReceived(List<ThrowableListener> listeners,
       String msg) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.throwableReceived(msg);
       });
+      FlightRecorderEvents.get().listenersNotified("throwableReceived",
+          listeners.size(), start);
     }
   }
 
   private static void fireExceptionReceived(List<ThrowableListener> listeners,
       Throwable thrown) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.throwableReceived(thrown);
       });
+      FlightRecorderEvents.get().listenersNotified("throwableReceived",
+          listeners.size(), start);
     }
   }
 
   private static void fireExceptionReceived(List<ThrowableListener> listeners,
       String msg, Throwable thrown) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.throwableReceived(msg, thrown);
       });
+      FlightRecorderEvents.get().listenersNotified("throwableReceived",
+          listeners.size(), start);
     }
   }
 
@@ -736,13 +1036,29 @@ public class MidiPlayerWithListener extends MidiPlayer
     if (evt == null) {
       throw new NullPointerException();
     }
-    if (!isNotifyOnEDT() || SwingUtilities.isEventDispatchThread()) {
-      fireTableDataChanged(this.tableModelListeners, evt);
-    } else {
-      SwingUtilities.invokeLater(() -> {
-        fireChange(evt);
-      });
-    }
+    eventCoalescer.tableChanged(evt);
+  }
+
+  /**
+   * Reports rows inserted in the table model.
+   *
+   * @param firstRow The index of the first inserted row
+   * @param lastRow The index of the last inserted row
+   */
+  protected void fireRowsInserted(int firstRow, int lastRow) {
+    fireChange(new TableModelEvent(this, firstRow, lastRow,
+        TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT));
+  }
+
+  /**
+   * Reports rows deleted from the table model.
+   *
+   * @param firstRow The index of the first deleted row
+   * @param lastRow The index of the last deleted row
+   */
+  protected void fireRowsDeleted(int firstRow, int lastRow) {
+    fireChange(new TableModelEvent(this, firstRow, lastRow,
+        TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE));
   }
 
   /**
@@ -772,17 +1088,23 @@ public class MidiPlayerWithListener extends MidiPlayer
   private static void fireTableDataChanged(List<TableModelListener> listeners,
       TableModelEvent event) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.tableChanged(event);
       });
+      FlightRecorderEvents.get().listenersNotified("tableChanged",
+          listeners.size(), start);
     }
   }
 
   private static void fireTableDataChanged(List<TableModelListener> listeners) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.tableChanged(null);
       });
+      FlightRecorderEvents.get().listenersNotified("tableChanged",
+          listeners.size(), start);
     }
   }
 
@@ -917,16 +1239,10 @@ public class MidiPlayerWithListener extends MidiPlayer
     if (evt == null) {
       throw new NullPointerException();
     }
-    if (!isNotifyOnEDT() || SwingUtilities.isEventDispatchThread()) {
-      Object oldValue = evt.getOldValue();
-      Object newValue = evt.getNewValue();
-      if (oldValue == null || newValue == null || !oldValue.equals(newValue)) {
-        firePropertyChange(this.propertyChangeListeners, evt);
-      }
-    } else {
-      SwingUtilities.invokeLater(() -> {
-        fireChange(evt);
-      });
+    Object oldValue = evt.getOldValue();
+    Object newValue = evt.getNewValue();
+    if (oldValue == null || newValue == null || !oldValue.equals(newValue)) {
+      eventCoalescer.propertyChanged(evt);
     }
   }
 
@@ -957,18 +1273,24 @@ public class MidiPlayerWithListener extends MidiPlayer
   private static void firePropertyChange(List<PropertyChangeListener> listeners,
       PropertyChangeEvent event) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.propertyChange(event);
       });
+      FlightRecorderEvents.get().listenersNotified(event.getPropertyName(),
+          listeners.size(), start);
     }
   }
 
   private static void firePropertyChange(
       List<PropertyChangeListener> listeners) {
     if (listeners != null) {
+      long start = System.nanoTime();
       listeners.stream().forEach((listener) -> {
         listener.propertyChange(null);
       });
+      FlightRecorderEvents.get().listenersNotified("propertyChange",
+          listeners.size(), start);
     }
   }
 
@@ -0,0 +1,389 @@
+package midiplayer.frame;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+import midiplayer.metrics.FlightRecorderEvents;
+import midiplayer.metrics.LatencyHistogram;
+
+/**
+ * Merges table model and property change events before they reach listeners.
+ *
+ * <p>
+ * Events fired on the <i>Event Dispatch Thread</i> outside of a batch are delivered immediately, as
+ * expected by Swing components. Events fired from other threads, or inside a batch (see
+ * {@link #beginBatch()}), are queued and delivered at once: off the <i>Event Dispatch Thread</i>, a
+ * single flush is posted for all the events queued until it runs.
+ * </p>
+ *
+ * <p>
+ * While queued, contiguous row insertions, deletions and updates are merged into single row range
+ * events, updates of inserted rows are dropped, and successive changes of the same property are
+ * merged into a single change from the first old value to the last new value. When too many
+ * distinct events are queued, they are replaced by a single "all rows changed" event.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class TableModelEventCoalescer {
+
+  /**
+   * Maximum number of distinct table model events queued before falling back to a full change.
+   */
+  private static final int MAX_PENDING_TABLE_EVENTS = 32;
+
+  /**
+   * The source of the table model events.
+   */
+  private final TableModel source;
+
+  /**
+   * Whether to notify listeners on EDT.
+   */
+  private final boolean notifyOnEDT;
+
+  /**
+   * Delivers a table model event to listeners.
+   */
+  private final Consumer<TableModelEvent> tableListeners;
+
+  /**
+   * Delivers a property change event to listeners.
+   */
+  private final Consumer<PropertyChangeEvent> propertyListeners;
+
+  /**
+   * Time spent delivering each event to listeners.
+   */
+  private final LatencyHistogram fanOutTimes;
+
+  /**
+   * Time between posting a flush on the <i>Event Dispatch Thread</i> and running it.
+   */
+  private final LatencyHistogram queueDelays;
+
+  private final List<TableModelEvent> pendingTableEvents = new ArrayList<>();
+
+  private final Map<String, PropertyChangeEvent> pendingPropertyEvents =
+      new LinkedHashMap<>();
+
+  /**
+   * Is a flush posted on the <i>Event Dispatch Thread</i>?
+   */
+  private boolean flushScheduled = false;
+
+  /**
+   * Time at which the pending flush was posted, as returned by {@link System#nanoTime()}.
+   */
+  private long flushScheduledTime = 0;
+
+  /**
+   * Number of nested batches in progress.
+   */
+  private int batchDepth = 0;
+
+  private long receivedEventCount = 0;
+
+  private long firedEventCount = 0;
+
+  /**
+   * Constructs an event coalescer.
+   *
+   * @param source the source of the table model events
+   * @param notifyOnEDT whether listeners must only be notified on the <i>Event Dispatch Thread</i>
+   * @param tableListeners delivers a table model event to listeners
+   * @param propertyListeners delivers a property change event to listeners
+   * @param fanOutTimes records the time spent delivering each event to listeners
+   * @param queueDelays records the time flushes wait on the <i>Event Dispatch Thread</i> queue
+   */
+  TableModelEventCoalescer(TableModel source, boolean notifyOnEDT,
+      Consumer<TableModelEvent> tableListeners,
+      Consumer<PropertyChangeEvent> propertyListeners,
+      LatencyHistogram fanOutTimes, LatencyHistogram queueDelays) {
+    this.source = source;
+    this.notifyOnEDT = notifyOnEDT;
+    this.tableListeners = tableListeners;
+    this.propertyListeners = propertyListeners;
+    this.fanOutTimes = fanOutTimes;
+    this.queueDelays = queueDelays;
+  }
+
+  // #########################################################################
+  /**
+   * Start a batch: events are queued until the matching call to {@link #endBatch()}.
+   *
+   * <p>
+   * Batches can be nested. Events are delivered when the outermost batch ends.
+   * </p>
+   */
+  public synchronized void beginBatch() {
+    batchDepth++;
+  }
+
+  /**
+   * End a batch and deliver queued events if it was the outermost batch.
+   *
+   * @throws IllegalStateException if no batch is in progress
+   */
+  public void endBatch() {
+    boolean flushNow;
+    synchronized (this) {
+      if (batchDepth == 0) {
+        throw new IllegalStateException("No batch in progress");
+      }
+      batchDepth--;
+      if (batchDepth > 0) {
+        return;
+      }
+      flushNow = !notifyOnEDT || SwingUtilities.isEventDispatchThread();
+      if (!flushNow) {
+        scheduleFlush();
+      }
+    }
+    if (flushNow) {
+      flush();
+    }
+  }
+
+  /**
+   * Fire a table model event, possibly merged with other queued events.
+   *
+   * @param evt the table model event
+   */
+  public void tableChanged(final TableModelEvent evt) {
+    synchronized (this) {
+      receivedEventCount++;
+      if (isDeferred()) {
+        queue(evt);
+        scheduleFlush();
+        return;
+      }
+    }
+    // Deliver queued events first to keep ordering
+    flush();
+    deliver(evt);
+  }
+
+  /**
+   * Fire a property change event, possibly merged with other queued events.
+   *
+   * @param evt the property change event
+   */
+  public void propertyChanged(final PropertyChangeEvent evt) {
+    synchronized (this) {
+      receivedEventCount++;
+      if (isDeferred()) {
+        queue(evt);
+        scheduleFlush();
+        return;
+      }
+    }
+    flush();
+    deliver(evt);
+  }
+
+  /**
+   * Deliver all queued events now.
+   */
+  public void flush() {
+    TableModelEvent[] tableEvents;
+    PropertyChangeEvent[] propertyEvents;
+    long start = System.nanoTime();
+    long queueDelay = -1;
+    synchronized (this) {
+      if (flushScheduled) {
+        queueDelay = queueDelays.recordSince(flushScheduledTime);
+        flushScheduled = false;
+      }
+      if (pendingTableEvents.isEmpty() && pendingPropertyEvents.isEmpty()) {
+        return;
+      }
+      tableEvents = pendingTableEvents
+          .toArray(new TableModelEvent[pendingTableEvents.size()]);
+      propertyEvents = pendingPropertyEvents.values()
+          .toArray(new PropertyChangeEvent[pendingPropertyEvents.size()]);
+      pendingTableEvents.clear();
+      pendingPropertyEvents.clear();
+    }
+    // Table first so that property listeners see an up to date table
+    for (TableModelEvent evt : tableEvents) {
+      deliver(evt);
+    }
+    for (PropertyChangeEvent evt : propertyEvents) {
+      deliver(evt);
+    }
+    if (queueDelay >= 0) {
+      FlightRecorderEvents.get().edtDispatched(
+          tableEvents.length + propertyEvents.length, queueDelay, start);
+    }
+  }
+
+  // #########################################################################
+  private boolean isDeferred() {
+    return batchDepth > 0
+        || (notifyOnEDT && !SwingUtilities.isEventDispatchThread());
+  }
+
+  private void scheduleFlush() {
+    if (batchDepth == 0 && !flushScheduled) {
+      flushScheduled = true;
+      flushScheduledTime = System.nanoTime();
+      SwingUtilities.invokeLater(this::flush);
+    }
+  }
+
+  private void deliver(final TableModelEvent evt) {
+    synchronized (this) {
+      firedEventCount++;
+    }
+    long start = System.nanoTime();
+    tableListeners.accept(evt);
+    fanOutTimes.recordSince(start);
+  }
+
+  private void deliver(final PropertyChangeEvent evt) {
+    synchronized (this) {
+      firedEventCount++;
+    }
+    long start = System.nanoTime();
+    propertyListeners.accept(evt);
+    fanOutTimes.recordSince(start);
+  }
+
+  private static boolean isStructureChange(final TableModelEvent evt) {
+    return evt.getFirstRow() == TableModelEvent.HEADER_ROW;
+  }
+
+  private static boolean isFullChange(final TableModelEvent evt) {
+    return evt.getType() == TableModelEvent.UPDATE && evt.getFirstRow() == 0
+        && evt.getLastRow() == Integer.MAX_VALUE;
+  }
+
+  private void queue(final TableModelEvent evt) {
+    int size = pendingTableEvents.size();
+    TableModelEvent last = size == 0 ? null : pendingTableEvents.get(size - 1);
+    if (isStructureChange(evt) || isFullChange(evt)) {
+      if (last != null && isStructureChange(last)) {
+        // A structure change already implies a full change
+        return;
+      }
+      pendingTableEvents.clear();
+      pendingTableEvents.add(evt);
+      return;
+    }
+    if (last != null && (isStructureChange(last) || isFullChange(last))) {
+      // Listeners will read the whole table anyway
+      return;
+    }
+    TableModelEvent merged = last == null ? null : merge(last, evt);
+    if (merged != null) {
+      pendingTableEvents.set(size - 1, merged);
+    } else if (size >= MAX_PENDING_TABLE_EVENTS) {
+      pendingTableEvents.clear();
+      pendingTableEvents.add(new TableModelEvent(source));
+    } else {
+      pendingTableEvents.add(evt);
+    }
+  }
+
+  /**
+   * Merge two successive row events.
+   *
+   * @param first the first event
+   * @param second the event following the first one
+   * @return the merged event, {@code null} if the events cannot be merged
+   */
+  private TableModelEvent merge(final TableModelEvent first,
+      final TableModelEvent second) {
+    if (first.getColumn() != second.getColumn()) {
+      return null;
+    }
+    int a = first.getFirstRow();
+    int b = first.getLastRow();
+    int c = second.getFirstRow();
+    int d = second.getLastRow();
+    int column = first.getColumn();
+    switch (second.getType()) {
+      case TableModelEvent.INSERT:
+        if (first.getType() == TableModelEvent.INSERT && a <= c && c <= b + 1) {
+          // Rows inserted within or right after the inserted rows
+          return new TableModelEvent(source, a, b + (d - c + 1), column,
+              TableModelEvent.INSERT);
+        }
+        return null;
+      case TableModelEvent.DELETE:
+        if (first.getType() == TableModelEvent.DELETE && c <= a && a <= d + 1) {
+          // Rows deleted around the previously deleted rows
+          return new TableModelEvent(source, c, d + (b - a + 1), column,
+              TableModelEvent.DELETE);
+        }
+        return null;
+      case TableModelEvent.UPDATE:
+        if (first.getType() == TableModelEvent.INSERT && a <= c && d <= b) {
+          // Inserted rows are read by listeners anyway
+          return first;
+        }
+        if (first.getType() == TableModelEvent.UPDATE && c <= b + 1
+            && a <= d + 1) {
+          return new TableModelEvent(source, Math.min(a, c), Math.max(b, d),
+              column, TableModelEvent.UPDATE);
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  private void queue(final PropertyChangeEvent evt) {
+    String propertyName = evt.getPropertyName();
+    PropertyChangeEvent previous = pendingPropertyEvents.remove(propertyName);
+    PropertyChangeEvent merged = evt;
+    if (previous != null) {
+      Object oldValue = previous.getOldValue();
+      Object newValue = evt.getNewValue();
+      if (oldValue != null && oldValue.equals(newValue)) {
+        // The property went back to its original value
+        return;
+      }
+      merged = new PropertyChangeEvent(evt.getSource(), propertyName,
+          oldValue, newValue);
+    }
+    // Keep the order of the last changes
+    pendingPropertyEvents.put(propertyName, merged);
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of events received.
+   *
+   * @return the number of events received
+   */
+  public synchronized long getReceivedEventCount() {
+    return receivedEventCount;
+  }
+
+  /**
+   * Get the number of events delivered to listeners.
+   *
+   * @return the number of events delivered
+   */
+  public synchronized long getFiredEventCount() {
+    return firedEventCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "TableModelEventCoalescer [received=" + receivedEventCount
+        + ", fired=" + firedEventCount + ", pending="
+        + (pendingTableEvents.size() + pendingPropertyEvents.size()) + "]";
+  }
+
+}
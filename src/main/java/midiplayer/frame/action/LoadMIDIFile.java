@@ -4,6 +4,7 @@ import java.beans.PropertyChangeEvent;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.MissingResourceException;
@@ -11,10 +12,12 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.Icon;
+import javax.swing.SwingUtilities;
 
 import jswingshell.IJssController;
 import jswingshell.action.AbstractJssAction;
 import midiplayer.MidiPlayer;
+import midiplayer.PlaylistImporter;
 import midiplayer.resources.LocaleChangeListener;
 import midiplayer.resources.ResourceUtils;
 
@@ -63,6 +66,24 @@ public class LoadMIDIFile extends AbstractJssAction
   private static final String COMMAND_RUN_FILE_PATH_INVALID_KEY =
       "midiplayer.action.load_midi_file.run.file_path_invalid";
 
+  private static final String COMMAND_RUN_FILE_NOT_MIDI_KEY =
+      "midiplayer.action.load_midi_file.run.file_not_midi";
+
+  private static final String COMMAND_RUN_IMPORT_FINISHED_KEY =
+      "midiplayer.action.load_midi_file.run.import_finished";
+
+  private static final String COMMAND_RUN_IMPORT_CANCELLED_KEY =
+      "midiplayer.action.load_midi_file.run.import_cancelled";
+
+  /**
+   * Maximum number of files loaded synchronously.
+   *
+   * <p>
+   * Directories and larger sets of files are imported in the background.
+   * </p>
+   */
+  private static final int SYNCHRONOUS_LOAD_LIMIT = 64;
+
   private static String commandHelp;
 
   private static boolean commandHelpInitialized = false;
@@ -205,10 +226,17 @@ public class LoadMIDIFile extends AbstractJssAction
     // Extract file path from parameters
     if (args != null && args.length > 1) {
       if (args.length >= 2) {
-        List<Path> filesToLoad = getFilesToLoad(shellController, args);
+        List<Path> filesToLoad = getFilesToLoad(args);
 
-        // Load all valid files at once
-        if (!filesToLoad.isEmpty() && midiPlayer.addAll(filesToLoad)) {
+        if (isSynchronousLoad(filesToLoad)) {
+          // Load all valid files at once
+          filesToLoad = getValidFiles(shellController, filesToLoad);
+          if (!filesToLoad.isEmpty() && midiPlayer.addAll(filesToLoad)) {
+            commandReturnStatus = AbstractJssAction.SUCCESS;
+          }
+        } else {
+          // Import files and directories in the background
+          importFiles(shellController, filesToLoad);
           commandReturnStatus = AbstractJssAction.SUCCESS;
         }
       } else if (shellController != null) {
@@ -231,44 +259,122 @@ public class LoadMIDIFile extends AbstractJssAction
     return commandReturnStatus;
   }
 
-  private List<Path> getFilesToLoad(IJssController shellController,
-      String... args) {
+  private List<Path> getFilesToLoad(String... args) {
     List<Path> filesToLoad = new ArrayList<>(args.length);
-
     for (int i = 1, n = args.length; i < n; i++) {
       String filePath = args[i];
-      Path path = Paths.get(filePath).toAbsolutePath().normalize();
-      if (!Files.isReadable(path) || !filesToLoad.add(path)) {
-        String msg;
-        if (Files.exists(path)) {
-          // File is not readable
-          try {
-            msg = ResourceUtils.getMessage(COMMAND_RUN_FILE_NOT_READABLE_KEY,
-                path);
-          } catch (MissingResourceException e) {
-            LOGGER.log(Level.SEVERE, "Resource not found: \""
-                + COMMAND_RUN_FILE_NOT_READABLE_KEY + "\"", e);
-            msg = "File is not readable: " + path;
+      filesToLoad.add(Paths.get(filePath).toAbsolutePath().normalize());
+    }
+    return filesToLoad;
+  }
+
+  private boolean isSynchronousLoad(List<Path> filesToLoad) {
+    if (filesToLoad.size() > SYNCHRONOUS_LOAD_LIMIT) {
+      return false;
+    }
+    for (Path path : filesToLoad) {
+      if (Files.isDirectory(path)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private List<Path> getValidFiles(IJssController shellController,
+      List<Path> filesToLoad) {
+    List<Path> validFiles = new ArrayList<>(filesToLoad.size());
+    for (Path path : filesToLoad) {
+      PlaylistImporter.Rejection rejection = PlaylistImporter.check(path);
+      if (rejection == null) {
+        validFiles.add(path);
+      } else if (shellController != null) {
+        shellController.publish(IJssController.PublicationLevel.ERROR,
+            getRejectionMessage(path, rejection));
+      }
+    }
+    return validFiles;
+  }
+
+  private void importFiles(final IJssController shellController,
+      List<Path> filesToLoad) {
+    final MidiPlayer player = midiPlayer;
+    player.getPlaylistImporter().start(filesToLoad,
+        new PlaylistImporter.Listener() {
+
+          @Override
+          public void filesAccepted(PlaylistImporter.Import task,
+              List<Path> files) {
+            // The playlist is read by the table on the EDT
+            SwingUtilities.invokeLater(() -> {
+              player.addAll(files);
+            });
           }
-          LOGGER.log(Level.WARNING, msg);
-        } else {
-          // File does not exists
-          try {
-            msg = ResourceUtils.getMessage(COMMAND_RUN_FILE_PATH_INVALID_KEY,
-                path);
-          } catch (MissingResourceException e) {
-            LOGGER.log(Level.SEVERE, "Resource not found: \""
-                + COMMAND_RUN_FILE_PATH_INVALID_KEY + "\"", e);
-            msg = "No file found at path " + path;
+
+          @Override
+          public void fileRejected(PlaylistImporter.Import task, Path path,
+              PlaylistImporter.Rejection reason) {
+            publish(shellController, IJssController.PublicationLevel.ERROR,
+                getRejectionMessage(path, reason));
           }
-        }
-        if (shellController != null) {
-          shellController.publish(IJssController.PublicationLevel.ERROR, msg);
-        }
-      }
+
+          @Override
+          public void importFinished(PlaylistImporter.Import task) {
+            if (task.isCancelled()) {
+              publish(shellController, IJssController.PublicationLevel.WARNING,
+                  getMessage(COMMAND_RUN_IMPORT_CANCELLED_KEY,
+                      "Import cancelled after loading {0} MIDI file(s).",
+                      task.getAcceptedCount()));
+            } else {
+              publish(shellController, IJssController.PublicationLevel.SUCCESS,
+                  getMessage(COMMAND_RUN_IMPORT_FINISHED_KEY,
+                      "{0} MIDI file(s) loaded.", task.getAcceptedCount()));
+            }
+          }
+
+        });
+  }
+
+  private static void publish(IJssController shellController,
+      IJssController.PublicationLevel level, String msg) {
+    if (shellController != null) {
+      SwingUtilities.invokeLater(() -> {
+        shellController.publish(level, msg);
+      });
+    }
+  }
+
+  private static String getMessage(String key, String defaultMessage,
+      Object argument) {
+    try {
+      return ResourceUtils.getMessage(key, argument);
+    } catch (MissingResourceException e) {
+      LOGGER.log(Level.SEVERE, "Resource not found: \"" + key + "\"", e);
+      return MessageFormat.format(defaultMessage, argument);
     }
+  }
 
-    return filesToLoad;
+  private static String getRejectionMessage(Path path,
+      PlaylistImporter.Rejection rejection) {
+    String msg;
+    switch (rejection) {
+      case NOT_READABLE:
+        msg = getMessage(COMMAND_RUN_FILE_NOT_READABLE_KEY,
+            "File is not readable: {0}", path);
+        LOGGER.log(Level.WARNING, msg);
+        break;
+      case NOT_MIDI:
+        msg = getMessage(COMMAND_RUN_FILE_NOT_MIDI_KEY,
+            "File is not a MIDI file: {0}", path);
+        LOGGER.log(Level.WARNING, msg);
+        break;
+      case NOT_FOUND:
+      default:
+        msg = getMessage(COMMAND_RUN_FILE_PATH_INVALID_KEY,
+            "No file found at path {0}", path);
+        LOGGER.log(Level.WARNING, msg);
+        break;
+    }
+    return msg;
   }
 
   // #########################################################################
@@ -0,0 +1,402 @@
+package midiplayer.frame.action;
+
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.Action;
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import jswingshell.IJssController;
+import jswingshell.action.AbstractJssAction;
+import midiplayer.MidiPlayer;
+import midiplayer.PlaylistFile;
+import midiplayer.frame.MidiPlayerWithListener;
+import midiplayer.resources.LocaleChangeListener;
+import midiplayer.resources.ResourceUtils;
+
+/**
+ * Action to save the playlist to a playlist file.
+ *
+ * <p>
+ * The playlist is copied when the action is run, and the copy is written in the background.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class SavePlaylistAction extends AbstractJssAction
+    implements LocaleChangeListener, PropertyChangeListener {
+
+  /**
+   * The {@code serialVersionUID}.
+   */
+  private static final long serialVersionUID = -1727513906832460598L;
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(SavePlaylistAction.class.getName());
+
+  /**
+   * This action default identifier.
+   *
+   * @since 1.4
+   */
+  public static final String DEFAULT_IDENTIFIER = "savePlaylist";
+
+  private static final String[] IDENTIFIERS = {DEFAULT_IDENTIFIER};
+
+  private static final String ACTION_LABEL = "Save playlist";
+
+  private static final String ACTION_LABEL_KEY =
+      "midiplayer.action.save_playlist.name";
+
+  private static final String COMMAND_BRIEF_HELP = "Save the playlist.";
+
+  private static final String COMMAND_BRIEF_HELP_KEY =
+      "midiplayer.action.save_playlist.help.short";
+
+  private static final String COMMAND_HELP_KEY =
+      "midiplayer.action.save_playlist.help.long";
+
+  private static final String COMMAND_RUN_FILE_MANDATORY_WARNING_KEY =
+      "midiplayer.action.save_playlist.run.file_mandatory";
+
+  private static final String COMMAND_RUN_UNKNOWN_FORMAT_KEY =
+      "midiplayer.action.save_playlist.run.unknown_format";
+
+  private static final String COMMAND_RUN_FILE_NOT_WRITABLE_KEY =
+      "midiplayer.action.save_playlist.run.file_not_writable";
+
+  private static final String COMMAND_RUN_SAVE_FINISHED_KEY =
+      "midiplayer.action.save_playlist.run.save_finished";
+
+  private static final String COMMAND_RUN_FILE_FILTER_DESCRIPTION_KEY =
+      "midiplayer.action.save_playlist.run.file_filter_description";
+
+  private static final String ICON_KEY = "music.png";
+
+  private static String commandHelp;
+
+  private static boolean commandHelpInitialized = false;
+
+  private static String commandBriefHelp;
+
+  private static boolean commandBriefHelpInitialized = false;
+
+  /**
+   * Construct the static command help.
+   *
+   * @param action the action reference
+   *
+   * @return the static command help.
+   */
+  public static final String getHelp(SavePlaylistAction action) {
+    if (!commandHelpInitialized && action != null) {
+      StringBuilder stringBuilder = new StringBuilder();
+
+      String commandIdsAsString = action.getCommandIdentifiersAsString();
+      stringBuilder.append(action.getBriefHelp());
+      stringBuilder.append("\n");
+      try {
+        stringBuilder.append(
+            ResourceUtils.getMessage(COMMAND_HELP_KEY, commandIdsAsString));
+      } catch (MissingResourceException e) {
+        LOGGER.log(Level.SEVERE,
+            "Resource not found: \"" + COMMAND_HELP_KEY + "\"", e);
+        stringBuilder.append("\n").append("Saves the songs of the playlist to"
+            + " the M3U, M3U8 or PLS playlist file at the given path:");
+        stringBuilder.append("\n\t").append(commandIdsAsString)
+            .append(" file_path ");
+      }
+
+      commandHelp = stringBuilder.toString();
+      commandHelpInitialized = true;
+    }
+    return commandHelp;
+  }
+
+  /**
+   * Construct the static command brief help.
+   *
+   * @param action the action reference
+   *
+   * @return the static command brief help.
+   */
+  public static final String getBriefHelp(SavePlaylistAction action) {
+    if (!commandBriefHelpInitialized && action != null) {
+      try {
+        commandBriefHelp = ResourceUtils.getMessage(COMMAND_BRIEF_HELP_KEY);
+      } catch (MissingResourceException e) {
+        LOGGER.log(Level.SEVERE,
+            "Resource not found: \"" + COMMAND_BRIEF_HELP_KEY + "\"", e);
+        commandBriefHelp = COMMAND_BRIEF_HELP;
+      }
+      commandBriefHelpInitialized = true;
+    }
+    return commandBriefHelp;
+  }
+
+  /**
+   * Reset the static help to force reconstruction on next call.
+   *
+   * @since 1.4
+   */
+  public static final void resetHelp() {
+    commandHelpInitialized = false;
+    commandHelp = null;
+    commandBriefHelpInitialized = false;
+    commandBriefHelp = null;
+  }
+
+  // #########################################################################
+  private transient JFileChooser fileChooser;
+
+  private transient Component parent;
+
+  private transient MidiPlayer midiPlayer;
+
+  public SavePlaylistAction(JFileChooser fileChooser, Component parent,
+      MidiPlayer midiPlayer, IJssController shellController, String... args) {
+    super(ACTION_LABEL, ResourceUtils.createImageIcon(ICON_KEY, ACTION_LABEL),
+        shellController, args);
+    if (midiPlayer == null) {
+      throw new IllegalArgumentException("Midi player is null");
+    }
+    this.midiPlayer = midiPlayer;
+    this.setFileChooser(fileChooser);
+    this.setParent(parent);
+    putValue(Action.LARGE_ICON_KEY,
+        ResourceUtils.createImageIcon(ICON_KEY, ACTION_LABEL, true));
+    putValue(Action.ACTION_COMMAND_KEY, getDefaultCommandIdentifier());
+    localeChanged();
+  }
+
+  public SavePlaylistAction(JFileChooser fileChooser, Component parent,
+      MidiPlayer midiPlayer, IJssController shellController) {
+    this(fileChooser, parent, midiPlayer, shellController, (String[]) null);
+  }
+
+  public SavePlaylistAction(JFileChooser fileChooser, Component parent,
+      MidiPlayer midiPlayer) {
+    this(fileChooser, parent, midiPlayer, null, (String[]) null);
+  }
+
+  public JFileChooser getFileChooser() {
+    return fileChooser;
+  }
+
+  public void setFileChooser(JFileChooser fileChooser) {
+    // Set the file chooser
+    if (fileChooser == null) {
+      throw new IllegalArgumentException("File chooser is null");
+    }
+    this.fileChooser = fileChooser;
+  }
+
+  public Component getParent() {
+    return parent;
+  }
+
+  public void setParent(Component parent) {
+    // Set the parent
+    if (parent == null) {
+      throw new IllegalArgumentException("Parent is null");
+    }
+    this.parent = parent;
+  }
+
+  public MidiPlayer getMidiPlayer() {
+    return midiPlayer;
+  }
+
+  public void setMidiPlayer(MidiPlayer midiPlayer) {
+    this.midiPlayer = midiPlayer;
+  }
+
+  // #########################################################################
+  @Override
+  public String[] getCommandIdentifiers() {
+    return IDENTIFIERS;
+  }
+
+  @Override
+  public String getBriefHelp() {
+    return getBriefHelp(this);
+  }
+
+  @Override
+  public String getHelp(IJssController shellController) {
+    return getHelp(this);
+  }
+
+  @Override
+  public int run(IJssController shellController, String... args) {
+    if (args == null || args.length < 2) {
+      LOGGER.log(Level.WARNING, "File path is mandatory!");
+      publish(shellController, IJssController.PublicationLevel.ERROR,
+          getMessage(COMMAND_RUN_FILE_MANDATORY_WARNING_KEY,
+              "File path is mandatory!", null));
+      return AbstractJssAction.ERROR;
+    }
+
+    final Path file = Paths.get(args[1]);
+    final PlaylistFile.Format format;
+    try {
+      format = PlaylistFile.Format.of(file);
+    } catch (IllegalArgumentException e) {
+      LOGGER.log(Level.WARNING, "Unknown playlist format: " + file, e);
+      publish(shellController, IJssController.PublicationLevel.ERROR,
+          getMessage(COMMAND_RUN_UNKNOWN_FORMAT_KEY,
+              "Not a playlist file (M3U, M3U8 or PLS): {0}", file));
+      return AbstractJssAction.ERROR;
+    }
+
+    // Copy the playlist on the EDT, write it in the background
+    final List<Object> resources =
+        Arrays.asList(midiPlayer.getPlaylist().toArray());
+    Thread thread = new Thread(() -> {
+      try {
+        int count = PlaylistFile.write(file, format, resources);
+        publish(shellController, IJssController.PublicationLevel.SUCCESS,
+            getMessage(COMMAND_RUN_SAVE_FINISHED_KEY, "{0} song(s) saved.",
+                count));
+      } catch (IOException e) {
+        LOGGER.log(Level.WARNING, "Playlist file cannot be written: " + file,
+            e);
+        publish(shellController, IJssController.PublicationLevel.ERROR,
+            getMessage(COMMAND_RUN_FILE_NOT_WRITABLE_KEY,
+                "Playlist file cannot be written: {0}", file));
+      }
+    }, "MidiPlayerPlaylistSave");
+    thread.setDaemon(true);
+    thread.start();
+    return AbstractJssAction.SUCCESS;
+  }
+
+  private static void publish(IJssController shellController,
+      IJssController.PublicationLevel level, String msg) {
+    if (shellController != null) {
+      SwingUtilities.invokeLater(() -> {
+        shellController.publish(level, msg);
+      });
+    }
+  }
+
+  private static String getMessage(String key, String defaultMessage,
+      Object argument) {
+    try {
+      return ResourceUtils.getMessage(key, argument);
+    } catch (MissingResourceException e) {
+      LOGGER.log(Level.SEVERE, "Resource not found: \"" + key + "\"", e);
+      return MessageFormat.format(defaultMessage, argument);
+    }
+  }
+
+  // #########################################################################
+  @Override
+  protected String[] extractArgumentsFromEvent(ActionEvent e) {
+    String[] eventArgs = null;
+
+    String commandIdentifier = getDefaultCommandIdentifier();
+    if (commandIdentifier != null) {
+      // Construct file extension filter
+      String description;
+      try {
+        description =
+            ResourceUtils.getMessage(COMMAND_RUN_FILE_FILTER_DESCRIPTION_KEY);
+      } catch (MissingResourceException e1) {
+        LOGGER.log(Level.SEVERE, "Resource not found: \""
+            + COMMAND_RUN_FILE_FILTER_DESCRIPTION_KEY + "\"", e1);
+        description = "Playlist file";
+      }
+      FileNameExtensionFilter filter = new FileNameExtensionFilter(
+          description, LoadPlaylistAction.getExtensions());
+
+      // Open file chooser and select file
+      fileChooser.setFileFilter(filter);
+      fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+      fileChooser.setMultiSelectionEnabled(false);
+      int returnVal = fileChooser.showSaveDialog(parent);
+      if (returnVal == JFileChooser.APPROVE_OPTION) {
+        String selectedFile = fileChooser.getSelectedFile().getAbsolutePath();
+        if (!filter.accept(new File(selectedFile))) {
+          // Save as UTF-8 M3U by default
+          selectedFile += "." + PlaylistFile.Format.M3U8.getExtension();
+        }
+        eventArgs = new String[] {commandIdentifier, selectedFile};
+      }
+    }
+
+    return eventArgs;
+  }
+
+  // #########################################################################
+  @Override
+  public void localeChanged() {
+    localeChanged(null);
+  }
+
+  @Override
+  public void localeChanged(PropertyChangeEvent evt) {
+    resetHelp();
+    try {
+      ResourceUtils.setTextAndMnemonic(this, ACTION_LABEL_KEY);
+    } catch (MissingResourceException e) {
+      LOGGER.log(Level.SEVERE,
+          "Resource not found: \"" + ACTION_LABEL_KEY + "\"", e);
+      putValue(Action.NAME, ACTION_LABEL);
+    }
+    putValue(Action.SHORT_DESCRIPTION, this.getBriefHelp());
+    putValue(Action.LONG_DESCRIPTION,
+        this.getHelp(this.getDefaultShellController()));
+  }
+
+  // #########################################################################
+  @Override
+  public final void putValue(String key, Object newValue) {
+    super.putValue(key, newValue);
+  }
+
+  @Override
+  public final String getDefaultCommandIdentifier() {
+    return super.getDefaultCommandIdentifier();
+  }
+
+  // #########################################################################
+  @Override
+  public void propertyChange(PropertyChangeEvent evt) {
+    if (evt == null) {
+      return;
+    }
+
+    Object newValue = evt.getNewValue();
+    Object oldValue = evt.getOldValue();
+    switch (evt.getPropertyName()) {
+      case MidiPlayerWithListener.PLAYLIST_SIZE_CHANGE:
+        if (newValue instanceof Integer && oldValue instanceof Integer) {
+          Integer newSize = (Integer) newValue;
+          Integer oldSize = (Integer) oldValue;
+          if (oldSize <= 0 || newSize <= 0) {
+            this.setEnabled(newSize > 0);
+          }
+        }
+        break;
+    }
+  }
+
+}
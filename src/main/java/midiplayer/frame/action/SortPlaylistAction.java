@@ -11,6 +11,7 @@ import javax.swing.Action;
 import jswingshell.IJssController;
 import jswingshell.action.AbstractJssAction;
 import midiplayer.MidiPlayer;
+import midiplayer.SortKey;
 import midiplayer.frame.MidiPlayerWithListener;
 import midiplayer.resources.LocaleChangeListener;
 import midiplayer.resources.ResourceUtils;
@@ -55,6 +56,9 @@ public final class SortPlaylistAction extends AbstractJssAction
   private static final String COMMAND_HELP_KEY =
       "midiplayer.action.sort.help.long";
 
+  private static final String COMMAND_RUN_INVALID_SORT_KEY_WARNING_KEY =
+      "midiplayer.action.sort.run.invalid_key";
+
   private static final String ICON_KEY = "sort_ascending(2).png";
 
   private static String commandHelp;
@@ -87,6 +91,10 @@ public final class SortPlaylistAction extends AbstractJssAction
             "Resource not found: \"" + COMMAND_HELP_KEY + "\"", e);
         stringBuilder.append("\n").append("Sorts the songs in the playlist:");
         stringBuilder.append("\n\t").append(commandIdsAsString);
+        stringBuilder.append("\n")
+            .append("You can sort them by a key as follow:");
+        stringBuilder.append("\n\t").append(commandIdsAsString)
+            .append(" [name|directory|duration|title]");
       }
 
       commandHelp = stringBuilder.toString();
@@ -180,7 +188,30 @@ public final class SortPlaylistAction extends AbstractJssAction
 
   @Override
   public int run(IJssController shellController, String... args) {
-    return midiPlayer.sortPlaylist() ? AbstractJssAction.SUCCESS
+    if (args == null || args.length <= 1) {
+      return midiPlayer.sortPlaylist() ? AbstractJssAction.SUCCESS
+          : AbstractJssAction.ERROR;
+    }
+    SortKey sortKey;
+    try {
+      sortKey = SortKey.forName(args[1]);
+    } catch (IllegalArgumentException e) {
+      LOGGER.log(Level.WARNING, "Invalid sort key: " + args[1], e);
+      if (shellController != null) {
+        String msg;
+        try {
+          msg = ResourceUtils.getMessage(
+              COMMAND_RUN_INVALID_SORT_KEY_WARNING_KEY, args[1]);
+        } catch (MissingResourceException e1) {
+          LOGGER.log(Level.SEVERE, "Resource not found: \""
+              + COMMAND_RUN_INVALID_SORT_KEY_WARNING_KEY + "\"", e1);
+          msg = "Invalid sort key: " + args[1];
+        }
+        shellController.publish(IJssController.PublicationLevel.ERROR, msg);
+      }
+      return AbstractJssAction.ERROR;
+    }
+    return midiPlayer.sortPlaylist(sortKey) ? AbstractJssAction.SUCCESS
         : AbstractJssAction.ERROR;
   }
 
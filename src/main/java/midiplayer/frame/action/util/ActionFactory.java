@@ -12,6 +12,7 @@ import midiplayer.frame.action.ClearAction;
 import midiplayer.frame.action.DisplayAboutAction;
 import midiplayer.frame.action.DisplayConsoleAction;
 import midiplayer.frame.action.ExitAction;
+import midiplayer.frame.action.LoadPlaylistAction;
 import midiplayer.frame.action.LocaleAction;
 import midiplayer.frame.action.LoopAction;
 import midiplayer.frame.action.NextAction;
@@ -19,6 +20,7 @@ import midiplayer.frame.action.PauseAction;
 import midiplayer.frame.action.PlayAction;
 import midiplayer.frame.action.PreviousAction;
 import midiplayer.frame.action.RemoveAction;
+import midiplayer.frame.action.SavePlaylistAction;
 import midiplayer.frame.action.ShufflePlaylistAction;
 import midiplayer.frame.action.SortPlaylistAction;
 import midiplayer.frame.action.StopAction;
@@ -66,6 +68,44 @@ public class ActionFactory {
           addAction.setDefaultShellController(midiPlayerController);
         }
         break;
+      case LoadPlaylistAction.DEFAULT_IDENTIFIER:
+        LoadPlaylistAction loadPlaylistAction;
+        if (action == null) {
+          loadPlaylistAction =
+              new LoadPlaylistAction(midiPlayerFrame.getFileChooser(),
+                  midiPlayerFrame, midiPlayer, midiPlayerController);
+          action = loadPlaylistAction;
+          addToShell(midiPlayerController, action);
+        } else {
+          loadPlaylistAction = (LoadPlaylistAction) action;
+          loadPlaylistAction.setFileChooser(midiPlayerFrame.getFileChooser());
+          loadPlaylistAction.setParent(midiPlayerFrame);
+          loadPlaylistAction.setMidiPlayer(midiPlayer);
+          loadPlaylistAction.setDefaultShellController(midiPlayerController);
+        }
+        break;
+      case SavePlaylistAction.DEFAULT_IDENTIFIER:
+        SavePlaylistAction savePlaylistAction;
+        if (action == null) {
+          savePlaylistAction =
+              new SavePlaylistAction(midiPlayerFrame.getFileChooser(),
+                  midiPlayerFrame, midiPlayer, midiPlayerController);
+          action = savePlaylistAction;
+          addToShell(midiPlayerController, action);
+        } else {
+          savePlaylistAction = (SavePlaylistAction) action;
+          savePlaylistAction.setFileChooser(midiPlayerFrame.getFileChooser());
+          savePlaylistAction.setParent(midiPlayerFrame);
+          savePlaylistAction.setMidiPlayer(midiPlayer);
+          savePlaylistAction.setDefaultShellController(midiPlayerController);
+        }
+        // Make the action enabled only with songs to save
+        savePlaylistAction.setEnabled(midiPlayer.size() > 0);
+        if (midiPlayer instanceof MidiPlayerWithListener) {
+          ((MidiPlayerWithListener) midiPlayer)
+              .addPropertyChangeListener(savePlaylistAction);
+        }
+        break;
       case RemoveAction.DEFAULT_IDENTIFIER:
         RemoveAction removeAction;
         if (action == null) {
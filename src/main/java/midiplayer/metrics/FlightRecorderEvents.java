@@ -0,0 +1,151 @@
+package midiplayer.metrics;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits the events of the MIDI player to the Java Flight Recorder, when available.
+ *
+ * <p>
+ * A continuous recording of these events pinpoints slow songs and slow listeners after the fact:
+ * song loads, MIDI file parses, song transitions, sequencer acquisitions, listener notifications
+ * and dispatches on the <i>Event Dispatch Thread</i>.
+ * </p>
+ *
+ * <p>
+ * The event types of the {@code midiplayer.metrics.jfr} package are only built and loaded on Java
+ * virtual machines with the {@code jdk.jfr} module: elsewhere, this facade does nothing. Events are
+ * only created when their type is enabled in a recording.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class FlightRecorderEvents {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(FlightRecorderEvents.class.getName());
+
+  /**
+   * Implementation emitting the events to the Java Flight Recorder.
+   */
+  private static final String JFR_IMPLEMENTATION =
+      "midiplayer.metrics.jfr.JfrEvents";
+
+  private static final FlightRecorderEvents INSTANCE = load();
+
+  /**
+   * Constructs a facade discarding all events.
+   */
+  protected FlightRecorderEvents() {}
+
+  /**
+   * Load the Java Flight Recorder implementation, if available.
+   *
+   * @return the Java Flight Recorder implementation, or a facade discarding all events
+   */
+  private static FlightRecorderEvents load() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return (FlightRecorderEvents) Class.forName(JFR_IMPLEMENTATION)
+          .getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError ex) {
+      LOGGER.log(Level.FINE, "Java Flight Recorder events not available", ex);
+      return new FlightRecorderEvents();
+    }
+  }
+
+  /**
+   * Get the facade of the Java virtual machine.
+   *
+   * @return the flight recorder events facade
+   */
+  public static FlightRecorderEvents get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Is the Java Flight Recorder available?
+   *
+   * @return {@code true} if events are emitted to the Java Flight Recorder
+   */
+  public boolean isAvailable() {
+    return false;
+  }
+
+  // #########################################################################
+  /**
+   * A song sequence was obtained, from the sequence cache or not, before playing it.
+   *
+   * @param resource the song resource
+   * @param byteSize the size of the MIDI file, {@code -1} if unknown
+   * @param startNanos the start of the load, as returned by {@link System#nanoTime()}
+   */
+  public void songLoaded(final Object resource, final long byteSize,
+      final long startNanos) {
+    // Discarded
+  }
+
+  /**
+   * A MIDI file was parsed.
+   *
+   * @param resource the MIDI file resource
+   * @param byteSize the size of the MIDI file, {@code -1} if unknown
+   * @param startNanos the start of the parse, as returned by {@link System#nanoTime()}
+   */
+  public void fileParsed(final Object resource, final long byteSize,
+      final long startNanos) {
+    // Discarded
+  }
+
+  /**
+   * A song started after the end of the previous one.
+   *
+   * @param resource the resource of the song which started
+   * @param gapNanos the time elapsed since the end of the previous song, in nanoseconds
+   * @param gapless whether the song was spliced into the previous one
+   */
+  public void songTransition(final Object resource, final long gapNanos,
+      final boolean gapless) {
+    // Discarded
+  }
+
+  /**
+   * A MIDI sequencer was acquired, either opened or reused.
+   *
+   * @param sequencer the name of the sequencer, {@code null} if none is available
+   * @param startNanos the start of the acquisition, as returned by {@link System#nanoTime()}
+   */
+  public void sequencerAcquired(final String sequencer,
+      final long startNanos) {
+    // Discarded
+  }
+
+  /**
+   * The listeners of a player event were notified.
+   *
+   * @param event the name of the player event
+   * @param listenerCount the number of listeners notified
+   * @param startNanos the start of the notification, as returned by {@link System#nanoTime()}
+   */
+  public void listenersNotified(final String event, final int listenerCount,
+      final long startNanos) {
+    // Discarded
+  }
+
+  /**
+   * Queued player events were dispatched on the <i>Event Dispatch Thread</i>.
+   *
+   * @param eventCount the number of events dispatched
+   * @param queueDelayNanos the time the dispatch waited on the <i>Event Dispatch Thread</i> queue,
+   *        in nanoseconds
+   * @param startNanos the start of the dispatch, as returned by {@link System#nanoTime()}
+   */
+  public void edtDispatched(final int eventCount, final long queueDelayNanos,
+      final long startNanos) {
+    // Discarded
+  }
+
+}
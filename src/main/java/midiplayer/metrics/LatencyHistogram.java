@@ -0,0 +1,130 @@
+package midiplayer.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records durations and keeps their distribution, to get percentiles.
+ *
+ * <p>
+ * Durations are counted in log-linear buckets: each power of 2 is split into 32 buckets, so that a
+ * percentile is known within about 3% of its value, whatever the range of the durations. Like
+ * recording, getting a percentile does not allocate.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class LatencyHistogram extends LatencyRecorder {
+
+  /**
+   * Number of bits of precision in each power of 2.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  /**
+   * Number of buckets in each power of 2.
+   */
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Number of buckets needed to count any positive {@code long}.
+   */
+  private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+  private final long[] counts = new long[BUCKETS];
+
+  /**
+   * Constructs a latency histogram.
+   *
+   * @param name the name of the recorded durations
+   */
+  public LatencyHistogram(final String name) {
+    super(name);
+  }
+
+  /**
+   * Get the bucket counting a duration.
+   *
+   * @param nanos the duration, in nanoseconds
+   * @return the bucket index
+   */
+  private static int bucketOf(final long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int shift = (63 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS;
+    int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Get the highest duration counted by a bucket.
+   *
+   * @param bucket the bucket index
+   * @return the highest duration of the bucket, in nanoseconds
+   */
+  private static long highestOf(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+
+  @Override
+  public synchronized void record(final long nanos) {
+    if (nanos < 0) {
+      return;
+    }
+    super.record(nanos);
+    counts[bucketOf(nanos)]++;
+  }
+
+  @Override
+  public synchronized void reset() {
+    super.reset();
+    Arrays.fill(counts, 0);
+  }
+
+  // #########################################################################
+  /**
+   * Get a percentile of the recorded durations.
+   *
+   * @param percentile the percentile, between {@code 0} and {@code 100}
+   * @param unit the unit of the returned value
+   * @return the duration under which the given percentage of the recorded durations fall,
+   *         {@code 0} if none
+   * @throws IllegalArgumentException if the percentile is not between {@code 0} and {@code 100}
+   */
+  public synchronized long getPercentile(final double percentile,
+      final TimeUnit unit) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Invalid percentile: " + percentile);
+    }
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) {
+        long nanos = Math.min(highestOf(bucket), getMax(TimeUnit.NANOSECONDS));
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+      }
+    }
+    return getMax(unit);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getName() + " [count=" + getCount() + ", p50="
+        + getPercentile(50, TimeUnit.MICROSECONDS) + "us, p99="
+        + getPercentile(99, TimeUnit.MICROSECONDS) + "us, p99.9="
+        + getPercentile(99.9, TimeUnit.MICROSECONDS) + "us, max="
+        + getMax(TimeUnit.MICROSECONDS) + "us]";
+  }
+
+}
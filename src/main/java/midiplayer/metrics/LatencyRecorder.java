@@ -0,0 +1,163 @@
+package midiplayer.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records durations and keeps simple statistics about them.
+ *
+ * <p>
+ * Durations are recorded in nanoseconds. Recording is cheap enough to be done from the playback
+ * thread: no allocation happens and the monitor is only held to update a few counters.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class LatencyRecorder {
+
+  /**
+   * The name of the recorded durations.
+   */
+  private final String name;
+
+  private long count = 0;
+
+  private long total = 0;
+
+  private long min = Long.MAX_VALUE;
+
+  private long max = 0;
+
+  private long last = 0;
+
+  /**
+   * Constructs a latency recorder.
+   *
+   * @param name the name of the recorded durations
+   */
+  public LatencyRecorder(final String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get the name of the recorded durations.
+   *
+   * @return the name of the recorded durations
+   */
+  public final String getName() {
+    return name;
+  }
+
+  /**
+   * Record a duration.
+   *
+   * @param nanos the duration, in nanoseconds
+   */
+  public synchronized void record(final long nanos) {
+    if (nanos < 0) {
+      return;
+    }
+    count++;
+    total += nanos;
+    last = nanos;
+    if (nanos < min) {
+      min = nanos;
+    }
+    if (nanos > max) {
+      max = nanos;
+    }
+  }
+
+  /**
+   * Record the duration elapsed since the given start time.
+   *
+   * @param startNanos the start time, as returned by {@link System#nanoTime()}
+   * @return the recorded duration, in nanoseconds
+   */
+  public long recordSince(final long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    record(nanos);
+    return nanos;
+  }
+
+  /**
+   * Reset all statistics.
+   */
+  public synchronized void reset() {
+    count = 0;
+    total = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+    last = 0;
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of recorded durations.
+   *
+   * @return the number of recorded durations
+   */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the sum of the recorded durations.
+   *
+   * @param unit the unit of the returned value
+   * @return the sum of the recorded durations
+   */
+  public synchronized long getTotal(final TimeUnit unit) {
+    return unit.convert(total, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the mean of the recorded durations.
+   *
+   * @param unit the unit of the returned value
+   * @return the mean of the recorded durations, {@code 0} if none
+   */
+  public synchronized long getMean(final TimeUnit unit) {
+    return count == 0 ? 0
+        : unit.convert(total / count, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the shortest recorded duration.
+   *
+   * @param unit the unit of the returned value
+   * @return the shortest recorded duration, {@code 0} if none
+   */
+  public synchronized long getMin(final TimeUnit unit) {
+    return count == 0 ? 0 : unit.convert(min, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the longest recorded duration.
+   *
+   * @param unit the unit of the returned value
+   * @return the longest recorded duration, {@code 0} if none
+   */
+  public synchronized long getMax(final TimeUnit unit) {
+    return unit.convert(max, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Get the last recorded duration.
+   *
+   * @param unit the unit of the returned value
+   * @return the last recorded duration, {@code 0} if none
+   */
+  public synchronized long getLast(final TimeUnit unit) {
+    return unit.convert(last, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return name + " [count=" + count + ", mean="
+        + getMean(TimeUnit.MICROSECONDS) + "us, min="
+        + getMin(TimeUnit.MICROSECONDS) + "us, max="
+        + getMax(TimeUnit.MICROSECONDS) + "us, last="
+        + getLast(TimeUnit.MICROSECONDS) + "us]";
+  }
+
+}
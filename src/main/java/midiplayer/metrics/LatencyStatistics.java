@@ -0,0 +1,155 @@
+package midiplayer.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the statistics of a {@link LatencyHistogram}, in microseconds.
+ *
+ * <p>
+ * Exposed through JMX as composite data, so that any JMX client can read it without the classes of
+ * the application.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class LatencyStatistics {
+
+  private final String name;
+
+  private final long count;
+
+  private final long mean;
+
+  private final long min;
+
+  private final long p50;
+
+  private final long p90;
+
+  private final long p99;
+
+  private final long max;
+
+  /**
+   * Constructs latency statistics.
+   *
+   * @param name the name of the recorded durations
+   * @param count the number of recorded durations
+   * @param mean the mean duration, in microseconds
+   * @param min the minimum duration, in microseconds
+   * @param p50 the median duration, in microseconds
+   * @param p90 the 90th percentile, in microseconds
+   * @param p99 the 99th percentile, in microseconds
+   * @param max the maximum duration, in microseconds
+   */
+  @ConstructorProperties({"name", "count", "mean", "min", "p50", "p90", "p99",
+      "max"})
+  public LatencyStatistics(final String name, final long count,
+      final long mean, final long min, final long p50, final long p90,
+      final long p99, final long max) {
+    this.name = name;
+    this.count = count;
+    this.mean = mean;
+    this.min = min;
+    this.p50 = p50;
+    this.p90 = p90;
+    this.p99 = p99;
+    this.max = max;
+  }
+
+  /**
+   * Take a snapshot of the statistics of a histogram.
+   *
+   * @param histogram the histogram
+   * @return the current statistics of the histogram
+   */
+  public static LatencyStatistics of(final LatencyHistogram histogram) {
+    TimeUnit unit = TimeUnit.MICROSECONDS;
+    synchronized (histogram) {
+      return new LatencyStatistics(histogram.getName(), histogram.getCount(),
+          histogram.getMean(unit), histogram.getMin(unit),
+          histogram.getPercentile(50, unit), histogram.getPercentile(90, unit),
+          histogram.getPercentile(99, unit), histogram.getMax(unit));
+    }
+  }
+
+  /**
+   * Get the name of the recorded durations.
+   *
+   * @return the name of the recorded durations
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the number of recorded durations.
+   *
+   * @return the number of recorded durations
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Get the mean duration.
+   *
+   * @return the mean duration, in microseconds
+   */
+  public long getMean() {
+    return mean;
+  }
+
+  /**
+   * Get the minimum duration.
+   *
+   * @return the minimum duration, in microseconds
+   */
+  public long getMin() {
+    return min;
+  }
+
+  /**
+   * Get the median duration.
+   *
+   * @return the median duration, in microseconds
+   */
+  public long getP50() {
+    return p50;
+  }
+
+  /**
+   * Get the duration under which 90% of the durations fall.
+   *
+   * @return the 90th percentile, in microseconds
+   */
+  public long getP90() {
+    return p90;
+  }
+
+  /**
+   * Get the duration under which 99% of the durations fall.
+   *
+   * @return the 99th percentile, in microseconds
+   */
+  public long getP99() {
+    return p99;
+  }
+
+  /**
+   * Get the maximum duration.
+   *
+   * @return the maximum duration, in microseconds
+   */
+  public long getMax() {
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return name + " [count=" + count + ", mean=" + mean + "us, p50=" + p50
+        + "us, p99=" + p99 + "us, max=" + max + "us]";
+  }
+
+}
@@ -0,0 +1,279 @@
+package midiplayer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Ring buffer of the MIDI messages sent by a player, to observe them.
+ *
+ * <p>
+ * The tap is a receiver connected to the sequencer, next to the synthesizer. Each message is
+ * copied into a pre-allocated slot, as the time it was received, its status and length, and the
+ * data bytes of short messages: recording does not allocate, nor wait for the observers.
+ * </p>
+ *
+ * <p>
+ * Observers, such as visualizers, loggers or metrics, each read the messages through their own
+ * {@link Consumer}, at their own pace and without blocking. A consumer which falls behind by more
+ * than the capacity of the ring loses the oldest messages instead of slowing playback down.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class MidiEventTap implements Receiver {
+
+  /**
+   * Default number of messages kept by the ring.
+   */
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  /**
+   * Number of {@code long} values of each slot: time and message.
+   */
+  private static final int SLOT_SIZE = 2;
+
+  private final int capacity;
+
+  private final int mask;
+
+  /**
+   * Time and packed message of each slot.
+   */
+  private final AtomicLongArray slots;
+
+  /**
+   * Version of each slot: {@code 2 * sequence + 1} while message {@code sequence} is written,
+   * {@code 2 * sequence + 2} once written.
+   */
+  private final AtomicLongArray versions;
+
+  /**
+   * Sequence of the next message.
+   */
+  private final AtomicLong head = new AtomicLong();
+
+  // #########################################################################
+  /**
+   * Handles the messages read by a consumer.
+   */
+  @FunctionalInterface
+  public interface EventHandler {
+
+    /**
+     * Handle a message.
+     *
+     * @param nanoTime the time the message was sent, as returned by {@link System#nanoTime()}
+     * @param status the status byte of the message
+     * @param data1 the first data byte of a short message, {@code 0} if none
+     * @param data2 the second data byte of a short message, {@code 0} if none
+     * @param length the length of the message, in bytes
+     */
+    void onEvent(long nanoTime, int status, int data1, int data2, int length);
+
+  }
+
+  /**
+   * Reads the messages of a tap, in order.
+   *
+   * <p>
+   * A consumer must be used by a single thread at a time.
+   * </p>
+   */
+  public final class Consumer {
+
+    /**
+     * Sequence of the next message to read.
+     */
+    private long cursor;
+
+    private long readCount = 0;
+
+    private long lostCount = 0;
+
+    Consumer(final long cursor) {
+      this.cursor = cursor;
+    }
+
+    /**
+     * Read the available messages, without waiting.
+     *
+     * @param handler the handler of the messages
+     * @param max the maximum number of messages to read
+     * @return the number of messages read
+     */
+    public int poll(final EventHandler handler, final int max) {
+      int read = 0;
+      while (read < max) {
+        long available = head.get();
+        if (cursor >= available) {
+          break;
+        }
+        if (available - cursor > capacity) {
+          // Overwritten before being read
+          lostCount += available - capacity - cursor;
+          cursor = available - capacity;
+        }
+        int slot = (int) (cursor & mask);
+        long version = 2 * cursor + 2;
+        long time = slots.get(slot * SLOT_SIZE);
+        long message = slots.get(slot * SLOT_SIZE + 1);
+        if (versions.get(slot) != version) {
+          // Overwritten while being read
+          lostCount++;
+          cursor++;
+          continue;
+        }
+        cursor++;
+        read++;
+        handler.onEvent(time, (int) message & 0xFF,
+            (int) (message >>> 8) & 0xFF, (int) (message >>> 16) & 0xFF,
+            (int) (message >>> 32));
+      }
+      readCount += read;
+      return read;
+    }
+
+    /**
+     * Skip all the messages not read yet.
+     */
+    public void skipAll() {
+      cursor = Math.max(cursor, head.get());
+    }
+
+    /**
+     * Get the number of messages not read yet.
+     *
+     * @return the number of messages behind the latest one, which may exceed the capacity
+     */
+    public long getLag() {
+      return Math.max(0, head.get() - cursor);
+    }
+
+    /**
+     * Get the number of messages read.
+     *
+     * @return the number of messages read
+     */
+    public long getReadCount() {
+      return readCount;
+    }
+
+    /**
+     * Get the number of messages lost because they were overwritten before being read.
+     *
+     * @return the number of messages lost
+     */
+    public long getLostCount() {
+      return lostCount;
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * Constructs a tap keeping the {@value #DEFAULT_CAPACITY} latest messages.
+   */
+  public MidiEventTap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a tap.
+   *
+   * @param capacity the minimum number of latest messages kept, rounded up to a power of 2
+   * @throws IllegalArgumentException if {@code capacity} is not between {@code 1} and
+   *         {@code 2^29}
+   */
+  public MidiEventTap(final int capacity) {
+    if (capacity < 1 || capacity > 1 << 29) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    this.capacity =
+        capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.slots = new AtomicLongArray(this.capacity * SLOT_SIZE);
+    this.versions = new AtomicLongArray(this.capacity);
+  }
+
+  /**
+   * Create a consumer reading the messages sent from now on.
+   *
+   * @return a new consumer
+   */
+  public Consumer newConsumer() {
+    return new Consumer(head.get());
+  }
+
+  /**
+   * Record a message.
+   *
+   * <p>
+   * Messages are recorded one at a time: concurrent senders, such as a sequencer and a thread
+   * turning notes off, wait for each other, never for the consumers.
+   * </p>
+   *
+   * @param message the message
+   * @param timeStamp the time stamp of the message, ignored: the time of the call is recorded
+   */
+  @Override
+  public synchronized void send(final MidiMessage message,
+      final long timeStamp) {
+    // MidiMessage.getMessage() would copy the message
+    long packed = (long) message.getLength() << 32 | message.getStatus();
+    if (message instanceof ShortMessage) {
+      ShortMessage shortMessage = (ShortMessage) message;
+      packed |= shortMessage.getData1() << 8 | shortMessage.getData2() << 16;
+    }
+    publish(System.nanoTime(), packed);
+  }
+
+  /**
+   * Write a message into its slot. Must be called by a single thread at a time.
+   *
+   * @param time the time of the message
+   * @param packed the packed message
+   */
+  private void publish(final long time, final long packed) {
+    long sequence = head.get();
+    int slot = (int) (sequence & mask);
+    versions.set(slot, 2 * sequence + 1);
+    slots.lazySet(slot * SLOT_SIZE, time);
+    slots.lazySet(slot * SLOT_SIZE + 1, packed);
+    versions.lazySet(slot, 2 * sequence + 2);
+    head.lazySet(sequence + 1);
+  }
+
+  /**
+   * Get the number of latest messages kept.
+   *
+   * @return the capacity of the ring
+   */
+  public final int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the number of messages recorded.
+   *
+   * @return the number of messages recorded
+   */
+  public final long getCount() {
+    return head.get();
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release: the ring is reused by the next sequencer
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [capacity=" + capacity + ", count="
+        + getCount() + "]";
+  }
+
+}
@@ -0,0 +1,142 @@
+package midiplayer.metrics;
+
+/**
+ * Management interface of a MIDI player, readable from {@code jconsole} or any JMX client.
+ *
+ * <p>
+ * Durations are exposed as {@link LatencyStatistics} snapshots, in microseconds. Reading an
+ * attribute does not slow playback down: durations are recorded by the player threads without
+ * allocating, and summarized by the thread of the JMX client.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ * @see MidiPlayerMetrics
+ */
+public interface MidiPlayerMXBean {
+
+  /**
+   * Get the state of the player.
+   *
+   * @return the name of the player state
+   */
+  String getState();
+
+  /**
+   * Get the number of songs in the playlist.
+   *
+   * @return the playlist size
+   */
+  int getPlaylistSize();
+
+  /**
+   * Get the number of sequences in the sequence cache.
+   *
+   * @return the number of cached sequences
+   */
+  int getCacheEntryCount();
+
+  /**
+   * Get the estimated size of the sequence cache.
+   *
+   * @return the cache size, in bytes
+   */
+  long getCacheSize();
+
+  /**
+   * Get the maximum size of the sequence cache.
+   *
+   * @return the maximum cache size, in bytes
+   */
+  long getCacheMaximumSize();
+
+  /**
+   * Get the number of songs found in the sequence cache.
+   *
+   * @return the number of cache hits
+   */
+  long getCacheHitCount();
+
+  /**
+   * Get the number of songs parsed because they were not in the sequence cache.
+   *
+   * @return the number of cache misses
+   */
+  long getCacheMissCount();
+
+  /**
+   * Get the number of sequences evicted from the sequence cache.
+   *
+   * @return the number of cache evictions
+   */
+  long getCacheEvictionCount();
+
+  /**
+   * Get the number of MIDI sequencers opened.
+   *
+   * @return the number of sequencers opened
+   */
+  long getSequencerOpenCount();
+
+  /**
+   * Get the number of MIDI sequencers reused from the sequencer pool.
+   *
+   * @return the number of sequencers reused
+   */
+  long getSequencerReuseCount();
+
+  /**
+   * Get the number of MIDI messages sent by the sequencers.
+   *
+   * @return the number of MIDI messages sent
+   */
+  long getMidiEventCount();
+
+  /**
+   * Get the time spent obtaining the sequence of a song before playing it, from the cache or not.
+   *
+   * @return the resource load time statistics
+   */
+  LatencyStatistics getResourceLoadTime();
+
+  /**
+   * Get the time spent parsing the MIDI files missing from the cache.
+   *
+   * @return the parse time statistics
+   */
+  LatencyStatistics getParseTime();
+
+  /**
+   * Get the time elapsed between the end of a song and the start of the next one.
+   *
+   * @return the song transition gap statistics
+   */
+  LatencyStatistics getTransitionGap();
+
+  /**
+   * Get the time spent opening MIDI sequencers.
+   *
+   * @return the sequencer open time statistics
+   */
+  LatencyStatistics getSequencerOpenTime();
+
+  /**
+   * Get the time spent notifying the listeners of each player event.
+   *
+   * @return the listener fan-out time statistics
+   */
+  LatencyStatistics getListenerFanOutTime();
+
+  /**
+   * Get the time player events wait on the <i>Event Dispatch Thread</i> queue before their
+   * listeners are notified.
+   *
+   * @return the EDT queue delay statistics
+   */
+  LatencyStatistics getEdtQueueDelay();
+
+  /**
+   * Reset all the recorded durations.
+   */
+  void resetLatencies();
+
+}
@@ -0,0 +1,242 @@
+package midiplayer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import midiplayer.MidiPlayer;
+
+/**
+ * The metrics of a MIDI player, exposed through JMX.
+ *
+ * <p>
+ * Counters and histograms are kept by the components of the player, where the events happen: this
+ * class only reads them when a JMX client asks. The durations which are not recorded by a
+ * component of the player, such as the notification of its listeners, are kept here.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class MidiPlayerMetrics implements MidiPlayerMXBean {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(MidiPlayerMetrics.class.getName());
+
+  /**
+   * Object name of the metrics of the main MIDI player.
+   */
+  public static final String OBJECT_NAME = "midiplayer:type=MidiPlayer";
+
+  private final MidiPlayer player;
+
+  private final LatencyHistogram listenerFanOutTimes =
+      new LatencyHistogram("Listener fan-out time");
+
+  private final LatencyHistogram edtQueueDelays =
+      new LatencyHistogram("EDT queue delay");
+
+  /**
+   * The name under which the metrics are registered, {@code null} if not registered.
+   */
+  private volatile ObjectName objectName = null;
+
+  /**
+   * Constructs the metrics of a MIDI player.
+   *
+   * @param player the MIDI player
+   */
+  public MidiPlayerMetrics(final MidiPlayer player) {
+    this.player = player;
+  }
+
+  // #########################################################################
+  /**
+   * Register the metrics in the platform MBean server, as {@value #OBJECT_NAME}.
+   *
+   * @return {@code true} if registered, {@code false} otherwise
+   */
+  public boolean register() {
+    return register(null);
+  }
+
+  /**
+   * Register the metrics in the platform MBean server.
+   *
+   * @param name the name of the player, {@code null} for the main player
+   * @return {@code true} if registered, {@code false} otherwise
+   */
+  public synchronized boolean register(final String name) {
+    if (objectName != null) {
+      return false;
+    }
+    try {
+      ObjectName registered = new ObjectName(name == null ? OBJECT_NAME
+          : OBJECT_NAME + ",name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+          registered);
+      objectName = registered;
+      return true;
+    } catch (JMException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to register player metrics", ex);
+      return false;
+    }
+  }
+
+  /**
+   * Unregister the metrics from the platform MBean server, if registered.
+   */
+  public synchronized void unregister() {
+    if (objectName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to unregister player metrics", ex);
+    }
+    objectName = null;
+  }
+
+  /**
+   * Get the name under which the metrics are registered.
+   *
+   * @return the registered object name, {@code null} if not registered
+   */
+  public final ObjectName getObjectName() {
+    return objectName;
+  }
+
+  // #########################################################################
+  /**
+   * Get the histogram of the time spent notifying the listeners of each player event.
+   *
+   * @return the listener fan-out time histogram
+   */
+  public final LatencyHistogram getListenerFanOutTimes() {
+    return listenerFanOutTimes;
+  }
+
+  /**
+   * Get the histogram of the time player events wait on the <i>Event Dispatch Thread</i> queue.
+   *
+   * @return the EDT queue delay histogram
+   */
+  public final LatencyHistogram getEdtQueueDelays() {
+    return edtQueueDelays;
+  }
+
+  @Override
+  public String getState() {
+    return player.getState().name();
+  }
+
+  @Override
+  public int getPlaylistSize() {
+    // Not synchronized: the size may be stale, but is never torn
+    return player.getPlaylist().size();
+  }
+
+  @Override
+  public int getCacheEntryCount() {
+    return player.getSequenceCache().size();
+  }
+
+  @Override
+  public long getCacheSize() {
+    return player.getSequenceCache().getCurrentSize();
+  }
+
+  @Override
+  public long getCacheMaximumSize() {
+    return player.getSequenceCache().getMaximumSize();
+  }
+
+  @Override
+  public long getCacheHitCount() {
+    return player.getSequenceCache().getHitCount();
+  }
+
+  @Override
+  public long getCacheMissCount() {
+    return player.getSequenceCache().getMissCount();
+  }
+
+  @Override
+  public long getCacheEvictionCount() {
+    return player.getSequenceCache().getEvictionCount();
+  }
+
+  @Override
+  public long getSequencerOpenCount() {
+    return player.getSequencerPool().getCreatedCount();
+  }
+
+  @Override
+  public long getSequencerReuseCount() {
+    return player.getSequencerPool().getReusedCount();
+  }
+
+  @Override
+  public long getMidiEventCount() {
+    return player.getEventTap().getCount();
+  }
+
+  @Override
+  public LatencyStatistics getResourceLoadTime() {
+    return LatencyStatistics.of(player.getResourceLoadTimes());
+  }
+
+  @Override
+  public LatencyStatistics getParseTime() {
+    return LatencyStatistics.of(player.getSequenceCache().getParseTimes());
+  }
+
+  @Override
+  public LatencyStatistics getTransitionGap() {
+    return LatencyStatistics.of(player.getTransitionGapRecorder());
+  }
+
+  @Override
+  public LatencyStatistics getSequencerOpenTime() {
+    return LatencyStatistics.of(player.getSequencerOpenTimes());
+  }
+
+  @Override
+  public LatencyStatistics getListenerFanOutTime() {
+    return LatencyStatistics.of(listenerFanOutTimes);
+  }
+
+  @Override
+  public LatencyStatistics getEdtQueueDelay() {
+    return LatencyStatistics.of(edtQueueDelays);
+  }
+
+  @Override
+  public void resetLatencies() {
+    player.getResourceLoadTimes().reset();
+    player.getSequenceCache().getParseTimes().reset();
+    player.getTransitionGapRecorder().reset();
+    player.getSequencerOpenTimes().reset();
+    listenerFanOutTimes.reset();
+    edtQueueDelays.reset();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [state=" + getState()
+        + ", playlistSize=" + getPlaylistSize() + ", cache="
+        + player.getSequenceCache() + ", sequencers="
+        + player.getSequencerPool() + "]";
+  }
+
+}
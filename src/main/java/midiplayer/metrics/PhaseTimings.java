@@ -0,0 +1,161 @@
+package midiplayer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the timings of named phases, such as the phases of the application startup.
+ *
+ * <p>
+ * Phases may run in parallel on different threads. Each phase is recorded with its start, relative
+ * to the start of the Java virtual machine, and its duration.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class PhaseTimings {
+
+  /**
+   * The name of the timed phases.
+   */
+  private final String name;
+
+  /**
+   * Start of the Java virtual machine, as returned by {@link System#nanoTime()}.
+   */
+  private final long origin;
+
+  /**
+   * Recorded phases, in recording order. Guarded by {@code this}.
+   */
+  private final List<Phase> phases = new ArrayList<>();
+
+  // #########################################################################
+  /**
+   * A timed phase.
+   */
+  public static final class Phase {
+
+    private final String name;
+
+    private final String threadName;
+
+    private final long start;
+
+    private final long duration;
+
+    Phase(final String name, final String threadName, final long start,
+        final long duration) {
+      this.name = name;
+      this.threadName = threadName;
+      this.start = start;
+      this.duration = duration;
+    }
+
+    /**
+     * Get the name of the phase.
+     *
+     * @return the name of the phase
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Get the name of the thread which ran the phase.
+     *
+     * @return the name of the thread
+     */
+    public String getThreadName() {
+      return threadName;
+    }
+
+    /**
+     * Get the start of the phase, relative to the start of the Java virtual machine.
+     *
+     * @param unit the unit of the returned value
+     * @return the start of the phase
+     */
+    public long getStart(final TimeUnit unit) {
+      return unit.convert(start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the duration of the phase.
+     *
+     * @param unit the unit of the returned value
+     * @return the duration of the phase
+     */
+    public long getDuration(final TimeUnit unit) {
+      return unit.convert(duration, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d ms (from %d ms, %s)", name,
+          getDuration(TimeUnit.MILLISECONDS), getStart(TimeUnit.MILLISECONDS),
+          threadName);
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * Constructs phase timings.
+   *
+   * @param name the name of the timed phases
+   */
+  public PhaseTimings(final String name) {
+    this.name = name;
+    this.origin = System.nanoTime() - TimeUnit.MILLISECONDS
+        .toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+  }
+
+  /**
+   * Get the name of the timed phases.
+   *
+   * @return the name of the timed phases
+   */
+  public final String getName() {
+    return name;
+  }
+
+  /**
+   * Record a phase which ends now, on the current thread.
+   *
+   * @param phase the name of the phase
+   * @param startNanos the start of the phase, as returned by {@link System#nanoTime()}
+   * @return the duration of the phase, in nanoseconds
+   */
+  public long recordSince(final String phase, final long startNanos) {
+    long duration = System.nanoTime() - startNanos;
+    Phase recorded = new Phase(phase, Thread.currentThread().getName(),
+        startNanos - origin, duration);
+    synchronized (this) {
+      phases.add(recorded);
+    }
+    return duration;
+  }
+
+  /**
+   * Get the recorded phases.
+   *
+   * @return an unmodifiable copy of the recorded phases, in recording order
+   */
+  public synchronized List<Phase> getPhases() {
+    return Collections.unmodifiableList(new ArrayList<>(phases));
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder(name).append(':');
+    for (Phase phase : phases) {
+      builder.append("\n\t").append(phase);
+    }
+    return builder.toString();
+  }
+
+}
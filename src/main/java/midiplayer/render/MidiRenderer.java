@@ -0,0 +1,610 @@
+package midiplayer.render;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import midiplayer.sequence.TempoMap;
+
+/**
+ * Renders MIDI songs to WAV files without a sound card.
+ *
+ * <p>
+ * The JDK software synthesizer is opened in pull mode through
+ * {@code com.sun.media.sound.AudioSynthesizer#openStream}: audio is only synthesized when read, so
+ * a song is rendered as fast as the synthesizer can go instead of in real time. Events are fed
+ * directly from the parsed sequence, with their time computed from its tempo changes, and not
+ * through a real-time {@code Sequencer}.
+ * </p>
+ *
+ * <p>
+ * {@code AudioSynthesizer} is not part of the public API: on Java 9 and later, the
+ * {@code java.desktop/com.sun.media.sound} package must be exported to the application (which the
+ * manifest of the MIDI player jar does).
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class MidiRenderer {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(MidiRenderer.class.getName());
+
+  /**
+   * Default audio format: 44.1 kHz, 16 bit, stereo.
+   */
+  public static final AudioFormat DEFAULT_FORMAT =
+      new AudioFormat(44100f, 16, 2, true, false);
+
+  /**
+   * Default duration rendered after the last event, to let notes release, in microseconds.
+   */
+  public static final long DEFAULT_TAIL_LENGTH = 2000000;
+
+  /**
+   * Number of microseconds in a second.
+   */
+  private static final double SECOND_IN_MICROSECONDS = 1000000d;
+
+  /**
+   * Name of the software synthesizer interface providing the pull mode.
+   */
+  private static final String AUDIO_SYNTHESIZER_CLASS =
+      "com.sun.media.sound.AudioSynthesizer";
+
+  /**
+   * Counter for rendering thread names.
+   */
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  // #########################################################################
+  /**
+   * Outcome of the rendering of a song.
+   */
+  public static final class Result {
+
+    private final Object source;
+
+    private final Path target;
+
+    private final long audioLength;
+
+    private final long renderTime;
+
+    private final Throwable error;
+
+    private Result(final Object source, final Path target,
+        final long audioLength, final long renderTime, final Throwable error) {
+      this.source = source;
+      this.target = target;
+      this.audioLength = audioLength;
+      this.renderTime = renderTime;
+      this.error = error;
+    }
+
+    /**
+     * Get the rendered song.
+     *
+     * @return the song resource or sequence
+     */
+    public Object getSource() {
+      return source;
+    }
+
+    /**
+     * Get the WAV file written.
+     *
+     * @return the path of the WAV file
+     */
+    public Path getTarget() {
+      return target;
+    }
+
+    /**
+     * Get the duration of the rendered audio.
+     *
+     * @return the duration of the audio, in microseconds
+     */
+    public long getAudioLength() {
+      return audioLength;
+    }
+
+    /**
+     * Get the time spent rendering the song.
+     *
+     * @return the render time, in nanoseconds
+     */
+    public long getRenderTime() {
+      return renderTime;
+    }
+
+    /**
+     * Get the speed of the rendering compared to real time playback.
+     *
+     * @return the real time factor: {@code 10} means ten seconds of audio rendered per second
+     */
+    public double getRealTimeFactor() {
+      if (renderTime <= 0) {
+        return 0;
+      }
+      return (audioLength * 1000d) / renderTime;
+    }
+
+    /**
+     * Did the rendering succeed?
+     *
+     * @return {@code true} if the WAV file was written
+     */
+    public boolean isSuccessful() {
+      return error == null;
+    }
+
+    /**
+     * Get the error which made the rendering fail.
+     *
+     * @return the error, {@code null} if the rendering succeeded
+     */
+    public Throwable getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      if (error != null) {
+        return String.format("%s: failed (%s)", source, error);
+      }
+      return String.format(
+          "%s -> %s (%.1f s rendered in %.2f s, %.1fx real time)", source,
+          target, audioLength / SECOND_IN_MICROSECONDS,
+          TimeUnit.NANOSECONDS.toMillis(renderTime) / 1000d,
+          getRealTimeFactor());
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * The format of the rendered audio.
+   */
+  private final AudioFormat format;
+
+  /**
+   * The duration rendered after the last event, in microseconds.
+   */
+  private final long tailLength;
+
+  /**
+   * Constructs a renderer with the default audio format and tail length.
+   */
+  public MidiRenderer() {
+    this(DEFAULT_FORMAT, DEFAULT_TAIL_LENGTH);
+  }
+
+  /**
+   * Constructs a renderer.
+   *
+   * @param format the format of the rendered audio
+   * @param tailLength the duration rendered after the last event, in microseconds
+   * @throws IllegalArgumentException if the format is {@code null} or the tail length negative
+   */
+  public MidiRenderer(final AudioFormat format, final long tailLength) {
+    if (format == null) {
+      throw new IllegalArgumentException("Audio format cannot be null");
+    }
+    if (tailLength < 0) {
+      throw new IllegalArgumentException(
+          "Tail length must be positive: " + tailLength);
+    }
+    this.format = format;
+    this.tailLength = tailLength;
+  }
+
+  /**
+   * Get the format of the rendered audio.
+   *
+   * @return the audio format
+   */
+  public final AudioFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Get the duration rendered after the last event.
+   *
+   * @return the tail length, in microseconds
+   */
+  public final long getTailLength() {
+    return tailLength;
+  }
+
+  // #########################################################################
+  /**
+   * Get the path of the WAV file for a song rendered in a directory.
+   *
+   * @param source the song file
+   * @param outputDirectory the directory of the WAV files
+   * @return the path of the WAV file
+   */
+  public static Path getTargetPath(final Path source,
+      final Path outputDirectory) {
+    String name = source.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    if (dot > 0) {
+      name = name.substring(0, dot);
+    }
+    return outputDirectory.resolve(name + ".wav");
+  }
+
+  /**
+   * Render a MIDI file to a WAV file.
+   *
+   * @param source the MIDI file
+   * @param target the WAV file to write
+   * @return the rendering result
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the file is not a valid MIDI file
+   * @throws MidiUnavailableException if the software synthesizer is not available
+   */
+  public Result render(final Path source, final Path target)
+      throws IOException, InvalidMidiDataException, MidiUnavailableException {
+    Sequence sequence = MidiSystem.getSequence(source.toFile());
+    return render(source, sequence, target);
+  }
+
+  /**
+   * Render a MIDI sequence to a WAV file.
+   *
+   * @param sequence the MIDI sequence
+   * @param target the WAV file to write
+   * @return the rendering result
+   * @throws IOException if an I/O exception occurs
+   * @throws MidiUnavailableException if the software synthesizer is not available
+   */
+  public Result render(final Sequence sequence, final Path target)
+      throws IOException, MidiUnavailableException {
+    return render(sequence, sequence, target);
+  }
+
+  private Result render(final Object source, final Sequence sequence,
+      final Path target) throws IOException, MidiUnavailableException {
+    long start = System.nanoTime();
+    ScheduledEvents events = ScheduledEvents.of(sequence);
+    long audioLength = events.getLength() + tailLength;
+    long frameLength = (long) Math
+        .ceil(audioLength * format.getFrameRate() / SECOND_IN_MICROSECONDS);
+
+    Synthesizer synthesizer = MidiSystem.getSynthesizer();
+    try {
+      AudioInputStream synthesized = openStream(synthesizer, format);
+      Receiver receiver = synthesizer.getReceiver();
+      InputStream rendering =
+          new RenderingStream(synthesized, receiver, events, frameLength);
+      Path parent = target.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      try (AudioInputStream audio =
+          new AudioInputStream(rendering, format, frameLength)) {
+        AudioSystem.write(audio, AudioFileFormat.Type.WAVE, target.toFile());
+      }
+    } finally {
+      synthesizer.close();
+    }
+
+    return new Result(source, target, audioLength, System.nanoTime() - start,
+        null);
+  }
+
+  /**
+   * Render MIDI files to WAV files in parallel.
+   *
+   * <p>
+   * Each file is rendered by its own synthesizer. A file which cannot be rendered does not stop
+   * the others: its result holds the error.
+   * </p>
+   *
+   * @param sources the MIDI files
+   * @param outputDirectory the directory of the WAV files
+   * @param parallelism the number of files rendered at the same time
+   * @return the rendering results, in the order of the sources
+   * @throws InterruptedException if the thread is interrupted while waiting for the renderings
+   */
+  public List<Result> renderAll(final Collection<Path> sources,
+      final Path outputDirectory, final int parallelism)
+      throws InterruptedException {
+    if (sources == null || sources.isEmpty()) {
+      return Collections.emptyList();
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.max(1, parallelism), (runnable) -> {
+          Thread thread = new Thread(runnable,
+              "MidiRenderer-" + THREAD_COUNT.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    try {
+      List<Path> targets = new ArrayList<>(sources.size());
+      List<Future<Result>> futures = new ArrayList<>(sources.size());
+      for (Path source : sources) {
+        Path target = getTargetPath(source, outputDirectory);
+        Callable<Result> task = () -> render(source, target);
+        targets.add(target);
+        futures.add(executor.submit(task));
+      }
+
+      List<Result> results = new ArrayList<>(futures.size());
+      int i = 0;
+      for (Path source : sources) {
+        Path target = targets.get(i);
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException ex) {
+          LOGGER.log(Level.WARNING, "Impossible to render: " + source,
+              ex.getCause());
+          results.add(new Result(source, target, 0, 0, ex.getCause()));
+        }
+        i++;
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Is the pull mode of the software synthesizer available?
+   *
+   * @return {@code true} if songs can be rendered
+   */
+  public static boolean isAvailable() {
+    try {
+      Synthesizer synthesizer = MidiSystem.getSynthesizer();
+      Method openStream = getOpenStreamMethod(synthesizer);
+      if (openStream == null) {
+        return false;
+      }
+      // Fails if the package is not exported to the application
+      openStream.setAccessible(true);
+      return true;
+    } catch (MidiUnavailableException | RuntimeException ex) {
+      return false;
+    }
+  }
+
+  private static Method getOpenStreamMethod(final Synthesizer synthesizer) {
+    for (Class<?> type : synthesizer.getClass().getInterfaces()) {
+      if (AUDIO_SYNTHESIZER_CLASS.equals(type.getName())) {
+        try {
+          return type.getMethod("openStream", AudioFormat.class, Map.class);
+        } catch (NoSuchMethodException ex) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Open the software synthesizer in pull mode.
+   *
+   * @param synthesizer the software synthesizer
+   * @param format the format of the synthesized audio
+   * @return the stream of synthesized audio
+   * @throws MidiUnavailableException if the synthesizer cannot be opened in pull mode
+   */
+  private static AudioInputStream openStream(final Synthesizer synthesizer,
+      final AudioFormat format) throws MidiUnavailableException {
+    Method openStream = getOpenStreamMethod(synthesizer);
+    if (openStream == null) {
+      throw new MidiUnavailableException(
+          "Synthesizer cannot render offline: " + synthesizer.getDeviceInfo());
+    }
+    try {
+      return (AudioInputStream) openStream.invoke(synthesizer, format,
+          new HashMap<String, Object>());
+    } catch (IllegalAccessException | RuntimeException ex) {
+      // Inaccessible or strongly encapsulated package
+      MidiUnavailableException unavailable = new MidiUnavailableException(
+          "Synthesizer cannot render offline, run with --add-exports "
+              + "java.desktop/com.sun.media.sound=ALL-UNNAMED");
+      unavailable.initCause(ex);
+      throw unavailable;
+    } catch (InvocationTargetException ex) {
+      if (ex.getCause() instanceof MidiUnavailableException) {
+        throw (MidiUnavailableException) ex.getCause();
+      }
+      MidiUnavailableException unavailable =
+          new MidiUnavailableException(String.valueOf(ex.getCause()));
+      unavailable.initCause(ex.getCause());
+      throw unavailable;
+    }
+  }
+
+  // #########################################################################
+  /**
+   * The events of a sequence, in playing order, with their time.
+   */
+  private static final class ScheduledEvents {
+
+    private final long[] times;
+
+    private final MidiMessage[] messages;
+
+    private final long length;
+
+    private ScheduledEvents(final long[] times, final MidiMessage[] messages,
+        final long length) {
+      this.times = times;
+      this.messages = messages;
+      this.length = length;
+    }
+
+    /**
+     * Merge the tracks of a sequence and compute the time of each event.
+     *
+     * @param sequence the sequence
+     * @return the scheduled events
+     */
+    static ScheduledEvents of(final Sequence sequence) {
+      List<MidiEvent> events = new ArrayList<>();
+      for (Track track : sequence.getTracks()) {
+        for (int i = 0, n = track.size(); i < n; i++) {
+          events.add(track.get(i));
+        }
+      }
+      // Stable: events of the same tick keep the order of their tracks
+      events.sort((e1, e2) -> Long.compare(e1.getTick(), e2.getTick()));
+
+      TempoMap tempoMap = TempoMap.of(sequence);
+      long[] times = new long[events.size()];
+      MidiMessage[] messages = new MidiMessage[events.size()];
+      int count = 0;
+      long time = 0;
+      for (MidiEvent event : events) {
+        time = tempoMap.toMicroseconds(event.getTick());
+        MidiMessage message = event.getMessage();
+        if (message instanceof MetaMessage) {
+          // Meta events are not meant for synthesizers
+          continue;
+        }
+        times[count] = time;
+        messages[count] = message;
+        count++;
+      }
+      long[] eventTimes = new long[count];
+      System.arraycopy(times, 0, eventTimes, 0, count);
+      MidiMessage[] eventMessages = new MidiMessage[count];
+      System.arraycopy(messages, 0, eventMessages, 0, count);
+      return new ScheduledEvents(eventTimes, eventMessages, time);
+    }
+
+    /**
+     * Get the time of the last event.
+     *
+     * @return the length of the sequence, in microseconds
+     */
+    long getLength() {
+      return length;
+    }
+
+  }
+
+  /**
+   * Stream of rendered audio: reading it sends the events due to the synthesizer, then reads the
+   * audio synthesized for them.
+   */
+  private static final class RenderingStream extends InputStream {
+
+    private final AudioInputStream synthesized;
+
+    private final Receiver receiver;
+
+    private final ScheduledEvents events;
+
+    private final long frameLength;
+
+    private final int frameSize;
+
+    private final double frameRate;
+
+    private int nextEvent = 0;
+
+    private long framePosition = 0;
+
+    RenderingStream(final AudioInputStream synthesized,
+        final Receiver receiver, final ScheduledEvents events,
+        final long frameLength) {
+      this.synthesized = synthesized;
+      this.receiver = receiver;
+      this.events = events;
+      this.frameLength = frameLength;
+      this.frameSize = synthesized.getFormat().getFrameSize();
+      this.frameRate = synthesized.getFormat().getFrameRate();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] frame = new byte[frameSize];
+      int read = read(frame, 0, frameSize);
+      return read <= 0 ? -1 : frame[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+      if (framePosition >= frameLength) {
+        return -1;
+      }
+      long frames = Math.min(len / frameSize, frameLength - framePosition);
+      if (frames <= 0) {
+        return 0;
+      }
+
+      // Send the events due before the end of the frames to read, with their exact time
+      long endTime = (long) ((framePosition + frames) * SECOND_IN_MICROSECONDS
+          / frameRate);
+      while (nextEvent < events.times.length
+          && events.times[nextEvent] < endTime) {
+        receiver.send(events.messages[nextEvent], events.times[nextEvent]);
+        nextEvent++;
+      }
+
+      int length = (int) frames * frameSize;
+      int total = 0;
+      while (total < length) {
+        int read = synthesized.read(b, off + total, length - total);
+        if (read < 0) {
+          break;
+        }
+        total += read;
+      }
+      framePosition += total / frameSize;
+      return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public void close() throws IOException {
+      receiver.close();
+      synthesized.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,596 @@
+package midiplayer.sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Index of the channel state of a sequence, to restore it when seeking.
+ *
+ * <p>
+ * When playback jumps to a position, the program, controllers, registered and non-registered
+ * parameters (RPN, NRPN), pitch bend and channel pressure of each channel must be set as they
+ * would have been by the events before that position. Instead of replaying all these events, the
+ * index keeps a snapshot of the channel state every few seconds of the sequence: a seek starts
+ * from the nearest snapshot and only replays the events since.
+ * </p>
+ *
+ * <p>
+ * Snapshots are stored as the short messages which restore them, packed into {@code int} arrays.
+ * Like a {@link TempoMap}, the index must be rebuilt when events are added to the sequence, unless
+ * they are added after a tick: see {@link #truncate(long)}.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class ChaseStateIndex {
+
+  /**
+   * Default interval between two snapshots, in microseconds.
+   */
+  public static final long DEFAULT_INTERVAL = 5000000;
+
+  /**
+   * Number of MIDI channels.
+   */
+  private static final int CHANNELS = 16;
+
+  /**
+   * Number of MIDI controllers, excluding channel mode messages.
+   */
+  private static final int CONTROLLERS = 120;
+
+  private static final int BANK_SELECT = 0;
+
+  private static final int BANK_SELECT_LSB = 32;
+
+  private static final int DATA_ENTRY = 6;
+
+  private static final int DATA_ENTRY_LSB = 38;
+
+  private static final int DATA_INCREMENT = 96;
+
+  private static final int DATA_DECREMENT = 97;
+
+  private static final int NRPN_LSB = 98;
+
+  private static final int NRPN_MSB = 99;
+
+  private static final int RPN_LSB = 100;
+
+  private static final int RPN_MSB = 101;
+
+  private static final int RESET_ALL_CONTROLLERS = 121;
+
+  /**
+   * Parameter number selecting no parameter.
+   */
+  private static final int NULL_PARAMETER = 0x3FFF;
+
+  /**
+   * Flag of non-registered parameter keys.
+   */
+  private static final int NRPN_FLAG = 1 << 14;
+
+  /**
+   * Tick of each snapshot, the first one being {@code 0}.
+   */
+  private final long[] ticks;
+
+  /**
+   * Packed messages restoring each snapshot.
+   */
+  private final int[][] snapshots;
+
+  /**
+   * Number of events of each track of the sequence when the index was built.
+   */
+  private final int[] trackSizes;
+
+  // #########################################################################
+  /**
+   * The state of the channels, updated by short messages.
+   */
+  static final class ChannelState {
+
+    private final int[] programs = new int[CHANNELS];
+
+    private final int[] pitchBends = new int[CHANNELS];
+
+    private final int[] pressures = new int[CHANNELS];
+
+    private final byte[] controllers = new byte[CHANNELS * CONTROLLERS];
+
+    /**
+     * Selected parameter of each channel, with {@link #NRPN_FLAG} for non-registered ones.
+     */
+    private final int[] selectedParameters = new int[CHANNELS];
+
+    /**
+     * Values of the parameters set on each channel, by parameter key.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Map<Integer, Integer>[] parameters = new Map[CHANNELS];
+
+    ChannelState() {
+      Arrays.fill(programs, -1);
+      Arrays.fill(pitchBends, -1);
+      Arrays.fill(pressures, -1);
+      Arrays.fill(controllers, (byte) -1);
+      Arrays.fill(selectedParameters, -1);
+    }
+
+    /**
+     * Restore a state from its packed messages.
+     *
+     * @param packed the packed messages
+     * @return the state
+     */
+    static ChannelState restore(final int[] packed) {
+      ChannelState state = new ChannelState();
+      for (int message : packed) {
+        state.apply(message & 0xFF, (message >>> 8) & 0xFF,
+            (message >>> 16) & 0xFF);
+      }
+      return state;
+    }
+
+    /**
+     * Update the state with a message.
+     *
+     * @param message the MIDI message
+     */
+    void apply(final MidiMessage message) {
+      if (message instanceof ShortMessage && message.getLength() >= 2) {
+        ShortMessage shortMessage = (ShortMessage) message;
+        apply(shortMessage.getStatus(), shortMessage.getData1(),
+            shortMessage.getData2());
+      }
+    }
+
+    private void apply(final int status, final int data1, final int data2) {
+      int channel = status & 0x0F;
+      switch (status & 0xF0) {
+        case ShortMessage.PROGRAM_CHANGE:
+          programs[channel] = data1;
+          break;
+        case ShortMessage.CHANNEL_PRESSURE:
+          pressures[channel] = data1;
+          break;
+        case ShortMessage.PITCH_BEND:
+          pitchBends[channel] = data1 | (data2 << 7);
+          break;
+        case ShortMessage.CONTROL_CHANGE:
+          controlChange(channel, data1, data2);
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void controlChange(final int channel, final int controller,
+        final int value) {
+      int selected = selectedParameters[channel];
+      switch (controller) {
+        case RPN_MSB:
+        case NRPN_MSB:
+          selectedParameters[channel] = (controller == NRPN_MSB ? NRPN_FLAG : 0)
+              | (value << 7) | (selected < 0 ? 0 : selected & 0x7F);
+          break;
+        case RPN_LSB:
+        case NRPN_LSB:
+          selectedParameters[channel] = (controller == NRPN_LSB ? NRPN_FLAG : 0)
+              | (selected < 0 ? 0 : selected & (0x7F << 7)) | value;
+          break;
+        case DATA_ENTRY:
+          setParameter(channel, value << 7, 0x7F);
+          break;
+        case DATA_ENTRY_LSB:
+          setParameter(channel, value, 0x7F << 7);
+          break;
+        case DATA_INCREMENT:
+        case DATA_DECREMENT:
+          Integer current = getParameter(channel);
+          if (current != null) {
+            int delta = controller == DATA_INCREMENT ? 1 << 7 : -(1 << 7);
+            int updated = Math.max(0, Math.min(0x3FFF, current + delta));
+            setParameter(channel, updated, 0);
+          }
+          break;
+        case RESET_ALL_CONTROLLERS:
+          Arrays.fill(controllers, channel * CONTROLLERS,
+              (channel + 1) * CONTROLLERS, (byte) -1);
+          pitchBends[channel] = -1;
+          pressures[channel] = -1;
+          selectedParameters[channel] = -1;
+          break;
+        default:
+          if (controller < CONTROLLERS) {
+            controllers[channel * CONTROLLERS + controller] = (byte) value;
+          }
+          break;
+      }
+    }
+
+    private Integer getParameter(final int channel) {
+      int selected = selectedParameters[channel];
+      if (selected < 0 || (selected & NULL_PARAMETER) == NULL_PARAMETER
+          || parameters[channel] == null) {
+        return null;
+      }
+      return parameters[channel].get(selected);
+    }
+
+    /**
+     * Set the selected parameter of a channel.
+     *
+     * @param channel the channel
+     * @param value the value bits to set
+     * @param keptMask the bits of the current value to keep
+     */
+    private void setParameter(final int channel, final int value,
+        final int keptMask) {
+      int selected = selectedParameters[channel];
+      if (selected < 0 || (selected & NULL_PARAMETER) == NULL_PARAMETER) {
+        return;
+      }
+      if (parameters[channel] == null) {
+        parameters[channel] = new TreeMap<>();
+      }
+      Integer current = parameters[channel].get(selected);
+      int kept = current == null ? 0 : current & keptMask;
+      parameters[channel].put(selected, kept | value);
+    }
+
+    /**
+     * Get the messages which restore this state, packed as
+     * {@code data2 << 16 | data1 << 8 | status}.
+     *
+     * <p>
+     * Bank selects come before program changes, and parameter values are set by selecting each
+     * parameter in turn before the selection is restored.
+     * </p>
+     *
+     * @return the packed messages
+     */
+    int[] toMessages() {
+      IntList messages = new IntList();
+      for (int channel = 0; channel < CHANNELS; channel++) {
+        int controlChange = ShortMessage.CONTROL_CHANGE | channel;
+        int base = channel * CONTROLLERS;
+        for (int bank : new int[] {BANK_SELECT, BANK_SELECT_LSB}) {
+          if (controllers[base + bank] >= 0) {
+            messages.add(controlChange, bank, controllers[base + bank]);
+          }
+        }
+        if (programs[channel] >= 0) {
+          messages.add(ShortMessage.PROGRAM_CHANGE | channel, programs[channel],
+              0);
+        }
+        for (int controller = 0; controller < CONTROLLERS; controller++) {
+          if (controller != BANK_SELECT && controller != BANK_SELECT_LSB
+              && controllers[base + controller] >= 0) {
+            messages.add(controlChange, controller,
+                controllers[base + controller]);
+          }
+        }
+        if (parameters[channel] != null) {
+          for (Map.Entry<Integer, Integer> parameter
+              : parameters[channel].entrySet()) {
+            addSelection(messages, controlChange, parameter.getKey());
+            messages.add(controlChange, DATA_ENTRY, parameter.getValue() >> 7);
+            messages.add(controlChange, DATA_ENTRY_LSB,
+                parameter.getValue() & 0x7F);
+          }
+        }
+        if (selectedParameters[channel] >= 0) {
+          addSelection(messages, controlChange, selectedParameters[channel]);
+        }
+        if (pitchBends[channel] >= 0) {
+          messages.add(ShortMessage.PITCH_BEND | channel,
+              pitchBends[channel] & 0x7F, pitchBends[channel] >> 7);
+        }
+        if (pressures[channel] >= 0) {
+          messages.add(ShortMessage.CHANNEL_PRESSURE | channel,
+              pressures[channel], 0);
+        }
+      }
+      return messages.toArray();
+    }
+
+    private static void addSelection(final IntList messages,
+        final int controlChange, final int parameter) {
+      boolean nrpn = (parameter & NRPN_FLAG) != 0;
+      messages.add(controlChange, nrpn ? NRPN_MSB : RPN_MSB,
+          (parameter >> 7) & 0x7F);
+      messages.add(controlChange, nrpn ? NRPN_LSB : RPN_LSB, parameter & 0x7F);
+    }
+
+  }
+
+  /**
+   * A growable list of packed messages.
+   */
+  private static final class IntList {
+
+    private int[] values = new int[16];
+
+    private int size = 0;
+
+    void add(final int status, final int data1, final int data2) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = status | (data1 << 8) | (data2 << 16);
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+
+  }
+
+  /**
+   * Merged iteration over the events of a range of ticks of all tracks.
+   */
+  private static final class EventMerger {
+
+    private final Track[] tracks;
+
+    private final int[] cursors;
+
+    private final int[] ends;
+
+    EventMerger(final Track[] tracks, final int[] ends, final long fromTick,
+        final long toTick) {
+      this.tracks = tracks;
+      this.cursors = new int[tracks.length];
+      this.ends = new int[tracks.length];
+      for (int t = 0; t < tracks.length; t++) {
+        cursors[t] = firstEventAt(tracks[t], fromTick, ends[t]);
+        this.ends[t] = firstEventAt(tracks[t], toTick, ends[t]);
+      }
+    }
+
+    /**
+     * Get the next event, in tick then track order.
+     *
+     * @return the next event, {@code null} if none
+     */
+    MidiEvent next() {
+      MidiEvent first = null;
+      int firstTrack = -1;
+      for (int t = 0; t < tracks.length; t++) {
+        if (cursors[t] < ends[t]) {
+          MidiEvent event = tracks[t].get(cursors[t]);
+          if (first == null || event.getTick() < first.getTick()) {
+            first = event;
+            firstTrack = t;
+          }
+        }
+      }
+      if (firstTrack >= 0) {
+        cursors[firstTrack]++;
+      }
+      return first;
+    }
+
+  }
+
+  // #########################################################################
+  private ChaseStateIndex(final long[] ticks, final int[][] snapshots,
+      final int[] trackSizes) {
+    this.ticks = ticks;
+    this.snapshots = snapshots;
+    this.trackSizes = trackSizes;
+  }
+
+  /**
+   * Build the chase state index of a sequence, with a snapshot every
+   * {@value #DEFAULT_INTERVAL} microseconds.
+   *
+   * @param sequence the sequence
+   * @return the chase state index of the sequence
+   */
+  public static ChaseStateIndex of(final Sequence sequence) {
+    return of(sequence, TempoMap.of(sequence), DEFAULT_INTERVAL);
+  }
+
+  /**
+   * Build the chase state index of a sequence.
+   *
+   * @param sequence the sequence
+   * @param tempoMap the tempo map of the sequence
+   * @param interval the interval between two snapshots, in microseconds
+   * @return the chase state index of the sequence
+   */
+  public static ChaseStateIndex of(final Sequence sequence,
+      final TempoMap tempoMap, final long interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Invalid interval: " + interval);
+    }
+    Track[] tracks = sequence.getTracks();
+    int[] trackSizes = new int[tracks.length];
+    for (int t = 0; t < tracks.length; t++) {
+      trackSizes[t] = tracks[t].size();
+    }
+
+    List<Long> ticks = new ArrayList<>();
+    List<int[]> snapshots = new ArrayList<>();
+    ticks.add(0L);
+    snapshots.add(new int[0]);
+    ChannelState state = new ChannelState();
+    EventMerger events =
+        new EventMerger(tracks, trackSizes, 0, Long.MAX_VALUE);
+    long nextTime = interval;
+    long nextTick = tempoMap.toTick(nextTime);
+    for (MidiEvent event = events.next(); event != null;
+        event = events.next()) {
+      if (event.getTick() >= nextTick) {
+        // Snapshot of the state before the events of this tick
+        ticks.add(event.getTick());
+        snapshots.add(state.toMessages());
+        while (nextTick <= event.getTick()) {
+          nextTime = nextTime > Long.MAX_VALUE - interval ? Long.MAX_VALUE
+              : nextTime + interval;
+          nextTick = nextTime == Long.MAX_VALUE ? Long.MAX_VALUE
+              : tempoMap.toTick(nextTime);
+        }
+      }
+      state.apply(event.getMessage());
+    }
+
+    long[] snapshotTicks = new long[ticks.size()];
+    for (int i = 0; i < snapshotTicks.length; i++) {
+      snapshotTicks[i] = ticks.get(i);
+    }
+    return new ChaseStateIndex(snapshotTicks,
+        snapshots.toArray(new int[snapshots.size()][]), trackSizes);
+  }
+
+  /**
+   * Get the index of the first event of a track at or after a tick.
+   *
+   * @param track the track
+   * @param tick the tick
+   * @param size the number of events of the track to search
+   * @return the index of the first event at or after the tick
+   */
+  private static int firstEventAt(final Track track, final long tick,
+      final int size) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (track.get(middle).getTick() < tick) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Is this index still up to date with a sequence?
+   *
+   * @param sequence the sequence the index was built from
+   * @return {@code true} if no event was added to or removed from the sequence since then
+   */
+  public boolean isCurrent(final Sequence sequence) {
+    Track[] tracks = sequence.getTracks();
+    if (tracks.length != trackSizes.length) {
+      return false;
+    }
+    for (int t = 0; t < tracks.length; t++) {
+      if (tracks[t].size() != trackSizes[t]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get an index without the snapshots taken after a tick.
+   *
+   * <p>
+   * A snapshot holds the state set by the events before its tick: the snapshots at or before a
+   * tick are still valid when events are added at or after this tick, such as the events appended
+   * to the tracks of a sequence being read. Seeking after the last snapshot replays the events
+   * since, including the added ones.
+   * </p>
+   *
+   * @param tick the tick of the first added event
+   * @return an index holding the snapshots at or before the tick, this index if all are
+   */
+  public ChaseStateIndex truncate(final long tick) {
+    if (ticks[ticks.length - 1] <= tick) {
+      return this;
+    }
+    int index = Arrays.binarySearch(ticks, tick);
+    // The first snapshot, at tick 0, is always kept
+    int count = index >= 0 ? index + 1 : Math.max(1, -index - 1);
+    return new ChaseStateIndex(Arrays.copyOf(ticks, count),
+        Arrays.copyOf(snapshots, count), trackSizes);
+  }
+
+  /**
+   * Get the number of snapshots.
+   *
+   * @return the number of snapshots, at least {@code 1}
+   */
+  public int getSnapshotCount() {
+    return ticks.length;
+  }
+
+  /**
+   * Get the messages restoring the channel state at a tick.
+   *
+   * <p>
+   * The state is the one set by all the events before the tick: it is restored from the nearest
+   * snapshot at or before the tick, updated with the events between the snapshot and the tick.
+   * </p>
+   *
+   * @param sequence the sequence the index was built from
+   * @param tick the tick
+   * @return the messages to send to restore the channel state
+   */
+  public List<ShortMessage> chase(final Sequence sequence, final long tick) {
+    int index = Arrays.binarySearch(ticks, tick);
+    int snapshot = index >= 0 ? index : Math.max(0, -index - 2);
+    ChannelState state = ChannelState.restore(snapshots[snapshot]);
+    Track[] tracks = sequence.getTracks();
+    int[] sizes = new int[tracks.length];
+    for (int t = 0; t < tracks.length; t++) {
+      sizes[t] = tracks[t].size();
+    }
+    EventMerger events =
+        new EventMerger(tracks, sizes, ticks[snapshot], tick);
+    for (MidiEvent event = events.next(); event != null;
+        event = events.next()) {
+      state.apply(event.getMessage());
+    }
+
+    int[] packed = state.toMessages();
+    List<ShortMessage> messages = new ArrayList<>(packed.length);
+    for (int message : packed) {
+      try {
+        messages.add(new ShortMessage(message & 0xFF, (message >>> 8) & 0xFF,
+            (message >>> 16) & 0xFF));
+      } catch (InvalidMidiDataException ex) {
+        // Not expected: the messages were valid when applied
+        throw new IllegalStateException(ex);
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Estimate the heap size of the snapshots.
+   *
+   * @return an estimation of the size, in bytes
+   */
+  public long estimateSize() {
+    long size = 8L * ticks.length;
+    for (int[] snapshot : snapshots) {
+      size += 16 + 4L * snapshot.length;
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [snapshots=" + ticks.length
+        + ", size=" + estimateSize() + "]";
+  }
+
+}
@@ -0,0 +1,295 @@
+package midiplayer.sequence;
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * A MIDI sequence packed into primitive arrays.
+ *
+ * <p>
+ * A {@code Sequence} holds every event as a {@code MidiEvent} object wrapping a
+ * {@code MidiMessage} object with its own data array, which costs about a hundred bytes per event.
+ * A packed sequence stores its events in columns instead:
+ * </p>
+ * <ul>
+ * <li>the ticks of the events, in a {@code long} array,</li>
+ * <li>the messages of up to 3 bytes (channel messages) packed into an {@code int} array,</li>
+ * <li>the longer messages (meta and system exclusive) in a single byte array, referenced from the
+ * {@code int} array.</li>
+ * </ul>
+ *
+ * <p>
+ * This costs 12 bytes per channel event. A packed sequence is immutable: it is converted back to a
+ * {@code Sequence} when a JDK API requires one, such as a sequencer.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class PackedSequence {
+
+  /**
+   * Estimated heap cost of a packed sequence, excluding its columns.
+   */
+  static final long OVERHEAD = 128;
+
+  /**
+   * Meta message status.
+   */
+  private static final int META = 0xFF;
+
+  private final float divisionType;
+
+  private final int resolution;
+
+  /**
+   * Index of the first event of each track, followed by the number of events.
+   */
+  private final int[] trackStarts;
+
+  /**
+   * Tick of each event.
+   */
+  private final long[] ticks;
+
+  /**
+   * Message of each event.
+   *
+   * <p>
+   * Messages of up to 3 bytes are packed as {@code length << 24 | data2 << 16 | data1 << 8 |
+   * status}. Longer messages are stored as the bitwise complement of their offset in the
+   * {@link #arena}, where their length precedes their bytes.
+   * </p>
+   */
+  private final int[] messages;
+
+  /**
+   * Bytes of the messages longer than 3 bytes.
+   */
+  private final byte[] arena;
+
+  // #########################################################################
+  /**
+   * A raw MIDI message restored from a packed sequence.
+   *
+   * <p>
+   * Only used for messages which are neither short, meta nor system exclusive messages.
+   * </p>
+   */
+  private static final class RawMessage extends MidiMessage {
+
+    RawMessage(final byte[] data) {
+      super(data);
+    }
+
+    @Override
+    public Object clone() {
+      return new RawMessage(getMessage());
+    }
+
+  }
+
+  // #########################################################################
+  private PackedSequence(final float divisionType, final int resolution,
+      final int[] trackStarts, final long[] ticks, final int[] messages,
+      final byte[] arena) {
+    this.divisionType = divisionType;
+    this.resolution = resolution;
+    this.trackStarts = trackStarts;
+    this.ticks = ticks;
+    this.messages = messages;
+    this.arena = arena;
+  }
+
+  /**
+   * Pack a sequence.
+   *
+   * <p>
+   * The sequence must not be modified while being packed.
+   * </p>
+   *
+   * @param sequence the sequence to pack
+   * @return the packed sequence
+   */
+  public static PackedSequence of(final Sequence sequence) {
+    Track[] tracks = sequence.getTracks();
+    int[] trackStarts = new int[tracks.length + 1];
+    int eventCount = 0;
+    for (int t = 0; t < tracks.length; t++) {
+      trackStarts[t] = eventCount;
+      eventCount += tracks[t].size();
+    }
+    trackStarts[tracks.length] = eventCount;
+
+    long[] ticks = new long[eventCount];
+    int[] messages = new int[eventCount];
+    byte[] arena = new byte[0];
+    int arenaLength = 0;
+    int e = 0;
+    for (Track track : tracks) {
+      for (int i = 0, n = track.size(); i < n; i++, e++) {
+        MidiEvent event = track.get(i);
+        MidiMessage message = event.getMessage();
+        byte[] data = message.getMessage();
+        int length = message.getLength();
+        ticks[e] = event.getTick();
+        if (message instanceof ShortMessage && length <= 3) {
+          int packed = length << 24;
+          for (int b = 0; b < length; b++) {
+            packed |= (data[b] & 0xFF) << (b * 8);
+          }
+          messages[e] = packed;
+        } else {
+          if (arenaLength + 4 + length > arena.length) {
+            arena = Arrays.copyOf(arena,
+                Math.max(arena.length * 2, arenaLength + 4 + length));
+          }
+          messages[e] = ~arenaLength;
+          arena[arenaLength++] = (byte) (length >>> 24);
+          arena[arenaLength++] = (byte) (length >>> 16);
+          arena[arenaLength++] = (byte) (length >>> 8);
+          arena[arenaLength++] = (byte) length;
+          System.arraycopy(data, 0, arena, arenaLength, length);
+          arenaLength += length;
+        }
+      }
+    }
+    return new PackedSequence(sequence.getDivisionType(),
+        sequence.getResolution(), trackStarts, ticks, messages,
+        Arrays.copyOf(arena, arenaLength));
+  }
+
+  /**
+   * Unpack this sequence.
+   *
+   * <p>
+   * Each call returns a new sequence, which may be freely modified.
+   * </p>
+   *
+   * @return a sequence with the events of this packed sequence
+   * @throws InvalidMidiDataException if the sequence timing is not supported
+   */
+  public Sequence toSequence() throws InvalidMidiDataException {
+    Sequence sequence = new Sequence(divisionType, resolution, getTrackCount());
+    Track[] tracks = sequence.getTracks();
+    for (int t = 0; t < tracks.length; t++) {
+      Track track = tracks[t];
+      for (int e = trackStarts[t], end = trackStarts[t + 1]; e < end; e++) {
+        track.add(new MidiEvent(getMessage(e), ticks[e]));
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * Get the message of an event.
+   *
+   * @param event the event index
+   * @return a new message
+   */
+  private MidiMessage getMessage(final int event) {
+    int packed = messages[event];
+    if (packed >= 0) {
+      int length = packed >>> 24;
+      byte[] data = new byte[length];
+      for (int b = 0; b < length; b++) {
+        data[b] = (byte) (packed >>> (b * 8));
+      }
+      return new StandardMidiFileReader.DecodedShortMessage(data);
+    }
+
+    int offset = ~packed;
+    int length = (arena[offset] & 0xFF) << 24 | (arena[offset + 1] & 0xFF) << 16
+        | (arena[offset + 2] & 0xFF) << 8 | (arena[offset + 3] & 0xFF);
+    byte[] data = Arrays.copyOfRange(arena, offset + 4, offset + 4 + length);
+    int status = length > 0 ? data[0] & 0xFF : 0;
+    switch (status) {
+      case META:
+        return new StandardMidiFileReader.DecodedMetaMessage(data);
+      case SysexMessage.SYSTEM_EXCLUSIVE:
+      case SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE:
+        return new StandardMidiFileReader.DecodedSysexMessage(data);
+      default:
+        return new RawMessage(data);
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the timing division type of the sequence.
+   *
+   * @return the division type
+   * @see Sequence#getDivisionType()
+   */
+  public float getDivisionType() {
+    return divisionType;
+  }
+
+  /**
+   * Get the timing resolution of the sequence.
+   *
+   * @return the resolution
+   * @see Sequence#getResolution()
+   */
+  public int getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Get the number of tracks of the sequence.
+   *
+   * @return the number of tracks
+   */
+  public int getTrackCount() {
+    return trackStarts.length - 1;
+  }
+
+  /**
+   * Get the number of events of the sequence, including the end of track events.
+   *
+   * @return the number of events
+   */
+  public int getEventCount() {
+    return ticks.length;
+  }
+
+  /**
+   * Get the length of the sequence, in ticks.
+   *
+   * @return the tick of the last event of the sequence
+   * @see Sequence#getTickLength()
+   */
+  public long getTickLength() {
+    long length = 0;
+    for (int t = 0; t < getTrackCount(); t++) {
+      if (trackStarts[t + 1] > trackStarts[t]) {
+        // Events of a track are sorted by tick
+        length = Math.max(length, ticks[trackStarts[t + 1] - 1]);
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Estimate the heap size of this packed sequence.
+   *
+   * @return an estimation of the size, in bytes
+   */
+  public long estimateSize() {
+    return OVERHEAD + 4L * trackStarts.length + 8L * ticks.length
+        + 4L * messages.length + arena.length;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [tracks=" + getTrackCount()
+        + ", events=" + getEventCount() + ", size=" + estimateSize() + "]";
+  }
+
+}
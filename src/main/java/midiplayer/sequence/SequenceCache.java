@@ -0,0 +1,709 @@
+package midiplayer.sequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+import midiplayer.metrics.FlightRecorderEvents;
+import midiplayer.metrics.LatencyHistogram;
+
+/**
+ * A cache of parsed MIDI sequences.
+ *
+ * <p>
+ * Sequences are kept packed (see {@link PackedSequence}) under a maximum size, in bytes. When the
+ * cache grows beyond its maximum size, the least recently used sequences are evicted first.
+ * </p>
+ *
+ * <p>
+ * Sequences are identified by their resource and, for local files, by the last modification time
+ * and size of the file: a file modified on disk is parsed again on its next request.
+ * </p>
+ *
+ * <p>
+ * Sequences returned by the cache are unpacked on each request: they are not shared and may be
+ * modified. Unpacking a large sequence takes milliseconds, so a few unpacked sequences can be kept
+ * ready for their next request (see {@link #putUnpacked(Object, Sequence)}), for instance by the
+ * prefetcher of the upcoming songs. Each of them is returned once, then forgotten.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class SequenceCache {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(SequenceCache.class.getName());
+
+  /**
+   * Default maximum size of the cache, in bytes.
+   */
+  public static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * Estimated heap cost of a single unpacked MIDI event, excluding its message data.
+   *
+   * <p>
+   * This covers the {@code MidiEvent} and {@code MidiMessage} objects, the message data array
+   * header and the references held by the {@code Track}.
+   * </p>
+   */
+  static final long EVENT_OVERHEAD = 112;
+
+  /**
+   * Maximum number of unpacked sequences kept ready for their next request.
+   */
+  static final int UNPACKED_CAPACITY = 2;
+
+  /**
+   * Estimate the heap size of an unpacked sequence.
+   *
+   * @param sequence the sequence
+   * @return an estimation of the sequence size, in bytes
+   */
+  public static long estimateSize(final Sequence sequence) {
+    if (sequence == null) {
+      return 0;
+    }
+    long size = 0;
+    for (Track track : sequence.getTracks()) {
+      for (int i = 0, n = track.size(); i < n; i++) {
+        size += EVENT_OVERHEAD + track.get(i).getMessage().getLength();
+      }
+    }
+    return size;
+  }
+
+  // #########################################################################
+  /**
+   * Key identifying a version of a resource.
+   */
+  static final class Key {
+
+    private final Object resource;
+
+    private final long lastModified;
+
+    private final long size;
+
+    Key(final Object resource, final long lastModified, final long size) {
+      this.resource = resource;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    Object getResource() {
+      return resource;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(resource, lastModified, size);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return lastModified == other.lastModified && size == other.size
+          && resource.equals(other.resource);
+    }
+
+    @Override
+    public String toString() {
+      return resource.toString();
+    }
+
+  }
+
+  /**
+   * A cached sequence and its estimated size.
+   */
+  private static final class Entry {
+
+    private final PackedSequence sequence;
+
+    private final long size;
+
+    Entry(final PackedSequence sequence) {
+      this.sequence = sequence;
+      this.size = sequence.estimateSize();
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * Cached sequences, in access order.
+   */
+  private final LinkedHashMap<Key, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Unpacked sequences ready for their next request, from the least to the most recently put.
+   */
+  private final LinkedHashMap<Key, Sequence> unpacked = new LinkedHashMap<>();
+
+  /**
+   * Estimated size of the unpacked sequences, in bytes.
+   */
+  private long unpackedSize = 0;
+
+  /**
+   * Maximum size of the cache, in bytes.
+   */
+  private long maximumSize;
+
+  /**
+   * Current estimated size of the cache, in bytes.
+   */
+  private long currentSize = 0;
+
+  private long hitCount = 0;
+
+  private long missCount = 0;
+
+  private long evictionCount = 0;
+
+  /**
+   * Time spent parsing the resources missing from the cache.
+   */
+  private final LatencyHistogram parseTimes =
+      new LatencyHistogram("MIDI file parse time");
+
+  /**
+   * Constructs a cache with the default maximum size.
+   *
+   * @see #DEFAULT_MAXIMUM_SIZE
+   */
+  public SequenceCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * Constructs a cache with the given maximum size.
+   *
+   * @param maximumSize the maximum size of the cache, in bytes
+   * @throws IllegalArgumentException if {@code maximumSize} is negative
+   */
+  public SequenceCache(final long maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException(
+          "Maximum size cannot be negative: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  // #########################################################################
+  /**
+   * Get the local file path of a resource, without accessing the file system.
+   *
+   * @param resource the resource
+   * @return the absolute path of the resource, {@code null} if the resource is not a local file
+   */
+  static Path toPath(final Object resource) {
+    Path path;
+    if (resource instanceof Path) {
+      path = (Path) resource;
+    } else if (resource instanceof File) {
+      path = ((File) resource).toPath();
+    } else if (resource instanceof URL) {
+      URL url = (URL) resource;
+      if (!"file".equalsIgnoreCase(url.getProtocol())) {
+        return null;
+      }
+      try {
+        path = Paths.get(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException ex) {
+        return null;
+      }
+    } else {
+      return null;
+    }
+    return path.toAbsolutePath();
+  }
+
+  /**
+   * Build the key identifying the current version of a resource.
+   *
+   * @param resource the resource
+   * @return the resource key, {@code null} if the resource cannot be cached
+   */
+  static Key keyOf(final Object resource) {
+    Path path = toPath(resource);
+    if (path == null) {
+      if (resource instanceof URL) {
+        return new Key(((URL) resource).toExternalForm(), -1, -1);
+      }
+      // Streams and unknown resources cannot be read twice
+      return null;
+    }
+
+    try {
+      BasicFileAttributes attributes =
+          Files.readAttributes(path, BasicFileAttributes.class);
+      return new Key(path, attributes.lastModifiedTime().toMillis(),
+          attributes.size());
+    } catch (IOException ex) {
+      LOGGER.log(Level.FINE, "Impossible to read attributes of " + path, ex);
+      return new Key(path, -1, -1);
+    }
+  }
+
+  /**
+   * Parse the sequence of a resource, without going through the cache.
+   *
+   * @param resource the resource
+   * @return the parsed sequence
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the resource does not point to valid MIDI data
+   */
+  protected Sequence load(final Object resource)
+      throws IOException, InvalidMidiDataException {
+    if (resource instanceof Path) {
+      return StandardMidiFileReader.getSequence((Path) resource);
+    } else if (resource instanceof File) {
+      return StandardMidiFileReader.getSequence(((File) resource).toPath());
+    } else if (resource instanceof URL) {
+      return MidiSystem.getSequence((URL) resource);
+    } else if (resource instanceof InputStream) {
+      return MidiSystem.getSequence((InputStream) resource);
+    } else {
+      throw new IllegalArgumentException(
+          "Impossible to read resource: " + resource);
+    }
+  }
+
+  /**
+   * Parse the sequence of a resource and record the time spent.
+   *
+   * @param resource the resource
+   * @param byteSize the size of the resource, {@code -1} if unknown
+   * @return the parsed sequence
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the resource does not point to valid MIDI data
+   */
+  private Sequence parse(final Object resource, final long byteSize)
+      throws IOException, InvalidMidiDataException {
+    long start = System.nanoTime();
+    Sequence sequence = load(resource);
+    parseTimes.recordSince(start);
+    FlightRecorderEvents.get().fileParsed(resource, byteSize, start);
+    return sequence;
+  }
+
+  /**
+   * Get the sequence of a resource, parsing it if it is not in the cache.
+   *
+   * @param resource the resource: a {@code Path}, {@code File}, {@code URL} or
+   *        {@code InputStream}
+   * @return the sequence of the resource
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the resource does not point to valid MIDI data
+   * @throws IllegalArgumentException if the resource type is not supported
+   */
+  public Sequence getSequence(final Object resource)
+      throws IOException, InvalidMidiDataException {
+    Key key = keyOf(resource);
+    if (key == null) {
+      return parse(resource, -1);
+    }
+
+    PackedSequence packed = get(key);
+    if (packed != null) {
+      return unpack(key, packed);
+    }
+    // Parse outside of the lock so that readers are not blocked
+    Sequence sequence = parse(resource, key.getSize());
+    put(key, sequence);
+    return sequence;
+  }
+
+  /**
+   * Get the sequence of a resource so that it can be played as soon as possible.
+   *
+   * <p>
+   * If a file is not in the cache, only its first events are parsed before returning: the
+   * remaining events are appended to the returned sequence in the background, and it is put in
+   * the cache once complete. It must therefore not be copied or modified before then.
+   * </p>
+   *
+   * @param resource the resource: a {@code Path}, {@code File}, {@code URL} or
+   *        {@code InputStream}
+   * @return the progress of the parsing of the sequence
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the resource does not point to valid MIDI data
+   * @throws IllegalArgumentException if the resource type is not supported
+   * @see StandardMidiFileReader#readProgressively(Path)
+   */
+  public StandardMidiFileReader.Progress getSequenceProgressively(
+      final Object resource) throws IOException, InvalidMidiDataException {
+    Key key = keyOf(resource);
+    Sequence sequence = null;
+    if (key == null || !(key.getResource() instanceof Path)) {
+      sequence = getSequence(resource);
+    } else {
+      PackedSequence packed = get(key);
+      if (packed != null) {
+        sequence = unpack(key, packed);
+      }
+    }
+    if (sequence != null) {
+      return new StandardMidiFileReader.Progress(sequence,
+          CompletableFuture.completedFuture(sequence));
+    }
+
+    long start = System.nanoTime();
+    StandardMidiFileReader.Progress progress = StandardMidiFileReader
+        .readProgressively((Path) key.getResource());
+    progress.getCompletion().whenComplete((complete, ex) -> {
+      if (ex == null) {
+        parseTimes.recordSince(start);
+        FlightRecorderEvents.get().fileParsed(key.getResource(),
+            key.getSize(), start);
+        put(key, complete);
+      } else {
+        LOGGER.log(Level.WARNING, "Impossible to read end of file: " + key, ex);
+      }
+    });
+    return progress;
+  }
+
+  /**
+   * Get the sequence of a resource, if already in the cache.
+   *
+   * @param resource the resource
+   * @return the cached sequence, {@code null} if not in the cache
+   */
+  public Sequence getIfPresent(final Object resource) {
+    Key key = keyOf(resource);
+    if (key == null) {
+      return null;
+    }
+    PackedSequence packed = get(key);
+    if (packed == null) {
+      return null;
+    }
+    try {
+      return unpack(key, packed);
+    } catch (InvalidMidiDataException ex) {
+      // Not expected: the sequence was created with the same timing
+      LOGGER.log(Level.WARNING, "Impossible to unpack sequence: " + key, ex);
+      return null;
+    }
+  }
+
+  /**
+   * Is the current version of a resource in the cache?
+   *
+   * <p>
+   * This method does not update the hit and miss counts, nor the access order.
+   * </p>
+   *
+   * @param resource the resource
+   * @return {@code true} if the resource sequence is in the cache
+   */
+  public boolean contains(final Object resource) {
+    Key key = keyOf(resource);
+    if (key == null) {
+      return false;
+    }
+    synchronized (this) {
+      return entries.containsKey(key);
+    }
+  }
+
+  private synchronized PackedSequence get(final Key key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.sequence;
+  }
+
+  /**
+   * Get the unpacked sequence of a resource, kept ready or unpacked now.
+   *
+   * @param key the resource key
+   * @param packed the cached sequence of the resource
+   * @return an unpacked sequence, not shared
+   * @throws InvalidMidiDataException if the sequence cannot be unpacked
+   */
+  private Sequence unpack(final Key key, final PackedSequence packed)
+      throws InvalidMidiDataException {
+    synchronized (this) {
+      Sequence sequence = unpacked.remove(key);
+      if (sequence != null) {
+        unpackedSize -= estimateSize(sequence);
+        return sequence;
+      }
+    }
+    return packed.toSequence();
+  }
+
+  /**
+   * Keep an unpacked sequence of a cached resource, so that the next request of the resource
+   * returns it instead of unpacking the cached sequence.
+   *
+   * <p>
+   * The sequence must not be referenced anywhere else, since it is handed to the next requester,
+   * which may modify it. Only the two most recently put sequences are kept, within a quarter of
+   * the maximum size of the cache.
+   * </p>
+   *
+   * @param resource the resource
+   * @param sequence an unpacked sequence of the resource
+   * @return {@code true} if the sequence was kept
+   */
+  public boolean putUnpacked(final Object resource, final Sequence sequence) {
+    Key key = keyOf(resource);
+    if (key == null || sequence == null) {
+      return false;
+    }
+    long size = estimateSize(sequence);
+    synchronized (this) {
+      if (!entries.containsKey(key) || size > maximumSize / 4) {
+        return false;
+      }
+      Sequence previous = unpacked.remove(key);
+      if (previous != null) {
+        unpackedSize -= estimateSize(previous);
+      }
+      unpacked.put(key, sequence);
+      unpackedSize += size;
+      evictUnpacked();
+    }
+    return true;
+  }
+
+  /**
+   * Forget the least recently put unpacked sequences, until they fit their capacity.
+   */
+  private void evictUnpacked() {
+    Iterator<Sequence> iterator = unpacked.values().iterator();
+    while ((unpacked.size() > UNPACKED_CAPACITY
+        || unpackedSize > maximumSize / 4) && iterator.hasNext()) {
+      unpackedSize -= estimateSize(iterator.next());
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Forget the unpacked sequence of a resource version.
+   *
+   * @param key the resource key
+   */
+  private void removeUnpacked(final Key key) {
+    Sequence sequence = unpacked.remove(key);
+    if (sequence != null) {
+      unpackedSize -= estimateSize(sequence);
+    }
+  }
+
+  /**
+   * Put the sequence of a resource in the cache.
+   *
+   * @param resource the resource
+   * @param sequence the parsed sequence of the resource
+   * @return {@code true} if the sequence was cached
+   */
+  public boolean put(final Object resource, final Sequence sequence) {
+    Key key = keyOf(resource);
+    if (key == null || sequence == null) {
+      return false;
+    }
+    return put(key, sequence);
+  }
+
+  private boolean put(final Key key, final Sequence sequence) {
+    // Pack outside of the lock so that readers are not blocked
+    Entry entry = new Entry(PackedSequence.of(sequence));
+    synchronized (this) {
+      if (entry.size > maximumSize) {
+        return false;
+      }
+      Entry previous = entries.put(key, entry);
+      if (previous != null) {
+        currentSize -= previous.size;
+        removeUnpacked(key);
+      }
+      currentSize += entry.size;
+      evict();
+    }
+    return true;
+  }
+
+  /**
+   * Evict the least recently used sequences until the cache fits its maximum size.
+   */
+  private void evict() {
+    Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+    while (currentSize > maximumSize && iterator.hasNext()) {
+      Map.Entry<Key, Entry> eldest = iterator.next();
+      iterator.remove();
+      currentSize -= eldest.getValue().size;
+      removeUnpacked(eldest.getKey());
+      evictionCount++;
+      LOGGER.log(Level.FINE, "Sequence evicted from cache: {0}",
+          eldest.getKey());
+    }
+  }
+
+  /**
+   * Remove all versions of a resource from the cache.
+   *
+   * @param resource the resource
+   */
+  public void invalidate(final Object resource) {
+    Key key = keyOf(resource);
+    if (key == null) {
+      return;
+    }
+    synchronized (this) {
+      Iterator<Map.Entry<Key, Entry>> iterator =
+          entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Entry> entry = iterator.next();
+        if (entry.getKey().getResource().equals(key.getResource())) {
+          iterator.remove();
+          currentSize -= entry.getValue().size;
+          removeUnpacked(entry.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove all sequences from the cache.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    currentSize = 0;
+    unpacked.clear();
+    unpackedSize = 0;
+  }
+
+  // #########################################################################
+  /**
+   * Get the maximum size of the cache.
+   *
+   * @return the maximum size of the cache, in bytes
+   */
+  public synchronized long getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Set the maximum size of the cache, evicting sequences if needed.
+   *
+   * @param maximumSize the maximum size of the cache, in bytes
+   * @throws IllegalArgumentException if {@code maximumSize} is negative
+   */
+  public synchronized void setMaximumSize(final long maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException(
+          "Maximum size cannot be negative: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    evict();
+    evictUnpacked();
+  }
+
+  /**
+   * Get the current estimated size of the cache.
+   *
+   * @return the current estimated size of the cache, in bytes
+   */
+  public synchronized long getCurrentSize() {
+    return currentSize;
+  }
+
+  /**
+   * Get the number of sequences in the cache.
+   *
+   * @return the number of sequences in the cache
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Get the number of requests answered from the cache.
+   *
+   * @return the number of cache hits
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Get the number of requests which required parsing a resource.
+   *
+   * @return the number of cache misses
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Get the number of sequences evicted to keep the cache under its maximum size.
+   *
+   * @return the number of evictions
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Get the statistics about the time spent parsing the resources missing from the cache, until
+   * their last event.
+   *
+   * @return the parse time statistics
+   */
+  public final LatencyHistogram getParseTimes() {
+    return parseTimes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SequenceCache [size=" + entries.size() + ", currentSize="
+        + currentSize + ", maximumSize=" + maximumSize + ", hits=" + hitCount
+        + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+  }
+
+}
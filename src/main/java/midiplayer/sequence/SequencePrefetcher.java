@@ -0,0 +1,360 @@
+package midiplayer.sequence;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+/**
+ * Loads and parses upcoming songs in the background.
+ *
+ * <p>
+ * While a song plays, the resources of the next songs are parsed on a small bounded pool of daemon
+ * threads and put in a {@link SequenceCache}, so that the next song change does not have to wait
+ * for file I/O and MIDI parsing. The parsed sequences are also kept unpacked by the cache, so that
+ * the next song change does not have to unpack them either.
+ * </p>
+ *
+ * <p>
+ * Each call to {@link #prefetch(Collection)} supersedes the previous one: tasks still queued for an
+ * older request are skipped.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class SequencePrefetcher implements AutoCloseable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(SequencePrefetcher.class.getName());
+
+  /**
+   * Default number of upcoming songs to prefetch.
+   */
+  public static final int DEFAULT_DEPTH = 2;
+
+  /**
+   * Maximum number of prefetch tasks waiting for a thread.
+   */
+  private static final int QUEUE_CAPACITY = 16;
+
+  /**
+   * Idle time after which prefetch threads are stopped, in seconds.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * Daemon thread factory for prefetch threads.
+   */
+  private static final class PrefetchThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      Thread thread =
+          new Thread(r, "MidiPlayerPrefetch-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * The cache in which prefetched sequences are stored.
+   */
+  private final SequenceCache cache;
+
+  /**
+   * The executor loading sequences.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Is the executor shut down when the prefetcher is closed?
+   */
+  private final boolean ownsExecutor;
+
+  /**
+   * Resources currently queued or being loaded, with the identifier of the latest request which
+   * asked for them.
+   */
+  private final Map<Object, Long> pendingResources = new ConcurrentHashMap<>();
+
+  /**
+   * Identifier of the latest prefetch request.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  private final AtomicLong prefetchedCount = new AtomicLong();
+
+  private final AtomicLong skippedCount = new AtomicLong();
+
+  private final AtomicLong failedCount = new AtomicLong();
+
+  /**
+   * Number of upcoming songs to prefetch.
+   */
+  private volatile int depth;
+
+  /**
+   * Constructs a prefetcher with the default depth and a single thread.
+   *
+   * @param cache the cache in which prefetched sequences are stored
+   */
+  public SequencePrefetcher(final SequenceCache cache) {
+    this(cache, DEFAULT_DEPTH, 1);
+  }
+
+  /**
+   * Constructs a prefetcher.
+   *
+   * @param cache the cache in which prefetched sequences are stored
+   * @param depth the number of upcoming songs to prefetch
+   * @param threads the maximum number of threads loading sequences
+   * @throws IllegalArgumentException if {@code cache} is {@code null}, {@code depth} is negative
+   *         or {@code threads} is not positive
+   */
+  public SequencePrefetcher(final SequenceCache cache, final int depth,
+      final int threads) {
+    this(cache, depth, newExecutor(threads, QUEUE_CAPACITY), true);
+  }
+
+  /**
+   * Constructs a prefetcher loading sequences on an executor shared with other prefetchers.
+   *
+   * <p>
+   * Each prefetcher only supersedes its own requests. The executor is not shut down when the
+   * prefetcher is closed.
+   * </p>
+   *
+   * @param cache the cache in which prefetched sequences are stored
+   * @param depth the number of upcoming songs to prefetch
+   * @param executor the shared executor loading sequences
+   * @throws IllegalArgumentException if {@code cache} or {@code executor} is {@code null}, or
+   *         {@code depth} is negative
+   * @see #newExecutor(int, int)
+   */
+  public SequencePrefetcher(final SequenceCache cache, final int depth,
+      final ExecutorService executor) {
+    this(cache, depth, executor, false);
+  }
+
+  private SequencePrefetcher(final SequenceCache cache, final int depth,
+      final ExecutorService executor, final boolean ownsExecutor) {
+    if (cache == null) {
+      throw new IllegalArgumentException("Sequence cache cannot be null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor cannot be null");
+    }
+    this.cache = cache;
+    setDepth(depth);
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+  }
+
+  /**
+   * Create an executor loading sequences on a bounded pool of daemon threads, which are stopped
+   * when idle.
+   *
+   * @param threads the maximum number of threads loading sequences
+   * @param queueCapacity the maximum number of prefetch tasks waiting for a thread
+   * @return a new executor
+   * @throws IllegalArgumentException if {@code threads} or {@code queueCapacity} is not positive
+   */
+  public static ThreadPoolExecutor newExecutor(final int threads,
+      final int queueCapacity) {
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Number of threads must be positive: " + threads);
+    }
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new PrefetchThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of upcoming songs to prefetch.
+   *
+   * @return the number of upcoming songs to prefetch
+   */
+  public final int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Set the number of upcoming songs to prefetch.
+   *
+   * <p>
+   * A depth of {@code 0} disables prefetching.
+   * </p>
+   *
+   * @param depth the number of upcoming songs to prefetch
+   * @throws IllegalArgumentException if {@code depth} is negative
+   */
+  public final void setDepth(final int depth) {
+    if (depth < 0) {
+      throw new IllegalArgumentException("Depth cannot be negative: " + depth);
+    }
+    this.depth = depth;
+  }
+
+  /**
+   * Get the cache in which prefetched sequences are stored.
+   *
+   * @return the sequence cache
+   */
+  public final SequenceCache getCache() {
+    return cache;
+  }
+
+  // #########################################################################
+  /**
+   * Prefetch the given resources, in order.
+   *
+   * <p>
+   * Only the first {@link #getDepth()} resources are considered. Resources already cached or
+   * being loaded are ignored.
+   * </p>
+   *
+   * @param resources the upcoming resources, in playing order
+   * @return the number of resources scheduled for loading
+   */
+  public int prefetch(final Collection<? extends Object> resources) {
+    final long requestGeneration = generation.incrementAndGet();
+    if (resources == null || executor.isShutdown()) {
+      return 0;
+    }
+
+    int scheduled = 0;
+    int considered = 0;
+    for (final Object resource : resources) {
+      if (considered++ >= depth) {
+        break;
+      }
+      if (resource == null || SequenceCache.keyOf(resource) == null
+          || cache.contains(resource)
+          || pendingResources.put(resource, requestGeneration) != null) {
+        // Nothing to load, or already queued for loading
+        continue;
+      }
+      try {
+        executor.execute(() -> load(resource));
+        scheduled++;
+      } catch (RejectedExecutionException ex) {
+        pendingResources.remove(resource);
+        LOGGER.log(Level.FINE, "Prefetch rejected for " + resource, ex);
+      }
+    }
+    return scheduled;
+  }
+
+  /**
+   * Load a resource in the cache, unless the request is outdated.
+   *
+   * @param resource the resource to load
+   */
+  private void load(final Object resource) {
+    try {
+      Long requestGeneration = pendingResources.get(resource);
+      if (requestGeneration == null
+          || requestGeneration.longValue() != generation.get()
+          || cache.contains(resource)) {
+        skippedCount.incrementAndGet();
+        return;
+      }
+      // Parsed here: not referenced anywhere else
+      cache.putUnpacked(resource, cache.getSequence(resource));
+      prefetchedCount.incrementAndGet();
+    } catch (IOException | InvalidMidiDataException
+        | IllegalArgumentException ex) {
+      // The player will report the error when the song is actually played
+      failedCount.incrementAndGet();
+      LOGGER.log(Level.FINE, "Impossible to prefetch " + resource, ex);
+    } finally {
+      pendingResources.remove(resource);
+    }
+  }
+
+  /**
+   * Cancel the prefetch requests that have not started yet.
+   */
+  public void cancel() {
+    generation.incrementAndGet();
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of resources currently queued or being loaded.
+   *
+   * @return the number of pending resources
+   */
+  public int getPendingCount() {
+    return pendingResources.size();
+  }
+
+  /**
+   * Get the number of resources loaded in the cache by this prefetcher.
+   *
+   * @return the number of prefetched resources
+   */
+  public long getPrefetchedCount() {
+    return prefetchedCount.get();
+  }
+
+  /**
+   * Get the number of queued resources skipped because their request became outdated.
+   *
+   * @return the number of skipped resources
+   */
+  public long getSkippedCount() {
+    return skippedCount.get();
+  }
+
+  /**
+   * Get the number of resources which could not be loaded.
+   *
+   * @return the number of failed resources
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "SequencePrefetcher [depth=" + depth + ", pending="
+        + getPendingCount() + ", prefetched=" + getPrefetchedCount()
+        + ", skipped=" + getSkippedCount() + ", failed=" + getFailedCount()
+        + "]";
+  }
+
+  // #########################################################################
+  @Override
+  public void close() {
+    cancel();
+    if (ownsExecutor) {
+      executor.shutdownNow();
+    }
+  }
+
+}
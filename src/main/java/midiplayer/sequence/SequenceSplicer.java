@@ -0,0 +1,212 @@
+package midiplayer.sequence;
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Utility class to play several songs as one sequence.
+ *
+ * <p>
+ * A song is spliced at the end of a playing sequence so that the sequencer moves from one song to
+ * the next without being stopped, reloaded and started again. A song boundary meta event is
+ * inserted where the next song starts so that listeners know when the handover happens.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class SequenceSplicer {
+
+  /**
+   * MIDI meta event type for sequencer specific data, used to mark song boundaries.
+   */
+  public static final int SEQUENCER_SPECIFIC_META_TYPE = 0x7F;
+
+  /**
+   * MIDI meta event type for tempo changes.
+   */
+  private static final int TEMPO_META_TYPE = 0x51;
+
+  /**
+   * MIDI meta event type for end of track.
+   */
+  private static final int END_OF_TRACK_META_TYPE = 0x2F;
+
+  /**
+   * Default MIDI tempo, in microseconds per quarter note (120 beats per minute).
+   */
+  private static final int DEFAULT_TEMPO = 500000;
+
+  /**
+   * Payload of the song boundary meta event.
+   */
+  private static final byte[] SONG_BOUNDARY_DATA =
+      {0x7D, 'm', 'p', 'b', 'o', 'u', 'n', 'd'};
+
+  /**
+   * MIDI control change for "all notes off".
+   */
+  private static final int ALL_NOTES_OFF = 123;
+
+  /**
+   * MIDI control change for "reset all controllers".
+   */
+  private static final int RESET_ALL_CONTROLLERS = 121;
+
+  /**
+   * Number of MIDI channels.
+   */
+  private static final int CHANNELS = 16;
+
+  /**
+   * Private constructor.
+   */
+  private SequenceSplicer() {}
+
+  // #########################################################################
+  /**
+   * Is the given meta message a song boundary inserted by this class?
+   *
+   * @param meta the meta message
+   * @return {@code true} if the meta message marks the start of a spliced song
+   */
+  public static boolean isSongBoundary(final MetaMessage meta) {
+    return meta != null && meta.getType() == SEQUENCER_SPECIFIC_META_TYPE
+        && Arrays.equals(SONG_BOUNDARY_DATA, meta.getData());
+  }
+
+  /**
+   * Create a copy of a sequence that can be spliced without altering the original.
+   *
+   * <p>
+   * Events are shared with the original sequence, only the tracks are copied.
+   * </p>
+   *
+   * @param sequence the sequence to copy
+   * @return a copy of the sequence
+   * @throws InvalidMidiDataException if the sequence timing is not supported
+   */
+  public static Sequence copyOf(final Sequence sequence)
+      throws InvalidMidiDataException {
+    Track[] tracks = sequence.getTracks();
+    Sequence copy = new Sequence(sequence.getDivisionType(),
+        sequence.getResolution(), tracks.length);
+    Track[] copyTracks = copy.getTracks();
+    for (int t = 0; t < tracks.length; t++) {
+      Track track = tracks[t];
+      Track copyTrack = copyTracks[t];
+      for (int i = 0, n = track.size(); i < n; i++) {
+        copyTrack.add(track.get(i));
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Can the next sequence be spliced at the end of the target sequence?
+   *
+   * @param target the playing sequence
+   * @param next the sequence to play next
+   * @return {@code true} if both sequences have compatible timings
+   */
+  public static boolean canSplice(final Sequence target, final Sequence next) {
+    return target != null && next != null
+        && target.getDivisionType() == Sequence.PPQ
+        && next.getDivisionType() == Sequence.PPQ
+        && target.getTracks().length > 0;
+  }
+
+  /**
+   * Splice a sequence at the end of a playing sequence.
+   *
+   * <p>
+   * Events of the next sequence are rescaled to the resolution of the target sequence and shifted
+   * after its last event. Tracks are matched by index, extra tracks of the next sequence being
+   * merged into the last track of the target. A song boundary event, a reset of all channels and,
+   * if the next sequence does not define one, a default tempo are inserted where the next sequence
+   * starts.
+   * </p>
+   *
+   * @param target the playing sequence, which is modified
+   * @param next the sequence to play next, which is left untouched
+   * @return the tick at which the next sequence starts in the target, {@code -1} if the sequences
+   *         cannot be spliced
+   * @throws InvalidMidiDataException if a boundary message cannot be created
+   */
+  public static long splice(final Sequence target, final Sequence next)
+      throws InvalidMidiDataException {
+    if (!canSplice(target, next)) {
+      return -1;
+    }
+    Track[] targetTracks = target.getTracks();
+    Track[] nextTracks = next.getTracks();
+    long offset = target.getTickLength() + 1;
+    long targetResolution = target.getResolution();
+    long nextResolution = next.getResolution();
+
+    // Song boundary: marker, channels reset and tempo
+    Track firstTrack = targetTracks[0];
+    firstTrack.add(new MidiEvent(new MetaMessage(SEQUENCER_SPECIFIC_META_TYPE,
+        SONG_BOUNDARY_DATA, SONG_BOUNDARY_DATA.length), offset));
+    for (int channel = 0; channel < CHANNELS; channel++) {
+      firstTrack.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE,
+          channel, ALL_NOTES_OFF, 0), offset));
+      firstTrack.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE,
+          channel, RESET_ALL_CONTROLLERS, 0), offset));
+    }
+    if (!hasInitialTempo(next)) {
+      byte[] tempo = {(byte) (DEFAULT_TEMPO >> 16),
+          (byte) (DEFAULT_TEMPO >> 8), (byte) DEFAULT_TEMPO};
+      firstTrack.add(new MidiEvent(
+          new MetaMessage(TEMPO_META_TYPE, tempo, tempo.length), offset));
+    }
+
+    // Song events
+    for (int t = 0; t < nextTracks.length; t++) {
+      Track nextTrack = nextTracks[t];
+      Track targetTrack = targetTracks[Math.min(t, targetTracks.length - 1)];
+      for (int i = 0, n = nextTrack.size(); i < n; i++) {
+        MidiEvent event = nextTrack.get(i);
+        MidiMessage message = event.getMessage();
+        if (message instanceof MetaMessage
+            && ((MetaMessage) message).getType() == END_OF_TRACK_META_TYPE) {
+          continue;
+        }
+        long tick =
+            offset + event.getTick() * targetResolution / nextResolution;
+        targetTrack.add(new MidiEvent(message, tick));
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Does the sequence define its tempo at its start?
+   *
+   * @param sequence the sequence
+   * @return {@code true} if a tempo event exists at tick 0
+   */
+  private static boolean hasInitialTempo(final Sequence sequence) {
+    for (Track track : sequence.getTracks()) {
+      for (int i = 0, n = track.size(); i < n; i++) {
+        MidiEvent event = track.get(i);
+        if (event.getTick() > 0) {
+          break;
+        }
+        MidiMessage message = event.getMessage();
+        if (message instanceof MetaMessage
+            && ((MetaMessage) message).getType() == TEMPO_META_TYPE) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,332 @@
+package midiplayer.sequence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+/**
+ * Summary of a MIDI song, computed once from its parsed sequence.
+ *
+ * <p>
+ * Metadata are small and immutable: they can be kept for a whole library and displayed without
+ * parsing the song again.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class SongMetadata {
+
+  /**
+   * MIDI meta event type for the sequence or track name.
+   */
+  private static final int TRACK_NAME_META_TYPE = 0x03;
+
+  /**
+   * MIDI meta event type for tempo changes.
+   */
+  private static final int TEMPO_META_TYPE = 0x51;
+
+  /**
+   * Default MIDI tempo, in microseconds per quarter note (120 beats per minute).
+   */
+  private static final int DEFAULT_TEMPO = 500000;
+
+  /**
+   * Last modification time of the song file, in milliseconds.
+   */
+  private final long lastModified;
+
+  /**
+   * Size of the song file, in bytes.
+   */
+  private final long size;
+
+  private final long microsecondLength;
+
+  private final long tickLength;
+
+  private final int trackCount;
+
+  private final float divisionType;
+
+  private final int resolution;
+
+  private final int tempoChangeCount;
+
+  private final int initialTempo;
+
+  private final int minimumTempo;
+
+  private final int maximumTempo;
+
+  private final String title;
+
+  private SongMetadata(final long lastModified, final long size,
+      final long microsecondLength, final long tickLength,
+      final int trackCount, final float divisionType, final int resolution,
+      final int tempoChangeCount, final int initialTempo,
+      final int minimumTempo, final int maximumTempo, final String title) {
+    this.lastModified = lastModified;
+    this.size = size;
+    this.microsecondLength = microsecondLength;
+    this.tickLength = tickLength;
+    this.trackCount = trackCount;
+    this.divisionType = divisionType;
+    this.resolution = resolution;
+    this.tempoChangeCount = tempoChangeCount;
+    this.initialTempo = initialTempo;
+    this.minimumTempo = minimumTempo;
+    this.maximumTempo = maximumTempo;
+    this.title = title;
+  }
+
+  // #########################################################################
+  /**
+   * Compute the metadata of a song.
+   *
+   * @param sequence the parsed sequence of the song
+   * @param lastModified the last modification time of the song file, in milliseconds
+   * @param size the size of the song file, in bytes
+   * @return the song metadata
+   * @throws IllegalArgumentException if the sequence is {@code null}
+   */
+  public static SongMetadata of(final Sequence sequence,
+      final long lastModified, final long size) {
+    if (sequence == null) {
+      throw new IllegalArgumentException("Sequence cannot be null");
+    }
+    Track[] tracks = sequence.getTracks();
+    int tempoChangeCount = 0;
+    int initialTempo = DEFAULT_TEMPO;
+    long initialTempoTick = Long.MAX_VALUE;
+    int minimumTempo = Integer.MAX_VALUE;
+    int maximumTempo = 0;
+    String title = null;
+    for (int t = 0; t < tracks.length; t++) {
+      Track track = tracks[t];
+      for (int i = 0, n = track.size(); i < n; i++) {
+        MidiEvent event = track.get(i);
+        MidiMessage message = event.getMessage();
+        if (!(message instanceof MetaMessage)) {
+          continue;
+        }
+        MetaMessage meta = (MetaMessage) message;
+        byte[] data = meta.getData();
+        if (meta.getType() == TEMPO_META_TYPE && data.length >= 3) {
+          int tempo = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8)
+              | (data[2] & 0xFF);
+          tempoChangeCount++;
+          minimumTempo = Math.min(minimumTempo, tempo);
+          maximumTempo = Math.max(maximumTempo, tempo);
+          if (event.getTick() < initialTempoTick) {
+            initialTempoTick = event.getTick();
+            initialTempo = tempo;
+          }
+        } else if (meta.getType() == TRACK_NAME_META_TYPE && title == null
+            && t == 0 && data.length > 0) {
+          // The name of the first track is the name of the sequence
+          title = new String(data, StandardCharsets.ISO_8859_1).trim();
+        }
+      }
+    }
+    if (tempoChangeCount == 0 || initialTempoTick > 0) {
+      // The default tempo applies until the first tempo change
+      minimumTempo = Math.min(minimumTempo, DEFAULT_TEMPO);
+      maximumTempo = Math.max(maximumTempo, DEFAULT_TEMPO);
+      initialTempo = DEFAULT_TEMPO;
+    }
+    return new SongMetadata(lastModified, size,
+        TempoMap.of(sequence).toMicroseconds(sequence.getTickLength()),
+        sequence.getTickLength(),
+        tracks.length, sequence.getDivisionType(), sequence.getResolution(),
+        tempoChangeCount, initialTempo, minimumTempo, maximumTempo,
+        title == null || title.isEmpty() ? null : title);
+  }
+
+  /**
+   * Read metadata written by {@link #write(DataOutput)}.
+   *
+   * @param in the input to read from
+   * @return the song metadata
+   * @throws IOException if an I/O exception occurs
+   */
+  static SongMetadata read(final DataInput in) throws IOException {
+    long lastModified = in.readLong();
+    long size = in.readLong();
+    long microsecondLength = in.readLong();
+    long tickLength = in.readLong();
+    int trackCount = in.readInt();
+    float divisionType = in.readFloat();
+    int resolution = in.readInt();
+    int tempoChangeCount = in.readInt();
+    int initialTempo = in.readInt();
+    int minimumTempo = in.readInt();
+    int maximumTempo = in.readInt();
+    String title = in.readBoolean() ? in.readUTF() : null;
+    return new SongMetadata(lastModified, size, microsecondLength, tickLength,
+        trackCount, divisionType, resolution, tempoChangeCount, initialTempo,
+        minimumTempo, maximumTempo, title);
+  }
+
+  /**
+   * Write the metadata in a compact binary form.
+   *
+   * @param out the output to write to
+   * @throws IOException if an I/O exception occurs
+   */
+  void write(final DataOutput out) throws IOException {
+    out.writeLong(lastModified);
+    out.writeLong(size);
+    out.writeLong(microsecondLength);
+    out.writeLong(tickLength);
+    out.writeInt(trackCount);
+    out.writeFloat(divisionType);
+    out.writeInt(resolution);
+    out.writeInt(tempoChangeCount);
+    out.writeInt(initialTempo);
+    out.writeInt(minimumTempo);
+    out.writeInt(maximumTempo);
+    out.writeBoolean(title != null);
+    if (title != null) {
+      out.writeUTF(title);
+    }
+  }
+
+  /**
+   * Are these metadata computed from the given version of the song file?
+   *
+   * @param lastModified the last modification time of the song file, in milliseconds
+   * @param size the size of the song file, in bytes
+   * @return {@code true} if the metadata are up to date
+   */
+  public boolean isUpToDate(final long lastModified, final long size) {
+    return this.lastModified == lastModified && this.size == size;
+  }
+
+  // #########################################################################
+  /**
+   * Get the last modification time of the song file.
+   *
+   * @return the last modification time of the song file, in milliseconds
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Get the size of the song file.
+   *
+   * @return the size of the song file, in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Get the duration of the song.
+   *
+   * @return the duration of the song, in microseconds
+   */
+  public long getMicrosecondLength() {
+    return microsecondLength;
+  }
+
+  /**
+   * Get the length of the song.
+   *
+   * @return the length of the song, in MIDI ticks
+   */
+  public long getTickLength() {
+    return tickLength;
+  }
+
+  /**
+   * Get the number of tracks of the song.
+   *
+   * @return the number of tracks
+   */
+  public int getTrackCount() {
+    return trackCount;
+  }
+
+  /**
+   * Get the timing division type of the song.
+   *
+   * @return the division type
+   * @see Sequence#getDivisionType()
+   */
+  public float getDivisionType() {
+    return divisionType;
+  }
+
+  /**
+   * Get the timing resolution of the song.
+   *
+   * @return the resolution
+   * @see Sequence#getResolution()
+   */
+  public int getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Get the number of tempo changes in the song.
+   *
+   * @return the number of tempo events
+   */
+  public int getTempoChangeCount() {
+    return tempoChangeCount;
+  }
+
+  /**
+   * Get the tempo at the start of the song.
+   *
+   * @return the initial tempo, in microseconds per quarter note
+   */
+  public int getInitialTempo() {
+    return initialTempo;
+  }
+
+  /**
+   * Get the fastest tempo of the song.
+   *
+   * @return the fastest tempo, in microseconds per quarter note
+   */
+  public int getMinimumTempo() {
+    return minimumTempo;
+  }
+
+  /**
+   * Get the slowest tempo of the song.
+   *
+   * @return the slowest tempo, in microseconds per quarter note
+   */
+  public int getMaximumTempo() {
+    return maximumTempo;
+  }
+
+  /**
+   * Get the title of the song, as defined by the name of its first track.
+   *
+   * @return the song title, {@code null} if not defined
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  @Override
+  public String toString() {
+    return "SongMetadata [title=" + title + ", microsecondLength="
+        + microsecondLength + ", tickLength=" + tickLength + ", trackCount="
+        + trackCount + ", resolution=" + resolution + ", tempoChangeCount="
+        + tempoChangeCount + ", initialTempo=" + initialTempo + "]";
+  }
+
+}
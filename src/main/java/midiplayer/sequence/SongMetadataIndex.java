@@ -0,0 +1,550 @@
+package midiplayer.sequence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+
+/**
+ * A persistent index of song metadata.
+ *
+ * <p>
+ * Metadata of local MIDI files are computed in the background, on request, and kept in memory so
+ * that they can be read from the <i>Event Dispatch Thread</i> without any file system access. The
+ * index is saved in a compact binary file a few seconds after it is modified and when it is
+ * closed, and loaded back before the first request is processed.
+ * </p>
+ *
+ * <p>
+ * Each entry remembers the last modification time and size of its file: a file modified on disk is
+ * parsed again on its next request. Entries of files which no longer exist are dropped when the
+ * index is loaded or when they are requested, and thus pruned from the index file on its next save.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class SongMetadataIndex implements AutoCloseable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(SongMetadataIndex.class.getName());
+
+  /**
+   * Name of the default index file.
+   */
+  public static final String DEFAULT_FILE_NAME = "song-metadata.idx";
+
+  /**
+   * Magic number of index files ("MPMI").
+   */
+  private static final int MAGIC = 0x4D504D49;
+
+  /**
+   * Version of the index file format.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Idle time after which indexing threads are stopped, in seconds.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * Delay between the modification of the index and its save, in seconds.
+   */
+  private static final long SAVE_DELAY_SECONDS = 5;
+
+  /**
+   * Get the default index file, in the application directory of the user's home.
+   *
+   * @return the default index file
+   */
+  public static Path getDefaultFile() {
+    return Paths.get(System.getProperty("user.home"), ".midiplayer",
+        DEFAULT_FILE_NAME);
+  }
+
+  /**
+   * Listener notified when the metadata of a song are available.
+   */
+  @FunctionalInterface
+  public interface Listener {
+
+    /**
+     * Called, from an indexing thread, when the metadata of a requested song are computed, or
+     * loaded from the index file. Metadata already notified are not notified again until the song
+     * is modified.
+     *
+     * @param resource the requested resource
+     * @param metadata the metadata of the song
+     */
+    void metadataIndexed(Object resource, SongMetadata metadata);
+
+  }
+
+  /**
+   * Daemon thread factory for indexing threads.
+   */
+  private static final class IndexThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    IndexThreadFactory(final String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      Thread thread = new Thread(r, prefix + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * The file in which the index is saved, {@code null} if not persisted.
+   */
+  private final Path file;
+
+  /**
+   * Metadata of each indexed file.
+   */
+  private final Map<Path, SongMetadata> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Files whose metadata were loaded from the index file but not notified yet.
+   */
+  private final Set<Path> loadedFiles = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Files currently queued or being indexed.
+   */
+  private final Set<Path> pendingFiles = ConcurrentHashMap.newKeySet();
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * The executor computing metadata.
+   */
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * The executor saving the index once modified.
+   */
+  private final ScheduledThreadPoolExecutor saver;
+
+  /**
+   * Is a save of the index scheduled?
+   */
+  private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+  private final AtomicLong indexedCount = new AtomicLong();
+
+  private final AtomicLong failedCount = new AtomicLong();
+
+  /**
+   * Has the index file been loaded?
+   */
+  private boolean loaded = false;
+
+  /**
+   * Was the index modified since it was last saved?
+   */
+  private volatile boolean dirty = false;
+
+  /**
+   * Constructs an index saved in the given file, with one indexing thread per two processors.
+   *
+   * @param file the file in which the index is saved, {@code null} to keep it in memory only
+   */
+  public SongMetadataIndex(final Path file) {
+    this(file,
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  /**
+   * Constructs an index saved in the given file.
+   *
+   * @param file the file in which the index is saved, {@code null} to keep it in memory only
+   * @param threads the maximum number of threads computing metadata
+   * @throws IllegalArgumentException if {@code threads} is not positive
+   */
+  public SongMetadataIndex(final Path file, final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Number of threads must be positive: " + threads);
+    }
+    this.file = file;
+    this.executor = new ThreadPoolExecutor(threads, threads,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new IndexThreadFactory("MidiPlayerMetadata-"));
+    this.executor.allowCoreThreadTimeOut(true);
+    this.saver = new ScheduledThreadPoolExecutor(1,
+        new IndexThreadFactory("MidiPlayerMetadataSaver-"));
+    this.saver.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    this.saver.allowCoreThreadTimeOut(true);
+  }
+
+  // #########################################################################
+  /**
+   * Get the file in which the index is saved.
+   *
+   * @return the index file, {@code null} if the index is kept in memory only
+   */
+  public final Path getFile() {
+    return file;
+  }
+
+  /**
+   * Add a listener notified when the metadata of a requested song are available.
+   *
+   * @param listener the listener to add
+   */
+  public void addListener(final Listener listener) {
+    if (listener != null) {
+      listeners.add(listener);
+    }
+  }
+
+  /**
+   * Remove a listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeListener(final Listener listener) {
+    listeners.remove(listener);
+  }
+
+  // #########################################################################
+  /**
+   * Get the metadata of a resource, if already indexed.
+   *
+   * <p>
+   * This method does not access the file system and can safely be called from the <i>Event
+   * Dispatch Thread</i>. The returned metadata may be outdated until the resource is requested
+   * again.
+   * </p>
+   *
+   * @param resource the resource
+   * @return the metadata of the resource, {@code null} if not indexed
+   */
+  public SongMetadata getIfPresent(final Object resource) {
+    Path path = SequenceCache.toPath(resource);
+    return path == null ? null : entries.get(path);
+  }
+
+  /**
+   * Request the metadata of the given resources.
+   *
+   * <p>
+   * Resources which are not local files are ignored. For each other resource, the file is checked
+   * in the background and parsed if it is not indexed yet or modified since it was indexed.
+   * Listeners are then notified of metadata just computed or loaded from the index file: up to date
+   * metadata already in memory are read with {@link #getIfPresent(Object)}.
+   * </p>
+   *
+   * @param resources the resources to index
+   * @return the number of resources scheduled for indexing
+   */
+  public int request(final Collection<? extends Object> resources) {
+    if (resources == null || executor.isShutdown()) {
+      return 0;
+    }
+    int scheduled = 0;
+    for (final Object resource : resources) {
+      final Path path = SequenceCache.toPath(resource);
+      if (path == null || !pendingFiles.add(path)) {
+        continue;
+      }
+      try {
+        executor.execute(() -> index(resource, path));
+        scheduled++;
+      } catch (RejectedExecutionException ex) {
+        pendingFiles.remove(path);
+        LOGGER.log(Level.FINE, "Indexing rejected for " + resource, ex);
+      }
+    }
+    return scheduled;
+  }
+
+  /**
+   * Compute the metadata of a file if needed, and notify listeners of new metadata.
+   *
+   * @param resource the requested resource
+   * @param path the path of the resource
+   */
+  private void index(final Object resource, final Path path) {
+    try {
+      ensureLoaded();
+      BasicFileAttributes attributes =
+          Files.readAttributes(path, BasicFileAttributes.class);
+      long lastModified = attributes.lastModifiedTime().toMillis();
+      long size = attributes.size();
+      SongMetadata metadata = entries.get(path);
+      boolean loadedFromFile = loadedFiles.remove(path);
+      if (metadata == null || !metadata.isUpToDate(lastModified, size)) {
+        metadata = SongMetadata.of(parse(path), lastModified, size);
+        entries.put(path, metadata);
+        dirty = true;
+        indexedCount.incrementAndGet();
+      } else if (!loadedFromFile) {
+        // Already notified
+        return;
+      }
+      for (Listener listener : listeners) {
+        listener.metadataIndexed(resource, metadata);
+      }
+    } catch (NoSuchFileException ex) {
+      failedCount.incrementAndGet();
+      loadedFiles.remove(path);
+      if (entries.remove(path) != null) {
+        dirty = true;
+      }
+    } catch (IOException | InvalidMidiDataException
+        | IllegalArgumentException ex) {
+      // The player will report the error when the song is actually played
+      failedCount.incrementAndGet();
+      LOGGER.log(Level.FINE, "Impossible to index " + resource, ex);
+    } finally {
+      pendingFiles.remove(path);
+      if (dirty) {
+        scheduleSave();
+      }
+    }
+  }
+
+  /**
+   * Parse the sequence of a file.
+   *
+   * @param path the file path
+   * @return the parsed sequence
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the file does not contain valid MIDI data
+   */
+  protected Sequence parse(final Path path)
+      throws IOException, InvalidMidiDataException {
+    return StandardMidiFileReader.getSequence(path);
+  }
+
+  /**
+   * Remove the metadata of a resource from the index.
+   *
+   * @param resource the resource
+   */
+  public void invalidate(final Object resource) {
+    Path path = SequenceCache.toPath(resource);
+    if (path != null && entries.remove(path) != null) {
+      loadedFiles.remove(path);
+      dirty = true;
+    }
+  }
+
+  /**
+   * Remove all metadata from the index.
+   */
+  public void clear() {
+    entries.clear();
+    loadedFiles.clear();
+    dirty = true;
+  }
+
+  // #########################################################################
+  /**
+   * Load the index file, once, without the entries of files which no longer exist.
+   */
+  private synchronized void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (file == null || !Files.isRegularFile(file)) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOGGER.log(Level.INFO, "Ignoring incompatible metadata index: {0}",
+            file);
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        Path path = Paths.get(in.readUTF());
+        SongMetadata metadata = SongMetadata.read(in);
+        if (!Files.isRegularFile(path)) {
+          // Pruned from the index file on its next save
+          dirty = true;
+          continue;
+        }
+        // Metadata computed meanwhile are more recent
+        if (entries.putIfAbsent(path, metadata) == null) {
+          loadedFiles.add(path);
+        }
+      }
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to load metadata index: " + file,
+          ex);
+    }
+  }
+
+  /**
+   * Save the index in its file.
+   *
+   * <p>
+   * The index is written in a temporary file which then replaces the index file, so that an
+   * interrupted save does not corrupt the index.
+   * </p>
+   *
+   * @throws IOException if an I/O exception occurs
+   */
+  public synchronized void save() throws IOException {
+    if (file == null) {
+      return;
+    }
+    dirty = false;
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      // Take a snapshot since entries may be added while writing
+      Object[] snapshot = entries.entrySet().toArray();
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(snapshot.length);
+      for (Object element : snapshot) {
+        @SuppressWarnings("unchecked")
+        Map.Entry<Path, SongMetadata> entry =
+            (Map.Entry<Path, SongMetadata>) element;
+        out.writeUTF(entry.getKey().toString());
+        entry.getValue().write(out);
+      }
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Schedule a save of the index, unless one is already scheduled, so that the modifications of
+   * successive requests are saved at once.
+   */
+  private void scheduleSave() {
+    if (file == null || !saveScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      saver.schedule(() -> {
+        saveScheduled.set(false);
+        if (dirty) {
+          saveQuietly();
+        }
+      }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException ex) {
+      // Closed meanwhile: saved by close()
+      saveScheduled.set(false);
+    }
+  }
+
+  private void saveQuietly() {
+    try {
+      save();
+    } catch (IOException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to save metadata index: " + file,
+          ex);
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of indexed files.
+   *
+   * @return the number of indexed files
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Get the number of files queued or being indexed.
+   *
+   * @return the number of pending files
+   */
+  public int getPendingCount() {
+    return pendingFiles.size();
+  }
+
+  /**
+   * Get the number of files parsed to compute their metadata.
+   *
+   * @return the number of parsed files
+   */
+  public long getIndexedCount() {
+    return indexedCount.get();
+  }
+
+  /**
+   * Get the number of files which could not be indexed.
+   *
+   * @return the number of failed files
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "SongMetadataIndex [file=" + file + ", size=" + size()
+        + ", pending=" + getPendingCount() + ", indexed=" + getIndexedCount()
+        + ", failed=" + getFailedCount() + "]";
+  }
+
+  // #########################################################################
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    saver.shutdownNow();
+    // Checked under the save lock, so that a save in progress is complete
+    synchronized (this) {
+      if (dirty) {
+        saveQuietly();
+      }
+    }
+  }
+
+}
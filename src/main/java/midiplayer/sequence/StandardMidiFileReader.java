@@ -0,0 +1,594 @@
+package midiplayer.sequence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * Reader of Standard MIDI Files (SMF) built for playback.
+ *
+ * <p>
+ * Unlike {@code MidiSystem.getSequence(File)}, the file is memory-mapped instead of read through a
+ * stream, and its track chunks are located first then decoded in parallel, one task per track.
+ * </p>
+ *
+ * <p>
+ * A file can also be read progressively: the events of the first quarter notes of every track are
+ * decoded right away so that playback can start, and the following events are appended to the
+ * tracks in the background. The sequencer picks appended events up as it plays.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class StandardMidiFileReader {
+
+  /**
+   * Number of quarter notes decoded before a progressively read sequence is returned.
+   *
+   * <p>
+   * This covers the first 8 seconds of a song at 120 beats per minute, far more than the time
+   * needed to decode the rest of the file.
+   * </p>
+   */
+  public static final int DEFAULT_PREROLL_QUARTER_NOTES = 16;
+
+  /**
+   * Header chunk type: {@code MThd}.
+   */
+  private static final int HEADER_CHUNK = 0x4D546864;
+
+  /**
+   * Track chunk type: {@code MTrk}.
+   */
+  private static final int TRACK_CHUNK = 0x4D54726B;
+
+  /**
+   * Minimum length of the header chunk data.
+   */
+  private static final int HEADER_LENGTH = 6;
+
+  /**
+   * Length of a chunk type and length.
+   */
+  private static final int CHUNK_HEADER_LENGTH = 8;
+
+  /**
+   * Meta event status.
+   */
+  private static final int META = 0xFF;
+
+  /**
+   * End of track meta event type.
+   */
+  private static final int END_OF_TRACK = 0x2F;
+
+  // #########################################################################
+  /**
+   * A sequence read progressively.
+   */
+  public static final class Progress {
+
+    private final Sequence sequence;
+
+    private final CompletableFuture<Sequence> completion;
+
+    Progress(final Sequence sequence,
+        final CompletableFuture<Sequence> completion) {
+      this.sequence = sequence;
+      this.completion = completion;
+    }
+
+    /**
+     * Get the sequence, which may still be missing its last events.
+     *
+     * @return the sequence being read
+     */
+    public Sequence getSequence() {
+      return sequence;
+    }
+
+    /**
+     * Get the completion of the reading.
+     *
+     * <p>
+     * It completes with the sequence once all its events were added, or exceptionally with an
+     * {@code InvalidMidiDataException} if the end of the file is invalid.
+     * </p>
+     *
+     * @return the completion of the reading
+     */
+    public CompletableFuture<Sequence> getCompletion() {
+      return completion;
+    }
+
+    /**
+     * Have all the events of the sequence been added?
+     *
+     * @return {@code true} if the reading is complete
+     */
+    public boolean isComplete() {
+      return completion.isDone();
+    }
+
+  }
+
+  /**
+   * Decoder of the events of a track chunk.
+   */
+  private static final class TrackDecoder {
+
+    private final ByteBuffer data;
+
+    private final Track track;
+
+    private int position;
+
+    private final int end;
+
+    private long tick = 0;
+
+    private int runningStatus = -1;
+
+    private boolean ended = false;
+
+    TrackDecoder(final ByteBuffer data, final int start, final int end,
+        final Track track) {
+      this.data = data;
+      this.position = start;
+      this.end = end;
+      this.track = track;
+    }
+
+    /**
+     * Decode the events of the track up to the given tick and add them to the track.
+     *
+     * @param lastTick the tick of the last event to decode
+     * @throws InvalidMidiDataException if the track contains invalid data
+     */
+    void decode(final long lastTick) throws InvalidMidiDataException {
+      while (!ended && position < end) {
+        int start = position;
+        long eventTick = tick + readVariableLength();
+        if (eventTick > lastTick) {
+          // Decoded later
+          position = start;
+          break;
+        }
+        tick = eventTick;
+        MidiMessage message = readMessage();
+        if (message != null) {
+          // Events are in tick order: each one is appended to the track
+          track.add(new MidiEvent(message, tick));
+        }
+      }
+      if (position >= end) {
+        ended = true;
+      }
+    }
+
+    boolean isEnded() {
+      return ended;
+    }
+
+    private int readByte() throws InvalidMidiDataException {
+      if (position >= end) {
+        throw new InvalidMidiDataException(
+            "Unexpected end of track at byte " + position);
+      }
+      return data.get(position++) & 0xFF;
+    }
+
+    private int readVariableLength() throws InvalidMidiDataException {
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        int b = readByte();
+        value = (value << 7) | (b & 0x7F);
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new InvalidMidiDataException(
+          "Variable length quantity too long at byte " + position);
+    }
+
+    /**
+     * Copy the bytes of the track into a message.
+     *
+     * @param from the position of the first byte to copy
+     * @param prefix the number of bytes reserved at the start of the message
+     * @param length the number of bytes to copy, starting at the current position
+     * @return the message bytes
+     * @throws InvalidMidiDataException if the track is too short
+     */
+    private byte[] readBytes(final int prefix, final int length)
+        throws InvalidMidiDataException {
+      if (length < 0 || length > end - position) {
+        throw new InvalidMidiDataException(
+            "Invalid data length " + length + " at byte " + position);
+      }
+      byte[] bytes = new byte[prefix + length];
+      data.position(position);
+      data.get(bytes, prefix, length);
+      position += length;
+      return bytes;
+    }
+
+    private MidiMessage readMessage() throws InvalidMidiDataException {
+      int status = readByte();
+      int data1 = -1;
+      if (status < 0x80) {
+        // Running status: this byte is the first data byte
+        if (runningStatus < 0) {
+          throw new InvalidMidiDataException(
+              "Missing status byte at byte " + (position - 1));
+        }
+        data1 = status;
+        status = runningStatus;
+      }
+
+      if (status < 0xF0) {
+        runningStatus = status;
+        if (data1 < 0) {
+          data1 = readByte();
+        }
+        switch (status & 0xF0) {
+          case ShortMessage.PROGRAM_CHANGE:
+          case ShortMessage.CHANNEL_PRESSURE:
+            return new DecodedShortMessage(
+                new byte[] {(byte) status, (byte) (data1 & 0x7F)});
+          default:
+            return new DecodedShortMessage(new byte[] {(byte) status,
+                (byte) (data1 & 0x7F), (byte) (readByte() & 0x7F)});
+        }
+      }
+
+      switch (status) {
+        case SysexMessage.SYSTEM_EXCLUSIVE:
+        case SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE:
+          // The status byte followed by the data, without its length
+          byte[] sysex = readBytes(1, readVariableLength());
+          sysex[0] = (byte) status;
+          return new DecodedSysexMessage(sysex);
+        case META:
+          int start = position - 1;
+          int type = readByte();
+          int length = readVariableLength();
+          if (type == END_OF_TRACK) {
+            // The track adds its own end of track event
+            position += Math.min(Math.max(length, 0), end - position);
+            ended = true;
+            return null;
+          }
+          // The message bytes are those of the file
+          int header = position - start;
+          position = start;
+          return new DecodedMetaMessage(readBytes(0, header + length));
+        default:
+          throw new InvalidMidiDataException("Invalid status byte 0x"
+              + Integer.toHexString(status) + " at byte " + (position - 1));
+      }
+    }
+
+  }
+
+  /**
+   * Short message decoded from a file.
+   *
+   * <p>
+   * Its bytes are known to be valid, they are not checked again like with the public
+   * constructors.
+   * </p>
+   */
+  static final class DecodedShortMessage extends ShortMessage {
+
+    DecodedShortMessage(final byte[] data) {
+      super(data);
+    }
+
+  }
+
+  /**
+   * Meta message decoded from a file.
+   */
+  static final class DecodedMetaMessage extends MetaMessage {
+
+    DecodedMetaMessage(final byte[] data) {
+      super(data);
+    }
+
+  }
+
+  /**
+   * System exclusive message decoded from a file.
+   */
+  static final class DecodedSysexMessage extends SysexMessage {
+
+    DecodedSysexMessage(final byte[] data) {
+      super(data);
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * Private constructor.
+   */
+  private StandardMidiFileReader() {}
+
+  /**
+   * Is this file a Standard MIDI File?
+   *
+   * @param data the start of the file
+   * @return {@code true} if the file starts with an SMF header chunk
+   */
+  private static boolean isStandardMidiFile(final ByteBuffer data) {
+    return data.limit() >= CHUNK_HEADER_LENGTH + HEADER_LENGTH
+        && data.getInt(0) == HEADER_CHUNK;
+  }
+
+  /**
+   * Read a Standard MIDI File.
+   *
+   * <p>
+   * Tracks are decoded in parallel on the common fork/join pool.
+   * </p>
+   *
+   * @param path the path of the file
+   * @return the sequence of the file
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the file is not a valid Standard MIDI File
+   */
+  public static Sequence read(final Path path)
+      throws IOException, InvalidMidiDataException {
+    return read(map(path));
+  }
+
+  /**
+   * Read a MIDI file.
+   *
+   * <p>
+   * Standard MIDI Files are read by this reader, other files (RMID, ...) by
+   * {@code MidiSystem.getSequence(File)}.
+   * </p>
+   *
+   * @param path the path of the file
+   * @return the sequence of the file
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the file does not contain valid MIDI data
+   */
+  public static Sequence getSequence(final Path path)
+      throws IOException, InvalidMidiDataException {
+    ByteBuffer data = map(path);
+    if (!isStandardMidiFile(data)) {
+      return MidiSystem.getSequence(path.toFile());
+    }
+    return read(data);
+  }
+
+  /**
+   * Read a Standard MIDI File progressively.
+   *
+   * <p>
+   * The events of the first {@link #DEFAULT_PREROLL_QUARTER_NOTES} quarter notes are decoded
+   * before returning. The remaining events are decoded in the background and appended to the
+   * tracks of the returned sequence.
+   * </p>
+   *
+   * <p>
+   * Other MIDI files are entirely read by {@code MidiSystem.getSequence(File)} before returning.
+   * </p>
+   *
+   * @param path the path of the file
+   * @return the progress of the reading
+   * @throws IOException if an I/O exception occurs
+   * @throws InvalidMidiDataException if the start of the file does not contain valid MIDI data
+   */
+  public static Progress readProgressively(final Path path)
+      throws IOException, InvalidMidiDataException {
+    ByteBuffer data = map(path);
+    if (!isStandardMidiFile(data)) {
+      Sequence sequence = MidiSystem.getSequence(path.toFile());
+      return new Progress(sequence,
+          CompletableFuture.completedFuture(sequence));
+    }
+    Sequence sequence = createSequence(data);
+    List<TrackDecoder> decoders = locateTracks(data, sequence);
+
+    long prerollTicks;
+    if (sequence.getDivisionType() == Sequence.PPQ) {
+      prerollTicks =
+          (long) sequence.getResolution() * DEFAULT_PREROLL_QUARTER_NOTES;
+    } else {
+      // Resolution in ticks per frame: 8 seconds of frames
+      prerollTicks = (long) (sequence.getDivisionType()
+          * sequence.getResolution() * DEFAULT_PREROLL_QUARTER_NOTES / 2);
+    }
+    join(decodeAll(decoders, prerollTicks, false));
+
+    List<TrackDecoder> remaining = new ArrayList<>(decoders.size());
+    for (TrackDecoder decoder : decoders) {
+      if (!decoder.isEnded()) {
+        remaining.add(decoder);
+      }
+    }
+    CompletableFuture<Sequence> completion;
+    if (remaining.isEmpty()) {
+      completion = CompletableFuture.completedFuture(sequence);
+    } else {
+      completion = decodeAll(remaining, Long.MAX_VALUE, true)
+          .thenApply(done -> sequence);
+    }
+    return new Progress(sequence, completion);
+  }
+
+  // #########################################################################
+  private static Sequence read(final ByteBuffer data)
+      throws InvalidMidiDataException {
+    Sequence sequence = createSequence(data);
+    List<TrackDecoder> decoders = locateTracks(data, sequence);
+    join(decodeAll(decoders, Long.MAX_VALUE, false));
+    return sequence;
+  }
+
+  private static ByteBuffer map(final Path path) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large: " + path);
+      }
+      // The mapping stays valid once the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  private static Sequence createSequence(final ByteBuffer data)
+      throws InvalidMidiDataException {
+    if (!isStandardMidiFile(data)) {
+      throw new InvalidMidiDataException("Not a Standard MIDI File");
+    }
+    int headerLength = data.getInt(4);
+    if (headerLength < HEADER_LENGTH) {
+      throw new InvalidMidiDataException(
+          "Invalid header length: " + headerLength);
+    }
+    int format = data.getShort(CHUNK_HEADER_LENGTH) & 0xFFFF;
+    if (format > 2) {
+      throw new InvalidMidiDataException("Unsupported SMF format: " + format);
+    }
+    int division = data.getShort(CHUNK_HEADER_LENGTH + 4) & 0xFFFF;
+    if ((division & 0x8000) == 0) {
+      return new Sequence(Sequence.PPQ, division);
+    }
+    int frames = -(byte) (division >> 8);
+    float divisionType;
+    switch (frames) {
+      case 24:
+        divisionType = Sequence.SMPTE_24;
+        break;
+      case 25:
+        divisionType = Sequence.SMPTE_25;
+        break;
+      case 29:
+        divisionType = Sequence.SMPTE_30DROP;
+        break;
+      case 30:
+        divisionType = Sequence.SMPTE_30;
+        break;
+      default:
+        throw new InvalidMidiDataException(
+            "Invalid SMPTE frame rate: " + frames);
+    }
+    return new Sequence(divisionType, division & 0xFF);
+  }
+
+  /**
+   * Locate the track chunks of the file and create their tracks in the sequence.
+   *
+   * @param data the file content
+   * @param sequence the sequence of the file
+   * @return the decoders of the tracks
+   */
+  private static List<TrackDecoder> locateTracks(final ByteBuffer data,
+      final Sequence sequence) {
+    int trackCount = data.getShort(CHUNK_HEADER_LENGTH + 2) & 0xFFFF;
+    List<TrackDecoder> decoders = new ArrayList<>(trackCount);
+    long position = CHUNK_HEADER_LENGTH + (data.getInt(4) & 0xFFFFFFFFL);
+    int limit = data.limit();
+    while (decoders.size() < trackCount
+        && position + CHUNK_HEADER_LENGTH <= limit) {
+      int type = data.getInt((int) position);
+      long length = data.getInt((int) position + 4) & 0xFFFFFFFFL;
+      long start = position + CHUNK_HEADER_LENGTH;
+      // Truncated files are read as far as possible
+      long end = Math.min(start + length, limit);
+      if (type == TRACK_CHUNK) {
+        decoders.add(new TrackDecoder(data.duplicate(), (int) start, (int) end,
+            sequence.createTrack()));
+      }
+      // Unknown chunks are skipped
+      position = start + length;
+    }
+    return decoders;
+  }
+
+  /**
+   * Decode the tracks up to the given tick.
+   *
+   * <p>
+   * Tracks are decoded in parallel on the common fork/join pool. If the pool is not parallel, they
+   * are decoded one after the other, on the calling thread unless decoded in the background.
+   * </p>
+   *
+   * @param decoders the decoders of the tracks
+   * @param lastTick the tick of the last events to decode
+   * @param background whether the calling thread must not decode the tracks
+   * @return the completion of the decoding
+   */
+  private static CompletableFuture<Void> decodeAll(
+      final List<TrackDecoder> decoders, final long lastTick,
+      final boolean background) {
+    if (ForkJoinPool.getCommonPoolParallelism() < 2 || decoders.size() < 2) {
+      Runnable decodeAll = () -> {
+        for (TrackDecoder decoder : decoders) {
+          decode(decoder, lastTick);
+        }
+      };
+      if (background) {
+        return CompletableFuture.runAsync(decodeAll);
+      }
+      try {
+        decodeAll.run();
+        return CompletableFuture.completedFuture(null);
+      } catch (CompletionException ex) {
+        CompletableFuture<Void> failure = new CompletableFuture<>();
+        failure.completeExceptionally(ex.getCause());
+        return failure;
+      }
+    }
+    CompletableFuture<?>[] tasks = new CompletableFuture<?>[decoders.size()];
+    for (int i = 0; i < tasks.length; i++) {
+      TrackDecoder decoder = decoders.get(i);
+      tasks[i] = CompletableFuture.runAsync(() -> decode(decoder, lastTick));
+    }
+    return CompletableFuture.allOf(tasks);
+  }
+
+  private static void decode(final TrackDecoder decoder, final long lastTick) {
+    try {
+      decoder.decode(lastTick);
+    } catch (InvalidMidiDataException ex) {
+      throw new CompletionException(ex);
+    }
+  }
+
+  private static void join(final CompletableFuture<?> task)
+      throws InvalidMidiDataException {
+    try {
+      task.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof InvalidMidiDataException) {
+        throw (InvalidMidiDataException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+}
@@ -0,0 +1,245 @@
+package midiplayer.sequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+/**
+ * Index of the tempo changes of a sequence, to convert between ticks and microseconds.
+ *
+ * <p>
+ * A sequence is split into segments of constant tempo. Each segment keeps its first tick, its
+ * tempo and the time at which it starts, so that a conversion is a binary search over the
+ * segments instead of a walk through all tempo changes.
+ * </p>
+ *
+ * <p>
+ * A tempo map is a snapshot: it must be rebuilt when events are added to the sequence, see
+ * {@link #isCurrent(Sequence)}. Like the {@code Sequence} methods, conversions ignore any tempo
+ * factor of a sequencer.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public final class TempoMap {
+
+  /**
+   * Default MIDI tempo, in microseconds per quarter note (120 beats per minute).
+   */
+  public static final int DEFAULT_TEMPO = 500000;
+
+  /**
+   * MIDI meta event type for tempo changes.
+   */
+  public static final int TEMPO_META_TYPE = 0x51;
+
+  /**
+   * Number of microseconds in a second.
+   */
+  private static final double SECOND_IN_MICROSECONDS = 1000000d;
+
+  private final boolean ppq;
+
+  private final double ticksPerMicrosecond;
+
+  private final int resolution;
+
+  /**
+   * First tick of each segment, the first one being {@code 0}.
+   */
+  private final long[] ticks;
+
+  /**
+   * Time at which each segment starts, in microseconds.
+   */
+  private final double[] microseconds;
+
+  /**
+   * Tempo of each segment, in microseconds per quarter note.
+   */
+  private final int[] tempos;
+
+  /**
+   * Number of events of each track of the sequence when the map was built.
+   */
+  private final int[] trackSizes;
+
+  private TempoMap(final Sequence sequence, final long[] ticks,
+      final double[] microseconds, final int[] tempos,
+      final int[] trackSizes) {
+    this.ppq = sequence.getDivisionType() == Sequence.PPQ;
+    this.resolution = Math.max(1, sequence.getResolution());
+    this.ticksPerMicrosecond = sequence.getDivisionType() * this.resolution
+        / SECOND_IN_MICROSECONDS;
+    this.ticks = ticks;
+    this.microseconds = microseconds;
+    this.tempos = tempos;
+    this.trackSizes = trackSizes;
+  }
+
+  /**
+   * Is a MIDI message a tempo change?
+   *
+   * @param message the MIDI message
+   * @return {@code true} if the message is a valid tempo meta message
+   */
+  public static boolean isTempo(final MidiMessage message) {
+    if (!(message instanceof MetaMessage)) {
+      return false;
+    }
+    MetaMessage meta = (MetaMessage) message;
+    return meta.getType() == TEMPO_META_TYPE && meta.getData().length >= 3;
+  }
+
+  /**
+   * Get the tempo of a tempo change.
+   *
+   * @param message the tempo meta message
+   * @return the tempo, in microseconds per quarter note
+   * @see #isTempo(MidiMessage)
+   */
+  public static int getTempo(final MidiMessage message) {
+    byte[] data = ((MetaMessage) message).getData();
+    return ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8)
+        | (data[2] & 0xFF);
+  }
+
+  /**
+   * Build the tempo map of a sequence.
+   *
+   * @param sequence the sequence
+   * @return the tempo map of the sequence
+   */
+  public static TempoMap of(final Sequence sequence) {
+    Track[] tracks = sequence.getTracks();
+    int[] trackSizes = new int[tracks.length];
+    List<MidiEvent> changes = new ArrayList<>();
+    for (int t = 0; t < tracks.length; t++) {
+      Track track = tracks[t];
+      trackSizes[t] = track.size();
+      for (int i = 0; i < trackSizes[t]; i++) {
+        MidiEvent event = track.get(i);
+        if (isTempo(event.getMessage()) && getTempo(event.getMessage()) > 0) {
+          changes.add(event);
+        }
+      }
+    }
+    // Stable: the last change of a same tick, in track order, wins
+    changes.sort((e1, e2) -> Long.compare(e1.getTick(), e2.getTick()));
+
+    int resolution = Math.max(1, sequence.getResolution());
+    long[] ticks = new long[changes.size() + 1];
+    double[] microseconds = new double[ticks.length];
+    int[] tempos = new int[ticks.length];
+    tempos[0] = DEFAULT_TEMPO;
+    int segments = 1;
+    for (MidiEvent change : changes) {
+      long tick = change.getTick();
+      int last = segments - 1;
+      if (tick == ticks[last]) {
+        tempos[last] = getTempo(change.getMessage());
+        continue;
+      }
+      ticks[segments] = tick;
+      microseconds[segments] = microseconds[last]
+          + (double) (tick - ticks[last]) * tempos[last] / resolution;
+      tempos[segments] = getTempo(change.getMessage());
+      segments++;
+    }
+    return new TempoMap(sequence, Arrays.copyOf(ticks, segments),
+        Arrays.copyOf(microseconds, segments), Arrays.copyOf(tempos, segments),
+        trackSizes);
+  }
+
+  /**
+   * Is this tempo map still up to date with a sequence?
+   *
+   * @param sequence the sequence the map was built from
+   * @return {@code true} if no event was added to or removed from the sequence since then
+   */
+  public boolean isCurrent(final Sequence sequence) {
+    Track[] tracks = sequence.getTracks();
+    if (tracks.length != trackSizes.length) {
+      return false;
+    }
+    for (int t = 0; t < tracks.length; t++) {
+      if (tracks[t].size() != trackSizes[t]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the number of tempo segments.
+   *
+   * @return the number of segments of constant tempo, at least {@code 1}
+   */
+  public int getSegmentCount() {
+    return ticks.length;
+  }
+
+  /**
+   * Get the segment containing a tick.
+   *
+   * @param tick the tick
+   * @return the index of the last segment starting at or before the tick
+   */
+  private int segmentOfTick(final long tick) {
+    int index = Arrays.binarySearch(ticks, tick);
+    return index >= 0 ? index : Math.max(0, -index - 2);
+  }
+
+  /**
+   * Get the tempo in effect at a tick.
+   *
+   * @param tick the tick
+   * @return the tempo, in microseconds per quarter note
+   */
+  public int getTempoAt(final long tick) {
+    return tempos[segmentOfTick(tick)];
+  }
+
+  /**
+   * Convert a tick position to microseconds.
+   *
+   * @param tick the tick position
+   * @return the position, in microseconds
+   */
+  public long toMicroseconds(final long tick) {
+    if (!ppq) {
+      return (long) (tick / ticksPerMicrosecond);
+    }
+    int segment = segmentOfTick(tick);
+    return (long) (microseconds[segment]
+        + (double) (tick - ticks[segment]) * tempos[segment] / resolution);
+  }
+
+  /**
+   * Convert a position in microseconds to ticks.
+   *
+   * @param position the position, in microseconds
+   * @return the tick position
+   */
+  public long toTick(final long position) {
+    if (!ppq) {
+      return (long) (position * ticksPerMicrosecond);
+    }
+    int index = Arrays.binarySearch(microseconds, position);
+    int segment = index >= 0 ? index : Math.max(0, -index - 2);
+    return ticks[segment] + (long) ((position - microseconds[segment])
+        * resolution / tempos[segment]);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [segments=" + ticks.length + "]";
+  }
+
+}
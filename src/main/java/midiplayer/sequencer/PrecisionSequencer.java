@@ -0,0 +1,1408 @@
+package midiplayer.sequencer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.ControllerEventListener;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import javax.sound.midi.Transmitter;
+
+import midiplayer.metrics.LatencyHistogram;
+import midiplayer.sequence.ChaseStateIndex;
+import midiplayer.sequence.TempoMap;
+
+/**
+ * A MIDI sequencer dispatching events at precise times.
+ *
+ * <p>
+ * The events of all tracks are merged into a schedule sorted by tick. A dedicated thread with the
+ * highest priority waits for the time of each event with {@link System#nanoTime()}: it parks until
+ * shortly before the event is due, then spins until it is due. The lateness of each event is
+ * recorded in a histogram, see {@link #getDispatchJitter()}.
+ * </p>
+ *
+ * <p>
+ * Events added to the tracks of the sequence while it is played, after the last dispatched events,
+ * are picked up: a sequence can be appended to while it is being read or spliced.
+ * </p>
+ *
+ * <p>
+ * Recording is not supported.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class PrecisionSequencer implements Sequencer {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(PrecisionSequencer.class.getName());
+
+  /**
+   * Default time spent spinning before an event is due, in nanoseconds.
+   *
+   * <p>
+   * Parking the thread is only accurate to the scheduler granularity: the thread wakes up this
+   * long before the event is due, then spins until it is due.
+   * </p>
+   */
+  public static final long DEFAULT_SPIN_NANOS = 200000;
+
+  /**
+   * Default MIDI tempo, in microseconds per quarter note (120 beats per minute).
+   */
+  private static final float DEFAULT_TEMPO_MPQ = TempoMap.DEFAULT_TEMPO;
+
+  /**
+   * MIDI meta event type for end of track.
+   */
+  private static final int END_OF_TRACK_META_TYPE = 0x2F;
+
+  /**
+   * Number of MIDI channels.
+   */
+  private static final int CHANNELS = 16;
+
+  /**
+   * MIDI control change for the sustain pedal.
+   */
+  private static final int SUSTAIN = 64;
+
+  /**
+   * MIDI control change for "all notes off".
+   */
+  private static final int ALL_NOTES_OFF = 123;
+
+  /**
+   * Information about this sequencer.
+   */
+  private static final MidiDevice.Info INFO = new Info();
+
+  // #########################################################################
+  /**
+   * Information about the precision sequencer.
+   */
+  private static final class Info extends MidiDevice.Info {
+
+    Info() {
+      super("MidiPlayer Precision Sequencer", "Mathieu Brunot",
+          "Sequencer dispatching events with spin-then-park waits", "1.0");
+    }
+
+  }
+
+  /**
+   * A transmitter of the dispatched events.
+   */
+  private final class SequencerTransmitter implements Transmitter {
+
+    private volatile Receiver receiver;
+
+    @Override
+    public void setReceiver(final Receiver receiver) {
+      this.receiver = receiver;
+    }
+
+    @Override
+    public Receiver getReceiver() {
+      return receiver;
+    }
+
+    @Override
+    public void close() {
+      transmitters.remove(this);
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * Whether the sequencer is connected to the default MIDI receiver when opened.
+   */
+  private final boolean connected;
+
+  /**
+   * Time spent spinning before an event is due, in nanoseconds.
+   */
+  private final long spinNanos;
+
+  private final List<SequencerTransmitter> transmitters =
+      new CopyOnWriteArrayList<>();
+
+  private final List<MetaEventListener> metaEventListeners =
+      new CopyOnWriteArrayList<>();
+
+  /**
+   * Controller event listeners and the controllers they listen to.
+   */
+  private final Map<ControllerEventListener, boolean[]> controllerListeners =
+      new ConcurrentHashMap<>();
+
+  private final LatencyHistogram dispatchJitter =
+      new LatencyHistogram("Sequencer dispatch jitter");
+
+  /**
+   * Lock guarding the schedule and the timing of the sequencer.
+   */
+  private final Object lock = new Object();
+
+  private volatile boolean open = false;
+
+  private volatile boolean running = false;
+
+  /**
+   * Incremented on each change of the schedule or timing, so that the engine thread stops
+   * waiting for an event which is not due anymore.
+   */
+  private volatile int generation = 0;
+
+  private Thread engine = null;
+
+  private ExecutorService listenerExecutor = null;
+
+  private SequencerTransmitter defaultTransmitter = null;
+
+  // Sequence and schedule, guarded by the lock
+  private Sequence sequence = null;
+
+  private Track[] tracks = new Track[0];
+
+  /**
+   * Number of events of each track, when the schedule was built.
+   */
+  private int[] trackSizes = new int[0];
+
+  /**
+   * Last event of each track before its end of track, when the schedule was built, to tell events
+   * appended to a track from events inserted before its end.
+   */
+  private MidiEvent[] trackTails = new MidiEvent[0];
+
+  /**
+   * Number of dispatched (or skipped) events of each track.
+   */
+  private int[] dispatchedCounts = new int[0];
+
+  private boolean[] trackMutes = new boolean[0];
+
+  private boolean[] trackSolos = new boolean[0];
+
+  private long[] scheduleTicks = new long[0];
+
+  private MidiMessage[] scheduleMessages = new MidiMessage[0];
+
+  private int[] scheduleTracks = new int[0];
+
+  private int scheduleSize = 0;
+
+  /**
+   * Index of the next event to dispatch in the schedule.
+   */
+  private int next = 0;
+
+  /**
+   * Tempo map of the sequence, {@code null} until needed.
+   */
+  private TempoMap tempoMap = null;
+
+  /**
+   * Chase state index of the sequence, {@code null} until needed.
+   */
+  private ChaseStateIndex chaseIndex = null;
+
+  // Timing, guarded by the lock
+  /**
+   * Tick position at the anchor time.
+   */
+  private double anchorTick = 0;
+
+  /**
+   * Anchor time, as returned by {@link System#nanoTime()}, if running.
+   */
+  private long anchorNanos = 0;
+
+  private float tempoMpq = DEFAULT_TEMPO_MPQ;
+
+  private float tempoFactor = 1;
+
+  private long loopStart = 0;
+
+  private long loopEnd = -1;
+
+  private int loopCount = 0;
+
+  private int remainingLoops = 0;
+
+  /**
+   * Constructs a precision sequencer connected to the default MIDI receiver when opened.
+   */
+  public PrecisionSequencer() {
+    this(true, DEFAULT_SPIN_NANOS);
+  }
+
+  /**
+   * Constructs a precision sequencer.
+   *
+   * @param connected whether the sequencer is connected to the default MIDI receiver when opened,
+   *        like the sequencer returned by {@link MidiSystem#getSequencer(boolean)}
+   * @param spinNanos the time spent spinning before an event is due, in nanoseconds
+   */
+  public PrecisionSequencer(final boolean connected, final long spinNanos) {
+    if (spinNanos < 0) {
+      throw new IllegalArgumentException(
+          "Spin time cannot be negative: " + spinNanos);
+    }
+    this.connected = connected;
+    this.spinNanos = spinNanos;
+  }
+
+  /**
+   * Get the histogram of the dispatch lateness of events.
+   *
+   * <p>
+   * It records, for each dispatched event, the time elapsed between the time the event was due and
+   * the time it was sent to the receivers.
+   * </p>
+   *
+   * @return the histogram of the dispatch lateness
+   */
+  public final LatencyHistogram getDispatchJitter() {
+    return dispatchJitter;
+  }
+
+  // #########################################################################
+  @Override
+  public MidiDevice.Info getDeviceInfo() {
+    return INFO;
+  }
+
+  @Override
+  public void open() throws MidiUnavailableException {
+    synchronized (lock) {
+      if (open) {
+        return;
+      }
+      if (connected) {
+        Receiver receiver = MidiSystem.getReceiver();
+        defaultTransmitter = new SequencerTransmitter();
+        defaultTransmitter.setReceiver(receiver);
+        transmitters.add(defaultTransmitter);
+      }
+      listenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PrecisionSequencer-listeners");
+        thread.setDaemon(true);
+        return thread;
+      });
+      open = true;
+      engine = new Thread(this::runEngine, "PrecisionSequencer");
+      engine.setDaemon(true);
+      engine.setPriority(Thread.MAX_PRIORITY);
+      engine.start();
+    }
+  }
+
+  @Override
+  public void close() {
+    Thread stopped;
+    synchronized (lock) {
+      if (!open) {
+        return;
+      }
+      if (running) {
+        stop();
+      }
+      open = false;
+      generation++;
+      lock.notifyAll();
+      stopped = engine;
+      engine = null;
+      listenerExecutor.shutdown();
+      listenerExecutor = null;
+      if (defaultTransmitter != null) {
+        Receiver receiver = defaultTransmitter.getReceiver();
+        defaultTransmitter.close();
+        defaultTransmitter = null;
+        if (receiver != null) {
+          receiver.close();
+        }
+      }
+    }
+    LockSupport.unpark(stopped);
+    if (stopped != Thread.currentThread()) {
+      try {
+        stopped.join(TimeUnit.SECONDS.toMillis(1));
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public int getMaxReceivers() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxTransmitters() {
+    return -1;
+  }
+
+  @Override
+  public Receiver getReceiver() throws MidiUnavailableException {
+    throw new MidiUnavailableException("Recording is not supported");
+  }
+
+  @Override
+  public List<Receiver> getReceivers() {
+    return new ArrayList<>();
+  }
+
+  @Override
+  public Transmitter getTransmitter() {
+    SequencerTransmitter transmitter = new SequencerTransmitter();
+    transmitters.add(transmitter);
+    return transmitter;
+  }
+
+  @Override
+  public List<Transmitter> getTransmitters() {
+    return new ArrayList<>(transmitters);
+  }
+
+  // #########################################################################
+  @Override
+  public void setSequence(final Sequence sequence)
+      throws InvalidMidiDataException {
+    synchronized (lock) {
+      if (sequence == null && running) {
+        stop();
+      }
+      this.sequence = sequence;
+      this.tracks = sequence == null ? new Track[0] : sequence.getTracks();
+      this.trackSizes = new int[tracks.length];
+      this.trackTails = new MidiEvent[tracks.length];
+      this.dispatchedCounts = new int[tracks.length];
+      this.trackMutes = new boolean[tracks.length];
+      this.trackSolos = new boolean[tracks.length];
+      this.loopStart = 0;
+      this.loopEnd = -1;
+      this.tempoMap = null;
+      this.chaseIndex = null;
+      seek(0);
+    }
+  }
+
+  @Override
+  public void setSequence(final InputStream stream)
+      throws IOException, InvalidMidiDataException {
+    setSequence(stream == null ? null : MidiSystem.getSequence(stream));
+  }
+
+  @Override
+  public Sequence getSequence() {
+    synchronized (lock) {
+      return sequence;
+    }
+  }
+
+  @Override
+  public void start() {
+    synchronized (lock) {
+      if (!open) {
+        throw new IllegalStateException("Sequencer not open");
+      }
+      if (sequence == null) {
+        throw new IllegalStateException("Sequence not set");
+      }
+      if (running) {
+        return;
+      }
+      anchorNanos = System.nanoTime();
+      running = true;
+      generation++;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public void stop() {
+    synchronized (lock) {
+      if (!open) {
+        throw new IllegalStateException("Sequencer not open");
+      }
+      if (!running) {
+        return;
+      }
+      anchorTick = currentTick();
+      running = false;
+      generation++;
+    }
+    LockSupport.unpark(engine);
+    sendAllNotesOff();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void startRecording() {
+    throw new UnsupportedOperationException("Recording is not supported");
+  }
+
+  @Override
+  public void stopRecording() {
+    // Never recording
+  }
+
+  @Override
+  public boolean isRecording() {
+    return false;
+  }
+
+  @Override
+  public void recordEnable(final Track track, final int channel) {
+    // Recording is not supported
+  }
+
+  @Override
+  public void recordDisable(final Track track) {
+    // Recording is not supported
+  }
+
+  // #########################################################################
+  @Override
+  public float getTempoInBPM() {
+    return 60000000f / getTempoInMPQ();
+  }
+
+  @Override
+  public void setTempoInBPM(final float bpm) {
+    if (bpm > 0) {
+      setTempoInMPQ(60000000f / bpm);
+    }
+  }
+
+  @Override
+  public float getTempoInMPQ() {
+    synchronized (lock) {
+      return tempoMpq;
+    }
+  }
+
+  @Override
+  public void setTempoInMPQ(final float mpq) {
+    if (mpq <= 0) {
+      return;
+    }
+    synchronized (lock) {
+      reanchor();
+      tempoMpq = mpq;
+    }
+    LockSupport.unpark(engine);
+  }
+
+  @Override
+  public void setTempoFactor(final float factor) {
+    if (factor <= 0) {
+      return;
+    }
+    synchronized (lock) {
+      reanchor();
+      tempoFactor = factor;
+    }
+    LockSupport.unpark(engine);
+  }
+
+  @Override
+  public float getTempoFactor() {
+    synchronized (lock) {
+      return tempoFactor;
+    }
+  }
+
+  @Override
+  public long getTickLength() {
+    Sequence current = getSequence();
+    return current == null ? 0 : current.getTickLength();
+  }
+
+  @Override
+  public long getTickPosition() {
+    synchronized (lock) {
+      return (long) currentTick();
+    }
+  }
+
+  @Override
+  public void setTickPosition(final long tick) {
+    if (tick < 0) {
+      return;
+    }
+    synchronized (lock) {
+      seek(tick);
+    }
+    LockSupport.unpark(engine);
+  }
+
+  @Override
+  public long getMicrosecondLength() {
+    synchronized (lock) {
+      return toMicroseconds(getTickLength());
+    }
+  }
+
+  @Override
+  public long getMicrosecondPosition() {
+    synchronized (lock) {
+      return toMicroseconds((long) currentTick());
+    }
+  }
+
+  @Override
+  public void setMicrosecondPosition(final long microseconds) {
+    if (microseconds < 0) {
+      return;
+    }
+    synchronized (lock) {
+      seek(toTick(microseconds));
+    }
+    LockSupport.unpark(engine);
+  }
+
+  @Override
+  public void setMasterSyncMode(final SyncMode sync) {
+    if (!SyncMode.INTERNAL_CLOCK.equals(sync)) {
+      throw new IllegalArgumentException("Unsupported sync mode: " + sync);
+    }
+  }
+
+  @Override
+  public SyncMode getMasterSyncMode() {
+    return SyncMode.INTERNAL_CLOCK;
+  }
+
+  @Override
+  public SyncMode[] getMasterSyncModes() {
+    return new SyncMode[] {SyncMode.INTERNAL_CLOCK};
+  }
+
+  @Override
+  public void setSlaveSyncMode(final SyncMode sync) {
+    if (!SyncMode.NO_SYNC.equals(sync)) {
+      throw new IllegalArgumentException("Unsupported sync mode: " + sync);
+    }
+  }
+
+  @Override
+  public SyncMode getSlaveSyncMode() {
+    return SyncMode.NO_SYNC;
+  }
+
+  @Override
+  public SyncMode[] getSlaveSyncModes() {
+    return new SyncMode[] {SyncMode.NO_SYNC};
+  }
+
+  @Override
+  public void setTrackMute(final int track, final boolean mute) {
+    synchronized (lock) {
+      if (track >= 0 && track < trackMutes.length) {
+        trackMutes[track] = mute;
+      }
+    }
+  }
+
+  @Override
+  public boolean getTrackMute(final int track) {
+    synchronized (lock) {
+      return track >= 0 && track < trackMutes.length && trackMutes[track];
+    }
+  }
+
+  @Override
+  public void setTrackSolo(final int track, final boolean solo) {
+    synchronized (lock) {
+      if (track >= 0 && track < trackSolos.length) {
+        trackSolos[track] = solo;
+      }
+    }
+  }
+
+  @Override
+  public boolean getTrackSolo(final int track) {
+    synchronized (lock) {
+      return track >= 0 && track < trackSolos.length && trackSolos[track];
+    }
+  }
+
+  @Override
+  public boolean addMetaEventListener(final MetaEventListener listener) {
+    if (listener != null && !metaEventListeners.contains(listener)) {
+      metaEventListeners.add(listener);
+    }
+    return true;
+  }
+
+  @Override
+  public void removeMetaEventListener(final MetaEventListener listener) {
+    metaEventListeners.remove(listener);
+  }
+
+  @Override
+  public int[] addControllerEventListener(
+      final ControllerEventListener listener, final int[] controllers) {
+    boolean[] listened = controllerListeners.computeIfAbsent(listener,
+        key -> new boolean[128]);
+    synchronized (listened) {
+      if (controllers == null) {
+        Arrays.fill(listened, true);
+      } else {
+        for (int controller : controllers) {
+          if (controller >= 0 && controller < listened.length) {
+            listened[controller] = true;
+          }
+        }
+      }
+      return listenedControllers(listened);
+    }
+  }
+
+  @Override
+  public int[] removeControllerEventListener(
+      final ControllerEventListener listener, final int[] controllers) {
+    boolean[] listened = controllerListeners.get(listener);
+    if (listened == null) {
+      return new int[0];
+    }
+    synchronized (listened) {
+      if (controllers == null) {
+        Arrays.fill(listened, false);
+      } else {
+        for (int controller : controllers) {
+          if (controller >= 0 && controller < listened.length) {
+            listened[controller] = false;
+          }
+        }
+      }
+      int[] remaining = listenedControllers(listened);
+      if (remaining.length == 0) {
+        controllerListeners.remove(listener);
+      }
+      return remaining;
+    }
+  }
+
+  private static int[] listenedControllers(final boolean[] listened) {
+    int count = 0;
+    for (boolean controller : listened) {
+      if (controller) {
+        count++;
+      }
+    }
+    int[] controllers = new int[count];
+    for (int i = 0, c = 0; i < listened.length; i++) {
+      if (listened[i]) {
+        controllers[c++] = i;
+      }
+    }
+    return controllers;
+  }
+
+  @Override
+  public void setLoopStartPoint(final long tick) {
+    synchronized (lock) {
+      if (tick < 0 || tick > getTickLength()
+          || (loopEnd >= 0 && tick > loopEnd)) {
+        throw new IllegalArgumentException("Invalid loop start point: " + tick);
+      }
+      loopStart = tick;
+    }
+  }
+
+  @Override
+  public long getLoopStartPoint() {
+    synchronized (lock) {
+      return loopStart;
+    }
+  }
+
+  @Override
+  public void setLoopEndPoint(final long tick) {
+    synchronized (lock) {
+      if (tick != -1 && (tick < loopStart || tick > getTickLength())) {
+        throw new IllegalArgumentException("Invalid loop end point: " + tick);
+      }
+      loopEnd = tick;
+    }
+  }
+
+  @Override
+  public long getLoopEndPoint() {
+    synchronized (lock) {
+      return loopEnd;
+    }
+  }
+
+  @Override
+  public void setLoopCount(final int count) {
+    if (count < 0 && count != LOOP_CONTINUOUSLY) {
+      throw new IllegalArgumentException("Invalid loop count: " + count);
+    }
+    synchronized (lock) {
+      loopCount = count;
+      remainingLoops = count;
+    }
+  }
+
+  @Override
+  public int getLoopCount() {
+    synchronized (lock) {
+      return loopCount;
+    }
+  }
+
+  // #########################################################################
+  /**
+   * Get the number of nanoseconds per tick, at the current tempo. Must hold the lock.
+   *
+   * @return the duration of a tick, in nanoseconds
+   */
+  private double nanosPerTick() {
+    if (sequence == null) {
+      return 1;
+    }
+    int resolution = Math.max(1, sequence.getResolution());
+    if (sequence.getDivisionType() == Sequence.PPQ) {
+      return tempoMpq * 1000.0 / resolution / tempoFactor;
+    }
+    return 1000000000.0 / (sequence.getDivisionType() * resolution)
+        / tempoFactor;
+  }
+
+  /**
+   * Get the current tick position. Must hold the lock.
+   *
+   * @return the current tick position
+   */
+  private double currentTick() {
+    if (!running) {
+      return anchorTick;
+    }
+    double tick = anchorTick
+        + Math.max(0, System.nanoTime() - anchorNanos) / nanosPerTick();
+    return Math.min(tick, Math.max(anchorTick, getTickLength()));
+  }
+
+  /**
+   * Move the anchor to the current time, before a tempo change. Must hold the lock.
+   */
+  private void reanchor() {
+    anchorTick = currentTick();
+    anchorNanos = System.nanoTime();
+    generation++;
+  }
+
+  /**
+   * Get the time at which a tick is due. Must hold the lock.
+   *
+   * @param tick the tick
+   * @return the due time, as returned by {@link System#nanoTime()}
+   */
+  private long timeOf(final long tick) {
+    return anchorNanos + (long) ((tick - anchorTick) * nanosPerTick());
+  }
+
+  /**
+   * Move to a tick position. Must hold the lock.
+   *
+   * <p>
+   * The schedule is rebuilt from the first event at or after the position, the tempo is set to
+   * the one in effect at the position, and the channel state at the position is sent to the
+   * receivers.
+   * </p>
+   *
+   * @param tick the tick position
+   */
+  private void seek(final long tick) {
+    updateIndexes();
+    for (int t = 0; t < tracks.length; t++) {
+      trackSizes[t] = tracks[t].size();
+      trackTails[t] = tailOf(tracks[t], trackSizes[t]);
+      dispatchedCounts[t] = firstEventAt(tracks[t], tick);
+    }
+    rebuildSchedule();
+    anchorTick = tick;
+    anchorNanos = System.nanoTime();
+    tempoMpq = tempoAt(tick);
+    generation++;
+    if (open && sequence != null) {
+      sendAllNotesOff();
+      chase(tick);
+    }
+  }
+
+  /**
+   * Get the index of the first event of a track at or after a tick.
+   *
+   * @param track the track
+   * @param tick the tick
+   * @return the index of the first event at or after the tick
+   */
+  private static int firstEventAt(final Track track, final long tick) {
+    int low = 0;
+    int high = track.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (track.get(middle).getTick() < tick) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Rebuild the schedule from the events of each track not dispatched yet. Must hold the lock.
+   */
+  private void rebuildSchedule() {
+    int total = 0;
+    for (int t = 0; t < tracks.length; t++) {
+      total += Math.max(0, trackSizes[t] - dispatchedCounts[t]);
+    }
+    if (scheduleTicks.length < total) {
+      scheduleTicks = new long[total];
+      scheduleMessages = new MidiMessage[total];
+      scheduleTracks = new int[total];
+    } else {
+      Arrays.fill(scheduleMessages, null);
+    }
+
+    // Merge the tracks by tick, in track order for a same tick
+    int[] cursors = Arrays.copyOf(dispatchedCounts, tracks.length);
+    MidiEvent[] heads = new MidiEvent[tracks.length];
+    for (int t = 0; t < tracks.length; t++) {
+      heads[t] = cursors[t] < trackSizes[t] ? tracks[t].get(cursors[t]) : null;
+    }
+    int size = 0;
+    while (true) {
+      int first = -1;
+      for (int t = 0; t < tracks.length; t++) {
+        if (heads[t] != null
+            && (first < 0 || heads[t].getTick() < heads[first].getTick())) {
+          first = t;
+        }
+      }
+      if (first < 0) {
+        break;
+      }
+      MidiEvent event = heads[first];
+      cursors[first]++;
+      heads[first] = cursors[first] < trackSizes[first]
+          ? tracks[first].get(cursors[first]) : null;
+      if (isEndOfTrack(event.getMessage())) {
+        // The end of the sequence is signaled once all events are dispatched
+        continue;
+      }
+      scheduleTicks[size] = event.getTick();
+      scheduleMessages[size] = event.getMessage();
+      scheduleTracks[size] = first;
+      size++;
+    }
+    scheduleSize = size;
+    next = 0;
+  }
+
+  /**
+   * Update the schedule if events were added to the tracks. Must hold the lock.
+   *
+   * <p>
+   * Events appended to the end of the tracks, by a progressive reading or the splicing of the next
+   * song, are merged into the remaining schedule: this costs the number of appended events and of
+   * the scheduled events after them, instead of a rebuild of the whole schedule. The schedule is
+   * only rebuilt when events were inserted before the end of a track, or removed.
+   * </p>
+   */
+  private void refreshSchedule() {
+    boolean changed = false;
+    for (int t = 0; t < tracks.length && !changed; t++) {
+      changed = tracks[t].size() != trackSizes[t];
+    }
+    if (!changed) {
+      return;
+    }
+    boolean appended = updateIndexes();
+    for (int t = 0; t < tracks.length; t++) {
+      int size = tracks[t].size();
+      if (appended && size != trackSizes[t]) {
+        // The previous end of track is replaced by the first appended event
+        int start = Math.max(0, trackSizes[t] - 1);
+        dispatchedCounts[t] = Math.min(dispatchedCounts[t], start);
+        mergeIntoSchedule(t, start, size);
+      }
+      trackSizes[t] = size;
+      trackTails[t] = tailOf(tracks[t], size);
+    }
+    if (!appended) {
+      rebuildSchedule();
+    }
+  }
+
+  /**
+   * Merge events of a track, after the scheduled events of this track, into the remaining schedule.
+   * Must hold the lock.
+   *
+   * <p>
+   * The schedule is merged from its end, so that only the scheduled events after the first merged
+   * one are moved.
+   * </p>
+   *
+   * @param track the track index
+   * @param from the index of the first event to merge
+   * @param to the index after the last event to merge
+   */
+  private void mergeIntoSchedule(final int track, final int from,
+      final int to) {
+    int count = 0;
+    for (int e = from; e < to; e++) {
+      if (!isEndOfTrack(tracks[track].get(e).getMessage())) {
+        count++;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    if (scheduleTicks.length < scheduleSize + count) {
+      // Grow the schedule, dropping the dispatched events
+      int remaining = scheduleSize - next;
+      int capacity = Math.max(remaining + count, 2 * remaining);
+      long[] ticks = new long[capacity];
+      MidiMessage[] messages = new MidiMessage[capacity];
+      int[] trackIndexes = new int[capacity];
+      System.arraycopy(scheduleTicks, next, ticks, 0, remaining);
+      System.arraycopy(scheduleMessages, next, messages, 0, remaining);
+      System.arraycopy(scheduleTracks, next, trackIndexes, 0, remaining);
+      scheduleTicks = ticks;
+      scheduleMessages = messages;
+      scheduleTracks = trackIndexes;
+      scheduleSize = remaining;
+      next = 0;
+    }
+
+    // By tick, in track order for a same tick, after the scheduled events of the track
+    int scheduled = scheduleSize - 1;
+    int merged = scheduleSize + count - 1;
+    int e = to - 1;
+    while (e >= from) {
+      MidiEvent event = tracks[track].get(e);
+      if (isEndOfTrack(event.getMessage())) {
+        e--;
+        continue;
+      }
+      long tick = event.getTick();
+      if (scheduled >= next && (scheduleTicks[scheduled] > tick
+          || scheduleTicks[scheduled] == tick
+              && scheduleTracks[scheduled] > track)) {
+        scheduleTicks[merged] = scheduleTicks[scheduled];
+        scheduleMessages[merged] = scheduleMessages[scheduled];
+        scheduleTracks[merged] = scheduleTracks[scheduled];
+        scheduled--;
+      } else {
+        scheduleTicks[merged] = tick;
+        scheduleMessages[merged] = event.getMessage();
+        scheduleTracks[merged] = track;
+        e--;
+      }
+      merged--;
+    }
+    scheduleSize += count;
+  }
+
+  /**
+   * Keep the tempo map and the chase index up to date with the events added to the tracks since
+   * the schedule was built. Must hold the lock.
+   *
+   * <p>
+   * When events were only appended to the end of the tracks, the tempo map is kept unless they
+   * change the tempo, and the chase index keeps its snapshots before the first of them. Otherwise,
+   * both are dropped, to be built again when needed.
+   * </p>
+   *
+   * @return {@code true} if events were only appended to the end of the tracks
+   */
+  private boolean updateIndexes() {
+    boolean appended = true;
+    for (int t = 0; t < tracks.length && appended; t++) {
+      int size = tracks[t].size();
+      appended = size == trackSizes[t] || size > trackSizes[t]
+          && tailOf(tracks[t], trackSizes[t]) == trackTails[t];
+    }
+    if (!appended) {
+      tempoMap = null;
+      chaseIndex = null;
+      return false;
+    }
+    if (tempoMap == null && chaseIndex == null) {
+      return true;
+    }
+
+    long firstTick = Long.MAX_VALUE;
+    boolean tempoChanged = false;
+    for (int t = 0; t < tracks.length; t++) {
+      for (int e = Math.max(0, trackSizes[t] - 1), size = tracks[t].size();
+          e < size; e++) {
+        MidiEvent event = tracks[t].get(e);
+        if (!isEndOfTrack(event.getMessage())) {
+          firstTick = Math.min(firstTick, event.getTick());
+          tempoChanged |= TempoMap.isTempo(event.getMessage());
+        }
+      }
+    }
+    if (tempoChanged) {
+      tempoMap = null;
+    }
+    if (chaseIndex != null && firstTick != Long.MAX_VALUE) {
+      chaseIndex = chaseIndex.truncate(firstTick);
+    }
+    return true;
+  }
+
+  /**
+   * Get the last event of a track before its end of track.
+   *
+   * @param track the track
+   * @param size the number of events of the track
+   * @return the event before the last one, {@code null} if none
+   */
+  private static MidiEvent tailOf(final Track track, final int size) {
+    return size >= 2 ? track.get(size - 2) : null;
+  }
+
+  private static boolean isEndOfTrack(final MidiMessage message) {
+    return message instanceof MetaMessage
+        && ((MetaMessage) message).getType() == END_OF_TRACK_META_TYPE;
+  }
+
+  // #########################################################################
+  /**
+   * Get the tempo map of the sequence, built when first needed. Must hold the lock.
+   *
+   * @return the tempo map of the sequence
+   */
+  private TempoMap tempoMap() {
+    if (tempoMap == null) {
+      tempoMap = TempoMap.of(sequence);
+    }
+    return tempoMap;
+  }
+
+  /**
+   * Get the tempo in effect at a tick. Must hold the lock.
+   *
+   * @param tick the tick
+   * @return the tempo, in microseconds per quarter note
+   */
+  private float tempoAt(final long tick) {
+    return sequence == null ? DEFAULT_TEMPO_MPQ : tempoMap().getTempoAt(tick);
+  }
+
+  /**
+   * Convert a tick position to microseconds, ignoring the tempo factor. Must hold the lock.
+   *
+   * @param tick the tick position
+   * @return the position in microseconds
+   */
+  private long toMicroseconds(final long tick) {
+    return sequence == null ? 0 : tempoMap().toMicroseconds(tick);
+  }
+
+  /**
+   * Convert a position in microseconds to ticks, ignoring the tempo factor. Must hold the lock.
+   *
+   * @param microseconds the position in microseconds
+   * @return the tick position
+   */
+  private long toTick(final long microseconds) {
+    return sequence == null ? 0 : tempoMap().toTick(microseconds);
+  }
+
+  // #########################################################################
+  /**
+   * Send the channel state set by the events before a tick. Must hold the lock.
+   *
+   * <p>
+   * The state is restored from the nearest snapshot of the chase state index, built when first
+   * needed, so that seeking does not replay the whole sequence.
+   * </p>
+   *
+   * @param tick the tick position
+   */
+  private void chase(final long tick) {
+    if (tick <= 0) {
+      return;
+    }
+    if (chaseIndex == null) {
+      chaseIndex = ChaseStateIndex.of(sequence, tempoMap(),
+          ChaseStateIndex.DEFAULT_INTERVAL);
+    }
+    for (ShortMessage message : chaseIndex.chase(sequence, tick)) {
+      send(message);
+    }
+  }
+
+  /**
+   * Release the sustain pedal and turn off all notes of all channels.
+   */
+  private void sendAllNotesOff() {
+    try {
+      for (int channel = 0; channel < CHANNELS; channel++) {
+        send(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, SUSTAIN,
+            0));
+        send(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel,
+            ALL_NOTES_OFF, 0));
+      }
+    } catch (InvalidMidiDataException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to turn notes off", ex);
+    }
+  }
+
+  /**
+   * Send a message to the receivers of the transmitters.
+   *
+   * @param message the message to send
+   */
+  private void send(final MidiMessage message) {
+    for (SequencerTransmitter transmitter : transmitters) {
+      Receiver receiver = transmitter.getReceiver();
+      if (receiver != null) {
+        receiver.send(message, -1);
+      }
+    }
+  }
+
+  /**
+   * Dispatch an event of the schedule.
+   *
+   * @param message the message of the event
+   * @param audible whether the track of the event is neither muted nor silenced by a solo
+   */
+  private void dispatch(final MidiMessage message, final boolean audible) {
+    if (message instanceof MetaMessage) {
+      fireMetaEvent((MetaMessage) message);
+      return;
+    }
+    if (!audible) {
+      return;
+    }
+    send(message);
+    if (message instanceof ShortMessage && !controllerListeners.isEmpty()) {
+      ShortMessage shortMessage = (ShortMessage) message;
+      if (shortMessage.getCommand() == ShortMessage.CONTROL_CHANGE) {
+        fireControllerEvent(shortMessage);
+      }
+    }
+  }
+
+  private void fireMetaEvent(final MetaMessage message) {
+    ExecutorService executor = listenerExecutor;
+    if (metaEventListeners.isEmpty() || executor == null) {
+      return;
+    }
+    executor.execute(() -> {
+      for (MetaEventListener listener : metaEventListeners) {
+        listener.meta(message);
+      }
+    });
+  }
+
+  private void fireControllerEvent(final ShortMessage message) {
+    ExecutorService executor = listenerExecutor;
+    if (executor == null) {
+      return;
+    }
+    int controller = message.getData1();
+    executor.execute(() -> {
+      for (Map.Entry<ControllerEventListener, boolean[]> entry
+          : controllerListeners.entrySet()) {
+        if (entry.getValue()[controller]) {
+          entry.getKey().controlChange(message);
+        }
+      }
+    });
+  }
+
+  // #########################################################################
+  /**
+   * Wait until an event is due.
+   *
+   * @param due the time at which the event is due
+   * @param expectedGeneration the generation of the schedule and timing of the event
+   * @return {@code true} if the event is due, {@code false} if the schedule or timing changed
+   */
+  private boolean waitUntil(final long due, final int expectedGeneration) {
+    while (true) {
+      if (generation != expectedGeneration || !open) {
+        return false;
+      }
+      long remaining = due - System.nanoTime();
+      if (remaining <= 0) {
+        return true;
+      }
+      if (remaining > spinNanos) {
+        LockSupport.parkNanos(this, remaining - spinNanos);
+      }
+    }
+  }
+
+  /**
+   * Run the engine: dispatch the events of the schedule when they are due.
+   */
+  private void runEngine() {
+    while (open) {
+      long due;
+      int expectedGeneration;
+      synchronized (lock) {
+        if (!running) {
+          try {
+            lock.wait();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          continue;
+        }
+        refreshSchedule();
+        expectedGeneration = generation;
+        due = timeOf(nextBoundary());
+      }
+
+      if (!waitUntil(due, expectedGeneration)) {
+        continue;
+      }
+
+      MidiMessage message = null;
+      boolean audible = false;
+      boolean ended = false;
+      synchronized (lock) {
+        if (generation != expectedGeneration) {
+          continue;
+        }
+        long boundary = nextBoundary();
+        if (next < scheduleSize && scheduleTicks[next] == boundary) {
+          int track = scheduleTracks[next];
+          message = scheduleMessages[next];
+          audible = isAudible(track);
+          dispatchedCounts[track]++;
+          next++;
+          if (TempoMap.isTempo(message) && TempoMap.getTempo(message) > 0) {
+            // Anchor on the due time so that the tempo change does not drift
+            anchorTick = boundary;
+            anchorNanos = due;
+            tempoMpq = TempoMap.getTempo(message);
+            generation++;
+          }
+        } else if (remainingLoops != 0) {
+          if (remainingLoops > 0) {
+            remainingLoops--;
+          }
+          seek(loopStart);
+          anchorNanos = due;
+        } else {
+          // End of the sequence
+          anchorTick = boundary;
+          running = false;
+          generation++;
+          ended = true;
+        }
+      }
+
+      if (message != null) {
+        dispatchJitter.recordSince(due);
+        dispatch(message, audible);
+      } else if (ended) {
+        sendAllNotesOff();
+        fireEndOfSequence();
+      }
+    }
+  }
+
+  /**
+   * Get the tick of the next event or loop point. Must hold the lock.
+   *
+   * @return the tick of the next event to dispatch, or of the end of the loop or sequence
+   */
+  private long nextBoundary() {
+    long end = getTickLength();
+    if (remainingLoops != 0 && loopEnd >= 0) {
+      end = loopEnd;
+    }
+    if (next < scheduleSize && scheduleTicks[next] <= end) {
+      return scheduleTicks[next];
+    }
+    return Math.max(end, (long) anchorTick);
+  }
+
+  /**
+   * Is a track neither muted nor silenced by a solo? Must hold the lock.
+   *
+   * @param track the track index
+   * @return {@code true} if the events of the track must be sent
+   */
+  private boolean isAudible(final int track) {
+    for (boolean solo : trackSolos) {
+      if (solo) {
+        return trackSolos[track];
+      }
+    }
+    return !trackMutes[track];
+  }
+
+  private void fireEndOfSequence() {
+    try {
+      fireMetaEvent(
+          new MetaMessage(END_OF_TRACK_META_TYPE, new byte[0], 0));
+    } catch (InvalidMidiDataException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to signal end of sequence", ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [open=" + open + ", running="
+        + running + ", " + dispatchJitter + "]";
+  }
+
+}
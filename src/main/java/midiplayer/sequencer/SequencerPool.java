@@ -0,0 +1,447 @@
+package midiplayer.sequencer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+
+/**
+ * Keeps released MIDI sequencers open, to reuse them.
+ *
+ * <p>
+ * Opening a sequencer and the synthesizer it is connected to is one of the slowest operations of
+ * the player. Instead of closing a sequencer when playback stops, it is released to the pool, which
+ * keeps it open for an idle timeout: playing again acquires the warm sequencer instead of opening
+ * a new one.
+ * </p>
+ *
+ * <p>
+ * Idle sequencers are closed by a daemon thread once their idle timeout expires, or when the pool
+ * is closed.
+ * </p>
+ *
+ * <p>
+ * The pool keeps track of the sequencers it lent: releasing a sequencer which is not checked out,
+ * such as a sequencer already released, is ignored.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class SequencerPool implements AutoCloseable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(SequencerPool.class.getName());
+
+  /**
+   * Default time an idle sequencer is kept open, in seconds.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT = 60;
+
+  /**
+   * Default maximum number of idle sequencers kept open.
+   */
+  public static final int DEFAULT_MAX_IDLE = 1;
+
+  /**
+   * Idle time after which the eviction thread is stopped, in seconds.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 5;
+
+  // #########################################################################
+  /**
+   * Creates open sequencers for a pool.
+   */
+  @FunctionalInterface
+  public interface SequencerFactory {
+
+    /**
+     * Create and open a sequencer.
+     *
+     * @return a new open sequencer
+     * @throws MidiUnavailableException if the sequencer is not available
+     */
+    Sequencer create() throws MidiUnavailableException;
+
+  }
+
+  /**
+   * A sequencer waiting to be reused.
+   */
+  private static final class IdleSequencer {
+
+    private final Sequencer sequencer;
+
+    /**
+     * Time at which the sequencer was released, as returned by {@link System#nanoTime()}.
+     */
+    private final long releaseTime;
+
+    IdleSequencer(final Sequencer sequencer, final long releaseTime) {
+      this.sequencer = sequencer;
+      this.releaseTime = releaseTime;
+    }
+
+  }
+
+  // #########################################################################
+  /**
+   * The factory of new sequencers.
+   */
+  private final SequencerFactory factory;
+
+  /**
+   * Idle sequencers, most recently released first. Guarded by {@code this}.
+   */
+  private final Deque<IdleSequencer> idleSequencers = new ArrayDeque<>();
+
+  /**
+   * Sequencers acquired and not released yet. Guarded by {@code this}.
+   */
+  private final Set<Sequencer> checkedOutSequencers =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * The executor closing expired idle sequencers.
+   */
+  private final ScheduledThreadPoolExecutor evictor;
+
+  private final AtomicLong createdCount = new AtomicLong();
+
+  private final AtomicLong reusedCount = new AtomicLong();
+
+  private final AtomicLong evictedCount = new AtomicLong();
+
+  /**
+   * Time an idle sequencer is kept open, in nanoseconds.
+   */
+  private volatile long idleTimeout;
+
+  /**
+   * Maximum number of idle sequencers kept open.
+   */
+  private volatile int maxIdle;
+
+  /**
+   * Is the pool closed? Guarded by {@code this}.
+   */
+  private boolean closed = false;
+
+  /**
+   * Constructs a sequencer pool with the default idle timeout and maximum number of idle
+   * sequencers.
+   *
+   * @param factory the factory of new sequencers
+   */
+  public SequencerPool(final SequencerFactory factory) {
+    this(factory, DEFAULT_IDLE_TIMEOUT, TimeUnit.SECONDS, DEFAULT_MAX_IDLE);
+  }
+
+  /**
+   * Constructs a sequencer pool.
+   *
+   * @param factory the factory of new sequencers
+   * @param idleTimeout the time an idle sequencer is kept open, {@code 0} to close sequencers as
+   *        soon as they are released
+   * @param unit the unit of the idle timeout
+   * @param maxIdle the maximum number of idle sequencers kept open
+   * @throws IllegalArgumentException if {@code factory} is {@code null}, or {@code idleTimeout}
+   *         or {@code maxIdle} is negative
+   */
+  public SequencerPool(final SequencerFactory factory, final long idleTimeout,
+      final TimeUnit unit, final int maxIdle) {
+    if (factory == null) {
+      throw new IllegalArgumentException("Sequencer factory cannot be null");
+    }
+    this.factory = factory;
+    setIdleTimeout(idleTimeout, unit);
+    setMaxIdle(maxIdle);
+    this.evictor = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "SequencerPoolEvictor");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    this.evictor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    this.evictor.allowCoreThreadTimeOut(true);
+    this.evictor.setRemoveOnCancelPolicy(true);
+  }
+
+  // #########################################################################
+  /**
+   * Acquire an open sequencer.
+   *
+   * <p>
+   * The most recently released idle sequencer is reused if any, otherwise a new one is created by
+   * the factory.
+   * </p>
+   *
+   * @return an open sequencer, without sequence
+   * @throws MidiUnavailableException if no sequencer is available
+   */
+  public Sequencer acquire() throws MidiUnavailableException {
+    List<Sequencer> closedSequencers = new ArrayList<>();
+    Sequencer sequencer = null;
+    synchronized (this) {
+      IdleSequencer idle;
+      while (sequencer == null && (idle = idleSequencers.pollFirst()) != null) {
+        if (idle.sequencer.isOpen()) {
+          sequencer = idle.sequencer;
+        } else {
+          closedSequencers.add(idle.sequencer);
+        }
+      }
+    }
+    closeAll(closedSequencers);
+    if (sequencer != null) {
+      reusedCount.incrementAndGet();
+    } else {
+      sequencer = factory.create();
+      createdCount.incrementAndGet();
+    }
+    synchronized (this) {
+      checkedOutSequencers.add(sequencer);
+    }
+    return sequencer;
+  }
+
+  /**
+   * Release a sequencer which is no longer used.
+   *
+   * <p>
+   * The sequencer is stopped and its sequence unset. It is kept open for the idle timeout, unless
+   * the pool is closed or already holds its maximum number of idle sequencers.
+   * </p>
+   *
+   * <p>
+   * A sequencer which was not acquired from the pool, or was already released, is left untouched.
+   * </p>
+   *
+   * @param sequencer the sequencer to release
+   */
+  public void release(final Sequencer sequencer) {
+    synchronized (this) {
+      if (sequencer == null || !checkedOutSequencers.remove(sequencer)) {
+        // Not checked out
+        return;
+      }
+    }
+    if (!sequencer.isOpen()) {
+      return;
+    }
+    try {
+      if (sequencer.isRunning()) {
+        sequencer.stop();
+      }
+      sequencer.setSequence((Sequence) null);
+    } catch (InvalidMidiDataException | RuntimeException ex) {
+      LOGGER.log(Level.WARNING, "Impossible to reset released sequencer", ex);
+      sequencer.close();
+      return;
+    }
+
+    long timeout = this.idleTimeout;
+    boolean kept = false;
+    synchronized (this) {
+      if (!closed && timeout > 0 && idleSequencers.size() < maxIdle) {
+        idleSequencers
+            .addFirst(new IdleSequencer(sequencer, System.nanoTime()));
+        kept = true;
+      }
+    }
+    if (kept) {
+      try {
+        evictor.schedule(this::evictExpired, timeout, TimeUnit.NANOSECONDS);
+      } catch (RejectedExecutionException ex) {
+        // Closed meanwhile
+        evictAll();
+      }
+    } else {
+      sequencer.close();
+    }
+  }
+
+  /**
+   * Close the idle sequencers whose idle timeout expired.
+   */
+  private void evictExpired() {
+    List<Sequencer> expired = new ArrayList<>();
+    long now = System.nanoTime();
+    long timeout = this.idleTimeout;
+    synchronized (this) {
+      Iterator<IdleSequencer> it = idleSequencers.descendingIterator();
+      while (it.hasNext()) {
+        IdleSequencer idle = it.next();
+        if (now - idle.releaseTime < timeout) {
+          // Younger sequencers were released later
+          break;
+        }
+        expired.add(idle.sequencer);
+        it.remove();
+      }
+    }
+    evictedCount.addAndGet(expired.size());
+    closeAll(expired);
+  }
+
+  /**
+   * Close all idle sequencers.
+   */
+  public void evictAll() {
+    List<Sequencer> evicted = new ArrayList<>();
+    synchronized (this) {
+      for (IdleSequencer idle : idleSequencers) {
+        evicted.add(idle.sequencer);
+      }
+      idleSequencers.clear();
+    }
+    evictedCount.addAndGet(evicted.size());
+    closeAll(evicted);
+  }
+
+  private static void closeAll(final List<Sequencer> sequencers) {
+    for (Sequencer sequencer : sequencers) {
+      try {
+        sequencer.close();
+      } catch (RuntimeException ex) {
+        LOGGER.log(Level.WARNING, "Impossible to close sequencer", ex);
+      }
+    }
+  }
+
+  /**
+   * Close all idle sequencers, and the sequencers still checked out.
+   *
+   * <p>
+   * Once closed, the pool still creates sequencers, but closes them as soon as they are released.
+   * </p>
+   */
+  @Override
+  public void close() {
+    List<Sequencer> checkedOut;
+    synchronized (this) {
+      closed = true;
+      checkedOut = new ArrayList<>(checkedOutSequencers);
+      checkedOutSequencers.clear();
+    }
+    closeAll(checkedOut);
+    evictAll();
+    evictor.shutdownNow();
+  }
+
+  // #########################################################################
+  /**
+   * Get the time an idle sequencer is kept open.
+   *
+   * @param unit the unit of the returned value
+   * @return the idle timeout
+   */
+  public final long getIdleTimeout(final TimeUnit unit) {
+    return unit.convert(idleTimeout, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Set the time an idle sequencer is kept open.
+   *
+   * <p>
+   * The new timeout applies to the sequencers released from now on.
+   * </p>
+   *
+   * @param idleTimeout the idle timeout, {@code 0} to close sequencers as soon as they are
+   *        released
+   * @param unit the unit of the idle timeout
+   * @throws IllegalArgumentException if {@code idleTimeout} is negative
+   */
+  public final void setIdleTimeout(final long idleTimeout,
+      final TimeUnit unit) {
+    if (idleTimeout < 0) {
+      throw new IllegalArgumentException(
+          "Idle timeout cannot be negative: " + idleTimeout);
+    }
+    this.idleTimeout = unit.toNanos(idleTimeout);
+  }
+
+  /**
+   * Get the maximum number of idle sequencers kept open.
+   *
+   * @return the maximum number of idle sequencers
+   */
+  public final int getMaxIdle() {
+    return maxIdle;
+  }
+
+  /**
+   * Set the maximum number of idle sequencers kept open.
+   *
+   * @param maxIdle the maximum number of idle sequencers
+   * @throws IllegalArgumentException if {@code maxIdle} is negative
+   */
+  public final void setMaxIdle(final int maxIdle) {
+    if (maxIdle < 0) {
+      throw new IllegalArgumentException(
+          "Maximum number of idle sequencers cannot be negative: " + maxIdle);
+    }
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Get the number of idle sequencers currently kept open.
+   *
+   * @return the number of idle sequencers
+   */
+  public final synchronized int getIdleCount() {
+    return idleSequencers.size();
+  }
+
+  /**
+   * Get the number of sequencers created by the factory.
+   *
+   * @return the number of sequencers created
+   */
+  public final long getCreatedCount() {
+    return createdCount.get();
+  }
+
+  /**
+   * Get the number of times an idle sequencer was reused.
+   *
+   * @return the number of sequencers reused
+   */
+  public final long getReusedCount() {
+    return reusedCount.get();
+  }
+
+  /**
+   * Get the number of idle sequencers closed by the pool.
+   *
+   * @return the number of sequencers evicted
+   */
+  public final long getEvictedCount() {
+    return evictedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [idle=" + getIdleCount()
+        + ", created=" + getCreatedCount() + ", reused=" + getReusedCount()
+        + ", evicted=" + getEvictedCount() + "]";
+  }
+
+}
@@ -0,0 +1,129 @@
+package midiplayer.zone;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+
+import midiplayer.MidiPlayer;
+
+/**
+ * A MIDI player playing on the channels of a zone of a {@link ZoneEngine}.
+ *
+ * <p>
+ * A zone has its own playlist, position and loop flags, like any MIDI player, but its sequencer
+ * is connected to its block of channels of the shared synthesizer instead of the default MIDI
+ * device. The sequence cache, the prefetch threads, the import pool and the sequencer pool are
+ * those of the engine, shared by all zones.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class Zone extends MidiPlayer {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = Logger.getLogger(Zone.class.getName());
+
+  private final ZoneEngine engine;
+
+  private final int index;
+
+  private final String name;
+
+  private final ZoneReceiver receiver;
+
+  /**
+   * Constructs a zone. Zones are created by their engine.
+   *
+   * @param engine the zone engine
+   * @param index the index of the zone
+   * @param name the name of the zone
+   * @param receiver the receiver playing on the channels of the zone
+   */
+  Zone(final ZoneEngine engine, final int index, final String name,
+      final ZoneReceiver receiver) {
+    super(engine.getSequenceCache(), engine.getPrefetchExecutor(),
+        engine.getImportPool(), engine.getSequencerPool());
+    this.engine = engine;
+    this.index = index;
+    this.name = name;
+    this.receiver = receiver;
+  }
+
+  @Override
+  protected void connectSequencer(final Sequencer acquired)
+      throws MidiUnavailableException {
+    super.connectSequencer(acquired);
+    connectReceiver(acquired, receiver);
+  }
+
+  /**
+   * Get the engine of the zone.
+   *
+   * @return the zone engine
+   */
+  public final ZoneEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Get the index of the zone in its engine.
+   *
+   * @return the index of the zone
+   */
+  public final int getIndex() {
+    return index;
+  }
+
+  /**
+   * Get the name of the zone.
+   *
+   * @return the name of the zone
+   */
+  public final String getName() {
+    return name;
+  }
+
+  /**
+   * Get the number of notes the zone currently plays.
+   *
+   * @return the number of notes playing
+   */
+  public final int getActiveNoteCount() {
+    return receiver.getActiveCount();
+  }
+
+  /**
+   * Get the number of notes released early to keep the zone within its voice budget.
+   *
+   * @return the number of notes stolen
+   */
+  public final long getStolenNoteCount() {
+    return receiver.getStolenCount();
+  }
+
+  /**
+   * Close the zone: stop playing, silence its channels and free its slot in the engine.
+   */
+  @Override
+  public void close() {
+    try {
+      super.close();
+    } catch (Exception ex) {
+      LOGGER.log(Level.WARNING, "Impossible to close zone " + this, ex);
+    } finally {
+      receiver.allSoundOff();
+      engine.release(this);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [index=" + index + ", name=" + name
+        + "]";
+  }
+
+}
@@ -0,0 +1,421 @@
+package midiplayer.zone;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.SourceDataLine;
+
+import midiplayer.MidiPlayer;
+import midiplayer.sequence.SequenceCache;
+import midiplayer.sequence.SequencePrefetcher;
+import midiplayer.sequencer.PrecisionSequencer;
+import midiplayer.sequencer.SequencerPool;
+
+/**
+ * Plays several independent zones in a single process, on a shared synthesizer.
+ *
+ * <p>
+ * Each {@link Zone} is a MIDI player with its own playlist, position and loop flags, and its own
+ * sequencer. All zones play on the same synthesizer, so that a single soundbank is loaded and a
+ * single voice pool is used: each zone owns a block of {@value #CHANNELS_PER_ZONE} channels of the
+ * synthesizer, and may play at most its share of the voices at once.
+ * </p>
+ *
+ * <p>
+ * The zones also share a single sequence cache, a single pool of prefetch threads, the pool
+ * checking imported files and a single pool of open sequencers, so that the memory and the
+ * threads of the engine do not grow with each zone. With the
+ * {@value MidiPlayer#PRECISION_ENGINE} engine, sequencers do not spin before events, so that
+ * zones share the processors fairly.
+ * </p>
+ *
+ * <p>
+ * A synthesizer with more than 16 channels can only be opened through
+ * {@code com.sun.media.sound.AudioSynthesizer}, which is not part of the public API: on Java 9 and
+ * later, the {@code java.desktop/com.sun.media.sound} package must be exported to the application.
+ * Otherwise, the engine has a single zone.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class ZoneEngine implements AutoCloseable {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER =
+      Logger.getLogger(ZoneEngine.class.getName());
+
+  /**
+   * Number of MIDI channels of each zone.
+   */
+  public static final int CHANNELS_PER_ZONE = 16;
+
+  /**
+   * Default number of voices each zone may play at once.
+   */
+  public static final int DEFAULT_VOICES_PER_ZONE = 32;
+
+  /**
+   * Name of the software synthesizer interface accepting open properties.
+   */
+  private static final String AUDIO_SYNTHESIZER_CLASS =
+      "com.sun.media.sound.AudioSynthesizer";
+
+  /**
+   * Software synthesizer property for the number of MIDI channels.
+   */
+  private static final String MIDI_CHANNELS_PROPERTY = "midi channels";
+
+  /**
+   * Software synthesizer property for the maximum number of voices.
+   */
+  private static final String MAX_POLYPHONY_PROPERTY = "max polyphony";
+
+  /**
+   * Maximum number of prefetch tasks of each zone waiting for a thread.
+   */
+  private static final int PREFETCH_QUEUE_PER_ZONE = 8;
+
+  /**
+   * The shared synthesizer.
+   */
+  private final Synthesizer synthesizer;
+
+  /**
+   * Is the synthesizer closed with the engine?
+   */
+  private final boolean ownsSynthesizer;
+
+  /**
+   * The zones, by index, {@code null} for free slots. Guarded by {@code this}.
+   */
+  private final Zone[] zones;
+
+  /**
+   * Number of voices each zone may play at once.
+   */
+  private volatile int voicesPerZone;
+
+  /**
+   * The cache of parsed MIDI sequences shared by the zones.
+   */
+  private final SequenceCache sequenceCache = new SequenceCache();
+
+  /**
+   * The executor loading the upcoming songs of the zones.
+   */
+  private final ThreadPoolExecutor prefetchExecutor;
+
+  /**
+   * The pool keeping the sequencers released by the zones open.
+   */
+  private final SequencerPool sequencerPool;
+
+  /**
+   * Is the engine closed? Guarded by {@code this}.
+   */
+  private boolean closed = false;
+
+  // #########################################################################
+  /**
+   * Constructs a zone engine on an open synthesizer.
+   *
+   * <p>
+   * The number of zones is the number of channels of the synthesizer divided by
+   * {@value #CHANNELS_PER_ZONE}, and the voices of the synthesizer are shared evenly between them.
+   * </p>
+   *
+   * @param synthesizer the open synthesizer
+   * @param ownsSynthesizer whether the synthesizer is closed with the engine
+   * @throws IllegalArgumentException if {@code synthesizer} is {@code null} or not open
+   */
+  public ZoneEngine(final Synthesizer synthesizer,
+      final boolean ownsSynthesizer) {
+    if (synthesizer == null || !synthesizer.isOpen()) {
+      throw new IllegalArgumentException("Synthesizer must be open");
+    }
+    this.synthesizer = synthesizer;
+    this.ownsSynthesizer = ownsSynthesizer;
+    int capacity =
+        Math.max(1, synthesizer.getChannels().length / CHANNELS_PER_ZONE);
+    this.zones = new Zone[capacity];
+    this.voicesPerZone = Math.max(1, synthesizer.getMaxPolyphony() / capacity);
+    this.prefetchExecutor = SequencePrefetcher.newExecutor(
+        Math.min(capacity, Runtime.getRuntime().availableProcessors()),
+        capacity * PREFETCH_QUEUE_PER_ZONE);
+    // A quarter of the zones may stop and play again without opening a sequencer
+    this.sequencerPool = new SequencerPool(ZoneEngine::openSequencer,
+        SequencerPool.DEFAULT_IDLE_TIMEOUT, TimeUnit.SECONDS,
+        Math.max(SequencerPool.DEFAULT_MAX_IDLE, capacity / 4));
+  }
+
+  /**
+   * Create and open a sequencer of the engine selected by the
+   * {@value MidiPlayer#SEQUENCER_ENGINE_PROPERTY} system property, connected to no device.
+   *
+   * @return a new open sequencer
+   * @throws MidiUnavailableException if the sequencer is not available
+   */
+  private static Sequencer openSequencer() throws MidiUnavailableException {
+    String engine = System.getProperty(MidiPlayer.SEQUENCER_ENGINE_PROPERTY,
+        MidiPlayer.DEFAULT_ENGINE);
+    Sequencer created = MidiPlayer.PRECISION_ENGINE.equalsIgnoreCase(engine)
+        ? new PrecisionSequencer(false, 0) : MidiSystem.getSequencer(false);
+    try {
+      created.open();
+    } catch (MidiUnavailableException ex) {
+      created.close();
+      throw ex;
+    }
+    return created;
+  }
+
+  /**
+   * Open the default synthesizer with the channels and voices of a number of zones, and construct
+   * a zone engine on it.
+   *
+   * @param capacity the maximum number of zones
+   * @return a zone engine, with a single zone if the synthesizer could not be opened with more
+   *         channels
+   * @throws MidiUnavailableException if the synthesizer is not available
+   * @throws IllegalArgumentException if {@code capacity} is not positive
+   */
+  public static ZoneEngine open(final int capacity)
+      throws MidiUnavailableException {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+          "Number of zones must be positive: " + capacity);
+    }
+    Synthesizer synthesizer = MidiSystem.getSynthesizer();
+    Map<String, Object> info = getSynthesizerInfo(capacity);
+    Method open = getOpenMethod(synthesizer);
+    boolean opened = false;
+    if (open != null && capacity > 1) {
+      try {
+        open.invoke(synthesizer, null, info);
+        opened = true;
+      } catch (IllegalAccessException | RuntimeException ex) {
+        LOGGER.log(Level.WARNING,
+            "Synthesizer cannot open zones, run with --add-exports "
+                + "java.desktop/com.sun.media.sound=ALL-UNNAMED",
+            ex);
+      } catch (InvocationTargetException ex) {
+        if (ex.getCause() instanceof MidiUnavailableException) {
+          throw (MidiUnavailableException) ex.getCause();
+        }
+        MidiUnavailableException unavailable =
+            new MidiUnavailableException(String.valueOf(ex.getCause()));
+        unavailable.initCause(ex.getCause());
+        throw unavailable;
+      }
+    }
+    if (!opened) {
+      synthesizer.open();
+    }
+    return new ZoneEngine(synthesizer, true);
+  }
+
+  /**
+   * Get the software synthesizer properties for a number of zones.
+   *
+   * <p>
+   * Useful to open a software synthesizer in another mode, such as the pull mode of
+   * {@code AudioSynthesizer#openStream}, before constructing an engine on it.
+   * </p>
+   *
+   * @param capacity the number of zones
+   * @return the software synthesizer properties
+   */
+  public static Map<String, Object> getSynthesizerInfo(final int capacity) {
+    Map<String, Object> info = new HashMap<>();
+    info.put(MIDI_CHANNELS_PROPERTY, capacity * CHANNELS_PER_ZONE);
+    info.put(MAX_POLYPHONY_PROPERTY, capacity * DEFAULT_VOICES_PER_ZONE);
+    return info;
+  }
+
+  private static Method getOpenMethod(final Synthesizer synthesizer) {
+    for (Class<?> type : synthesizer.getClass().getInterfaces()) {
+      if (AUDIO_SYNTHESIZER_CLASS.equals(type.getName())) {
+        try {
+          return type.getMethod("open", SourceDataLine.class, Map.class);
+        } catch (NoSuchMethodException ex) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  // #########################################################################
+  /**
+   * Create a zone, in the first free slot.
+   *
+   * @param name the name of the zone
+   * @return the new zone
+   * @throws IllegalStateException if the engine is closed or all zones are in use
+   */
+  public synchronized Zone createZone(final String name) {
+    if (closed) {
+      throw new IllegalStateException("Zone engine is closed");
+    }
+    for (int index = 0; index < zones.length; index++) {
+      if (zones[index] == null) {
+        MidiChannel[] channels = Arrays.copyOfRange(synthesizer.getChannels(),
+            index * CHANNELS_PER_ZONE, (index + 1) * CHANNELS_PER_ZONE);
+        Zone zone = new Zone(this, index, name,
+            new ZoneReceiver(this, channels));
+        zones[index] = zone;
+        return zone;
+      }
+    }
+    throw new IllegalStateException(
+        "All " + zones.length + " zones are in use");
+  }
+
+  /**
+   * Free the slot of a closed zone.
+   *
+   * @param zone the closed zone
+   */
+  synchronized void release(final Zone zone) {
+    if (zones[zone.getIndex()] == zone) {
+      zones[zone.getIndex()] = null;
+    }
+  }
+
+  /**
+   * Get the zones in use.
+   *
+   * @return an unmodifiable copy of the zones in use, by index
+   */
+  public synchronized List<Zone> getZones() {
+    List<Zone> active = new ArrayList<>(zones.length);
+    for (Zone zone : zones) {
+      if (zone != null) {
+        active.add(zone);
+      }
+    }
+    return Collections.unmodifiableList(active);
+  }
+
+  /**
+   * Get the maximum number of zones.
+   *
+   * @return the maximum number of zones
+   */
+  public final int getCapacity() {
+    return zones.length;
+  }
+
+  /**
+   * Get the shared synthesizer.
+   *
+   * @return the shared synthesizer
+   */
+  public final Synthesizer getSynthesizer() {
+    return synthesizer;
+  }
+
+  /**
+   * Get the cache of parsed MIDI sequences shared by the zones.
+   *
+   * @return the shared sequence cache
+   */
+  public final SequenceCache getSequenceCache() {
+    return sequenceCache;
+  }
+
+  /**
+   * Get the executor loading the upcoming songs of the zones.
+   *
+   * @return the shared prefetch executor
+   */
+  public final ThreadPoolExecutor getPrefetchExecutor() {
+    return prefetchExecutor;
+  }
+
+  /**
+   * Get the pool checking the files imported in the playlists of the zones.
+   *
+   * @return the shared import pool
+   */
+  public final ForkJoinPool getImportPool() {
+    return ForkJoinPool.commonPool();
+  }
+
+  /**
+   * Get the pool keeping the sequencers released by the zones open.
+   *
+   * @return the shared sequencer pool
+   */
+  public final SequencerPool getSequencerPool() {
+    return sequencerPool;
+  }
+
+  /**
+   * Get the number of voices each zone may play at once.
+   *
+   * @return the voice budget of each zone
+   */
+  public final int getVoicesPerZone() {
+    return voicesPerZone;
+  }
+
+  /**
+   * Set the number of voices each zone may play at once.
+   *
+   * @param voicesPerZone the voice budget of each zone
+   * @throws IllegalArgumentException if {@code voicesPerZone} is not positive
+   */
+  public final void setVoicesPerZone(final int voicesPerZone) {
+    if (voicesPerZone < 1) {
+      throw new IllegalArgumentException(
+          "Number of voices must be positive: " + voicesPerZone);
+    }
+    this.voicesPerZone = voicesPerZone;
+  }
+
+  /**
+   * Close all zones, the shared resources and, if owned, the synthesizer.
+   */
+  @Override
+  public void close() {
+    List<Zone> active;
+    synchronized (this) {
+      closed = true;
+      active = getZones();
+    }
+    for (Zone zone : active) {
+      zone.close();
+    }
+    prefetchExecutor.shutdownNow();
+    sequencerPool.close();
+    if (ownsSynthesizer) {
+      synthesizer.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " [zones=" + getZones().size() + "/"
+        + zones.length + ", voicesPerZone=" + voicesPerZone + "]";
+  }
+
+}
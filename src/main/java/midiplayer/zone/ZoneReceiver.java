@@ -0,0 +1,186 @@
+package midiplayer.zone;
+
+import java.util.Arrays;
+
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Receives the MIDI messages of a zone and plays them on its channels of the shared synthesizer.
+ *
+ * <p>
+ * Channel messages are sent to the {@link MidiChannel} of the zone block matching their channel.
+ * System messages, such as system exclusive resets, would affect every zone and are ignored.
+ * </p>
+ *
+ * <p>
+ * The number of notes a zone plays at once is limited to its voice budget: when a zone exceeds it,
+ * its own oldest note is released, so that a dense song cannot steal the voices of the other
+ * zones.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+final class ZoneReceiver implements Receiver {
+
+  /**
+   * MIDI control change for all sound off.
+   */
+  private static final int ALL_SOUND_OFF = 120;
+
+  private final ZoneEngine engine;
+
+  /**
+   * The channels of the zone.
+   */
+  private final MidiChannel[] channels;
+
+  /**
+   * Notes playing, oldest first, packed as {@code channel << 8 | note}. Guarded by {@code this}.
+   */
+  private int[] activeNotes = new int[ZoneEngine.DEFAULT_VOICES_PER_ZONE];
+
+  /**
+   * Number of notes playing. Guarded by {@code this}.
+   */
+  private int activeCount = 0;
+
+  /**
+   * Number of notes released to respect the voice budget.
+   */
+  private volatile long stolenCount = 0;
+
+  ZoneReceiver(final ZoneEngine engine, final MidiChannel[] channels) {
+    this.engine = engine;
+    this.channels = channels;
+  }
+
+  @Override
+  public synchronized void send(final MidiMessage message,
+      final long timeStamp) {
+    if (!(message instanceof ShortMessage)
+        || message.getStatus() >= ShortMessage.MIDI_TIME_CODE) {
+      return;
+    }
+    ShortMessage shortMessage = (ShortMessage) message;
+    int channel = shortMessage.getChannel();
+    MidiChannel target = channels[channel];
+    int data1 = shortMessage.getData1();
+    int data2 = shortMessage.getData2();
+    switch (shortMessage.getCommand()) {
+      case ShortMessage.NOTE_ON:
+        if (data2 > 0) {
+          noteOn(channel, data1, data2);
+        } else {
+          noteOff(channel, data1, 0);
+        }
+        break;
+      case ShortMessage.NOTE_OFF:
+        noteOff(channel, data1, data2);
+        break;
+      case ShortMessage.POLY_PRESSURE:
+        target.setPolyPressure(data1, data2);
+        break;
+      case ShortMessage.CONTROL_CHANGE:
+        target.controlChange(data1, data2);
+        if (data1 >= ALL_SOUND_OFF) {
+          // Channel mode messages release all notes of the channel
+          forgetNotes(channel);
+        }
+        break;
+      case ShortMessage.PROGRAM_CHANGE:
+        target.programChange(data1);
+        break;
+      case ShortMessage.CHANNEL_PRESSURE:
+        target.setChannelPressure(data1);
+        break;
+      case ShortMessage.PITCH_BEND:
+        target.setPitchBend(data1 | (data2 << 7));
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Play a note, releasing the oldest note of the zone if its voice budget is exceeded.
+   */
+  private void noteOn(final int channel, final int note, final int velocity) {
+    int budget = Math.max(1, engine.getVoicesPerZone());
+    while (activeCount >= budget) {
+      int oldest = activeNotes[0];
+      removeNote(0);
+      channels[oldest >>> 8].noteOff(oldest & 0x7F);
+      stolenCount++;
+    }
+    if (activeCount == activeNotes.length) {
+      activeNotes = Arrays.copyOf(activeNotes, activeCount * 2);
+    }
+    activeNotes[activeCount++] = (channel << 8) | note;
+    channels[channel].noteOn(note, velocity);
+  }
+
+  private void noteOff(final int channel, final int note, final int velocity) {
+    int packed = (channel << 8) | note;
+    for (int i = 0; i < activeCount; i++) {
+      if (activeNotes[i] == packed) {
+        removeNote(i);
+        break;
+      }
+    }
+    channels[channel].noteOff(note, velocity);
+  }
+
+  private void removeNote(final int index) {
+    System.arraycopy(activeNotes, index + 1, activeNotes, index,
+        activeCount - index - 1);
+    activeCount--;
+  }
+
+  private void forgetNotes(final int channel) {
+    int kept = 0;
+    for (int i = 0; i < activeCount; i++) {
+      if (activeNotes[i] >>> 8 != channel) {
+        activeNotes[kept++] = activeNotes[i];
+      }
+    }
+    activeCount = kept;
+  }
+
+  /**
+   * Silence all the channels of the zone.
+   */
+  synchronized void allSoundOff() {
+    for (MidiChannel channel : channels) {
+      channel.allSoundOff();
+      channel.resetAllControllers();
+    }
+    activeCount = 0;
+  }
+
+  /**
+   * Get the number of notes playing.
+   *
+   * @return the number of notes playing
+   */
+  synchronized int getActiveCount() {
+    return activeCount;
+  }
+
+  /**
+   * Get the number of notes released to respect the voice budget.
+   *
+   * @return the number of notes stolen
+   */
+  long getStolenCount() {
+    return stolenCount;
+  }
+
+  @Override
+  public void close() {
+    // The zone closes its channels
+  }
+
+}
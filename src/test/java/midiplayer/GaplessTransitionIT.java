@@ -0,0 +1,286 @@
+package midiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import midiplayer.sequencer.PrecisionSequencer;
+
+/**
+ * Measures the silence between consecutive songs, with and without gapless mode.
+ *
+ * <p>
+ * Each song plays contiguous notes of its own pitch from its first tick to its last one, so that
+ * the gap between two songs is the time between the last note off of a song and the first note on
+ * of the next one, as received by the software synthesizer. When no audio line is available to
+ * open the synthesizer, the messages are only recorded.
+ * </p>
+ *
+ * <p>
+ * Songs are played in real time: the harness runs with the integration tests.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@RunWith(Parameterized.class)
+public class GaplessTransitionIT {
+
+  private static final int SONG_COUNT = 4;
+
+  private static final int NOTES_PER_SONG = 4;
+
+  private static final int RESOLUTION = 480;
+
+  /**
+   * Length of each song at the default tempo of 120 beats per minute, in microseconds.
+   */
+  private static final long SONG_LENGTH = NOTES_PER_SONG * 500_000L;
+
+  private static final int FIRST_PITCH = 60;
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> engines() {
+    return Arrays.asList(new Object[][] {{MidiPlayer.DEFAULT_ENGINE},
+        {MidiPlayer.PRECISION_ENGINE}});
+  }
+
+  private final String engine;
+
+  private Path directory;
+
+  private List<Object> songs;
+
+  private Synthesizer synthesizer;
+
+  public GaplessTransitionIT(final String engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() throws IOException, InvalidMidiDataException {
+    directory = Files.createTempDirectory("gapless");
+    songs = new ArrayList<>(SONG_COUNT);
+    for (int i = 0; i < SONG_COUNT; i++) {
+      File file = directory.resolve("song" + i + ".mid").toFile();
+      MidiSystem.write(createSong(FIRST_PITCH + i), 1, file);
+      songs.add(file);
+    }
+    try {
+      synthesizer = MidiSystem.getSynthesizer();
+      synthesizer.open();
+    } catch (MidiUnavailableException | IllegalArgumentException ex) {
+      System.out.println("Software synthesizer unavailable, recording only: "
+          + ex.getMessage());
+      synthesizer = null;
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (synthesizer != null) {
+      synthesizer.close();
+    }
+    for (Object song : songs) {
+      Files.deleteIfExists(((File) song).toPath());
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * Create a song playing contiguous quarter notes of a single pitch.
+   *
+   * @param pitch the pitch of the notes
+   * @return the song
+   * @throws InvalidMidiDataException if a note cannot be created
+   */
+  private static Sequence createSong(final int pitch)
+      throws InvalidMidiDataException {
+    Sequence song = new Sequence(Sequence.PPQ, RESOLUTION);
+    Track track = song.createTrack();
+    for (int n = 0; n < NOTES_PER_SONG; n++) {
+      long tick = (long) n * RESOLUTION;
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 100), tick));
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0),
+          tick + RESOLUTION));
+    }
+    return song;
+  }
+
+  // #########################################################################
+  @Test
+  public void gapless() throws Exception {
+    Result result = play(true);
+    System.out.println(engine + " gapless: " + result);
+    assertEquals(SONG_COUNT - 1, result.gaplessTransitions);
+    // Positions are relative to the playing song, not to the spliced sequence
+    long tolerance = TimeUnit.MILLISECONDS.toMicros(100);
+    assertTrue("Position beyond the song: " + result.maxPosition,
+        result.maxPosition <= SONG_LENGTH + tolerance);
+  }
+
+  @Test
+  public void reloading() throws Exception {
+    Result result = play(false);
+    System.out.println(engine + " reloading: " + result);
+    assertEquals(0, result.gaplessTransitions);
+  }
+
+  /**
+   * Play all the songs and measure the gaps between them.
+   *
+   * @param gapless whether the gapless mode is active
+   * @return the measures
+   * @throws Exception if the songs cannot be played
+   */
+  private Result play(final boolean gapless) throws Exception {
+    Recorder recorder = new Recorder();
+    Result result = new Result();
+    try (MidiPlayer player = new HarnessPlayer(engine, synthesizer, recorder)) {
+      player.setGapless(gapless);
+      player.addAll(songs);
+      // Load the sequencer and the first songs before measuring
+      player.warmUp().get(10, TimeUnit.SECONDS);
+      assertTrue(player.startPlaying());
+      long deadline = System.nanoTime()
+          + TimeUnit.MICROSECONDS.toNanos(SONG_LENGTH * (SONG_COUNT + 2));
+      while (!player.isStopped() && System.nanoTime() < deadline) {
+        Long position = player.getMicrosecondPosition();
+        if (position != null) {
+          result.maxPosition = Math.max(result.maxPosition, position);
+        }
+        Thread.sleep(20);
+      }
+      assertTrue("Songs still playing", player.isStopped());
+      result.gaplessTransitions = player.getGaplessTransitionCount();
+    }
+    for (int i = 1; i < SONG_COUNT; i++) {
+      long lastOff = recorder.lastNoteOff[i - 1];
+      long firstOn = recorder.firstNoteOn[i];
+      assertTrue("Song " + i + " not played", lastOff != 0 && firstOn != 0);
+      result.gaps[i - 1] = TimeUnit.NANOSECONDS.toMicros(firstOn - lastOff);
+    }
+    return result;
+  }
+
+  // #########################################################################
+  /**
+   * Gaps and positions measured while playing the songs.
+   */
+  private static final class Result {
+
+    private final long[] gaps = new long[SONG_COUNT - 1];
+
+    private long maxPosition = 0;
+
+    private long gaplessTransitions = 0;
+
+    @Override
+    public String toString() {
+      long[] sorted = gaps.clone();
+      Arrays.sort(sorted);
+      return "gaps (us)=" + Arrays.toString(gaps) + ", median="
+          + sorted[sorted.length / 2] + ", max=" + sorted[sorted.length - 1]
+          + ", gapless transitions=" + gaplessTransitions;
+    }
+
+  }
+
+  /**
+   * Records the time of the first note on and of the last note off of each song.
+   */
+  private static final class Recorder implements Receiver {
+
+    private final long[] firstNoteOn = new long[SONG_COUNT];
+
+    private final long[] lastNoteOff = new long[SONG_COUNT];
+
+    @Override
+    public synchronized void send(final MidiMessage message,
+        final long timeStamp) {
+      long now = System.nanoTime();
+      if (!(message instanceof ShortMessage)) {
+        return;
+      }
+      ShortMessage note = (ShortMessage) message;
+      int song = note.getData1() - FIRST_PITCH;
+      if (song < 0 || song >= SONG_COUNT) {
+        return;
+      }
+      if (note.getCommand() == ShortMessage.NOTE_ON && note.getData2() > 0) {
+        if (firstNoteOn[song] == 0) {
+          firstNoteOn[song] = now;
+        }
+      } else if (note.getCommand() == ShortMessage.NOTE_OFF
+          || note.getCommand() == ShortMessage.NOTE_ON) {
+        lastNoteOff[song] = now;
+      }
+    }
+
+    @Override
+    public void close() {}
+
+  }
+
+  /**
+   * A MIDI player whose sequencer plays on the software synthesizer and on a recorder.
+   */
+  private static final class HarnessPlayer extends MidiPlayer {
+
+    private final String engine;
+
+    private final Synthesizer synthesizer;
+
+    private final Receiver recorder;
+
+    HarnessPlayer(final String engine, final Synthesizer synthesizer,
+        final Receiver recorder) {
+      this.engine = engine;
+      this.synthesizer = synthesizer;
+      this.recorder = recorder;
+    }
+
+    @Override
+    protected Sequencer createSequencer() throws MidiUnavailableException {
+      Sequencer created = PRECISION_ENGINE.equals(engine)
+          ? new PrecisionSequencer(false, PrecisionSequencer.DEFAULT_SPIN_NANOS)
+          : MidiSystem.getSequencer(false);
+      if (synthesizer != null) {
+        created.getTransmitter().setReceiver(synthesizer.getReceiver());
+      }
+      created.getTransmitter().setReceiver(recorder);
+      return created;
+    }
+
+  }
+
+}
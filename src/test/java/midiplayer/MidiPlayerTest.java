@@ -0,0 +1,336 @@
+package midiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the state machine of {@link MidiPlayer} and the current song index across playlist
+ * modifications.
+ *
+ * @author Mathieu Brunot
+ */
+public class MidiPlayerTest {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  private Path directory;
+
+  private final List<Object> songs = new ArrayList<>();
+
+  private final List<String> transitions = new CopyOnWriteArrayList<>();
+
+  private MidiPlayer player;
+
+  @Before
+  public void setUp() throws IOException, InvalidMidiDataException {
+    directory = Files.createTempDirectory("midi-player");
+    // Long songs, which do not end during a test
+    for (int i = 0; i < 3; i++) {
+      File file = directory.resolve("song" + i + ".mid").toFile();
+      MidiSystem.write(createSong(60 + i, 40), 0, file);
+      songs.add(file);
+    }
+    player = new MidiPlayer() {
+      @Override
+      protected Sequencer createSequencer() throws MidiUnavailableException {
+        // Not connected to any device
+        return MidiSystem.getSequencer(false);
+      }
+    };
+    player.addStateListener(
+        (oldState, newState) -> transitions.add(oldState + ">" + newState));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    player.close();
+    for (Object song : songs) {
+      Files.deleteIfExists(((File) song).toPath());
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * Create a song playing one quarter note per beat.
+   *
+   * @param pitch the pitch of the notes
+   * @param notes the number of notes
+   * @return the song
+   * @throws InvalidMidiDataException if a note cannot be created
+   */
+  private static Sequence createSong(final int pitch, final int notes)
+      throws InvalidMidiDataException {
+    Sequence song = new Sequence(Sequence.PPQ, 480);
+    Track track = song.createTrack();
+    for (int n = 0; n < notes; n++) {
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 100), n * 480L));
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0),
+          n * 480L + 480));
+    }
+    return song;
+  }
+
+  private static void await(final String description,
+      final BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timeout waiting for " + description,
+          System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private Object currentSong() {
+    return player.getPlaylist().get(player.getCurrentSongIndex());
+  }
+
+  // #########################################################################
+  @Test
+  public void doesNotStartWithEmptyPlaylist() {
+    assertFalse(player.startPlaying());
+    assertEquals(PlayerState.STOPPED, player.getState());
+    assertTrue(transitions.isEmpty());
+  }
+
+  @Test
+  public void playsPausesResumesAndStops() throws Exception {
+    player.addAll(songs);
+    assertTrue(player.startPlaying());
+    assertEquals(PlayerState.PLAYING, player.getState());
+    await("the sequencer", () -> player.getMicrosecondPosition() != null);
+    Sequencer sequencer = player.getSequencer();
+    await("playback", sequencer::isRunning);
+
+    assertTrue(player.pausePlaying());
+    assertEquals(PlayerState.PAUSED, player.getState());
+    await("pause", () -> !sequencer.isRunning());
+
+    // Pausing again resumes
+    assertTrue(player.pausePlaying());
+    assertEquals(PlayerState.PLAYING, player.getState());
+    await("resume", sequencer::isRunning);
+
+    assertTrue(player.stopPlaying());
+    assertEquals(PlayerState.STOPPED, player.getState());
+    assertEquals(Arrays.asList("STOPPED>PLAYING", "PLAYING>PAUSED",
+        "PAUSED>PLAYING", "PLAYING>STOPPED"), transitions);
+  }
+
+  @Test
+  public void restartsFromPause() throws Exception {
+    player.addAll(songs);
+    assertTrue(player.startPlaying());
+    await("the sequencer", () -> player.getMicrosecondPosition() != null);
+    assertTrue(player.pausePlaying());
+    assertTrue(player.startPlaying());
+    assertEquals(PlayerState.PLAYING, player.getState());
+    assertEquals(Arrays.asList("STOPPED>PLAYING", "PLAYING>PAUSED",
+        "PAUSED>PLAYING"), transitions);
+  }
+
+  @Test
+  public void stopsWhenCurrentSongIsRemoved() throws Exception {
+    player.addAll(songs);
+    assertTrue(player.startPlaying(1));
+    assertTrue(player.remove(1));
+    assertEquals(PlayerState.STOPPED, player.getState());
+    assertEquals(2, player.size());
+  }
+
+  @Test
+  public void stopsWhenPlaylistIsCleared() throws Exception {
+    player.addAll(songs);
+    assertTrue(player.startPlaying());
+    assertTrue(player.clear());
+    assertEquals(PlayerState.STOPPED, player.getState());
+    assertTrue(player.isEmpty());
+  }
+
+  @Test
+  public void navigatesWithinPlaylist() {
+    player.addAll(songs);
+    assertFalse(player.moveToPreviousSong());
+    assertTrue(player.moveToNextSong());
+    assertTrue(player.moveToNextSong());
+    assertEquals(2, player.getCurrentSongIndex());
+    // Not past the last song, unless forced
+    assertFalse(player.moveToNextSong());
+    assertTrue(player.moveToSong(songs.get(0)));
+    assertEquals(0, player.getCurrentSongIndex());
+    assertFalse(player.moveToSong(songs.size()));
+  }
+
+  // #########################################################################
+  @Test
+  public void currentSongFollowsInsertions() {
+    player.addAll(songs);
+    player.moveToSong(1);
+    Object current = currentSong();
+
+    player.add(0, "inserted");
+    assertSame(current, currentSong());
+    player.addAll(0, Arrays.asList("first", "second"));
+    assertSame(current, currentSong());
+    // After the current song
+    player.add(player.size(), "last");
+    assertSame(current, currentSong());
+    assertEquals(4, player.getCurrentSongIndex());
+  }
+
+  @Test
+  public void currentSongFollowsRemovals() {
+    player.addAll(Arrays.asList("a", "b", "c"));
+    player.addAll(songs);
+    player.moveToSong(4);
+    Object current = currentSong();
+
+    assertTrue(player.remove(0));
+    assertSame(current, currentSong());
+    assertTrue(player.removeAll(new int[] {1, 0, 1, 4}));
+    assertSame(current, currentSong());
+    assertEquals(1, player.getCurrentSongIndex());
+    // Nothing removed
+    assertFalse(player.removeAll(new int[] {-1, player.size()}));
+    assertEquals(1, player.getCurrentSongIndex());
+  }
+
+  @Test
+  public void currentSongFollowsMovesAndSorts() {
+    player.addAll(songs);
+    player.addAll(Arrays.asList("a", "b", "c"));
+    player.moveToSong(1);
+    Object current = currentSong();
+
+    assertTrue(player.moveSongsTo(0, 1, 5));
+    assertSame(current, currentSong());
+    assertTrue(player.moveSongsTo(3, 4, 0));
+    assertSame(current, currentSong());
+    assertTrue(player.shufflePlaylist(new Random(42)));
+    assertSame(current, currentSong());
+    assertTrue(player.sortPlaylist(SortKey.DIRECTORY));
+    assertSame(current, currentSong());
+  }
+
+  @Test
+  public void shuffleOrderRestartsAtCurrentSongAfterReorders() {
+    player.addAll(songs);
+    player.addAll(Arrays.asList("a", "b", "c"));
+    player.moveToSong(2);
+    player.setShuffling(true, 42);
+    assertTrue(player.moveToNextSong());
+    assertTrue(player.moveToNextSong());
+
+    assertTrue(player.moveSongsTo(0, 1, 5));
+    assertShuffleOrderStartsAtCurrentSong();
+    assertTrue(player.moveToNextSong());
+    assertTrue(player.shufflePlaylist(new Random(42)));
+    assertShuffleOrderStartsAtCurrentSong();
+    assertTrue(player.moveToNextSong());
+    assertTrue(player.sortPlaylist(SortKey.DIRECTORY));
+    assertShuffleOrderStartsAtCurrentSong();
+    assertTrue(player.moveToNextSong());
+    assertTrue(player.sortPlaylist(Comparator.comparing(Object::toString)));
+    assertShuffleOrderStartsAtCurrentSong();
+  }
+
+  private void assertShuffleOrderStartsAtCurrentSong() {
+    ShuffleOrder order = player.getShuffleOrder();
+    assertEquals(player.getCurrentSongIndex(), order.get(0));
+    // Every other song is played once before the pass ends
+    int[] upcoming = player.getUpcomingSongIndexes(player.size() - 1);
+    Set<Integer> played = new HashSet<>();
+    played.add(player.getCurrentSongIndex());
+    for (int index : upcoming) {
+      played.add(index);
+    }
+    assertEquals(player.size(), played.size());
+  }
+
+  @Test
+  public void currentSongFollowsConcurrentModifications() throws Exception {
+    player.addAll(Arrays.asList("a", "b", "c"));
+    player.addAll(songs);
+    player.moveToSong(4);
+    Object current = currentSong();
+    int initialSize = player.size();
+
+    int threads = 4;
+    int rounds = 2000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> writers = new ArrayList<>();
+    List<Throwable> failures = new CopyOnWriteArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread writer = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < rounds; i++) {
+            // Each removal follows an insertion: the current song is never first
+            player.add(0, new Object());
+            player.remove(0);
+            player.addAll(0, Arrays.asList(new Object(), new Object()));
+            player.removeAll(new int[] {0, 1});
+          }
+        } catch (Throwable ex) {
+          failures.add(ex);
+        }
+      });
+      writer.start();
+      writers.add(writer);
+    }
+    Thread reader = new Thread(() -> {
+      try {
+        start.await();
+        for (int i = 0; i < threads * rounds; i++) {
+          player.getUpcomingSongIndexes(2);
+          player.getPlaylist().indexOf(current);
+        }
+      } catch (Throwable ex) {
+        failures.add(ex);
+      }
+    });
+    reader.start();
+    start.countDown();
+    for (Thread writer : writers) {
+      writer.join(TimeUnit.SECONDS.toMillis(60));
+    }
+    reader.join(TimeUnit.SECONDS.toMillis(60));
+
+    assertTrue(failures.toString(), failures.isEmpty());
+    assertEquals(initialSize, player.size());
+    assertSame(current, currentSong());
+  }
+
+}
@@ -0,0 +1,85 @@
+package midiplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing and reading back playlist files with {@link PlaylistFile}.
+ *
+ * @author Mathieu Brunot
+ */
+public class PlaylistFileTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("playlist-file");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  private List<Path> listDirectory() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(Path::getFileName).collect(Collectors.toList());
+    }
+  }
+
+  private List<Object> readBack(final Path file) throws IOException {
+    List<Object> entries = new ArrayList<>();
+    PlaylistFile.read(file, entries::addAll);
+    return entries;
+  }
+
+  // #########################################################################
+  @Test
+  public void writesNamesOutsideOfLatin1AsUris() throws IOException {
+    Path file = directory.resolve("songs.m3u");
+    List<Object> songs;
+    try {
+      songs = Arrays.asList(directory.resolve("chansoné.mid"),
+          directory.resolve("歌.mid"), directory.resolve("song.mid"));
+    } catch (InvalidPathException ex) {
+      // The platform encoding of file names is not Unicode
+      Assume.assumeNoException(ex);
+      return;
+    }
+    assertEquals(3, PlaylistFile.write(file, songs));
+    assertEquals(songs, readBack(file));
+  }
+
+  @Test
+  public void replacesExistingPlaylist() throws IOException {
+    Path file = directory.resolve("songs.m3u8");
+    PlaylistFile.write(file, Arrays.asList(directory.resolve("old.mid"),
+        directory.resolve("older.mid")));
+    List<Object> songs = Arrays.asList(directory.resolve("new.mid"));
+    assertEquals(1, PlaylistFile.write(file, songs));
+    assertEquals(songs, readBack(file));
+    // No temporary file left
+    assertEquals(Arrays.asList(file.getFileName()), listDirectory());
+  }
+
+}
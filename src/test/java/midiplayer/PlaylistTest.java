@@ -0,0 +1,278 @@
+package midiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the block operations of {@link Playlist} and the index of the first position of its
+ * resources.
+ *
+ * @author Mathieu Brunot
+ */
+public class PlaylistTest {
+
+  private static Playlist playlist(final Object... resources) {
+    return new Playlist(Arrays.asList(resources));
+  }
+
+  // #########################################################################
+
+  @Test
+  public void movesBlockBefore() {
+    Playlist playlist = playlist("a", "b", "c", "d", "e", "f");
+    assertTrue(playlist.move(3, 4, 1));
+    assertEquals(Arrays.asList("a", "d", "e", "b", "c", "f"), playlist);
+  }
+
+  @Test
+  public void movesBlockAfter() {
+    Playlist playlist = playlist("a", "b", "c", "d", "e", "f");
+    // Right before the resource which was at the position
+    assertTrue(playlist.move(0, 1, 4));
+    assertEquals(Arrays.asList("c", "d", "a", "b", "e", "f"), playlist);
+
+    // At the end
+    assertTrue(playlist.move(0, 0, 6));
+    assertEquals(Arrays.asList("d", "a", "b", "e", "f", "c"), playlist);
+  }
+
+  @Test
+  public void doesNotMoveBlockInsideItself() {
+    Playlist playlist = playlist("a", "b", "c", "d");
+    assertFalse(playlist.move(1, 2, 1));
+    assertFalse(playlist.move(1, 2, 2));
+    assertEquals(Arrays.asList("a", "b", "c", "d"), playlist);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMoveOfReversedBlock() {
+    playlist("a", "b", "c").move(2, 1, 0);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsMoveOutOfRange() {
+    playlist("a", "b", "c").move(1, 3, 0);
+  }
+
+  // #########################################################################
+
+  @Test
+  public void removesIndexesIgnoringDuplicatesAndOutOfRange() {
+    Playlist playlist = playlist("a", "b", "c", "d", "e", "f");
+    assertEquals(3,
+        playlist.removeIndexes(-2, -1, 0, 0, 2, 2, 2, 5, 6, 100));
+    assertEquals(Arrays.asList("b", "d", "e"), playlist);
+  }
+
+  @Test
+  public void removesNothingOutOfRange() {
+    Playlist playlist = playlist("a", "b");
+    assertEquals(0, playlist.removeIndexes(-1, 2, 3));
+    assertEquals(0, playlist.removeIndexes());
+    assertEquals(0, playlist.removeIndexes((int[]) null));
+    assertEquals(Arrays.asList("a", "b"), playlist);
+  }
+
+  @Test
+  public void removesAllIndexes() {
+    Playlist playlist = playlist("a", "b", "c");
+    assertEquals(3, playlist.removeIndexes(0, 1, 2));
+    assertTrue(playlist.isEmpty());
+    assertEquals(-1, playlist.indexOf("a"));
+  }
+
+  // #########################################################################
+
+  @Test
+  public void permutes() {
+    Playlist playlist = playlist("a", "b", "c", "d");
+    playlist.permute(new int[] {2, 0, 3, 1});
+    assertEquals(Arrays.asList("c", "a", "d", "b"), playlist);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPermutationWithDuplicates() {
+    playlist("a", "b", "c").permute(new int[] {0, 1, 1});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPermutationOfAnotherSize() {
+    playlist("a", "b", "c").permute(new int[] {0, 1});
+  }
+
+  @Test
+  public void keepsContentOfRejectedPermutation() {
+    Playlist playlist = playlist("a", "b", "c");
+    try {
+      playlist.permute(new int[] {0, 3, 1});
+    } catch (IllegalArgumentException ex) {
+      // Expected
+    }
+    assertEquals(Arrays.asList("a", "b", "c"), playlist);
+  }
+
+  // #########################################################################
+
+  @Test
+  public void addsAllAtIndex() {
+    Playlist playlist = playlist("a", "d");
+    assertTrue(playlist.addAll(1, Arrays.asList("b", "c")));
+    assertEquals(Arrays.asList("a", "b", "c", "d"), playlist);
+    assertTrue(playlist.addAll(0, Collections.singletonList("_")));
+    assertTrue(playlist.addAll(playlist.size(), Arrays.asList("e", "f")));
+    assertEquals(Arrays.asList("_", "a", "b", "c", "d", "e", "f"), playlist);
+  }
+
+  @Test
+  public void addsNothingAtIndex() {
+    Playlist playlist = playlist("a");
+    assertFalse(playlist.addAll(0, Collections.emptyList()));
+    assertEquals(Collections.singletonList("a"), playlist);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsAddAllOutOfRange() {
+    playlist("a").addAll(2, Collections.singletonList("b"));
+  }
+
+  // #########################################################################
+
+  @Test
+  public void findsFirstOccurrence() {
+    Playlist playlist = playlist("a", "b", "a", "c");
+    assertEquals(0, playlist.indexOf("a"));
+    playlist.remove(0);
+    assertEquals(1, playlist.indexOf("a"));
+    playlist.add("d");
+    assertEquals(3, playlist.indexOf("d"));
+    playlist.add(0, "d");
+    assertEquals(0, playlist.indexOf("d"));
+    assertFalse(playlist.contains("z"));
+  }
+
+  /**
+   * Check that every modification keeps the lookups in line with a plain list, whether the index of
+   * first positions was built before the modification or not.
+   */
+  @Test
+  public void invalidatesFirstIndexes() {
+    Random random = new Random(42);
+    List<Object> expected = new ArrayList<>();
+    Playlist playlist = new Playlist();
+    for (int step = 0; step < 2000; step++) {
+      int size = expected.size();
+      Object resource = "song " + random.nextInt(20);
+      switch (random.nextInt(10)) {
+        case 0:
+          expected.add(resource);
+          playlist.add(resource);
+          break;
+        case 1: {
+          int index = random.nextInt(size + 1);
+          expected.add(index, resource);
+          playlist.add(index, resource);
+          break;
+        }
+        case 2: {
+          int index = random.nextInt(size + 1);
+          List<Object> added = Arrays.asList(resource, "song " + step);
+          expected.addAll(index, added);
+          playlist.addAll(index, added);
+          break;
+        }
+        case 3:
+          if (size > 0) {
+            int index = random.nextInt(size);
+            expected.set(index, resource);
+            playlist.set(index, resource);
+          }
+          break;
+        case 4:
+          if (size > 0) {
+            int index = random.nextInt(size);
+            expected.remove(index);
+            playlist.remove(index);
+          }
+          break;
+        case 5: {
+          int[] indexes = {random.nextInt(size + 2) - 1,
+              random.nextInt(size + 2) - 1, random.nextInt(size + 2) - 1};
+          Arrays.sort(indexes);
+          for (int i = indexes.length - 1; i >= 0; i--) {
+            int index = indexes[i];
+            if (index >= 0 && index < size
+                && (i == indexes.length - 1 || index != indexes[i + 1])) {
+              expected.remove(index);
+            }
+          }
+          playlist.removeIndexes(indexes);
+          break;
+        }
+        case 6:
+          if (size > 1) {
+            int start = random.nextInt(size);
+            int end = start + random.nextInt(size - start);
+            int position = random.nextInt(size + 1);
+            if (position < start || position > end) {
+              List<Object> block =
+                  new ArrayList<>(expected.subList(start, end + 1));
+              int to = position < start ? position
+                  : position - block.size();
+              expected.subList(start, end + 1).clear();
+              expected.addAll(to, block);
+            }
+            playlist.move(start, end, position);
+          }
+          break;
+        case 7: {
+          List<Integer> order = new ArrayList<>();
+          for (int i = 0; i < size; i++) {
+            order.add(i);
+          }
+          Collections.shuffle(order, random);
+          List<Object> permuted = new ArrayList<>();
+          int[] orderArray = new int[size];
+          for (int i = 0; i < size; i++) {
+            orderArray[i] = order.get(i);
+            permuted.add(expected.get(order.get(i)));
+          }
+          expected = permuted;
+          playlist.permute(orderArray);
+          break;
+        }
+        case 8:
+          expected.removeAll(Collections.singleton(resource));
+          playlist.removeAll(Collections.singleton(resource));
+          break;
+        default:
+          if (random.nextInt(10) == 0) {
+            expected.clear();
+            playlist.clear();
+          } else {
+            expected.sort(MidiPlayer.COMPARATOR);
+            playlist.sort(MidiPlayer.COMPARATOR);
+          }
+      }
+
+      assertEquals(expected, playlist);
+      // Build the index before the next modification, one time out of two
+      if (random.nextBoolean()) {
+        for (int i = 0; i < 20; i++) {
+          Object song = "song " + i;
+          assertEquals(expected.indexOf(song), playlist.indexOf(song));
+          assertEquals(expected.contains(song), playlist.contains(song));
+        }
+      }
+    }
+  }
+
+}
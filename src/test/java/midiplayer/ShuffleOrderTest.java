@@ -0,0 +1,127 @@
+package midiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link ShuffleOrder} is a permutation of the playlist indexes.
+ *
+ * @author Mathieu Brunot
+ */
+public class ShuffleOrderTest {
+
+  private static final long SEED = 0x5EEDL;
+
+  /**
+   * Sizes around the powers of 4 bounding the domain of the Feistel network, up to 65537.
+   */
+  private static final int[] LARGE_SIZES = {16383, 16384, 16385, 65535,
+      65536, 65537};
+
+  private static int[] passOf(final ShuffleOrder order) {
+    int[] indexes = new int[order.size()];
+    for (int position = 0; position < indexes.length; position++) {
+      indexes[position] = order.get(position);
+    }
+    return indexes;
+  }
+
+  private static void assertBijection(final ShuffleOrder order) {
+    int size = order.size();
+    boolean[] played = new boolean[size];
+    for (int position = 0; position < size; position++) {
+      int index = order.get(position);
+      // Messages built on failure only: this runs for millions of positions
+      if (index < 0 || index >= size || played[index]) {
+        fail(order + " plays " + index + " at " + position);
+      }
+      played[index] = true;
+      if (order.positionOf(index) != position) {
+        fail(order + " finds " + index + " at " + order.positionOf(index)
+            + " instead of " + position);
+      }
+    }
+  }
+
+  // #########################################################################
+
+  @Test
+  public void isBijectionOfSmallSizes() {
+    for (int size = 1; size <= 4097; size++) {
+      assertBijection(ShuffleOrder.of(size, SEED + size, -1));
+    }
+  }
+
+  @Test
+  public void isBijectionOfLargeSizes() {
+    for (int size : LARGE_SIZES) {
+      ShuffleOrder order = ShuffleOrder.of(size, SEED, -1);
+      assertBijection(order);
+      assertBijection(order.nextPass());
+    }
+  }
+
+  @Test
+  public void startsPassAtSong() {
+    for (int size : new int[] {1, 2, 3, 17, 1000}) {
+      ShuffleOrder order = ShuffleOrder.of(size, SEED, -1);
+      int[] pass = passOf(order);
+      for (int first = 0; first < size; first += 1 + size / 10) {
+        ShuffleOrder started = order.startingAt(first);
+        assertEquals(first, started.get(0));
+        assertBijection(started);
+        // Same cycle, rotated
+        int offset = order.positionOf(first);
+        for (int position = 0; position < size; position++) {
+          assertEquals(pass[(offset + position) % size],
+              started.get(position));
+        }
+      }
+      assertEquals(size - 1, ShuffleOrder.of(size, SEED, size - 1).get(0));
+    }
+  }
+
+  @Test
+  public void dependsOnSeedAndPass() {
+    int[] pass = passOf(ShuffleOrder.of(1000, SEED, -1));
+    assertTrue(Arrays.equals(pass, passOf(ShuffleOrder.of(1000, SEED, -1))));
+    assertFalse(
+        Arrays.equals(pass, passOf(ShuffleOrder.of(1000, SEED + 1, -1))));
+
+    ShuffleOrder next = ShuffleOrder.of(1000, SEED, -1).nextPass();
+    assertEquals(1, next.getPass());
+    assertFalse(Arrays.equals(pass, passOf(next)));
+  }
+
+  @Test
+  public void resizesToBijection() {
+    ShuffleOrder order = ShuffleOrder.of(100, SEED, 7);
+    ShuffleOrder resized = order.resize(250, 42);
+    assertEquals(250, resized.size());
+    assertEquals(42, resized.get(0));
+    assertBijection(resized);
+    assertBijection(order.resize(3, -1));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void hasNoPositionWhenEmpty() {
+    ShuffleOrder.of(0, SEED, -1).get(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeSize() {
+    ShuffleOrder.of(-1, SEED, -1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsFirstIndexOutOfRange() {
+    ShuffleOrder.of(10, SEED, 10);
+  }
+
+}
@@ -0,0 +1,154 @@
+package midiplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import midiplayer.sequence.SongMetadata;
+
+/**
+ * Tests the order given by the collation keys of {@link SortKey}.
+ *
+ * @author Mathieu Brunot
+ */
+public class SortKeyTest {
+
+  private static void assertNaturalOrder(final String... texts) {
+    List<String> shuffled = new ArrayList<>(Arrays.asList(texts));
+    Collections.reverse(shuffled);
+    shuffled.sort((a, b) -> SortKey.naturalKey(a)
+        .compareTo(SortKey.naturalKey(b)));
+    assertEquals(Arrays.asList(texts), shuffled);
+  }
+
+  private static void assertSameKey(final String a, final String b) {
+    assertEquals(SortKey.naturalKey(a), SortKey.naturalKey(b));
+  }
+
+  /**
+   * Sort resources by a key, as the player does.
+   */
+  private static List<Object> sort(final SortKey sortKey,
+      final List<SongMetadata> metadata, final Object... resources) {
+    List<SortKey.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < resources.length; i++) {
+      entries.add(sortKey.entryOf(resources[i],
+          metadata == null ? null : metadata.get(i), i));
+    }
+    Collections.sort(entries);
+    List<Object> sorted = new ArrayList<>();
+    for (SortKey.Entry entry : entries) {
+      sorted.add(resources[entry.getIndex()]);
+    }
+    return sorted;
+  }
+
+  private static SongMetadata metadata(final String title, final long ticks)
+      throws InvalidMidiDataException {
+    Sequence sequence = new Sequence(Sequence.PPQ, 480);
+    Track track = sequence.createTrack();
+    if (title != null) {
+      byte[] data = title.getBytes();
+      track.add(new MidiEvent(new MetaMessage(0x03, data, data.length), 0));
+    }
+    track.add(new MidiEvent(new MetaMessage(0x2F, new byte[0], 0), ticks));
+    return SongMetadata.of(sequence, 0, 0);
+  }
+
+  // #########################################################################
+
+  @Test
+  public void ordersNumbersByValue() {
+    assertNaturalOrder("Song 2.mid", "Song 10.mid", "Song 100.mid");
+    assertNaturalOrder("1.2", "1.10", "2");
+    assertNaturalOrder("a9", "a10b", "a10c", "a11");
+    assertNaturalOrder("0", "1", "9", "99", "100", "12345678901234567890");
+  }
+
+  @Test
+  public void ignoresCaseAndLeadingZeros() {
+    assertSameKey("Song 7.MID", "song 007.mid");
+    assertSameKey("0", "000");
+    assertNaturalOrder("track 01", "Track 2", "TRACK 03");
+  }
+
+  @Test
+  public void ordersTextBeforeLongerText() {
+    assertNaturalOrder("", "a", "a b", "ab", "b");
+    assertNaturalOrder("song", "song 1", "song 1 live");
+  }
+
+  @Test
+  public void ordersByFileName() {
+    assertEquals(Arrays.asList("z/Song 2.mid", "a/song 10.mid", "Song 11.mid"),
+        sort(SortKey.FILE_NAME, null, "Song 11.mid", "a/song 10.mid",
+            "z/Song 2.mid"));
+  }
+
+  @Test
+  public void ordersByDirectoryThenFileName() {
+    assertEquals(
+        Arrays.asList("b.mid", "a/c.mid", "a/d.mid", "a b/a.mid",
+            "a2/a.mid", "a10/a.mid"),
+        sort(SortKey.DIRECTORY, null, "a10/a.mid", "a/d.mid", "a2/a.mid",
+            "a b/a.mid", "b.mid", "a/c.mid"));
+  }
+
+  @Test
+  public void ordersByDurationThenUnknown() throws Exception {
+    List<SongMetadata> metadata =
+        Arrays.asList(null, metadata(null, 960), metadata(null, 480),
+            metadata(null, 960));
+    assertEquals(Arrays.asList("short", "a", "b", "unknown"),
+        sort(SortKey.DURATION, metadata, "unknown", "b", "short", "a"));
+  }
+
+  @Test
+  public void ordersByTitleOrFileName() throws Exception {
+    List<SongMetadata> metadata = Arrays.asList(metadata("Zebra", 480),
+        metadata(null, 480), metadata("  ", 480), null);
+    assertEquals(Arrays.asList("b.mid", "m.mid", "y.mid", "a.mid"),
+        sort(SortKey.TITLE, metadata, "a.mid", "m.mid", "y.mid", "b.mid"));
+  }
+
+  @Test
+  public void keepsOrderOfEqualKeysAndSortsNullLast() {
+    assertEquals(Arrays.asList("x/a.mid", "y/a.mid", "Z/A.MID", null),
+        sort(SortKey.FILE_NAME, null, null, "x/a.mid", "y/a.mid",
+            "Z/A.MID"));
+  }
+
+  @Test
+  public void findsKeysByName() {
+    for (SortKey sortKey : SortKey.values()) {
+      assertEquals(sortKey, SortKey.forName(sortKey.getName()));
+      assertEquals(sortKey, SortKey.forName(sortKey.name().toLowerCase()));
+    }
+    assertEquals(SortKey.DURATION, SortKey.forName("Duration"));
+  }
+
+  @Test
+  public void rejectsUnknownName() {
+    try {
+      SortKey.forName("size");
+    } catch (IllegalArgumentException ex) {
+      assertTrue(ex.getMessage().contains("size"));
+      return;
+    }
+    fail("Unknown key found");
+  }
+
+}
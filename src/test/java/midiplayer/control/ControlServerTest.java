@@ -0,0 +1,176 @@
+package midiplayer.control;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import midiplayer.MidiPlayer;
+
+/**
+ * Tests the protocol of {@link ControlServer} over the loopback interface.
+ *
+ * @author Mathieu Brunot
+ */
+public class ControlServerTest {
+
+  private static final int TIMEOUT_MILLIS = 10000;
+
+  private Path directory;
+
+  private MidiPlayer player;
+
+  private ControlServer server;
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("control-server");
+    player = new MidiPlayer() {
+      @Override
+      protected Sequencer createSequencer() throws MidiUnavailableException {
+        // Not connected to any device
+        return MidiSystem.getSequencer(false);
+      }
+    };
+    server = new ControlServer(player,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        directory.resolve("control.token"));
+    server.registerBlocking((p, args, out) -> {
+      try {
+        if (!release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          throw new IllegalStateException("Not released");
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return "released";
+    }, "block");
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    release.countDown();
+    server.close();
+    server.awaitTermination();
+    player.close();
+    assertFalse(Files.exists(server.getTokenFile()));
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * A connection to the control server.
+   */
+  private final class Connection implements AutoCloseable {
+
+    private final Socket socket;
+
+    private final BufferedReader reader;
+
+    private final OutputStream writer;
+
+    Connection() throws IOException {
+      this(new String(Files.readAllBytes(server.getTokenFile()),
+          StandardCharsets.US_ASCII).trim());
+      assertEquals("OK authenticated", receive());
+    }
+
+    Connection(final String token) throws IOException {
+      socket = new Socket();
+      socket.connect(server.getAddress(), TIMEOUT_MILLIS);
+      socket.setSoTimeout(TIMEOUT_MILLIS);
+      reader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      writer = socket.getOutputStream();
+      send(token);
+    }
+
+    void send(final String line) throws IOException {
+      writer.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+      writer.flush();
+    }
+
+    String receive() throws IOException {
+      return reader.readLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+
+  }
+
+  // #########################################################################
+  @Test
+  public void tokenFileIsOnlyReadableByOwner() throws IOException {
+    Path file = server.getTokenFile();
+    if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      assertEquals(PosixFilePermissions.fromString("rw-------"),
+          Files.getPosixFilePermissions(file));
+    }
+    assertEquals(33, Files.size(file));
+  }
+
+  @Test
+  public void rejectsClientWithoutToken() throws IOException {
+    try (Connection connection = new Connection("status")) {
+      assertEquals("ERR Invalid token", connection.receive());
+      // Connection closed
+      assertNull(connection.receive());
+    }
+  }
+
+  @Test
+  public void answersCommands() throws IOException {
+    try (Connection connection = new Connection()) {
+      connection.send("status");
+      assertEquals("OK STOPPED 0/0", connection.receive());
+      connection.send("next");
+      assertEquals("ERR No next song", connection.receive());
+      connection.send("unknown");
+      assertEquals("ERR Unknown command: unknown", connection.receive());
+      connection.send("list");
+      assertEquals("OK 0", connection.receive());
+    }
+  }
+
+  @Test
+  public void blockingCommandDoesNotBlockOtherClients() throws IOException {
+    try (Connection blocked = new Connection();
+        Connection other = new Connection()) {
+      // Both lines sent at once: answers keep the order of the commands
+      blocked.send("block\nstatus");
+      other.send("status");
+      assertEquals("OK STOPPED 0/0", other.receive());
+
+      release.countDown();
+      assertEquals("OK released", blocked.receive());
+      assertEquals("OK STOPPED 0/0", blocked.receive());
+    }
+  }
+
+}
@@ -0,0 +1,198 @@
+package midiplayer.frame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import midiplayer.metrics.LatencyHistogram;
+
+/**
+ * Tests the merge of the events queued by a {@link TableModelEventCoalescer}.
+ *
+ * @author Mathieu Brunot
+ */
+public class TableModelEventCoalescerTest {
+
+  private final TableModel model = new DefaultTableModel(100, 2);
+
+  private final List<TableModelEvent> tableEvents = new ArrayList<>();
+
+  private final List<PropertyChangeEvent> propertyEvents = new ArrayList<>();
+
+  private TableModelEventCoalescer coalescer;
+
+  @Before
+  public void setUp() {
+    coalescer = new TableModelEventCoalescer(model, false, tableEvents::add,
+        propertyEvents::add, new LatencyHistogram("Fan-out"),
+        new LatencyHistogram("Queue delay"));
+  }
+
+  private void fire(final int firstRow, final int lastRow, final int type) {
+    coalescer.tableChanged(new TableModelEvent(model, firstRow, lastRow,
+        TableModelEvent.ALL_COLUMNS, type));
+  }
+
+  private void assertEvent(final int index, final int firstRow,
+      final int lastRow, final int type) {
+    TableModelEvent evt = tableEvents.get(index);
+    assertEquals(type, evt.getType());
+    assertEquals(firstRow, evt.getFirstRow());
+    assertEquals(lastRow, evt.getLastRow());
+  }
+
+  // #########################################################################
+
+  @Test
+  public void deliversEventsImmediatelyOutsideBatches() {
+    fire(1, 1, TableModelEvent.UPDATE);
+    fire(2, 2, TableModelEvent.UPDATE);
+    assertEquals(2, tableEvents.size());
+    assertEquals(2, coalescer.getFiredEventCount());
+  }
+
+  @Test
+  public void mergesAdjacentInsertions() {
+    coalescer.beginBatch();
+    fire(5, 5, TableModelEvent.INSERT);
+    // Right after the inserted rows
+    fire(6, 7, TableModelEvent.INSERT);
+    // Within the inserted rows
+    fire(5, 5, TableModelEvent.INSERT);
+    assertTrue(tableEvents.isEmpty());
+    coalescer.endBatch();
+
+    assertEquals(1, tableEvents.size());
+    assertEvent(0, 5, 8, TableModelEvent.INSERT);
+  }
+
+  @Test
+  public void keepsDistantInsertions() {
+    coalescer.beginBatch();
+    fire(5, 5, TableModelEvent.INSERT);
+    fire(7, 7, TableModelEvent.INSERT);
+    coalescer.endBatch();
+
+    assertEquals(2, tableEvents.size());
+    assertEvent(0, 5, 5, TableModelEvent.INSERT);
+    assertEvent(1, 7, 7, TableModelEvent.INSERT);
+  }
+
+  @Test
+  public void mergesSuccessiveDeletions() {
+    coalescer.beginBatch();
+    fire(5, 5, TableModelEvent.DELETE);
+    // The row following the deleted one
+    fire(5, 5, TableModelEvent.DELETE);
+    // The row preceding the deleted ones
+    fire(4, 4, TableModelEvent.DELETE);
+    coalescer.endBatch();
+
+    assertEquals(1, tableEvents.size());
+    assertEvent(0, 4, 6, TableModelEvent.DELETE);
+  }
+
+  @Test
+  public void dropsUpdatesOfInsertedRows() {
+    coalescer.beginBatch();
+    fire(2, 4, TableModelEvent.INSERT);
+    fire(3, 4, TableModelEvent.UPDATE);
+    coalescer.endBatch();
+
+    assertEquals(1, tableEvents.size());
+    assertEvent(0, 2, 4, TableModelEvent.INSERT);
+  }
+
+  @Test
+  public void mergesOverlappingAndAdjacentUpdates() {
+    coalescer.beginBatch();
+    fire(3, 5, TableModelEvent.UPDATE);
+    fire(1, 2, TableModelEvent.UPDATE);
+    fire(4, 8, TableModelEvent.UPDATE);
+    fire(20, 20, TableModelEvent.UPDATE);
+    coalescer.endBatch();
+
+    assertEquals(2, tableEvents.size());
+    assertEvent(0, 1, 8, TableModelEvent.UPDATE);
+    assertEvent(1, 20, 20, TableModelEvent.UPDATE);
+  }
+
+  @Test
+  public void keepsUpdatesOfDistinctColumns() {
+    coalescer.beginBatch();
+    coalescer.tableChanged(
+        new TableModelEvent(model, 1, 1, 0, TableModelEvent.UPDATE));
+    coalescer.tableChanged(
+        new TableModelEvent(model, 1, 1, 1, TableModelEvent.UPDATE));
+    coalescer.endBatch();
+
+    assertEquals(2, tableEvents.size());
+  }
+
+  @Test
+  public void fallsBackToFullChange() {
+    coalescer.beginBatch();
+    // Distinct rows which cannot be merged
+    for (int i = 0; i < 32; i++) {
+      fire(2 * i, 2 * i, TableModelEvent.UPDATE);
+    }
+    coalescer.endBatch();
+    assertEquals(32, tableEvents.size());
+
+    tableEvents.clear();
+    coalescer.beginBatch();
+    for (int i = 0; i < 40; i++) {
+      fire(2 * i, 2 * i, TableModelEvent.UPDATE);
+    }
+    coalescer.endBatch();
+
+    assertEquals(1, tableEvents.size());
+    assertEvent(0, 0, Integer.MAX_VALUE, TableModelEvent.UPDATE);
+    assertEquals(72, coalescer.getReceivedEventCount());
+    assertEquals(33, coalescer.getFiredEventCount());
+  }
+
+  @Test
+  public void mergesPropertyChanges() {
+    coalescer.beginBatch();
+    coalescer.propertyChanged(new PropertyChangeEvent(this, "size", 1, 2));
+    coalescer.propertyChanged(new PropertyChangeEvent(this, "size", 2, 3));
+    coalescer.propertyChanged(new PropertyChangeEvent(this, "loop", 0, 1));
+    // Back to its original value
+    coalescer.propertyChanged(new PropertyChangeEvent(this, "loop", 1, 0));
+    coalescer.endBatch();
+
+    assertEquals(1, propertyEvents.size());
+    PropertyChangeEvent evt = propertyEvents.get(0);
+    assertEquals("size", evt.getPropertyName());
+    assertEquals(1, evt.getOldValue());
+    assertEquals(3, evt.getNewValue());
+  }
+
+  @Test
+  public void deliversWhenOutermostBatchEnds() {
+    coalescer.beginBatch();
+    coalescer.beginBatch();
+    fire(1, 1, TableModelEvent.UPDATE);
+    coalescer.endBatch();
+    assertTrue(tableEvents.isEmpty());
+    coalescer.endBatch();
+    assertEquals(1, tableEvents.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsEndOfMissingBatch() {
+    coalescer.endBatch();
+  }
+
+}
@@ -0,0 +1,100 @@
+package midiplayer.sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the unpacked sequences kept ready by {@link SequenceCache}.
+ *
+ * @author Mathieu Brunot
+ */
+public class SequenceCacheTest {
+
+  private Path directory;
+
+  private final Path[] songs = new Path[3];
+
+  private final SequenceCache cache = new SequenceCache();
+
+  @Before
+  public void setUp() throws IOException, InvalidMidiDataException {
+    directory = Files.createTempDirectory("sequence-cache");
+    for (int i = 0; i < songs.length; i++) {
+      Sequence sequence = new Sequence(Sequence.PPQ, 480);
+      Track track = sequence.createTrack();
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_ON, 0, 60 + i, 100), 0));
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_OFF, 0, 60 + i, 0), 480));
+      songs[i] = directory.resolve("song" + i + ".mid");
+      MidiSystem.write(sequence, 0, songs[i].toFile());
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for (Path song : songs) {
+      Files.deleteIfExists(song);
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  // #########################################################################
+  @Test
+  public void returnsUnpackedSequenceOnce() throws Exception {
+    Sequence parsed = cache.getSequence(songs[0]);
+    assertTrue(cache.putUnpacked(songs[0], parsed));
+
+    assertSame(parsed, cache.getSequence(songs[0]));
+    // Not shared: unpacked again
+    Sequence unpacked = cache.getSequence(songs[0]);
+    assertNotSame(parsed, unpacked);
+    assertEquals(parsed.getTickLength(), unpacked.getTickLength());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  public void keepsUnpackedSequencesOfCachedResourcesOnly() throws Exception {
+    Sequence parsed = cache.getSequence(songs[0]);
+    assertFalse(cache.putUnpacked(songs[1], parsed));
+
+    cache.invalidate(songs[0]);
+    assertFalse(cache.putUnpacked(songs[0], parsed));
+  }
+
+  @Test
+  public void keepsMostRecentUnpackedSequences() throws Exception {
+    Sequence[] parsed = new Sequence[songs.length];
+    for (int i = 0; i < songs.length; i++) {
+      parsed[i] = cache.getSequence(songs[i]);
+      assertTrue(cache.putUnpacked(songs[i], parsed[i]));
+    }
+
+    // The least recently put sequence is unpacked again
+    Sequence first = cache.getIfPresent(songs[0]);
+    assertNotNull(first);
+    assertNotSame(parsed[0], first);
+    assertSame(parsed[1], cache.getIfPresent(songs[1]));
+    assertSame(parsed[2], cache.getIfPresent(songs[2]));
+  }
+
+}
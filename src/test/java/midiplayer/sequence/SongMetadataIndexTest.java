@@ -0,0 +1,151 @@
+package midiplayer.sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the notifications and the persistence of {@link SongMetadataIndex}.
+ *
+ * @author Mathieu Brunot
+ */
+public class SongMetadataIndexTest {
+
+  private Path directory;
+
+  private Path indexFile;
+
+  private Path song;
+
+  private final List<Object> notified = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() throws IOException, InvalidMidiDataException {
+    directory = Files.createTempDirectory("metadata-index");
+    indexFile = directory.resolve(SongMetadataIndex.DEFAULT_FILE_NAME);
+    song = directory.resolve("song.mid");
+    Sequence sequence = new Sequence(Sequence.PPQ, 480);
+    Track track = sequence.createTrack();
+    track.add(new MidiEvent(
+        new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), 0));
+    track.add(new MidiEvent(
+        new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), 480));
+    MidiSystem.write(sequence, 0, song.toFile());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(song);
+    Files.deleteIfExists(indexFile);
+    Files.deleteIfExists(directory);
+  }
+
+  private SongMetadataIndex newIndex() {
+    SongMetadataIndex index = new SongMetadataIndex(indexFile, 1);
+    index.addListener((resource, metadata) -> notified.add(resource));
+    return index;
+  }
+
+  private static void awaitIdle(final SongMetadataIndex index)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (index.getPendingCount() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, index.getPendingCount());
+  }
+
+  // #########################################################################
+  @Test
+  public void notifiesComputedMetadataOnce() throws Exception {
+    try (SongMetadataIndex index = newIndex()) {
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+      assertEquals(1, notified.size());
+      assertNotNull(index.getIfPresent(song));
+
+      // Up to date metadata already notified
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+      assertEquals(1, notified.size());
+      assertEquals(1, index.getIndexedCount());
+    }
+  }
+
+  @Test
+  public void notifiesMetadataLoadedFromFileOnce() throws Exception {
+    try (SongMetadataIndex index = newIndex()) {
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+    }
+    notified.clear();
+
+    try (SongMetadataIndex index = newIndex()) {
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+      assertEquals(1, notified.size());
+      assertEquals(0, index.getIndexedCount());
+
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+      assertEquals(1, notified.size());
+    }
+  }
+
+  @Test
+  public void savesModificationsLater() throws Exception {
+    SongMetadataIndex index = newIndex();
+    try {
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+      // Not saved after each indexed file
+      assertFalse(Files.exists(indexFile));
+    } finally {
+      index.close();
+    }
+    assertTrue(Files.exists(indexFile));
+  }
+
+  @Test
+  public void prunesDeletedFiles() throws Exception {
+    Path other = directory.resolve("other.mid");
+    Files.copy(song, other);
+    try (SongMetadataIndex index = newIndex()) {
+      index.request(Arrays.asList(song, other));
+      awaitIdle(index);
+      assertEquals(2, index.size());
+    }
+    Files.delete(other);
+
+    try (SongMetadataIndex index = newIndex()) {
+      index.request(Collections.singletonList(song));
+      awaitIdle(index);
+      assertNotNull(index.getIfPresent(song));
+      assertNull(index.getIfPresent(other));
+      assertEquals(1, index.size());
+    }
+  }
+
+}
@@ -0,0 +1,216 @@
+package midiplayer.sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link StandardMidiFileReader} reads the same events as
+ * {@code MidiSystem.getSequence(File)}.
+ *
+ * @author Mathieu Brunot
+ */
+public class StandardMidiFileReaderTest {
+
+  private Path directory;
+
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("smf-reader");
+    file = directory.resolve("song.mid");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * Generate a sequence using every kind of message, over 100 quarter notes.
+   */
+  private static Sequence sequence(final float divisionType,
+      final int resolution, final int tracks) throws InvalidMidiDataException {
+    Random random = new Random(42);
+    Sequence sequence = new Sequence(divisionType, resolution);
+    for (int t = 0; t < tracks; t++) {
+      Track track = sequence.createTrack();
+      byte[] name = ("Track " + t).getBytes();
+      track.add(new MidiEvent(new MetaMessage(0x03, name, name.length), 0));
+      track.add(new MidiEvent(new MetaMessage(0x51,
+          new byte[] {0x07, (byte) 0xA1, 0x20}, 3), 0));
+      byte[] sysex = {(byte) SysexMessage.SYSTEM_EXCLUSIVE, 0x7E, 0x7F, 0x09,
+          0x01, (byte) ShortMessage.END_OF_EXCLUSIVE};
+      track.add(new MidiEvent(new SysexMessage(sysex, sysex.length), 0));
+      int channel = t % 16;
+      long tick = 0;
+      while (tick < 100L * resolution) {
+        int data1 = random.nextInt(128);
+        int data2 = random.nextInt(128);
+        ShortMessage message;
+        switch (random.nextInt(7)) {
+          case 0:
+            message = new ShortMessage(ShortMessage.NOTE_OFF, channel, data1,
+                data2);
+            break;
+          case 1:
+            message = new ShortMessage(ShortMessage.POLY_PRESSURE, channel,
+                data1, data2);
+            break;
+          case 2:
+            message = new ShortMessage(ShortMessage.CONTROL_CHANGE, channel,
+                data1, data2);
+            break;
+          case 3:
+            message = new ShortMessage(ShortMessage.PROGRAM_CHANGE, channel,
+                data1, 0);
+            break;
+          case 4:
+            message = new ShortMessage(ShortMessage.CHANNEL_PRESSURE, channel,
+                data1, 0);
+            break;
+          case 5:
+            message = new ShortMessage(ShortMessage.PITCH_BEND, channel,
+                data1, data2);
+            break;
+          default:
+            message = new ShortMessage(ShortMessage.NOTE_ON, channel, data1,
+                data2);
+        }
+        track.add(new MidiEvent(message, tick));
+        // Variable length deltas of 1 to 3 bytes
+        tick += random.nextInt(4) == 0 ? random.nextInt(20000)
+            : random.nextInt(resolution / 4);
+      }
+    }
+    return sequence;
+  }
+
+  private static void assertSameSequence(final Sequence expected,
+      final Sequence actual) {
+    assertEquals(expected.getDivisionType(), actual.getDivisionType(), 0f);
+    assertEquals(expected.getResolution(), actual.getResolution());
+    assertEquals(expected.getTickLength(), actual.getTickLength());
+    assertEquals(expected.getMicrosecondLength(),
+        actual.getMicrosecondLength());
+    Track[] expectedTracks = expected.getTracks();
+    Track[] actualTracks = actual.getTracks();
+    assertEquals(expectedTracks.length, actualTracks.length);
+    for (int t = 0; t < expectedTracks.length; t++) {
+      Track expectedTrack = expectedTracks[t];
+      Track actualTrack = actualTracks[t];
+      assertEquals("Track " + t, expectedTrack.size(), actualTrack.size());
+      for (int i = 0, n = expectedTrack.size(); i < n; i++) {
+        MidiEvent expectedEvent = expectedTrack.get(i);
+        MidiEvent actualEvent = actualTrack.get(i);
+        String at = "Track " + t + ", event " + i;
+        assertEquals(at, expectedEvent.getTick(), actualEvent.getTick());
+        MidiMessage expectedMessage = expectedEvent.getMessage();
+        MidiMessage actualMessage = actualEvent.getMessage();
+        assertEquals(at, expectedMessage.getStatus(),
+            actualMessage.getStatus());
+        assertEquals(at, expectedMessage.getLength(),
+            actualMessage.getLength());
+        assertArrayEquals(at, expectedMessage.getMessage(),
+            actualMessage.getMessage());
+      }
+    }
+  }
+
+  private void assertReadLikeMidiSystem() throws Exception {
+    Sequence expected = MidiSystem.getSequence(file.toFile());
+    assertSameSequence(expected, StandardMidiFileReader.read(file));
+    assertSameSequence(expected, StandardMidiFileReader.getSequence(file));
+    StandardMidiFileReader.Progress progress =
+        StandardMidiFileReader.readProgressively(file);
+    assertSameSequence(expected, progress.getCompletion().get());
+  }
+
+  // #########################################################################
+
+  @Test
+  public void readsSingleTrackFile() throws Exception {
+    MidiSystem.write(sequence(Sequence.PPQ, 480, 1), 0, file.toFile());
+    assertReadLikeMidiSystem();
+  }
+
+  @Test
+  public void readsMultipleTrackFile() throws Exception {
+    MidiSystem.write(sequence(Sequence.PPQ, 96, 17), 1, file.toFile());
+    assertReadLikeMidiSystem();
+  }
+
+  @Test
+  public void readsSmpteFile() throws Exception {
+    MidiSystem.write(sequence(Sequence.SMPTE_25, 40, 3), 1, file.toFile());
+    assertReadLikeMidiSystem();
+  }
+
+  @Test
+  public void readsRunningStatus() throws Exception {
+    Files.write(file, new byte[] {
+        // Header chunk: format 1, 1 track, 480 ticks per quarter note
+        'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 1, 0, 1, 0x01, (byte) 0xE0,
+        'M', 'T', 'r', 'k', 0, 0, 0, 24,
+        // Note on, then another one with the same status
+        0x00, (byte) 0x90, 0x3C, 0x64,
+        0x60, 0x3E, 0x64,
+        // Note off, and a note on of velocity 0 with the same status
+        0x60, (byte) 0x80, 0x3C, 0x40,
+        0x00, 0x3E, 0x40,
+        // 2 bytes delta time, then a program change
+        (byte) 0x81, 0x00, (byte) 0xC0, 0x05,
+        // The running status applies to a 1 byte message too
+        0x10, 0x06,
+        0x00, (byte) 0xFF, 0x2F, 0x00});
+    assertReadLikeMidiSystem();
+  }
+
+  @Test
+  public void readsProgressivelyPastPreroll() throws Exception {
+    MidiSystem.write(sequence(Sequence.PPQ, 480, 4), 1, file.toFile());
+    StandardMidiFileReader.Progress progress =
+        StandardMidiFileReader.readProgressively(file);
+    Sequence sequence = progress.getSequence();
+    // The song is longer than the preroll: at least its start is decoded
+    long preroll = 480L * StandardMidiFileReader.DEFAULT_PREROLL_QUARTER_NOTES;
+    for (Track track : sequence.getTracks()) {
+      assertTrue(track.size() > 1);
+    }
+    assertSameSequence(MidiSystem.getSequence(file.toFile()),
+        progress.getCompletion().get());
+    assertTrue(sequence.getTickLength() > preroll);
+  }
+
+  @Test(expected = InvalidMidiDataException.class)
+  public void rejectsTruncatedTrack() throws Exception {
+    Files.write(file, new byte[] {
+        'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 0, 0, 1, 0x01, (byte) 0xE0,
+        // A note on without its velocity
+        'M', 'T', 'r', 'k', 0, 0, 0, 3,
+        0x00, (byte) 0x90, 0x3C});
+    StandardMidiFileReader.read(file);
+  }
+
+}
@@ -0,0 +1,174 @@
+package midiplayer.sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+/**
+ * Tests that the durations of a {@link TempoMap} are the ones of {@link Sequence}.
+ *
+ * @author Mathieu Brunot
+ */
+public class TempoMapTest {
+
+  private static MidiEvent tempo(final int tempo, final long tick)
+      throws InvalidMidiDataException {
+    byte[] data = {(byte) (tempo >> 16), (byte) (tempo >> 8), (byte) tempo};
+    return new MidiEvent(
+        new MetaMessage(TempoMap.TEMPO_META_TYPE, data, data.length), tick);
+  }
+
+  private static MidiEvent note(final long tick)
+      throws InvalidMidiDataException {
+    return new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 64),
+        tick);
+  }
+
+  /**
+   * Generate random tempo changes, some of them on a same tick.
+   */
+  private static List<MidiEvent> changes(final int resolution,
+      final int count, final long seed) throws InvalidMidiDataException {
+    Random random = new Random(seed);
+    List<MidiEvent> changes = new ArrayList<>();
+    long tick = 0;
+    for (int i = 0; i < count; i++) {
+      // Between 20 and 300 beats per minute
+      changes.add(tempo(200000 + random.nextInt(2800000), tick));
+      tick += random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(8 * resolution);
+    }
+    return changes;
+  }
+
+  /**
+   * Create a sequence ending at a tick, with the tempo changes before it.
+   *
+   * <p>
+   * Tempo changes are in the first track, the only one {@code Sequence} reads them from.
+   * </p>
+   */
+  private static Sequence sequence(final float divisionType,
+      final int resolution, final List<MidiEvent> changes, final long tick)
+      throws InvalidMidiDataException {
+    Sequence sequence = new Sequence(divisionType, resolution);
+    Track track = sequence.createTrack();
+    for (MidiEvent change : changes) {
+      if (change.getTick() <= tick) {
+        track.add(change);
+      }
+    }
+    sequence.createTrack().add(note(tick));
+    return sequence;
+  }
+
+  /**
+   * Compare the durations of a tempo map with {@code getMicrosecondLength} of
+   * sequences ending at each step of a range of ticks.
+   */
+  private static void assertSameDurations(final float divisionType,
+      final int resolution, final List<MidiEvent> changes,
+      final long lastTick, final int step) throws InvalidMidiDataException {
+    TempoMap tempoMap =
+        TempoMap.of(sequence(divisionType, resolution, changes, lastTick));
+    for (long tick = 0; tick <= lastTick; tick += step) {
+      Sequence sequence = sequence(divisionType, resolution, changes, tick);
+      assertEquals(tick, sequence.getTickLength());
+      long expected = sequence.getMicrosecondLength();
+      long actual = tempoMap.toMicroseconds(tick);
+      // Sequence rounds down the duration of each segment, not only the sum
+      if (Math.abs(expected - actual) > tempoMap.getSegmentCount()) {
+        assertEquals("At tick " + tick, expected, actual);
+      }
+    }
+  }
+
+  // #########################################################################
+
+  @Test
+  public void usesDefaultTempoWithoutChanges() throws Exception {
+    List<MidiEvent> changes = Collections.emptyList();
+    TempoMap tempoMap =
+        TempoMap.of(sequence(Sequence.PPQ, 480, changes, 960));
+    assertEquals(1, tempoMap.getSegmentCount());
+    assertEquals(TempoMap.DEFAULT_TEMPO, tempoMap.getTempoAt(1000));
+    assertEquals(1000000, tempoMap.toMicroseconds(960));
+    assertSameDurations(Sequence.PPQ, 480, changes, 10000, 7);
+  }
+
+  @Test
+  public void matchesSequenceDurations() throws Exception {
+    for (int resolution : new int[] {1, 24, 96, 480, 960, 32767}) {
+      List<MidiEvent> changes = changes(resolution, 50, resolution);
+      assertSameDurations(Sequence.PPQ, resolution, changes,
+          60L * 8 * resolution, Math.max(1, resolution / 7));
+    }
+  }
+
+  @Test
+  public void matchesSmpteDurations() throws Exception {
+    for (float divisionType : new float[] {Sequence.SMPTE_24,
+        Sequence.SMPTE_25, Sequence.SMPTE_30DROP, Sequence.SMPTE_30}) {
+      // Tempo changes do not apply to SMPTE timing
+      assertSameDurations(divisionType, 40, changes(40, 10, 42), 100000, 13);
+    }
+  }
+
+  @Test
+  public void keepsLastChangeOfSameTick() throws Exception {
+    Sequence sequence = new Sequence(Sequence.PPQ, 96);
+    // Unlike Sequence, changes of every track are used
+    sequence.createTrack().add(tempo(400000, 96));
+    sequence.createTrack().add(tempo(250000, 96));
+    sequence.createTrack().add(tempo(1000000, 0));
+    TempoMap tempoMap = TempoMap.of(sequence);
+    assertEquals(2, tempoMap.getSegmentCount());
+    assertEquals(1000000, tempoMap.getTempoAt(95));
+    assertEquals(250000, tempoMap.getTempoAt(96));
+    assertEquals(1000000 + 250000, tempoMap.toMicroseconds(192));
+
+    assertSameDurations(Sequence.PPQ, 96,
+        Arrays.asList(tempo(1000000, 0), tempo(400000, 96),
+            tempo(250000, 96)),
+        960, 1);
+  }
+
+  @Test
+  public void convertsMicrosecondsBackToTicks() throws Exception {
+    TempoMap tempoMap = TempoMap
+        .of(sequence(Sequence.PPQ, 480, changes(480, 50, 7), 200000));
+    for (long tick = 0; tick < 200000; tick += 37) {
+      long position = tempoMap.toMicroseconds(tick);
+      // Rounded down twice
+      long back = tempoMap.toTick(position);
+      if (back > tick || back < tick - 1) {
+        assertEquals("At " + position + " microseconds", tick, back);
+      }
+    }
+  }
+
+  @Test
+  public void tellsWhenSequenceChanged() throws Exception {
+    Sequence sequence =
+        sequence(Sequence.PPQ, 480, changes(480, 5, 3), 10000);
+    TempoMap tempoMap = TempoMap.of(sequence);
+    assertTrue(tempoMap.isCurrent(sequence));
+    sequence.getTracks()[0].add(note(10));
+    assertFalse(tempoMap.isCurrent(sequence));
+  }
+
+}
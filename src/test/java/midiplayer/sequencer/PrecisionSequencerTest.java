@@ -0,0 +1,121 @@
+package midiplayer.sequencer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the schedule of {@link PrecisionSequencer} when events are appended while it plays.
+ *
+ * @author Mathieu Brunot
+ */
+public class PrecisionSequencerTest {
+
+  private static final int END_OF_TRACK = 0x2F;
+
+  /**
+   * Value of the controller changes of the test sequences.
+   */
+  private static final int MARKER = 1;
+
+  private PrecisionSequencer sequencer;
+
+  private final List<Integer> received = new ArrayList<>();
+
+  private final CountDownLatch ended = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    sequencer =
+        new PrecisionSequencer(false, PrecisionSequencer.DEFAULT_SPIN_NANOS);
+    sequencer.open();
+    sequencer.getTransmitter().setReceiver(new Receiver() {
+      @Override
+      public void send(final MidiMessage message, final long timeStamp) {
+        // Not the messages turning notes off
+        if (message instanceof ShortMessage
+            && ((ShortMessage) message).getData2() == MARKER) {
+          synchronized (received) {
+            received.add(((ShortMessage) message).getData1());
+          }
+        }
+      }
+
+      @Override
+      public void close() {}
+    });
+    sequencer.addMetaEventListener(meta -> {
+      if (meta.getType() == END_OF_TRACK) {
+        ended.countDown();
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    sequencer.close();
+  }
+
+  /**
+   * Add a controller change whose value identifies its tick.
+   *
+   * @param track the track
+   * @param tick the tick of the event, a multiple of {@code 5}
+   * @throws InvalidMidiDataException if the event cannot be created
+   */
+  private static void addEvent(final Track track, final long tick)
+      throws InvalidMidiDataException {
+    track.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0,
+        (int) (tick / 5), MARKER), tick));
+  }
+
+  // #########################################################################
+  @Test
+  public void dispatchesAppendedEventsInOrder() throws Exception {
+    Sequence sequence = new Sequence(Sequence.PPQ, 480);
+    Track first = sequence.createTrack();
+    Track second = sequence.createTrack();
+    for (long tick = 0; tick < 200; tick += 10) {
+      addEvent(first, tick);
+    }
+    sequencer.setSequence(sequence);
+    sequencer.start();
+    Thread.sleep(50);
+
+    // Appended while playing, between and after the scheduled events
+    for (long tick = 205; tick < 400; tick += 10) {
+      addEvent(second, tick);
+    }
+    for (long tick = 200; tick < 400; tick += 10) {
+      addEvent(first, tick);
+    }
+    assertTrue("Sequence not ended", ended.await(10, TimeUnit.SECONDS));
+
+    List<Integer> expected = new ArrayList<>();
+    for (int value = 0; value < 80; value++) {
+      if (value % 2 == 0 || value > 40) {
+        expected.add(value);
+      }
+    }
+    synchronized (received) {
+      assertEquals(expected, received);
+    }
+  }
+
+}
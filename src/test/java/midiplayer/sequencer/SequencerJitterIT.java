@@ -0,0 +1,174 @@
+package midiplayer.sequencer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+import midiplayer.metrics.LatencyHistogram;
+import midiplayer.metrics.LatencyStatistics;
+
+/**
+ * Compares the dispatch jitter of the precision sequencer with the one of the default sequencer
+ * of the JDK.
+ *
+ * <p>
+ * A sequence of notes a few milliseconds apart is played by each sequencer to a receiver, which
+ * records when each note on is received. The offset of a note is the time between the start of
+ * the sequencer and its reception, minus its position in the sequence: its jitter is the distance
+ * between its offset and the median offset, so that the start latency of a sequencer is ignored.
+ * The median, 99th percentile and maximum jitters are printed, in microseconds.
+ * </p>
+ *
+ * <p>
+ * Notes are played in real time: the harness runs with the integration tests.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+public class SequencerJitterIT {
+
+  /**
+   * Resolution of the sequence: one tick per millisecond at the default tempo.
+   */
+  private static final int RESOLUTION = 500;
+
+  private static final int NOTES = 1000;
+
+  /**
+   * Interval between two notes, in ticks.
+   */
+  private static final int INTERVAL = 3;
+
+  private static final long TIMEOUT_MILLIS =
+      NOTES * INTERVAL + TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * Create a sequence of short notes at a regular interval.
+   *
+   * @return the sequence
+   * @throws InvalidMidiDataException if a note cannot be created
+   */
+  private static Sequence createSequence() throws InvalidMidiDataException {
+    Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+    Track track = sequence.createTrack();
+    for (int n = 0; n < NOTES; n++) {
+      long tick = (long) n * INTERVAL;
+      int pitch = 36 + n % 60;
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 100), tick));
+      track.add(new MidiEvent(
+          new ShortMessage(ShortMessage.NOTE_OFF, 0, pitch, 0), tick + 1));
+    }
+    return sequence;
+  }
+
+  // #########################################################################
+  @Test
+  public void compareJitter() throws Exception {
+    // Warm up both sequencers, then measure
+    measure(
+        new PrecisionSequencer(false, PrecisionSequencer.DEFAULT_SPIN_NANOS));
+    measure(MidiSystem.getSequencer(false));
+
+    LatencyStatistics precision = measure(
+        new PrecisionSequencer(false, PrecisionSequencer.DEFAULT_SPIN_NANOS));
+    LatencyStatistics jdk = measure(MidiSystem.getSequencer(false));
+    System.out.println(String.format("%-11s %10s %10s %10s", "Jitter (us)",
+        "p50", "p99", "max"));
+    for (LatencyStatistics statistics : new LatencyStatistics[] {precision,
+        jdk}) {
+      System.out.println(String.format("%-11s %10d %10d %10d",
+          statistics.getName(), statistics.getP50(), statistics.getP99(),
+          statistics.getMax()));
+    }
+    assertEquals(NOTES, precision.getCount());
+    assertEquals(NOTES, jdk.getCount());
+  }
+
+  /**
+   * Play the sequence and measure the jitter of its notes.
+   *
+   * @param sequencer the sequencer, not open
+   * @return the jitter statistics
+   * @throws Exception if the sequence cannot be played
+   */
+  private static LatencyStatistics measure(final Sequencer sequencer)
+      throws Exception {
+    Recorder recorder = new Recorder();
+    sequencer.open();
+    try {
+      sequencer.getTransmitter().setReceiver(recorder);
+      sequencer.setSequence(createSequence());
+      recorder.start = System.nanoTime();
+      sequencer.start();
+      recorder.done.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      sequencer.stop();
+    } finally {
+      sequencer.close();
+    }
+
+    String name = sequencer instanceof PrecisionSequencer ? "precision"
+        : "jdk";
+    long[] offsets = new long[recorder.count];
+    for (int n = 0; n < offsets.length; n++) {
+      offsets[n] = recorder.noteOns[n] - recorder.start
+          - TimeUnit.MILLISECONDS.toNanos((long) n * INTERVAL);
+    }
+    long[] sorted = offsets.clone();
+    Arrays.sort(sorted);
+    long median = sorted[sorted.length / 2];
+    LatencyHistogram jitter = new LatencyHistogram(name);
+    for (long offset : offsets) {
+      jitter.record(Math.abs(offset - median));
+    }
+    return LatencyStatistics.of(jitter);
+  }
+
+  // #########################################################################
+  /**
+   * Records the time each note on is received.
+   */
+  private static final class Recorder implements Receiver {
+
+    private final long[] noteOns = new long[NOTES];
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private long start;
+
+    private int count = 0;
+
+    @Override
+    public synchronized void send(final MidiMessage message,
+        final long timeStamp) {
+      long now = System.nanoTime();
+      if (message instanceof ShortMessage
+          && ((ShortMessage) message).getCommand() == ShortMessage.NOTE_ON
+          && count < NOTES) {
+        noteOns[count++] = now;
+        if (count == NOTES) {
+          done.countDown();
+        }
+      }
+    }
+
+    @Override
+    public void close() {}
+
+  }
+
+}
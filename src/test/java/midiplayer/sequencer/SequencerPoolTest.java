@@ -0,0 +1,104 @@
+package midiplayer.sequencer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the release of sequencers to a {@link SequencerPool}.
+ *
+ * @author Mathieu Brunot
+ */
+public class SequencerPoolTest {
+
+  private SequencerPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new SequencerPool(SequencerPoolTest::openSequencer, 1,
+        TimeUnit.MINUTES, 2);
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  private static Sequencer openSequencer() throws MidiUnavailableException {
+    Sequencer sequencer =
+        new PrecisionSequencer(false, PrecisionSequencer.DEFAULT_SPIN_NANOS);
+    sequencer.open();
+    return sequencer;
+  }
+
+  @Test
+  public void reusesReleasedSequencer() throws Exception {
+    Sequencer sequencer = pool.acquire();
+    sequencer.setSequence(new Sequence(Sequence.PPQ, 480));
+    pool.release(sequencer);
+    assertEquals(1, pool.getIdleCount());
+    assertTrue(sequencer.isOpen());
+    assertNull(sequencer.getSequence());
+
+    assertSame(sequencer, pool.acquire());
+    assertEquals(0, pool.getIdleCount());
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(1, pool.getReusedCount());
+  }
+
+  @Test
+  public void ignoresSecondRelease() throws Exception {
+    Sequencer sequencer = pool.acquire();
+    pool.release(sequencer);
+    pool.release(sequencer);
+    assertEquals(1, pool.getIdleCount());
+
+    // The sequencer is lent once
+    assertSame(sequencer, pool.acquire());
+    assertNotSame(sequencer, pool.acquire());
+    assertEquals(2, pool.getCreatedCount());
+  }
+
+  @Test
+  public void ignoresSequencerNotCheckedOut() throws Exception {
+    Sequencer sequencer = openSequencer();
+    try {
+      Sequence sequence = new Sequence(Sequence.PPQ, 480);
+      sequencer.setSequence(sequence);
+      pool.release(sequencer);
+      assertEquals(0, pool.getIdleCount());
+      assertTrue(sequencer.isOpen());
+      assertSame(sequence, sequencer.getSequence());
+    } finally {
+      sequencer.close();
+    }
+  }
+
+  @Test
+  public void closesCheckedOutSequencers() throws Exception {
+    Sequencer idle = pool.acquire();
+    Sequencer used = pool.acquire();
+    pool.release(idle);
+    pool.close();
+    assertFalse(idle.isOpen());
+    assertFalse(used.isOpen());
+
+    // Released after the pool was closed
+    pool.release(used);
+    assertEquals(0, pool.getIdleCount());
+  }
+
+}
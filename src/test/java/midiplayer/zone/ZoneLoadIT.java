@@ -0,0 +1,359 @@
+package midiplayer.zone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import midiplayer.MidiPlayer;
+
+/**
+ * Measures the heap and the processor time used by each zone of a {@link ZoneEngine}, with 1, 8
+ * and 32 zones playing at once.
+ *
+ * <p>
+ * The synthesizer is opened in pull mode, and rendered in real time by a thread of the harness
+ * whose processor time is not counted: the measures are those of the players and their
+ * sequencers. The heap is measured after a garbage collection, relative to an engine without
+ * zones. The pull mode requires the {@code java.desktop/com.sun.media.sound} package to be
+ * exported to the tests, otherwise the harness is skipped.
+ * </p>
+ *
+ * <p>
+ * Songs are played in real time: the harness runs with the integration tests.
+ * </p>
+ *
+ * @author Mathieu Brunot
+ */
+@RunWith(Parameterized.class)
+public class ZoneLoadIT {
+
+  private static final int[] ZONE_COUNTS = {1, 8, 32};
+
+  private static final int SONG_COUNT = 4;
+
+  private static final int NOTES_PER_SONG = 64;
+
+  private static final int RESOLUTION = 480;
+
+  private static final long WARM_UP_MILLIS = 1000;
+
+  private static final long MEASURE_MILLIS = 3000;
+
+  /**
+   * Audio rendered at each read of the synthesizer, in milliseconds.
+   */
+  private static final int RENDER_MILLIS = 10;
+
+  private static final AudioFormat FORMAT =
+      new AudioFormat(44100, 16, 2, true, false);
+
+  @Parameters(name = "{0}")
+  public static Collection<Object[]> engines() {
+    return Arrays.asList(new Object[][] {{MidiPlayer.DEFAULT_ENGINE},
+        {MidiPlayer.PRECISION_ENGINE}});
+  }
+
+  private final String engine;
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  private Path directory;
+
+  private List<Object> songs;
+
+  private String previousEngine;
+
+  public ZoneLoadIT(final String engine) {
+    this.engine = engine;
+  }
+
+  @Before
+  public void setUp() throws IOException, InvalidMidiDataException {
+    Assume.assumeTrue("Thread CPU time not supported",
+        threads.isThreadCpuTimeSupported());
+    threads.setThreadCpuTimeEnabled(true);
+    directory = Files.createTempDirectory("zone-load");
+    songs = new ArrayList<>(SONG_COUNT);
+    for (int i = 0; i < SONG_COUNT; i++) {
+      File file = directory.resolve("song" + i + ".mid").toFile();
+      MidiSystem.write(createSong(48 + i * 4), 1, file);
+      songs.add(file);
+    }
+    previousEngine = System.setProperty(MidiPlayer.SEQUENCER_ENGINE_PROPERTY,
+        engine);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (previousEngine == null) {
+      System.clearProperty(MidiPlayer.SEQUENCER_ENGINE_PROPERTY);
+    } else {
+      System.setProperty(MidiPlayer.SEQUENCER_ENGINE_PROPERTY, previousEngine);
+    }
+    if (songs != null) {
+      for (Object song : songs) {
+        Files.deleteIfExists(((File) song).toPath());
+      }
+    }
+    if (directory != null) {
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  /**
+   * Create a song playing chords of three notes on eighth notes.
+   *
+   * @param pitch the pitch of the root of the chords
+   * @return the song
+   * @throws InvalidMidiDataException if a note cannot be created
+   */
+  private static Sequence createSong(final int pitch)
+      throws InvalidMidiDataException {
+    Sequence song = new Sequence(Sequence.PPQ, RESOLUTION);
+    Track track = song.createTrack();
+    for (int n = 0; n < NOTES_PER_SONG; n++) {
+      long tick = (long) n * RESOLUTION / 2;
+      for (int interval : new int[] {0, 4, 7}) {
+        int note = pitch + interval + n % 12;
+        track.add(new MidiEvent(
+            new ShortMessage(ShortMessage.NOTE_ON, n % 4, note, 80), tick));
+        track.add(new MidiEvent(
+            new ShortMessage(ShortMessage.NOTE_OFF, n % 4, note, 0),
+            tick + RESOLUTION / 2));
+      }
+    }
+    return song;
+  }
+
+  /**
+   * Open the software synthesizer in pull mode, with the channels and voices of a number of zones.
+   *
+   * @param synthesizer the software synthesizer
+   * @param zones the number of zones
+   * @return the synthesized audio, or {@code null} if the pull mode is not accessible
+   * @throws MidiUnavailableException if the synthesizer is not available
+   */
+  private static AudioInputStream openStream(final Synthesizer synthesizer,
+      final int zones) throws MidiUnavailableException {
+    for (Class<?> type : synthesizer.getClass().getInterfaces()) {
+      if ("com.sun.media.sound.AudioSynthesizer".equals(type.getName())) {
+        try {
+          Method openStream =
+              type.getMethod("openStream", AudioFormat.class, Map.class);
+          return (AudioInputStream) openStream.invoke(synthesizer, FORMAT,
+              new HashMap<>(ZoneEngine.getSynthesizerInfo(zones)));
+        } catch (NoSuchMethodException | IllegalAccessException
+            | RuntimeException ex) {
+          return null;
+        } catch (InvocationTargetException ex) {
+          MidiUnavailableException unavailable =
+              new MidiUnavailableException(String.valueOf(ex.getCause()));
+          unavailable.initCause(ex.getCause());
+          throw unavailable;
+        }
+      }
+    }
+    return null;
+  }
+
+  // #########################################################################
+  @Test
+  public void measurePerZone() throws Exception {
+    List<Result> results = new ArrayList<>();
+    for (int zones : ZONE_COUNTS) {
+      results.add(measure(zones));
+    }
+    System.out.println(engine + " sequencer engine:");
+    System.out.println(String.format("%6s %16s %16s %16s", "zones",
+        "heap/zone (KB)", "cpu/zone (%)", "threads/zone"));
+    for (Result result : results) {
+      System.out.println(result);
+    }
+  }
+
+  /**
+   * Play songs in a number of zones at once and measure their usage.
+   *
+   * @param zoneCount the number of zones
+   * @return the measures
+   * @throws Exception if the zones cannot play
+   */
+  private Result measure(final int zoneCount) throws Exception {
+    Synthesizer synthesizer = MidiSystem.getSynthesizer();
+    AudioInputStream stream = openStream(synthesizer, zoneCount);
+    Assume.assumeTrue("Synthesizer pull mode unavailable, run with "
+        + "--add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED",
+        stream != null);
+    Renderer renderer = new Renderer(stream);
+    renderer.start();
+    Result result = new Result(zoneCount);
+    try (ZoneEngine zoneEngine = new ZoneEngine(synthesizer, true)) {
+      assertEquals(zoneCount, zoneEngine.getCapacity());
+      long baseHeap = usedHeap();
+      int baseThreads = threads.getThreadCount();
+
+      for (int i = 0; i < zoneCount; i++) {
+        Zone zone = zoneEngine.createZone("zone" + i);
+        zone.setPlaylistLooping(true);
+        zone.addAll(songs);
+        // Zones do not all start with the same song
+        zone.moveToSong(i % SONG_COUNT);
+        assertTrue(zone.startPlaying());
+      }
+      Thread.sleep(WARM_UP_MILLIS);
+      for (Zone zone : zoneEngine.getZones()) {
+        assertTrue(zone + " not playing", zone.isPlaying());
+      }
+
+      long startCpu = cpuTime(renderer);
+      long start = System.nanoTime();
+      Thread.sleep(MEASURE_MILLIS);
+      long elapsed = System.nanoTime() - start;
+      long cpu = cpuTime(renderer) - startCpu;
+
+      result.heapPerZone = (usedHeap() - baseHeap) / zoneCount;
+      result.cpuPerZone = 100.0 * cpu / elapsed / zoneCount;
+      result.threadsPerZone =
+          (double) (threads.getThreadCount() - baseThreads) / zoneCount;
+    } finally {
+      renderer.interrupt();
+      renderer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+    return result;
+  }
+
+  /**
+   * Get the processor time used by all threads but the renderer.
+   *
+   * @param renderer the thread rendering the synthesizer
+   * @return the processor time, in nanoseconds
+   */
+  private long cpuTime(final Thread renderer) {
+    long total = 0;
+    for (long id : threads.getAllThreadIds()) {
+      if (id != renderer.getId()) {
+        // -1 if the thread died meanwhile
+        total += Math.max(0, threads.getThreadCpuTime(id));
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Get the heap used once garbage collections no longer free memory.
+   *
+   * @return the used heap, in bytes
+   * @throws InterruptedException if the thread is interrupted while waiting for finalization
+   */
+  private long usedHeap() throws InterruptedException {
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      Thread.sleep(50);
+      long collected = memory.getHeapMemoryUsage().getUsed();
+      if (collected >= used) {
+        break;
+      }
+      used = collected;
+    }
+    return used;
+  }
+
+  // #########################################################################
+  /**
+   * Usage measured for a number of zones.
+   */
+  private static final class Result {
+
+    private final int zones;
+
+    private long heapPerZone;
+
+    private double cpuPerZone;
+
+    private double threadsPerZone;
+
+    Result(final int zones) {
+      this.zones = zones;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%6d %16d %16.2f %16.2f", zones,
+          heapPerZone / 1024, cpuPerZone, threadsPerZone);
+    }
+
+  }
+
+  /**
+   * Reads the synthesized audio in real time, as an audio line would.
+   */
+  private static final class Renderer extends Thread {
+
+    private final AudioInputStream stream;
+
+    Renderer(final AudioInputStream stream) {
+      super("ZoneLoadRenderer");
+      setDaemon(true);
+      this.stream = stream;
+    }
+
+    @Override
+    public void run() {
+      byte[] buffer = new byte[(int) (FORMAT.getFrameRate() * RENDER_MILLIS
+          / 1000 * FORMAT.getFrameSize())];
+      long period = TimeUnit.MILLISECONDS.toNanos(RENDER_MILLIS);
+      long next = System.nanoTime();
+      try {
+        while (!isInterrupted() && stream.read(buffer) >= 0) {
+          next += period;
+          long wait = next - System.nanoTime();
+          if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+          }
+        }
+      } catch (IOException | InterruptedException ex) {
+        // Stopped
+      }
+    }
+
+  }
+
+}